@@ -0,0 +1,136 @@
+package com.cursosonline.cursosonlinejs.Config;
+
+import com.cursosonline.cursosonlinejs.Entidades.BajaMembresia;
+import com.cursosonline.cursosonlinejs.Entidades.Certificado;
+import com.cursosonline.cursosonlinejs.Entidades.ConciliacionPagos;
+import com.cursosonline.cursosonlinejs.Entidades.ContadorIntentos;
+import com.cursosonline.cursosonlinejs.Entidades.CupoCurso;
+import com.cursosonline.cursosonlinejs.Entidades.DiscrepanciaPago;
+import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
+import com.cursosonline.cursosonlinejs.Entidades.EventoOutbox;
+import com.cursosonline.cursosonlinejs.Entidades.EventoWebhook;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.Intento;
+import com.cursosonline.cursosonlinejs.Entidades.Leccion;
+import com.cursosonline.cursosonlinejs.Entidades.ListaEspera;
+import com.cursosonline.cursosonlinejs.Entidades.Pago;
+import com.cursosonline.cursosonlinejs.Entidades.RollupIngresos;
+import com.cursosonline.cursosonlinejs.Entidades.RollupInscripciones;
+import com.mongodb.MongoCommandException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mapping.context.MappingContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+
+import java.util.List;
+
+/**
+ * Crea al arrancar los índices declarados (@Indexed / @CompoundIndex) de las colecciones
+ * cuyas consultas dependen de ellos.
+ *
+ * spring.data.mongodb.auto-index-creation está desactivado (valor por defecto), así que
+ * sin esto las anotaciones solo documentan. createIndex es idempotente: un índice que ya
+ * existe igual no cuesta nada. Si existe con el mismo nombre y otra definición (se cambió
+ * la anotación) se borra y se vuelve a crear. Un índice que no se puede crear (p. ej. uno
+ * único con duplicados) se registra y no impide arrancar.
+ */
+@Configuration
+public class IndicesMongoConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(IndicesMongoConfig.class);
+
+    // 85: IndexOptionsConflict, 86: IndexKeySpecsConflict
+    private static final List<Integer> CONFLICTO = List.of(85, 86);
+
+    private static final List<Class<?>> ENTIDADES = List.of(
+            // Libro de calificaciones y progreso: eval_estudiante_enviado_idx
+            Intento.class,
+            // Barrido de expiración (access_end_idx) y de rollups de analítica (estado_cambiado_idx)
+            Inscripcion.class,
+            // Barrido de rollups de analítica: estado_cambiado_idx
+            Pago.class,
+            // Refresco de membresías y vencimiento de las marcas: baja_ttl_idx
+            BajaMembresia.class,
+            // Sondeo del relay (estado_proximo_idx) y TTL de los entregados (entregado_ttl_idx)
+            EventoOutbox.class,
+            // Un certificado por alumno y curso (curso_estudiante_uq), consulta por código
+            // (codigo_uq) y barrido de PDFs pendientes (pdf_pendiente_idx)
+            Certificado.class,
+            // Liberación de los contadores de intentos vencidos en bloque: intentoEnProgreso
+            ContadorIntentos.class,
+            // Precarga de la vista de las que se abren pronto: estado_disponible_desde_idx
+            Evaluacion.class,
+            // Cabeza de la lista y posición de un estudiante: curso_turno_idx
+            ListaEspera.class,
+            // Cursos con promoción de la lista de espera pendiente: promocionPendiente (disperso)
+            CupoCurso.class,
+            // Mapa de lecciones por ordinal del curso: curso_ordinal_idx
+            Leccion.class,
+            // Barrido de webhooks pendientes (estado_proximo_idx) y orden por pago (pago_recibido_idx)
+            EventoWebhook.class,
+            // Una conciliación en curso por pasarela: gateway_estado_idx
+            ConciliacionPagos.class,
+            // Discrepancias de una conciliación por tipo y línea: conciliacion_tipo_idx
+            DiscrepanciaPago.class,
+            // Reportes y recálculo de rollups por granularidad, curso y período
+            RollupIngresos.class,
+            // Ídem para las inscripciones
+            RollupInscripciones.class
+    );
+
+    private final MongoTemplate mongoTemplate;
+
+    public IndicesMongoConfig(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void crearIndices() {
+        MappingContext<? extends MongoPersistentEntity<?>, MongoPersistentProperty> contexto =
+                mongoTemplate.getConverter().getMappingContext();
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(contexto);
+
+        for (Class<?> entidad : ENTIDADES) {
+            IndexOperations ops = mongoTemplate.indexOps(entidad);
+            for (IndexDefinition def : resolver.resolveIndexFor(entidad)) {
+                crear(ops, entidad, def);
+            }
+        }
+    }
+
+    private static void crear(IndexOperations ops, Class<?> entidad, IndexDefinition def) {
+        try {
+            ops.createIndex(def);
+        } catch (DataAccessException ex) {
+            String nombre = def.getIndexOptions().getString("name");
+            if (nombre != null && esConflicto(ex)) {
+                log.info("El índice {} de {} cambió de definición; se vuelve a crear", nombre, entidad.getSimpleName());
+                try {
+                    ops.dropIndex(nombre);
+                    ops.createIndex(def);
+                    return;
+                } catch (DataAccessException ex2) {
+                    ex = ex2;
+                }
+            }
+            log.warn("No se pudo crear el índice {} de {}: {}",
+                    def.getIndexKeys().toJson(), entidad.getSimpleName(), ex.getMessage());
+        }
+    }
+
+    private static boolean esConflicto(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof MongoCommandException mce && CONFLICTO.contains(mce.getErrorCode())) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,86 @@
+package com.cursosonline.cursosonlinejs.Controladores;
+
+import com.cursosonline.cursosonlinejs.Repositorios.UsuarioRepositorio;
+import com.cursosonline.cursosonlinejs.Servicios.ActividadLeccionServicio;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Swagger / OpenAPI
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/api/v1/modulos/{idModulo}/lecciones/{idLeccion}/actividad")
+@CrossOrigin(origins = "http://localhost:9090", allowCredentials = "true")
+@Tag(
+        name = "Actividad en lecciones",
+        description = "Registro de lecciones vistas y completadas por el estudiante."
+)
+@SecurityRequirement(name = "bearerAuth")
+public class ActividadLeccionControlador {
+
+    private final ActividadLeccionServicio actividadLeccionServicio;
+    private final UsuarioRepositorio usuarioRepo;
+
+    public ActividadLeccionControlador(ActividadLeccionServicio actividadLeccionServicio,
+                                       UsuarioRepositorio usuarioRepo) {
+        this.actividadLeccionServicio = actividadLeccionServicio;
+        this.usuarioRepo = usuarioRepo;
+    }
+
+    private String currentUserId() {
+        var auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || auth.getName() == null) return null;
+        return usuarioRepo.findByEmail(auth.getName()).map(u -> u.getId()).orElse(null);
+    }
+
+    @Operation(
+            summary = "Registrar actividad en una lección",
+            description = """
+                    Marca la lección como la actual del estudiante y, con completada=true, la añade a
+                    sus lecciones completadas. Se guarda en diferido (unos segundos) y solo cuenta para
+                    inscripciones ACTIVA.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", description = "Actividad registrada"),
+            @ApiResponse(responseCode = "401", description = "No autenticado"),
+            @ApiResponse(responseCode = "404", description = "Lección no encontrada o no publicada")
+    })
+    @PostMapping(produces = "application/json")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> registrar(
+            @Parameter(description = "ID del módulo", example = "mod_123456")
+            @PathVariable String idModulo,
+            @Parameter(description = "ID de la lección", example = "lec_123456")
+            @PathVariable String idLeccion,
+            @RequestBody(required = false) ActividadRequest body
+    ) {
+        String uid = currentUserId();
+        if (uid == null) return ResponseEntity.status(401).body(Map.of("message", "No autenticado."));
+        boolean completada = body != null && Boolean.TRUE.equals(body.completada());
+        try {
+            actividadLeccionServicio.registrar(uid, idModulo, idLeccion, completada);
+            return ResponseEntity.accepted().build();
+        } catch (NoSuchElementException ex) {
+            return ResponseEntity.status(404).body(Map.of("message", ex.getMessage()));
+        }
+    }
+
+    @Schema(description = "Actividad del estudiante en la lección")
+    public static record ActividadRequest(
+            @Schema(description = "true si el estudiante terminó la lección", example = "false")
+            Boolean completada
+    ) {}
+}
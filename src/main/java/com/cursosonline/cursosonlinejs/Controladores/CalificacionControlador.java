@@ -5,8 +5,11 @@ import com.cursosonline.cursosonlinejs.Repositorios.UsuarioRepositorio;
 import com.cursosonline.cursosonlinejs.Servicios.CalificacionServicio;
 
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -17,6 +20,7 @@ import java.math.BigDecimal;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 // 🔽 Swagger / OpenAPI
 import io.swagger.v3.oas.annotations.Operation;
@@ -90,6 +94,46 @@ public class CalificacionControlador {
         }
     }
 
+    @PostMapping("/evaluaciones/{idEvaluacion}/calificaciones/lote")
+    @PreAuthorize("hasRole('ADMIN') or @calPermisos.esInstructorDeEvaluacion(#idEvaluacion)")
+    @Operation(
+            summary = "Calificar varios intentos de una evaluación",
+            description = "Crea las calificaciones de muchos intentos en una sola petición. Cada ítem se valida por " +
+                    "separado y la respuesta indica, en el mismo orden, si se creó o por qué falló."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Lote procesado (ver el resultado de cada ítem)"),
+            @ApiResponse(responseCode = "400", description = "Lote vacío o demasiado grande"),
+            @ApiResponse(responseCode = "401", description = "Usuario no autenticado"),
+            @ApiResponse(responseCode = "404", description = "Evaluación, lección, módulo o curso no encontrado"),
+            @ApiResponse(responseCode = "409", description = "La evaluación o su contenido está archivado")
+    })
+    public ResponseEntity<?> calificarLote(
+            @Parameter(description = "ID de la evaluación", example = "665fa1c2e4b0c72a8f000111")
+            @PathVariable String idEvaluacion,
+            @Valid @RequestBody CalificarLoteRequest body
+    ) {
+        String calificadoPor = currentUserId();
+        if (calificadoPor == null) {
+            return ResponseEntity.status(401).body(Map.of("message", "No autenticado."));
+        }
+
+        List<CalificacionServicio.ItemLote> items = body.getItems().stream()
+                .map(i -> new CalificacionServicio.ItemLote(
+                        i.getIdIntento(),
+                        i.getPuntaje(),
+                        i.getFeedback(),
+                        i.getRubrica()))
+                .toList();
+        try {
+            return ResponseEntity.ok(calificacionServicio.calificarLote(idEvaluacion, items, calificadoPor));
+        } catch (NoSuchElementException ex) {
+            return ResponseEntity.status(404).body(Map.of("message", ex.getMessage()));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(Map.of("message", ex.getMessage()));
+        }
+    }
+
     @GetMapping("/intentos/{idIntento}/calificacion")
     @PreAuthorize("hasRole('ADMIN') or @calPermisos.esInstructorDeIntento(#idIntento) or @calPermisos.esDuenoDeIntento(#idIntento)")
     @Operation(
@@ -223,6 +267,34 @@ public class CalificacionControlador {
         public void setFeedback(String feedback) { this.feedback = feedback; }
     }
 
+    public static class CalificarLoteRequest {
+        @NotEmpty
+        @Size(max = 500)
+        @Valid
+        private List<ItemCalificacionRequest> items;
+
+        public List<ItemCalificacionRequest> getItems() { return items; }
+        public void setItems(List<ItemCalificacionRequest> items) { this.items = items; }
+    }
+
+    public static class ItemCalificacionRequest {
+        @NotNull
+        private String idIntento;
+        @DecimalMin("0")
+        private BigDecimal puntaje;     // null => suma de la rúbrica
+        private String feedback;
+        private List<Calificacion.ItemRubrica> rubrica;
+
+        public String getIdIntento() { return idIntento; }
+        public void setIdIntento(String idIntento) { this.idIntento = idIntento; }
+        public BigDecimal getPuntaje() { return puntaje; }
+        public void setPuntaje(BigDecimal puntaje) { this.puntaje = puntaje; }
+        public String getFeedback() { return feedback; }
+        public void setFeedback(String feedback) { this.feedback = feedback; }
+        public List<Calificacion.ItemRubrica> getRubrica() { return rubrica; }
+        public void setRubrica(List<Calificacion.ItemRubrica> rubrica) { this.rubrica = rubrica; }
+    }
+
     public static class ActualizarCalificacionRequest {
         @Min(0)
         private Integer puntaje;
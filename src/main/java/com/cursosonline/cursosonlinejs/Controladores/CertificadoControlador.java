@@ -14,6 +14,7 @@ import org.springframework.web.bind.annotation.*;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 // 🔽 Swagger / OpenAPI
 import io.swagger.v3.oas.annotations.Operation;
@@ -106,6 +107,32 @@ public class CertificadoControlador {
         return ResponseEntity.created(URI.create("/api/v1/certificados/" + c.getId())).body(c);
     }
 
+    /**
+     * Emisión en lote: certificados para todos los elegibles del curso que aún no tienen.
+     */
+    @PostMapping("/cursos/{idCurso}/certificados/lote")
+    @PreAuthorize("hasRole('ADMIN') or @certPermisos.esInstructorDelCurso(#idCurso)")
+    @Operation(
+            summary = "Emitir certificados a toda la cohorte",
+            description = "Emite de una vez los certificados de todos los estudiantes elegibles del curso " +
+                          "(inscripción completada o aprobado) que aún no tienen uno. Los que ya tenían " +
+                          "certificado se informan como YA_EMITIDO. Los PDF se generan en segundo plano."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Resultado por estudiante"),
+            @ApiResponse(responseCode = "404", description = "Curso no encontrado")
+    })
+    public ResponseEntity<?> emitirCurso(
+            @Parameter(description = "ID del curso", example = "665fa1c2e4b0c72a8f000111")
+            @PathVariable("idCurso") @P("idCurso") String idCurso
+    ) {
+        try {
+            return ResponseEntity.ok(certificadoServicio.emitirCurso(idCurso));
+        } catch (NoSuchElementException ex) {
+            return ResponseEntity.status(404).body(Map.of("message", ex.getMessage()));
+        }
+    }
+
     @GetMapping("/certificados/{id}")
     @PreAuthorize("hasRole('ADMIN') or @certPermisos.puedeVerCertificado(#id)")
     @Operation(
@@ -128,14 +155,17 @@ public class CertificadoControlador {
     @GetMapping("/certificados/verificar/{codigo}")
     @Operation(
             summary = "Verificar un certificado por código",
-            description = "Permite verificar la validez de un certificado a partir de su código público."
+            description = "Permite verificar la validez de un certificado a partir de su código público. " +
+                          "Los códigos llevan el id del certificado y una firma HMAC: uno alterado o inventado " +
+                          "se rechaza sin consultar la base. Los códigos antiguos siguen siendo válidos."
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Certificado válido encontrado"),
-            @ApiResponse(responseCode = "404", description = "No existe certificado con ese código")
+            @ApiResponse(responseCode = "404", description = "Código inválido o sin certificado")
     })
     public ResponseEntity<?> verificar(
-            @Parameter(description = "Código público del certificado", example = "CUR-2025-ABC123")
+            @Parameter(description = "Código público del certificado",
+                       example = "665FA1C2E4B0C72A8F123456-9A1B2C3D4E5F60718293")
             @PathVariable String codigo
     ) {
         return certificadoServicio.buscarPorCodigo(codigo)
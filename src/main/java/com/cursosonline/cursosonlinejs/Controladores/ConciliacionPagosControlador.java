@@ -0,0 +1,123 @@
+package com.cursosonline.cursosonlinejs.Controladores;
+
+import com.cursosonline.cursosonlinejs.Entidades.ConciliacionPagos;
+import com.cursosonline.cursosonlinejs.Entidades.DiscrepanciaPago;
+import com.cursosonline.cursosonlinejs.Servicios.ConciliacionPagosServicio;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Swagger / OpenAPI
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/api/v1/admin/conciliaciones-pagos")
+@CrossOrigin(origins = "http://localhost:9090", allowCredentials = "true")
+@Tag(
+        name = "Conciliación de pagos",
+        description = "Cruce de los pagos con los archivos de liquidación de las pasarelas."
+)
+@SecurityRequirement(name = "bearerAuth")
+public class ConciliacionPagosControlador {
+
+    private final ConciliacionPagosServicio conciliacionPagosServicio;
+
+    public ConciliacionPagosControlador(ConciliacionPagosServicio conciliacionPagosServicio) {
+        this.conciliacionPagosServicio = conciliacionPagosServicio;
+    }
+
+    @Operation(
+            summary = "Iniciar una conciliación (ADMIN)",
+            description = """
+                    Lee en segundo plano un archivo de liquidación ya copiado en el directorio de
+                    conciliaciones del servidor (app.conciliacion.directorio). CSV con encabezado
+                    (referencia y/o gatewayPaymentId, estado, monto, moneda), arreglo JSON o JSON
+                    Lines con los mismos campos. Con aplicarCorrecciones=true las diferencias de
+                    estado con una transición válida se corrigen; si no, solo se reportan.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", description = "Conciliación iniciada",
+                    content = @Content(schema = @Schema(implementation = ConciliacionPagos.class))),
+            @ApiResponse(responseCode = "400", description = "Archivo o formato inválido"),
+            @ApiResponse(responseCode = "403", description = "Solo ADMIN"),
+            @ApiResponse(responseCode = "404", description = "Archivo no encontrado"),
+            @ApiResponse(responseCode = "409", description = "Ya hay una conciliación en curso para la pasarela")
+    })
+    @PostMapping(consumes = "application/json", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> iniciar(@Valid @RequestBody IniciarRequest body, Authentication auth) {
+        try {
+            ConciliacionPagos c = conciliacionPagosServicio.iniciar(body.gateway(), body.archivo(),
+                    Boolean.TRUE.equals(body.aplicarCorrecciones()), auth == null ? null : auth.getName());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(c);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
+        } catch (NoSuchElementException ex) {
+            return ResponseEntity.status(404).body(Map.of("message", ex.getMessage()));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(Map.of("message", ex.getMessage()));
+        }
+    }
+
+    @Operation(summary = "Estado y contadores de una conciliación (ADMIN)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Conciliación",
+                    content = @Content(schema = @Schema(implementation = ConciliacionPagos.class))),
+            @ApiResponse(responseCode = "403", description = "Solo ADMIN"),
+            @ApiResponse(responseCode = "404", description = "No existe")
+    })
+    @GetMapping(value = "/{id}", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> obtener(@PathVariable String id) {
+        ConciliacionPagos c = conciliacionPagosServicio.obtener(id);
+        if (c == null) return ResponseEntity.status(404).body(Map.of("message", "Conciliación no encontrada."));
+        return ResponseEntity.ok(c);
+    }
+
+    @Operation(
+            summary = "Discrepancias de una conciliación (ADMIN)",
+            description = "Paginadas y ordenadas por tipo y línea del archivo; se puede filtrar por tipo."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Página de discrepancias"),
+            @ApiResponse(responseCode = "400", description = "Paginación inválida"),
+            @ApiResponse(responseCode = "403", description = "Solo ADMIN")
+    })
+    @GetMapping(value = "/{id}/discrepancias", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> discrepancias(
+            @PathVariable String id,
+            @Parameter(description = "Filtra por tipo de discrepancia")
+            @RequestParam(required = false) DiscrepanciaPago.TipoDiscrepancia tipo,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "100") int size
+    ) {
+        if (page < 0 || size < 1 || size > 1000) {
+            return ResponseEntity.badRequest().body(Map.of("message", "page >= 0 y size entre 1 y 1000."));
+        }
+        return ResponseEntity.ok(conciliacionPagosServicio.discrepancias(id, tipo, page, size));
+    }
+
+    public static record IniciarRequest(
+            @NotBlank @Pattern(regexp = "^[a-z0-9_-]{1,40}$", message = "Pasarela inválida.") String gateway,
+            @NotBlank String archivo,
+            Boolean aplicarCorrecciones
+    ) {}
+}
@@ -1,5 +1,7 @@
 package com.cursosonline.cursosonlinejs.Controladores;
 
+import com.cursosonline.cursosonlinejs.DTO.EstadisticaItemsDTO;
+import com.cursosonline.cursosonlinejs.DTO.RecalificacionEstadoDTO;
 import com.cursosonline.cursosonlinejs.Entidades.Curso;
 import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
 import com.cursosonline.cursosonlinejs.Entidades.Evaluacion.TipoEvaluacion;
@@ -12,10 +14,16 @@ import com.cursosonline.cursosonlinejs.Repositorios.CursoRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.LeccionRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.ModuloRepositorio;
 import com.cursosonline.cursosonlinejs.Seguridad.EvaluacionPermisos;
+import com.cursosonline.cursosonlinejs.Servicios.EstadisticaItemsServicio;
 import com.cursosonline.cursosonlinejs.Servicios.EvaluacionServicio;
+import com.cursosonline.cursosonlinejs.Servicios.RecalificacionServicio;
+import com.cursosonline.cursosonlinejs.Servicios.VistaEvaluacionServicio;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -25,7 +33,9 @@ import org.springframework.web.bind.annotation.*;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 // Swagger / OpenAPI
@@ -54,17 +64,26 @@ public class EvaluacionControlador {
     private final LeccionRepositorio leccionRepo;
     private final ModuloRepositorio moduloRepo;
     private final CursoRepositorio cursoRepo;
+    private final RecalificacionServicio recalificacionServicio;
+    private final VistaEvaluacionServicio vistaEvaluacion;
+    private final EstadisticaItemsServicio estadisticaItemsServicio;
 
     public EvaluacionControlador(EvaluacionServicio evaluacionServicio,
                                  EvaluacionPermisos evalPermisos,
                                  LeccionRepositorio leccionRepo,
                                  ModuloRepositorio moduloRepo,
-                                 CursoRepositorio cursoRepo) {
+                                 CursoRepositorio cursoRepo,
+                                 RecalificacionServicio recalificacionServicio,
+                                 VistaEvaluacionServicio vistaEvaluacion,
+                                 EstadisticaItemsServicio estadisticaItemsServicio) {
         this.evaluacionServicio = evaluacionServicio;
         this.evalPermisos = evalPermisos;
         this.leccionRepo = leccionRepo;
         this.moduloRepo = moduloRepo;
         this.cursoRepo = cursoRepo;
+        this.recalificacionServicio = recalificacionServicio;
+        this.vistaEvaluacion = vistaEvaluacion;
+        this.estadisticaItemsServicio = estadisticaItemsServicio;
     }
 
     private static boolean isAdmin() {
@@ -159,13 +178,16 @@ public class EvaluacionControlador {
             summary = "Obtener detalles de una evaluación",
             description = """
                     Obtiene una evaluación por ID dentro de una lección.
-                    - Estudiantes solo pueden ver evaluaciones PUBLICADAS y no archivadas.
-                    - Instructores y administradores pueden ver cualquier estado.
+                    - Estudiantes solo pueden ver evaluaciones PUBLICADAS y no archivadas. Reciben la vista
+                      de estudiante (sin respuestas correctas, con preguntas/opciones ya barajadas), servida
+                      desde memoria; admite If-None-Match.
+                    - Instructores y administradores pueden ver cualquier estado y reciben la evaluación completa.
                     """
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Evaluación encontrada",
                     content = @Content(schema = @Schema(implementation = Evaluacion.class))),
+            @ApiResponse(responseCode = "304", description = "La vista de estudiante no cambió (ETag)"),
             @ApiResponse(responseCode = "403", description = "Evaluación/Contenido archivado o no disponible"),
             @ApiResponse(responseCode = "404", description = "Evaluación, lección, módulo o curso no encontrado")
     })
@@ -175,34 +197,42 @@ public class EvaluacionControlador {
             @Parameter(description = "ID de la lección", example = "lec_123456")
             @PathVariable String idLeccion,
             @Parameter(description = "ID de la evaluación", example = "eval_123456")
-            @PathVariable String idEval
+            @PathVariable String idEval,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
     ) {
-        var opt = evaluacionServicio.obtenerPorIdYLeccion(idEval, idLeccion);
-        if (opt.isEmpty()) return ResponseEntity.notFound().build();
-        Evaluacion e = opt.get();
+        if (isAdmin()) {
+            return evaluacionServicio.obtenerPorIdYLeccion(idEval, idLeccion)
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+        }
 
-        Leccion leccion = leccionRepo.findById(idLeccion).orElse(null);
-        if (leccion == null) return ResponseEntity.notFound().build();
-        Modulo modulo = moduloRepo.findById(leccion.getIdModulo()).orElse(null);
-        if (modulo == null) return ResponseEntity.notFound().build();
-        Curso curso = cursoRepo.findById(leccion.getIdCurso()).orElse(null);
-        if (curso == null) return ResponseEntity.notFound().build();
+        // Lección, módulo, curso e instructor ya vienen resueltos en la vista cacheada
+        var vista = vistaEvaluacion.obtener(idEval).orElse(null);
+        if (vista == null || !idLeccion.equals(vista.evaluacion().getIdLeccion())) {
+            return ResponseEntity.notFound().build();
+        }
 
-        boolean admin = isAdmin();
-        boolean instructor = evalPermisos.esInstructorDeLeccion(idLeccion);
+        if (evalPermisos.esUsuarioActual(vista.idInstructor())) {
+            // El instructor ve siempre la versión actual, no la cacheada
+            return evaluacionServicio.obtenerPorIdYLeccion(idEval, idLeccion)
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+        }
 
-        if (!admin && !instructor) {
-            if (curso.getEstado() == Curso.EstadoCurso.ARCHIVADO
-                    || modulo.getEstado() == Modulo.EstadoModulo.ARCHIVADO
-                    || leccion.getEstado() == Leccion.EstadoPublicacion.ARCHIVADO) {
-                return ResponseEntity.status(403).body("Contenido archivado.");
-            }
-            if (e.getEstado() != Evaluacion.EstadoPublicacion.PUBLICADA) {
-                return ResponseEntity.status(404).body("Evaluación no disponible.");
-            }
+        if (vista.contenidoArchivado()) {
+            return ResponseEntity.status(403).body("Contenido archivado.");
+        }
+        if (vista.evaluacion().getEstado() != Evaluacion.EstadoPublicacion.PUBLICADA) {
+            return ResponseEntity.status(404).body("Evaluación no disponible.");
         }
 
-        return ResponseEntity.ok(e);
+        if (vista.etag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(vista.etag()).build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(vista.etag())
+                .body(vista.json());
     }
 
     @Operation(
@@ -326,6 +356,43 @@ public class EvaluacionControlador {
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    @Operation(
+            summary = "Configurar el sorteo de preguntas",
+            description = """
+                    Define cuántas preguntas del banco (las preguntas de la evaluación) recibe cada intento
+                    y si se barajan preguntas y opciones. Cada intento guarda solo una semilla; sus preguntas
+                    se regeneran a partir de ella. No se puede cambiar con la evaluación PUBLICADA.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Sorteo configurado",
+                    content = @Content(schema = @Schema(implementation = Evaluacion.class))),
+            @ApiResponse(responseCode = "400", description = "Valores inválidos"),
+            @ApiResponse(responseCode = "404", description = "Evaluación no encontrada"),
+            @ApiResponse(responseCode = "409", description = "La evaluación está PUBLICADA")
+    })
+    @PatchMapping(value = "/{idEval}/sorteo", consumes = "application/json", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @evalPermisos.esInstructorDeLeccion(#idLeccion)")
+    public ResponseEntity<?> configurarSorteo(
+            @Parameter(description = "ID de la lección", example = "lec_123456")
+            @PathVariable String idLeccion,
+            @Parameter(description = "ID de la evaluación", example = "eval_123456")
+            @PathVariable String idEval,
+            @RequestBody SorteoRequest body
+    ) {
+        try {
+            return evaluacionServicio.configurarSorteo(
+                            idEval, idLeccion,
+                            body.preguntasPorIntento(), body.barajarPreguntas(), body.barajarOpciones())
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(ex.getMessage());
+        }
+    }
+
     @Operation(
             summary = "Eliminar una evaluación",
             description = "Elimina una evaluación de una lección. Solo instructor de la lección o administrador."
@@ -388,7 +455,8 @@ public class EvaluacionControlador {
             @ApiResponse(responseCode = "201", description = "Pregunta creada correctamente",
                     content = @Content(schema = @Schema(implementation = Pregunta.class))),
             @ApiResponse(responseCode = "400", description = "Datos inválidos en la pregunta"),
-            @ApiResponse(responseCode = "404", description = "Evaluación no encontrada")
+            @ApiResponse(responseCode = "404", description = "Evaluación no encontrada"),
+            @ApiResponse(responseCode = "409", description = "La evaluación está PUBLICADA y sortea preguntas")
     })
     @PostMapping(value = "/{idEval}/preguntas", consumes = "application/json", produces = "application/json")
     @PreAuthorize("hasRole('ADMIN') or @evalPermisos.esInstructorDeLeccion(#idLeccion)")
@@ -441,7 +509,11 @@ public class EvaluacionControlador {
         eval.getPreguntas().add(p);
         postProcesarPreguntas(eval);
 
-        evaluacionServicio.guardar(eval);
+        try {
+            evaluacionServicio.guardar(eval);
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(ex.getMessage());
+        }
 
         URI location = URI.create("/api/v1/lecciones/" + idLeccion
                 + "/evaluaciones/" + idEval + "/preguntas/" + p.getId());
@@ -498,7 +570,10 @@ public class EvaluacionControlador {
             encontrada.setAutoCalificable(body.autoCalificable());
         }
 
-        // Opciones
+        // Opciones: se conservan los ids existentes (por id o por texto) para que
+        // las respuestas ya guardadas sigan apuntando a la misma opción al recalificar
+        List<OpcionPregunta> anteriores = encontrada.getOpciones() == null ? List.of() : encontrada.getOpciones();
+        Set<String> idsUsados = new HashSet<>();
         List<OpcionPregunta> nuevasOpciones = new ArrayList<>();
         if (body.opciones() != null) {
             for (OpcionRequest oReq : body.opciones()) {
@@ -506,6 +581,7 @@ public class EvaluacionControlador {
                 op.setTexto(oReq.texto().trim());
                 op.setCorrecta(Boolean.TRUE.equals(oReq.correcta()));
                 op.setRetroalimentacion(oReq.retroalimentacion());
+                op.setId(idOpcionExistente(anteriores, oReq, op.getTexto(), idsUsados));
                 nuevasOpciones.add(op);
             }
         }
@@ -528,7 +604,8 @@ public class EvaluacionControlador {
     )
     @ApiResponses({
             @ApiResponse(responseCode = "204", description = "Pregunta eliminada correctamente"),
-            @ApiResponse(responseCode = "404", description = "Evaluación o pregunta no encontrada")
+            @ApiResponse(responseCode = "404", description = "Evaluación o pregunta no encontrada"),
+            @ApiResponse(responseCode = "409", description = "La evaluación está PUBLICADA y sortea preguntas")
     })
     @DeleteMapping("/{idEval}/preguntas/{idPregunta}")
     @PreAuthorize("hasRole('ADMIN') or @evalPermisos.esInstructorDeLeccion(#idLeccion)")
@@ -552,11 +629,162 @@ public class EvaluacionControlador {
         if (!removed) return ResponseEntity.notFound().build();
 
         postProcesarPreguntas(eval);
-        evaluacionServicio.guardar(eval);
+        try {
+            evaluacionServicio.guardar(eval);
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(ex.getMessage());
+        }
 
         return ResponseEntity.noContent().build();
     }
 
+    // =========================================================
+    // RECALIFICACIÓN MASIVA
+    // =========================================================
+
+    @Operation(
+            summary = "Recalificar los intentos de una evaluación",
+            description = """
+                    Lanza en segundo plano la recalificación de todos los intentos ENVIADOS o CALIFICADOS
+                    de la evaluación con la clave de respuestas actual (útil tras corregir una respuesta correcta).
+                    Los intentos con calificación manual no se modifican.
+                    Devuelve el estado inicial del trabajo; el progreso se consulta con el GET correspondiente.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", description = "Recalificación iniciada",
+                    content = @Content(schema = @Schema(implementation = RecalificacionEstadoDTO.class))),
+            @ApiResponse(responseCode = "404", description = "Evaluación no encontrada"),
+            @ApiResponse(responseCode = "409", description = "Ya hay una recalificación en curso para la evaluación")
+    })
+    @PostMapping(value = "/{idEval}/recalificaciones", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @evalPermisos.esInstructorDeLeccion(#idLeccion)")
+    public ResponseEntity<?> recalificar(
+            @Parameter(description = "ID de la lección", example = "lec_123456")
+            @PathVariable String idLeccion,
+            @Parameter(description = "ID de la evaluación", example = "eval_123456")
+            @PathVariable String idEval
+    ) {
+        if (evaluacionServicio.obtenerPorIdYLeccion(idEval, idLeccion).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            return ResponseEntity.accepted().body(recalificacionServicio.iniciar(idEval));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(ex.getMessage());
+        }
+    }
+
+    @Operation(
+            summary = "Consultar el progreso de una recalificación",
+            description = "Devuelve cuántos intentos se han procesado y modificado, y el estado del trabajo."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Estado del trabajo",
+                    content = @Content(schema = @Schema(implementation = RecalificacionEstadoDTO.class))),
+            @ApiResponse(responseCode = "404", description = "Trabajo no encontrado (o ya expirado)")
+    })
+    @GetMapping(value = "/{idEval}/recalificaciones/{idTrabajo}", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @evalPermisos.esInstructorDeLeccion(#idLeccion)")
+    public ResponseEntity<?> estadoRecalificacion(
+            @Parameter(description = "ID de la lección", example = "lec_123456")
+            @PathVariable String idLeccion,
+            @Parameter(description = "ID de la evaluación", example = "eval_123456")
+            @PathVariable String idEval,
+            @Parameter(description = "ID del trabajo de recalificación")
+            @PathVariable String idTrabajo
+    ) {
+        return recalificacionServicio.estado(idEval, idTrabajo)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @Operation(
+            summary = "Cancelar una recalificación en curso",
+            description = "Detiene el trabajo antes del siguiente lote. Los lotes ya escritos se conservan."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", description = "Cancelación solicitada",
+                    content = @Content(schema = @Schema(implementation = RecalificacionEstadoDTO.class))),
+            @ApiResponse(responseCode = "404", description = "Trabajo no encontrado")
+    })
+    @DeleteMapping(value = "/{idEval}/recalificaciones/{idTrabajo}", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @evalPermisos.esInstructorDeLeccion(#idLeccion)")
+    public ResponseEntity<?> cancelarRecalificacion(
+            @Parameter(description = "ID de la lección", example = "lec_123456")
+            @PathVariable String idLeccion,
+            @Parameter(description = "ID de la evaluación", example = "eval_123456")
+            @PathVariable String idEval,
+            @Parameter(description = "ID del trabajo de recalificación")
+            @PathVariable String idTrabajo
+    ) {
+        return recalificacionServicio.cancelar(idEval, idTrabajo)
+                .<ResponseEntity<?>>map(e -> ResponseEntity.accepted().body(e))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // =========================================================
+    // ESTADÍSTICAS DE ÍTEMS
+    // =========================================================
+
+    @Operation(
+            summary = "Análisis de ítems de una evaluación",
+            description = """
+                    Devuelve, por pregunta, la dificultad (proporción de aciertos), el índice de discriminación
+                    (correlación punto-biserial con el puntaje total) y cuántas veces se marcó cada opción.
+                    Las cifras se actualizan con cada intento auto-calificado; no recorren los intentos.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Estadísticas de la evaluación",
+                    content = @Content(schema = @Schema(implementation = EstadisticaItemsDTO.class))),
+            @ApiResponse(responseCode = "404", description = "Evaluación no encontrada")
+    })
+    @GetMapping(value = "/{idEval}/estadisticas", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @evalPermisos.esInstructorDeLeccion(#idLeccion)")
+    public ResponseEntity<?> estadisticas(
+            @Parameter(description = "ID de la lección", example = "lec_123456")
+            @PathVariable String idLeccion,
+            @Parameter(description = "ID de la evaluación", example = "eval_123456")
+            @PathVariable String idEval
+    ) {
+        if (evaluacionServicio.obtenerPorIdYLeccion(idEval, idLeccion).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return estadisticaItemsServicio.obtener(idEval)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @Operation(
+            summary = "Reconstruir las estadísticas de ítems",
+            description = """
+                    Recalcula en segundo plano las estadísticas desde todos los intentos enviados, corrigiéndolos
+                    con la clave actual. Útil para evaluaciones con intentos anteriores a las estadísticas.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", description = "Reconstrucción encolada"),
+            @ApiResponse(responseCode = "404", description = "Evaluación no encontrada"),
+            @ApiResponse(responseCode = "409", description = "Ya hay una reconstrucción pendiente para la evaluación")
+    })
+    @PostMapping(value = "/{idEval}/estadisticas/reconstruccion", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @evalPermisos.esInstructorDeLeccion(#idLeccion)")
+    public ResponseEntity<?> reconstruirEstadisticas(
+            @Parameter(description = "ID de la lección", example = "lec_123456")
+            @PathVariable String idLeccion,
+            @Parameter(description = "ID de la evaluación", example = "eval_123456")
+            @PathVariable String idEval
+    ) {
+        if (evaluacionServicio.obtenerPorIdYLeccion(idEval, idLeccion).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!estadisticaItemsServicio.reconstruir(idEval)) {
+            return ResponseEntity.status(409).body("Ya hay una reconstrucción pendiente para esta evaluación.");
+        }
+        return ResponseEntity.accepted().body("Reconstrucción de estadísticas encolada.");
+    }
+
     // =========================================================
     // DTOs / REQUEST RECORDS
     // =========================================================
@@ -597,6 +825,18 @@ public class EvaluacionControlador {
             Integer puntajeMaximo
     ) {}
 
+    @Schema(description = "Configuración del sorteo de preguntas de los intentos (campos null = sin cambios)")
+    public static record SorteoRequest(
+            @Schema(description = "Preguntas que recibe cada intento (0 = todas)", example = "20")
+            Integer preguntasPorIntento,
+
+            @Schema(description = "Barajar el orden de las preguntas en cada intento", example = "true")
+            Boolean barajarPreguntas,
+
+            @Schema(description = "Barajar el orden de las opciones en cada intento", example = "true")
+            Boolean barajarOpciones
+    ) {}
+
     @Schema(description = "Datos para crear o actualizar una pregunta dentro de una evaluación")
     public static record PreguntaRequest(
             @Schema(description = "Enunciado de la pregunta", example = "¿Qué es una variable en programación?")
@@ -633,7 +873,10 @@ public class EvaluacionControlador {
             Boolean correcta,
 
             @Schema(description = "Retroalimentación opcional sobre la opción", example = "Recuerda que una variable tiene un tipo de dato asociado.")
-            String retroalimentacion
+            String retroalimentacion,
+
+            @Schema(description = "ID de la opción existente (al actualizar una pregunta); si se omite se busca por texto", example = "opt_123456")
+            String id
     ) {}
 
     // =========================================================
@@ -784,6 +1027,27 @@ public class EvaluacionControlador {
         }
     }
 
+    /**
+     * Busca el id que tenía la opción antes de editar la pregunta: primero por el id
+     * enviado y, si no viene, por el texto. Si no hay coincidencia devuelve null y
+     * inicializarPregunta le asignará uno nuevo.
+     */
+    private static String idOpcionExistente(List<OpcionPregunta> anteriores, OpcionRequest oReq,
+                                            String texto, Set<String> idsUsados) {
+        for (OpcionPregunta prev : anteriores) {
+            String id = prev.getId();
+            if (id == null || idsUsados.contains(id)) continue;
+            boolean coincide = (oReq.id() != null && !oReq.id().isBlank())
+                    ? id.equals(oReq.id())
+                    : texto.equals(prev.getTexto() == null ? null : prev.getTexto().trim());
+            if (coincide) {
+                idsUsados.add(id);
+                return id;
+            }
+        }
+        return null;
+    }
+
     private static void postProcesarPreguntas(Evaluacion eval) {
         List<Pregunta> lista = eval.getPreguntas();
         int total = (lista == null) ? 0 : lista.size();
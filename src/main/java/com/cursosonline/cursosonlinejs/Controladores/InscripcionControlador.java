@@ -1,7 +1,9 @@
 package com.cursosonline.cursosonlinejs.Controladores;
 
+import com.cursosonline.cursosonlinejs.DTO.ImportacionInscripcionesDTO;
 import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
 import com.cursosonline.cursosonlinejs.Servicios.CursoServicio;
+import com.cursosonline.cursosonlinejs.Servicios.ImportacionInscripcionesServicio;
 import com.cursosonline.cursosonlinejs.Servicios.InscripcionServicio;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
@@ -11,11 +13,14 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
 
 import java.net.URI;
-import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 // Swagger / OpenAPI
 import io.swagger.v3.oas.annotations.Operation;
@@ -40,11 +45,14 @@ public class InscripcionControlador {
 
     private final InscripcionServicio inscripcionServicio;
     private final CursoServicio cursoServicio;
+    private final ImportacionInscripcionesServicio importacionServicio;
 
     public InscripcionControlador(InscripcionServicio inscripcionServicio,
-                                  CursoServicio cursoServicio) {
+                                  CursoServicio cursoServicio,
+                                  ImportacionInscripcionesServicio importacionServicio) {
         this.inscripcionServicio = inscripcionServicio;
         this.cursoServicio = cursoServicio;
+        this.importacionServicio = importacionServicio;
     }
 
     @Operation(
@@ -75,33 +83,79 @@ public class InscripcionControlador {
 
         String idEstudiante = idEstudianteOpt.get();
 
-        if (!cursoServicio.puedeInscribirse(idCurso)) {
+        var curso = cursoServicio.obtenerPorId(idCurso).orElse(null);
+        if (curso == null || !cursoServicio.puedeInscribirse(curso)) {
             return ResponseEntity.status(403).body(Map.of(
                     "message","Este curso no acepta inscripciones (no publicado o fuera de ventana)."
             ));
         }
-        if (!cursoServicio.cupoDisponible(idCurso)) {
-            return ResponseEntity.status(409).body(Map.of(
-                    "message","Cupo completo. No es posible inscribirse."
-            ));
-        }
         if (inscripcionServicio.existeActiva(idCurso, idEstudiante)) {
             return ResponseEntity.status(409).body(Map.of(
                     "message","Ya tienes una inscripción activa en este curso."
             ));
         }
 
-        Inscripcion creada = new Inscripcion();
-        creada.setIdCurso(idCurso);
-        creada.setIdEstudiante(idEstudiante);
-        creada.setEstado(Inscripcion.EstadoInscripcion.PENDIENTE_PAGO);
-        creada.setAccessStartAt(Instant.now());
-        creada = inscripcionServicio.guardar(creada);
+        // El cupo se comprueba y se ocupa en una sola operación atómica
+        Inscripcion creada;
+        try {
+            creada = inscripcionServicio.inscribir(curso, idEstudiante);
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(Map.of("message", ex.getMessage()));
+        }
 
         URI location = URI.create("/api/v1/cursos/" + idCurso + "/inscripciones/" + creada.getId());
         return ResponseEntity.created(location).body(creada);
     }
 
+    @Operation(
+            summary = "Importar inscripciones desde un CSV",
+            description = """
+                    Inscribe en bloque a los usuarios de un CSV con columnas email[,nombre]
+                    (encabezado opcional, separador ',' o ';'). Devuelve el resultado de cada fila:
+                    CREADA, YA_INSCRITO o ERROR. Subir el mismo archivo otra vez no duplica
+                    inscripciones. Crear las cuentas que no existen (crearUsuarios) solo lo puede hacer ADMIN.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Archivo procesado",
+                    content = @Content(schema = @Schema(implementation = ImportacionInscripcionesDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Archivo vacío o estado no permitido"),
+            @ApiResponse(responseCode = "403", description = "No autorizado para este curso"),
+            @ApiResponse(responseCode = "404", description = "Curso no encontrado"),
+            @ApiResponse(responseCode = "409", description = "El curso está archivado")
+    })
+    @PostMapping(value = "/importacion", consumes = "multipart/form-data", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @inscPermisos.esInstructorDelCurso(#idCurso)")
+    public ResponseEntity<?> importar(
+            @Parameter(description = "ID del curso", example = "c_123456")
+            @PathVariable String idCurso,
+            @Parameter(description = "Archivo CSV", required = true)
+            @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Crear las cuentas que no existan (solo ADMIN)")
+            @RequestParam(defaultValue = "false") boolean crearUsuarios,
+            @Parameter(description = "Estado de las inscripciones creadas: activa o pendiente_pago", example = "activa")
+            @RequestParam(defaultValue = "activa") String estado
+    ) {
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("message", "El archivo está vacío."));
+        }
+        if (crearUsuarios && !esAdmin()) {
+            return ResponseEntity.status(403).body(Map.of("message", "Solo un administrador puede crear usuarios."));
+        }
+        try {
+            return ResponseEntity.ok(importacionServicio.importar(
+                    idCurso, file.getInputStream(), crearUsuarios, parseEstado(estado)));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
+        } catch (NoSuchElementException ex) {
+            return ResponseEntity.status(404).body(Map.of("message", ex.getMessage()));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(Map.of("message", ex.getMessage()));
+        } catch (IOException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", "No se pudo leer el archivo."));
+        }
+    }
+
     @Operation(
             summary = "Listar inscripciones de un curso",
             description = """
@@ -162,6 +216,7 @@ public class InscripcionControlador {
                     content = @Content(schema = @Schema(implementation = Inscripcion.class))),
             @ApiResponse(responseCode = "400", description = "Estado inválido"),
             @ApiResponse(responseCode = "403", description = "No autorizado para cambiar a COMPLETADA"),
+            @ApiResponse(responseCode = "409", description = "Sin cupo para reactivar la inscripción"),
             @ApiResponse(responseCode = "404", description = "Inscripción no encontrada")
     })
     @PatchMapping(value = "/{id}/estado", consumes = "application/json", produces = "application/json")
@@ -205,7 +260,12 @@ public class InscripcionControlador {
             }
         }
 
-        var actualizada = inscripcionServicio.actualizarEstado(id, nuevo.name());
+        Inscripcion actualizada;
+        try {
+            actualizada = inscripcionServicio.actualizarEstado(id, nuevo.name());
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(Map.of("message", ex.getMessage()));
+        }
 
         if (antes != Inscripcion.EstadoInscripcion.ACTIVA && nuevo == Inscripcion.EstadoInscripcion.ACTIVA) {
             cursoServicio.incInscritosCount(idCurso, +1);
@@ -1,6 +1,9 @@
 package com.cursosonline.cursosonlinejs.Controladores;
 
+import com.cursosonline.cursosonlinejs.DTO.AutoguardadoResultadoDTO;
+import com.cursosonline.cursosonlinejs.DTO.EvaluacionEstudianteDTO;
 import com.cursosonline.cursosonlinejs.Entidades.Intento;
+import com.cursosonline.cursosonlinejs.Servicios.AutoguardadoIntentoServicio;
 import com.cursosonline.cursosonlinejs.Servicios.IntentoServicio;
 
 import jakarta.validation.Valid;
@@ -14,6 +17,7 @@ import org.springframework.web.bind.annotation.*;
 import java.net.URI;
 import java.time.Instant;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 // Swagger / OpenAPI
 import io.swagger.v3.oas.annotations.Operation;
@@ -37,9 +41,12 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 public class IntentoControlador {
 
     private final IntentoServicio intentoServicio;
+    private final AutoguardadoIntentoServicio autoguardadoServicio;
 
-    public IntentoControlador(IntentoServicio intentoServicio) {
+    public IntentoControlador(IntentoServicio intentoServicio,
+                              AutoguardadoIntentoServicio autoguardadoServicio) {
         this.intentoServicio = intentoServicio;
+        this.autoguardadoServicio = autoguardadoServicio;
     }
 
     // ============================
@@ -49,15 +56,18 @@ public class IntentoControlador {
             summary = "Iniciar un intento de evaluación",
             description = """
                     Crea un intento en estado EN_PROGRESO para el estudiante autenticado.
-                    Si ya existe un intento en progreso para esa evaluación, devuelve 409.
-                    Se puede opcionalmente indicar un límite de tiempo en segundos y un puntaje máximo.
+                    Devuelve 409 si ya existe un intento en progreso, si se alcanzó el máximo de intentos
+                    de la evaluación o si aún no pasó la espera mínima entre intentos.
+                    Se puede opcionalmente indicar un límite de tiempo en segundos y un puntaje máximo
+                    (si no se indican se usan los de la evaluación).
                     """
     )
     @ApiResponses({
             @ApiResponse(responseCode = "201", description = "Intento creado correctamente",
                     content = @Content(schema = @Schema(implementation = Intento.class))),
             @ApiResponse(responseCode = "401", description = "No autenticado"),
-            @ApiResponse(responseCode = "409", description = "Ya existe un intento en progreso")
+            @ApiResponse(responseCode = "404", description = "Evaluación no encontrada"),
+            @ApiResponse(responseCode = "409", description = "Intento en progreso, máximo de intentos alcanzado o espera mínima sin cumplir")
     })
     @PostMapping(consumes = "application/json", produces = "application/json")
     @PreAuthorize("isAuthenticated()")
@@ -74,14 +84,18 @@ public class IntentoControlador {
         String idEstudiante = intentoServicio.obtenerIdEstudianteActual().orElse(null);
         if (idEstudiante == null) return ResponseEntity.status(401).body("No autenticado.");
 
-        if (intentoServicio.tieneIntentoEnProgreso(idEvaluacion, idEstudiante)) {
-            return ResponseEntity.status(409).body("Ya tienes un intento en progreso para esta evaluación.");
-        }
-
         var req = (body == null) ? new IniciarIntentoRequest(null, null) : body;
-        Intento creado = intentoServicio.crearEnProgreso(
-                idEvaluacion, idEstudiante, req.timeLimitSeconds(), req.puntajeMaximo()
-        );
+        Intento creado;
+        try {
+            creado = intentoServicio.crearEnProgreso(
+                    idEvaluacion, idEstudiante, req.timeLimitSeconds(), req.puntajeMaximo()
+            );
+        } catch (NoSuchElementException ex) {
+            return ResponseEntity.status(404).body(ex.getMessage());
+        } catch (IllegalStateException ex) {
+            // Intento en progreso, máximo de intentos alcanzado o espera mínima sin cumplir
+            return ResponseEntity.status(409).body(ex.getMessage());
+        }
 
         URI location = URI.create("/api/v1/evaluaciones/" + idEvaluacion + "/intentos/" + creado.getId());
         return ResponseEntity.created(location).body(creado);
@@ -223,6 +237,40 @@ public class IntentoControlador {
         return ResponseEntity.ok(intento);
     }
 
+    // ============================
+    // PREGUNTAS DEL INTENTO
+    // ============================
+    @Operation(
+            summary = "Obtener las preguntas de un intento",
+            description = """
+                    Devuelve las preguntas que le tocaron al intento, en el orden en que las ve el estudiante
+                    y sin respuestas correctas. Se regeneran a partir de la semilla del intento.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Preguntas del intento",
+                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = EvaluacionEstudianteDTO.PreguntaEstudianteDTO.class)))),
+            @ApiResponse(responseCode = "404", description = "Intento no encontrado o no pertenece a la evaluación indicada")
+    })
+    @GetMapping(value = "/{idIntento}/preguntas", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') " +
+            "or @intPermisos.esInstructorDeIntento(#idIntento) " +
+            "or @intPermisos.esDuenoDeIntentoConVisibilidad(#idIntento)")
+    public ResponseEntity<?> preguntas(
+            @Parameter(description = "ID de la evaluación", example = "eval_123456")
+            @PathVariable String idEvaluacion,
+            @Parameter(description = "ID del intento", example = "int_123456")
+            @PathVariable String idIntento
+    ) {
+        var intento = intentoServicio.obtener(idIntento).orElse(null);
+        if (intento == null || !idEvaluacion.equals(intento.getIdEvaluacion())) {
+            return ResponseEntity.notFound().build();
+        }
+        return intentoServicio.preguntasDelIntento(intento)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     // ============================
     // ACTUALIZAR COMPLETO
     // ============================
@@ -310,6 +358,55 @@ public class IntentoControlador {
         return ResponseEntity.ok(resp);
     }
 
+    // ============================
+    // AUTOGUARDADO (DELTA)
+    // ============================
+    @Operation(
+            summary = "Autoguardar respuestas de un intento en progreso",
+            description = """
+                    Guarda solo las respuestas enviadas (las que cambiaron desde el último autoguardado),
+                    sin reescribir el intento completo. Solo funciona mientras el intento está EN_PROGRESO.
+                    Los autoguardados muy seguidos del mismo intento se agrupan en una sola escritura.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Respuestas guardadas",
+                    content = @Content(schema = @Schema(implementation = AutoguardadoResultadoDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Datos inválidos o tiempo límite excedido"),
+            @ApiResponse(responseCode = "401", description = "No autenticado"),
+            @ApiResponse(responseCode = "404", description = "Intento no encontrado o no pertenece a la evaluación indicada"),
+            @ApiResponse(responseCode = "409", description = "El intento ya no está en progreso")
+    })
+    @PatchMapping(value = "/{idIntento}/respuestas", consumes = "application/json", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @intPermisos.esDuenoDeIntentoConVisibilidad(#idIntento)")
+    public ResponseEntity<?> autoguardar(
+            @Parameter(description = "ID de la evaluación", example = "eval_123456")
+            @PathVariable String idEvaluacion,
+            @Parameter(description = "ID del intento", example = "int_123456")
+            @PathVariable String idIntento,
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Respuestas modificadas y tiempo usado",
+                    required = true,
+                    content = @Content(schema = @Schema(implementation = AutoguardadoRequest.class))
+            )
+            @Valid @RequestBody AutoguardadoRequest body
+    ) {
+        String idEstudiante = intentoServicio.obtenerIdEstudianteActual().orElse(null);
+        if (idEstudiante == null) return ResponseEntity.status(401).body("No autenticado.");
+
+        try {
+            return ResponseEntity.ok(autoguardadoServicio.guardar(
+                    idEvaluacion, idIntento, idEstudiante, body.respuestas(), body.usedTimeSeconds()
+            ));
+        } catch (NoSuchElementException ex) {
+            return ResponseEntity.status(404).body(ex.getMessage());
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(ex.getMessage());
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+    }
+
     // ============================
     // ELIMINAR INTENTO PROPIO
     // ============================
@@ -319,6 +416,7 @@ public class IntentoControlador {
                     Elimina un intento si es del estudiante autenticado y se encuentra aún en progreso.
                     ADMIN también puede eliminar.
                     Si el intento ya fue entregado o corregido, se devuelve 409.
+                    El intento eliminado cuenta para el máximo de intentos y para la espera entre intentos.
                     """
     )
     @ApiResponses({
@@ -390,4 +488,13 @@ public class IntentoControlador {
             @Schema(description = "Tiempo usado en segundos (opcional)", example = "600")
             @PositiveOrZero Integer usedTimeSeconds
     ) {}
+
+    @Schema(description = "Autoguardado: solo las respuestas que cambiaron")
+    public static record AutoguardadoRequest(
+            @Schema(description = "Respuestas modificadas (cada una con su idPregunta)")
+            List<Intento.Respuesta> respuestas,
+
+            @Schema(description = "Tiempo usado en segundos (opcional)", example = "600")
+            @PositiveOrZero Integer usedTimeSeconds
+    ) {}
 }
@@ -0,0 +1,127 @@
+package com.cursosonline.cursosonlinejs.Controladores;
+
+import com.cursosonline.cursosonlinejs.Entidades.ListaEspera;
+import com.cursosonline.cursosonlinejs.Servicios.InscripcionServicio;
+import com.cursosonline.cursosonlinejs.Servicios.ListaEsperaServicio;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Swagger / OpenAPI
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/api/v1/cursos/{idCurso}/lista-espera")
+@CrossOrigin(origins = "http://localhost:9090", allowCredentials = "true")
+@Tag(
+        name = "Lista de espera",
+        description = "Cola de estudiantes esperando cupo en un curso; al liberarse un cupo se inscriben automáticamente."
+)
+@SecurityRequirement(name = "bearerAuth")
+public class ListaEsperaControlador {
+
+    private final ListaEsperaServicio listaEsperaServicio;
+    private final InscripcionServicio inscripcionServicio;
+
+    public ListaEsperaControlador(ListaEsperaServicio listaEsperaServicio,
+                                  InscripcionServicio inscripcionServicio) {
+        this.listaEsperaServicio = listaEsperaServicio;
+        this.inscripcionServicio = inscripcionServicio;
+    }
+
+    @Operation(
+            summary = "Unirse a la lista de espera",
+            description = """
+                    Añade al estudiante autenticado al final de la lista de espera del curso.
+                    Cuando se libere un cupo se le creará una inscripción PENDIENTE_PAGO.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "201", description = "Añadido a la lista",
+                    content = @Content(schema = @Schema(example = "{\"cursoId\": \"c_123456\", \"posicion\": 3}"))),
+            @ApiResponse(responseCode = "401", description = "No autenticado"),
+            @ApiResponse(responseCode = "404", description = "Curso no encontrado"),
+            @ApiResponse(responseCode = "409", description = "Ya inscrito, ya en la lista o curso cerrado")
+    })
+    @PostMapping(produces = "application/json")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> unirse(
+            @Parameter(description = "ID del curso", example = "c_123456")
+            @PathVariable String idCurso
+    ) {
+        var idEstudianteOpt = inscripcionServicio.obtenerIdEstudianteActual();
+        if (idEstudianteOpt.isEmpty()) {
+            return ResponseEntity.status(401).body(Map.of("message", "No autenticado."));
+        }
+        try {
+            long posicion = listaEsperaServicio.unirse(idCurso, idEstudianteOpt.get());
+            return ResponseEntity.status(201).body(Map.of("cursoId", idCurso, "posicion", posicion));
+        } catch (NoSuchElementException ex) {
+            return ResponseEntity.status(404).body(Map.of("message", ex.getMessage()));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(Map.of("message", ex.getMessage()));
+        }
+    }
+
+    @Operation(summary = "Mi posición en la lista de espera")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Posición actual (1 = el siguiente en entrar)",
+                    content = @Content(schema = @Schema(example = "{\"cursoId\": \"c_123456\", \"posicion\": 3}"))),
+            @ApiResponse(responseCode = "401", description = "No autenticado"),
+            @ApiResponse(responseCode = "404", description = "No estás en la lista de espera")
+    })
+    @GetMapping(value = "/mi-posicion", produces = "application/json")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> miPosicion(@PathVariable String idCurso) {
+        var idEstudianteOpt = inscripcionServicio.obtenerIdEstudianteActual();
+        if (idEstudianteOpt.isEmpty()) {
+            return ResponseEntity.status(401).body(Map.of("message", "No autenticado."));
+        }
+        return listaEsperaServicio.posicion(idCurso, idEstudianteOpt.get())
+                .<ResponseEntity<?>>map(p -> ResponseEntity.ok(Map.of("cursoId", idCurso, "posicion", p)))
+                .orElseGet(() -> ResponseEntity.status(404).body(Map.of("message", "No estás en la lista de espera.")));
+    }
+
+    @Operation(summary = "Salir de la lista de espera")
+    @ApiResponses({
+            @ApiResponse(responseCode = "204", description = "Eliminado de la lista"),
+            @ApiResponse(responseCode = "404", description = "No estabas en la lista de espera")
+    })
+    @DeleteMapping
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> salir(@PathVariable String idCurso) {
+        var idEstudianteOpt = inscripcionServicio.obtenerIdEstudianteActual();
+        if (idEstudianteOpt.isEmpty()) {
+            return ResponseEntity.status(401).body(Map.of("message", "No autenticado."));
+        }
+        if (!listaEsperaServicio.salir(idCurso, idEstudianteOpt.get())) {
+            return ResponseEntity.status(404).body(Map.of("message", "No estás en la lista de espera."));
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @Operation(summary = "Ver la lista de espera del curso (ADMIN/INSTRUCTOR)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Lista en orden de llegada",
+                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = ListaEspera.class)))),
+            @ApiResponse(responseCode = "403", description = "No autorizado para este curso")
+    })
+    @GetMapping(produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @inscPermisos.esInstructorDelCurso(#idCurso)")
+    public ResponseEntity<List<ListaEspera>> listar(@PathVariable String idCurso) {
+        return ResponseEntity.ok(listaEsperaServicio.listar(idCurso));
+    }
+}
@@ -0,0 +1,51 @@
+package com.cursosonline.cursosonlinejs.Controladores;
+
+import com.cursosonline.cursosonlinejs.Servicios.MembresiasActivasServicio;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+// Swagger / OpenAPI
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/api/v1/admin/membresias")
+@CrossOrigin(origins = "http://localhost:9090", allowCredentials = "true")
+@Tag(
+        name = "Membresías",
+        description = "Índice en memoria de inscripciones activas usado en los controles de acceso."
+)
+@SecurityRequirement(name = "bearerAuth")
+public class MembresiasControlador {
+
+    private final MembresiasActivasServicio membresiasActivasServicio;
+
+    public MembresiasControlador(MembresiasActivasServicio membresiasActivasServicio) {
+        this.membresiasActivasServicio = membresiasActivasServicio;
+    }
+
+    @Operation(
+            summary = "Estadísticas del índice de membresías (ADMIN)",
+            description = """
+                    Cursos, usuarios e inscripciones activas indexadas en este nodo y la memoria
+                    aproximada que ocupan los conjuntos y los diccionarios de ids.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Estadísticas del índice",
+                    content = @Content(schema = @Schema(implementation = MembresiasActivasServicio.Estadisticas.class))),
+            @ApiResponse(responseCode = "403", description = "Solo ADMIN")
+    })
+    @GetMapping(produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> estadisticas() {
+        return ResponseEntity.ok(membresiasActivasServicio.estadisticas());
+    }
+}
@@ -1,12 +1,15 @@
 package com.cursosonline.cursosonlinejs.Controladores;
 
+import com.cursosonline.cursosonlinejs.DTO.PanelEstudianteDTO;
 import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
 import com.cursosonline.cursosonlinejs.Servicios.InscripcionServicio;
+import com.cursosonline.cursosonlinejs.Servicios.PanelEstudianteServicio;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 // Swagger / OpenAPI
@@ -31,9 +34,12 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 public class MisInscripcionesControlador {
 
     private final InscripcionServicio inscripcionServicio;
+    private final PanelEstudianteServicio panelServicio;
 
-    public MisInscripcionesControlador(InscripcionServicio inscripcionServicio) {
+    public MisInscripcionesControlador(InscripcionServicio inscripcionServicio,
+                                       PanelEstudianteServicio panelServicio) {
         this.inscripcionServicio = inscripcionServicio;
+        this.panelServicio = panelServicio;
     }
 
     @Operation(
@@ -62,6 +68,48 @@ public class MisInscripcionesControlador {
         return ResponseEntity.ok(data);
     }
 
+    @Operation(
+            summary = "Panel de mis cursos",
+            description = """
+                    Inscripciones del estudiante autenticado con el resumen de cada curso (título, portada,
+                    instructor), progreso, última lección y estado del certificado, en una sola llamada.
+                    Paginado por cursor: para la página siguiente se envía el valor de 'siguiente'.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Página del panel",
+                    content = @Content(schema = @Schema(implementation = PanelEstudianteDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Estado o cursor no válido"),
+            @ApiResponse(responseCode = "401", description = "No autenticado")
+    })
+    @GetMapping(value = "/panel", produces = "application/json")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> panel(
+            @Parameter(description = "Estado de la inscripción (opcional)", example = "activa")
+            @RequestParam(required = false) String estado,
+            @Parameter(description = "Cursor devuelto en 'siguiente' por la página anterior")
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        var me = inscripcionServicio.obtenerIdEstudianteActual();
+        if (me.isEmpty()) return ResponseEntity.status(401).body(Map.of("message","No autenticado."));
+
+        Inscripcion.EstadoInscripcion filtro = null;
+        if (estado != null && !estado.isBlank()) {
+            try {
+                filtro = Inscripcion.EstadoInscripcion.valueOf(estado.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                return ResponseEntity.badRequest().body(Map.of("message", "Estado inválido: " + estado));
+            }
+        }
+        try {
+            return ResponseEntity.ok(panelServicio.obtener(me.get(), filtro,
+                    cursor == null || cursor.isBlank() ? null : cursor.trim(), size));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
+        }
+    }
+
     @Operation(
             summary = "Obtener mi inscripción en un curso",
             description = "Devuelve la inscripción del estudiante autenticado en un curso específico, si existe."
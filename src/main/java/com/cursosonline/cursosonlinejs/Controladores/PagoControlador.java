@@ -2,8 +2,6 @@ package com.cursosonline.cursosonlinejs.Controladores;
 
 import com.cursosonline.cursosonlinejs.Entidades.Pago;
 import com.cursosonline.cursosonlinejs.Repositorios.UsuarioRepositorio;
-import com.cursosonline.cursosonlinejs.Servicios.CursoServicio;
-import com.cursosonline.cursosonlinejs.Servicios.InscripcionServicio;
 import com.cursosonline.cursosonlinejs.Servicios.PagoServicio;
 
 import jakarta.validation.Valid;
@@ -44,17 +42,11 @@ public class PagoControlador {
 
     private final PagoServicio pagoServicio;
     private final UsuarioRepositorio usuarioRepo;
-    private final InscripcionServicio inscripcionServicio;
-    private final CursoServicio cursoServicio;
 
     public PagoControlador(PagoServicio pagoServicio,
-                           UsuarioRepositorio usuarioRepo,
-                           InscripcionServicio inscripcionServicio,
-                           CursoServicio cursoServicio) {
+                           UsuarioRepositorio usuarioRepo) {
         this.pagoServicio = pagoServicio;
         this.usuarioRepo = usuarioRepo;
-        this.inscripcionServicio = inscripcionServicio;
-        this.cursoServicio = cursoServicio;
     }
 
     private String currentUserId() {
@@ -220,7 +212,8 @@ public class PagoControlador {
             summary = "Aprobar un pago (ADMIN/INSTRUCTOR)",
             description = """
                     Marca un pago como aprobado desde el backend (ej. conciliación manual, confirmación de gateway).
-                    Si la inscripción estaba pendiente de pago, se activa y se incrementa el contador de inscritos en el curso.
+                    Si la inscripción estaba pendiente de pago, se activa y se actualiza el contador de inscritos
+                    del curso en segundo plano, normalmente en menos de un segundo.
                     """
     )
     @PostMapping("/{id}/aprobar")
@@ -238,11 +231,6 @@ public class PagoControlador {
                 .orElse(null);
         if (pago == null) return ResponseEntity.notFound().build();
 
-        String idCurso = inscripcionServicio.activarSiPendientePago(idInscripcion);
-        if (idCurso != null) {
-            cursoServicio.incInscritosCount(idCurso, +1);
-        }
-
         return ResponseEntity.ok(pago);
     }
 
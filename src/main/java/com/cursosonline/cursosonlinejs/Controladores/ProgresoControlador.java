@@ -1,12 +1,20 @@
 package com.cursosonline.cursosonlinejs.Controladores;
 
+import com.cursosonline.cursosonlinejs.DTO.AvanceLeccionesDTO;
+import com.cursosonline.cursosonlinejs.DTO.CompletadosLeccionesDTO;
 import com.cursosonline.cursosonlinejs.DTO.CursoProgresoDTO;
 import com.cursosonline.cursosonlinejs.Servicios.InscripcionServicio;
+import com.cursosonline.cursosonlinejs.Servicios.LibroCalificacionesServicio;
+import com.cursosonline.cursosonlinejs.Servicios.MapaLeccionesServicio;
 import com.cursosonline.cursosonlinejs.Servicios.ProgresoCursoServicio;
 
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 // Swagger / OpenAPI
 import io.swagger.v3.oas.annotations.Operation;
@@ -18,7 +26,10 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 @RestController
 @RequestMapping("/api/v1")
@@ -32,11 +43,17 @@ public class ProgresoControlador {
 
     private final ProgresoCursoServicio progresoCursoServicio;
     private final InscripcionServicio inscripcionServicio;
+    private final LibroCalificacionesServicio libroCalificacionesServicio;
+    private final MapaLeccionesServicio mapaLeccionesServicio;
 
     public ProgresoControlador(ProgresoCursoServicio progresoCursoServicio,
-                               InscripcionServicio inscripcionServicio) {
+                               InscripcionServicio inscripcionServicio,
+                               LibroCalificacionesServicio libroCalificacionesServicio,
+                               MapaLeccionesServicio mapaLeccionesServicio) {
         this.progresoCursoServicio = progresoCursoServicio;
         this.inscripcionServicio = inscripcionServicio;
+        this.libroCalificacionesServicio = libroCalificacionesServicio;
+        this.mapaLeccionesServicio = mapaLeccionesServicio;
     }
 
     /**
@@ -112,4 +129,116 @@ public class ProgresoControlador {
 
         return ResponseEntity.ok(dto);
     }
+
+    /**
+     * Lecciones completadas por el estudiante logueado y la siguiente que le toca.
+     */
+    @Operation(
+            summary = "Ver mi avance en las lecciones de un curso",
+            description = """
+                    Cuántas lecciones publicadas completó el estudiante autenticado, el porcentaje
+                    y la primera lección (en orden de módulo y lección) que aún no completó.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Avance calculado",
+                    content = @Content(schema = @Schema(implementation = AvanceLeccionesDTO.class))),
+            @ApiResponse(responseCode = "401", description = "No autenticado"),
+            @ApiResponse(responseCode = "403", description = "No estás inscrito en este curso")
+    })
+    @GetMapping("/cursos/{idCurso}/mi-progreso/lecciones")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> miAvanceLecciones(
+            @Parameter(description = "ID del curso", example = "c_123456")
+            @PathVariable String idCurso
+    ) {
+        var idEstOpt = inscripcionServicio.obtenerIdEstudianteActual();
+        if (idEstOpt.isEmpty()) {
+            return ResponseEntity.status(401).body(Map.of("message", "No autenticado."));
+        }
+        var inscOpt = inscripcionServicio.obtenerPorCursoYEstudiante(idCurso, idEstOpt.get());
+        if (inscOpt.isEmpty()) {
+            return ResponseEntity.status(403).body(Map.of("message", "No estás inscrito en este curso."));
+        }
+        return ResponseEntity.ok(mapaLeccionesServicio.avance(inscOpt.get()));
+    }
+
+    /**
+     * Cuántos estudiantes completaron cada lección del curso (ADMIN / INSTRUCTOR).
+     */
+    @Operation(
+            summary = "Completados por lección (ADMIN/INSTRUCTOR)",
+            description = """
+                    Para cada lección publicada del curso, en orden de estudio, cuántas inscripciones
+                    ACTIVA o COMPLETADA la tienen completada. Lo marcado en los últimos segundos
+                    puede no estar todavía.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Conteo por lección",
+                    content = @Content(schema = @Schema(implementation = CompletadosLeccionesDTO.class))),
+            @ApiResponse(responseCode = "403", description = "No autorizado para este curso")
+    })
+    @GetMapping("/cursos/{idCurso}/lecciones/completados")
+    @PreAuthorize("hasRole('ADMIN') or @inscPermisos.esInstructorDelCurso(#idCurso)")
+    public ResponseEntity<?> completadosPorLeccion(
+            @Parameter(description = "ID del curso", example = "c_123456")
+            @PathVariable String idCurso
+    ) {
+        return ResponseEntity.ok(mapaLeccionesServicio.completadosPorLeccion(idCurso));
+    }
+
+    /**
+     * Libro de calificaciones del curso (ADMIN / INSTRUCTOR del curso).
+     * Se genera en streaming: el archivo empieza a bajar enseguida y el servidor
+     * no lo arma en memoria, aunque el curso tenga miles de estudiantes.
+     */
+    @Operation(
+            summary = "Exportar libro de calificaciones (ADMIN/INSTRUCTOR)",
+            description = """
+                    Descarga en CSV o XLSX una fila por inscripción con la nota de cada evaluación,
+                    el promedio de cada módulo, la nota final y si aprobó. Las notas se calculan
+                    con las mismas reglas que el progreso del estudiante.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Archivo generado"),
+            @ApiResponse(responseCode = "400", description = "Formato no soportado"),
+            @ApiResponse(responseCode = "403", description = "No autorizado para este curso"),
+            @ApiResponse(responseCode = "404", description = "Curso no encontrado")
+    })
+    @GetMapping("/cursos/{idCurso}/libro-calificaciones")
+    @PreAuthorize("hasRole('ADMIN') or @inscPermisos.esInstructorDelCurso(#idCurso)")
+    public ResponseEntity<?> libroCalificaciones(
+            @Parameter(description = "ID del curso", example = "c_123456")
+            @PathVariable String idCurso,
+            @Parameter(description = "csv o xlsx", example = "csv")
+            @RequestParam(defaultValue = "csv") String formato
+    ) {
+        LibroCalificacionesServicio.Formato f;
+        try {
+            f = LibroCalificacionesServicio.Formato.valueOf(formato.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Formato no soportado. Usa csv o xlsx."));
+        }
+
+        LibroCalificacionesServicio.Estructura est;
+        try {
+            est = libroCalificacionesServicio.estructura(idCurso);
+        } catch (NoSuchElementException ex) {
+            return ResponseEntity.status(404).body(Map.of("message", ex.getMessage()));
+        }
+
+        MediaType tipo = f == LibroCalificacionesServicio.Formato.XLSX
+                ? MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
+                : new MediaType("text", "csv", StandardCharsets.UTF_8);
+        String archivo = "libro-calificaciones-" + idCurso + "." + f.name().toLowerCase(Locale.ROOT);
+
+        StreamingResponseBody cuerpo = out -> libroCalificacionesServicio.exportar(est, f, out);
+        return ResponseEntity.ok()
+                .contentType(tipo)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(archivo).build().toString())
+                .body(cuerpo);
+    }
 }
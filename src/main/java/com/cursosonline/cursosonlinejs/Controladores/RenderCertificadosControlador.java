@@ -0,0 +1,118 @@
+package com.cursosonline.cursosonlinejs.Controladores;
+
+import com.cursosonline.cursosonlinejs.DTO.RenderCertificadosEstadoDTO;
+import com.cursosonline.cursosonlinejs.DTO.RendimientoRenderDTO;
+import com.cursosonline.cursosonlinejs.Servicios.PlantillasCertificadoServicio;
+import com.cursosonline.cursosonlinejs.Servicios.RenderCertificadosServicio;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Swagger / OpenAPI
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/api/v1/admin/certificados")
+@CrossOrigin(origins = "http://localhost:9090", allowCredentials = "true")
+@Tag(
+        name = "Certificados (PDF)",
+        description = "Generación en segundo plano de los PDF de certificados: estado del pool, regeneración y medición."
+)
+@SecurityRequirement(name = "bearerAuth")
+public class RenderCertificadosControlador {
+
+    private final RenderCertificadosServicio renderServicio;
+    private final PlantillasCertificadoServicio plantillasServicio;
+
+    public RenderCertificadosControlador(RenderCertificadosServicio renderServicio,
+                                         PlantillasCertificadoServicio plantillasServicio) {
+        this.renderServicio = renderServicio;
+        this.plantillasServicio = plantillasServicio;
+    }
+
+    @Operation(summary = "Estado de la generación de PDF (ADMIN)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Pool, cola y pendientes",
+                    content = @Content(schema = @Schema(implementation = RenderCertificadosEstadoDTO.class))),
+            @ApiResponse(responseCode = "403", description = "Solo ADMIN")
+    })
+    @GetMapping(value = "/render", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> estado() {
+        return ResponseEntity.ok(renderServicio.estado());
+    }
+
+    @Operation(
+            summary = "Medir páginas por segundo (ADMIN)",
+            description = """
+                    Dibuja en memoria certificados ficticios con la plantilla indicada (o la de por
+                    defecto) usando tantos hilos como el pool, sin guardar nada. Con el resultado se
+                    estima cuánto tarda en tener PDF una cohorte que termina a la vez.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Resultado de la medición",
+                    content = @Content(schema = @Schema(implementation = RendimientoRenderDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Plantilla o número de páginas inválidos"),
+            @ApiResponse(responseCode = "403", description = "Solo ADMIN"),
+            @ApiResponse(responseCode = "409", description = "Ya hay una medición en curso")
+    })
+    @PostMapping(value = "/render/medicion", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> medir(
+            @Parameter(description = "Plantilla a medir", example = "clasico") @RequestParam(required = false) String plantilla,
+            @Parameter(description = "Páginas a dibujar (1-5000)") @RequestParam(defaultValue = "1000") int paginas
+    ) {
+        try {
+            return ResponseEntity.ok(renderServicio.medirRendimiento(plantilla, paginas));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(Map.of("message", ex.getMessage()));
+        }
+    }
+
+    @Operation(summary = "Regenerar el PDF de un certificado (ADMIN)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", description = "Regeneración encolada"),
+            @ApiResponse(responseCode = "403", description = "Solo ADMIN"),
+            @ApiResponse(responseCode = "404", description = "Certificado emitido no encontrado")
+    })
+    @PostMapping(value = "/{id}/pdf", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> regenerar(@PathVariable String id) {
+        try {
+            renderServicio.regenerar(id);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("message", "Regeneración encolada."));
+        } catch (NoSuchElementException ex) {
+            return ResponseEntity.status(404).body(Map.of("message", ex.getMessage()));
+        }
+    }
+
+    @Operation(
+            summary = "Recargar plantillas (ADMIN)",
+            description = "Descarta las plantillas e imágenes en caché de este nodo; se vuelven a leer en el siguiente PDF."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Caché vaciada"),
+            @ApiResponse(responseCode = "403", description = "Solo ADMIN")
+    })
+    @PostMapping(value = "/plantillas/recargar", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> recargarPlantillas() {
+        plantillasServicio.invalidar();
+        return ResponseEntity.ok(Map.of("message", "Plantillas recargadas."));
+    }
+}
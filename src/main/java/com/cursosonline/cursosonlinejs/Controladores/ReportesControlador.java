@@ -0,0 +1,191 @@
+package com.cursosonline.cursosonlinejs.Controladores;
+
+import com.cursosonline.cursosonlinejs.DTO.ReporteIngresosDTO;
+import com.cursosonline.cursosonlinejs.DTO.ReporteInscripcionesDTO;
+import com.cursosonline.cursosonlinejs.Entidades.GranularidadRollup;
+import com.cursosonline.cursosonlinejs.Servicios.ReportesAnaliticaServicio;
+import com.cursosonline.cursosonlinejs.Servicios.RollupsAnaliticaServicio;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+// Swagger / OpenAPI
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/api/v1/reportes")
+@CrossOrigin(origins = "http://localhost:9090", allowCredentials = "true")
+@Tag(
+        name = "Reportes",
+        description = "Ingresos y embudo de inscripciones, servidos desde rollups por hora y por día."
+)
+@SecurityRequirement(name = "bearerAuth")
+public class ReportesControlador {
+
+    private final ReportesAnaliticaServicio reportesServicio;
+    private final RollupsAnaliticaServicio rollupsServicio;
+
+    public ReportesControlador(ReportesAnaliticaServicio reportesServicio,
+                               RollupsAnaliticaServicio rollupsServicio) {
+        this.reportesServicio = reportesServicio;
+        this.rollupsServicio = rollupsServicio;
+    }
+
+    // =========================================================
+    // PLATAFORMA (ADMIN)
+    // =========================================================
+
+    @Operation(
+            summary = "Ingresos de la plataforma (ADMIN)",
+            description = """
+                    Cobros, reembolsos y neto por hora o por día y moneda, sumando todos los cursos.
+                    Las fechas son días de la zona de la analítica (app.analitica.zona), ambos
+                    inclusive: hasta 31 días por hora o 366 por día.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Serie y totales por moneda",
+                    content = @Content(schema = @Schema(implementation = ReporteIngresosDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Rango o granularidad inválidos"),
+            @ApiResponse(responseCode = "403", description = "Solo ADMIN")
+    })
+    @GetMapping(value = "/ingresos", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> ingresosPlataforma(
+            @Parameter(example = "2026-10-01") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @Parameter(example = "2026-10-31") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @Parameter(description = "hora | dia") @RequestParam(defaultValue = "dia") String granularidad
+    ) {
+        try {
+            return ResponseEntity.ok(reportesServicio.ingresos(null, desde, hasta, granularidad(granularidad)));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
+        }
+    }
+
+    @Operation(
+            summary = "Embudo de inscripciones de la plataforma (ADMIN)",
+            description = """
+                    Inscripciones agrupadas por hora o día de creación, con el estado en que están
+                    ahora, y el embudo inscritas → convertidas → completadas del período.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Serie y embudo",
+                    content = @Content(schema = @Schema(implementation = ReporteInscripcionesDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Rango o granularidad inválidos"),
+            @ApiResponse(responseCode = "403", description = "Solo ADMIN")
+    })
+    @GetMapping(value = "/inscripciones", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> inscripcionesPlataforma(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(defaultValue = "dia") String granularidad
+    ) {
+        try {
+            return ResponseEntity.ok(reportesServicio.inscripciones(null, desde, hasta, granularidad(granularidad)));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
+        }
+    }
+
+    @Operation(
+            summary = "Reconstruir rollups (ADMIN)",
+            description = """
+                    Recalcula en segundo plano los rollups de los días indicados a partir de pagos e
+                    inscripciones. Hace falta tras borrados o cambios hechos directamente en la base.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", description = "Reconstrucción iniciada"),
+            @ApiResponse(responseCode = "400", description = "Rango inválido"),
+            @ApiResponse(responseCode = "403", description = "Solo ADMIN"),
+            @ApiResponse(responseCode = "409", description = "Ya hay una reconstrucción en curso en este nodo")
+    })
+    @PostMapping(value = "/reconstruir", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> reconstruir(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta
+    ) {
+        try {
+            rollupsServicio.reconstruir(desde, hasta);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("message", "Reconstrucción iniciada."));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(Map.of("message", ex.getMessage()));
+        }
+    }
+
+    // =========================================================
+    // POR CURSO (ADMIN o instructor dueño)
+    // =========================================================
+
+    @Operation(summary = "Ingresos de un curso (ADMIN o instructor dueño)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Serie y totales por moneda",
+                    content = @Content(schema = @Schema(implementation = ReporteIngresosDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Rango o granularidad inválidos"),
+            @ApiResponse(responseCode = "403", description = "Sin permiso sobre el curso")
+    })
+    @GetMapping(value = "/cursos/{idCurso}/ingresos", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @cursoPermisos.esDueno(#idCurso)")
+    public ResponseEntity<?> ingresosCurso(
+            @PathVariable String idCurso,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(defaultValue = "dia") String granularidad
+    ) {
+        try {
+            return ResponseEntity.ok(reportesServicio.ingresos(idCurso, desde, hasta, granularidad(granularidad)));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
+        }
+    }
+
+    @Operation(summary = "Embudo de inscripciones de un curso (ADMIN o instructor dueño)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Serie y embudo",
+                    content = @Content(schema = @Schema(implementation = ReporteInscripcionesDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Rango o granularidad inválidos"),
+            @ApiResponse(responseCode = "403", description = "Sin permiso sobre el curso")
+    })
+    @GetMapping(value = "/cursos/{idCurso}/inscripciones", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @cursoPermisos.esDueno(#idCurso)")
+    public ResponseEntity<?> inscripcionesCurso(
+            @PathVariable String idCurso,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(defaultValue = "dia") String granularidad
+    ) {
+        try {
+            return ResponseEntity.ok(reportesServicio.inscripciones(idCurso, desde, hasta, granularidad(granularidad)));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
+        }
+    }
+
+    private static GranularidadRollup granularidad(String valor) {
+        switch (valor.trim().toLowerCase()) {
+            case "hora": return GranularidadRollup.HORA;
+            case "dia":
+            case "día":  return GranularidadRollup.DIA;
+            default: throw new IllegalArgumentException("Granularidad inválida: use hora o dia.");
+        }
+    }
+}
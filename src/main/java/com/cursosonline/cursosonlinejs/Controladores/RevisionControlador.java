@@ -0,0 +1,183 @@
+package com.cursosonline.cursosonlinejs.Controladores;
+
+import com.cursosonline.cursosonlinejs.DTO.ColaRevisionDTO;
+import com.cursosonline.cursosonlinejs.DTO.ColaRevisionMetricasDTO;
+import com.cursosonline.cursosonlinejs.Entidades.Intento;
+import com.cursosonline.cursosonlinejs.Repositorios.UsuarioRepositorio;
+import com.cursosonline.cursosonlinejs.Servicios.ColaRevisionServicio;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Swagger / OpenAPI
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/api/v1/cursos/{idCurso}/revision")
+@CrossOrigin(origins = "http://localhost:9090", allowCredentials = "true")
+@Tag(
+        name = "Cola de revisión",
+        description = "Intentos pendientes de calificación manual de un curso, con reservas por revisor."
+)
+@SecurityRequirement(name = "bearerAuth")
+public class RevisionControlador {
+
+    private final ColaRevisionServicio colaRevisionServicio;
+    private final UsuarioRepositorio usuarioRepo;
+
+    public RevisionControlador(ColaRevisionServicio colaRevisionServicio,
+                               UsuarioRepositorio usuarioRepo) {
+        this.colaRevisionServicio = colaRevisionServicio;
+        this.usuarioRepo = usuarioRepo;
+    }
+
+    private String currentUserId() {
+        var auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || auth.getName() == null) return null;
+        return usuarioRepo.findByEmail(auth.getName()).map(u -> u.getId()).orElse(null);
+    }
+
+    private static ColaRevisionServicio.Orden parseOrden(String raw) {
+        if (raw == null || raw.isBlank()) return ColaRevisionServicio.Orden.ENVIO;
+        return ColaRevisionServicio.Orden.valueOf(raw.trim().toUpperCase(Locale.ROOT));
+    }
+
+    @Operation(
+            summary = "Listar la cola de revisión del curso",
+            description = "Intentos ENVIADO sin calificar de todas las evaluaciones del curso, por entrega o por vencimiento."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Página de la cola",
+                    content = @Content(schema = @Schema(implementation = ColaRevisionDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Orden no válido"),
+            @ApiResponse(responseCode = "403", description = "No autorizado para este curso")
+    })
+    @GetMapping(produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @inscPermisos.esInstructorDelCurso(#idCurso)")
+    public ResponseEntity<?> listar(
+            @Parameter(description = "ID del curso", example = "c_123456")
+            @PathVariable String idCurso,
+            @Parameter(description = "ENVIO o VENCIMIENTO", example = "ENVIO")
+            @RequestParam(required = false) String orden,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size
+    ) {
+        try {
+            return ResponseEntity.ok(colaRevisionServicio.listar(idCurso, parseOrden(orden), page, size));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Orden no válido. Usa ENVIO o VENCIMIENTO."));
+        }
+    }
+
+    @Operation(
+            summary = "Reclamar el siguiente intento",
+            description = """
+                    Reserva para el usuario el primer intento libre de la cola y lo devuelve.
+                    La reserva vence sola (app.revision.lease-minutos); mientras esté vigente
+                    ningún otro revisor recibe ni puede calificar ese intento.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Intento reservado",
+                    content = @Content(schema = @Schema(implementation = Intento.class))),
+            @ApiResponse(responseCode = "204", description = "No hay intentos libres en la cola"),
+            @ApiResponse(responseCode = "400", description = "Orden no válido"),
+            @ApiResponse(responseCode = "403", description = "No autorizado para este curso")
+    })
+    @PostMapping(value = "/reclamar", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @inscPermisos.esInstructorDelCurso(#idCurso)")
+    public ResponseEntity<?> reclamar(
+            @Parameter(description = "ID del curso", example = "c_123456")
+            @PathVariable String idCurso,
+            @Parameter(description = "ENVIO o VENCIMIENTO", example = "VENCIMIENTO")
+            @RequestParam(required = false) String orden
+    ) {
+        String uid = currentUserId();
+        if (uid == null) return ResponseEntity.status(401).body(Map.of("message", "No autenticado."));
+
+        ColaRevisionServicio.Orden o;
+        try {
+            o = parseOrden(orden);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Orden no válido. Usa ENVIO o VENCIMIENTO."));
+        }
+        return colaRevisionServicio.reclamar(idCurso, uid, o)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+
+    @Operation(summary = "Renovar la reserva de un intento")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Reserva extendida"),
+            @ApiResponse(responseCode = "404", description = "El intento no está en la cola de este curso"),
+            @ApiResponse(responseCode = "409", description = "La reserva venció o es de otro revisor")
+    })
+    @PostMapping(value = "/{idIntento}/renovar", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @inscPermisos.esInstructorDelCurso(#idCurso)")
+    public ResponseEntity<?> renovar(
+            @PathVariable String idCurso,
+            @PathVariable String idIntento
+    ) {
+        String uid = currentUserId();
+        if (uid == null) return ResponseEntity.status(401).body(Map.of("message", "No autenticado."));
+        try {
+            return ResponseEntity.ok(colaRevisionServicio.renovar(idCurso, idIntento, uid));
+        } catch (NoSuchElementException ex) {
+            return ResponseEntity.status(404).body(Map.of("message", ex.getMessage()));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(Map.of("message", ex.getMessage()));
+        }
+    }
+
+    @Operation(summary = "Liberar un intento reservado", description = "Devuelve el intento a la cola para otro revisor.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "204", description = "Reserva liberada"),
+            @ApiResponse(responseCode = "404", description = "El intento no está en la cola de este curso"),
+            @ApiResponse(responseCode = "409", description = "El intento no está reservado por el usuario")
+    })
+    @DeleteMapping("/{idIntento}/reserva")
+    @PreAuthorize("hasRole('ADMIN') or @inscPermisos.esInstructorDelCurso(#idCurso)")
+    public ResponseEntity<?> liberar(
+            @PathVariable String idCurso,
+            @PathVariable String idIntento
+    ) {
+        String uid = currentUserId();
+        if (uid == null) return ResponseEntity.status(401).body(Map.of("message", "No autenticado."));
+        try {
+            colaRevisionServicio.liberar(idCurso, idIntento, uid);
+            return ResponseEntity.noContent().build();
+        } catch (NoSuchElementException ex) {
+            return ResponseEntity.status(404).body(Map.of("message", ex.getMessage()));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(Map.of("message", ex.getMessage()));
+        }
+    }
+
+    @Operation(
+            summary = "Métricas de la cola de revisión",
+            description = "Profundidad de la cola, reservas vigentes, espera del pendiente más antiguo y tiempo hasta calificar."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Métricas calculadas",
+                    content = @Content(schema = @Schema(implementation = ColaRevisionMetricasDTO.class))),
+            @ApiResponse(responseCode = "403", description = "No autorizado para este curso")
+    })
+    @GetMapping(value = "/metricas", produces = "application/json")
+    @PreAuthorize("hasRole('ADMIN') or @inscPermisos.esInstructorDelCurso(#idCurso)")
+    public ResponseEntity<?> metricas(@PathVariable String idCurso) {
+        return ResponseEntity.ok(colaRevisionServicio.metricas(idCurso));
+    }
+}
@@ -0,0 +1,69 @@
+package com.cursosonline.cursosonlinejs.Controladores;
+
+import com.cursosonline.cursosonlinejs.Servicios.WebhookPagosServicio;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Swagger / OpenAPI
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/api/v1/webhooks/pagos")
+@Tag(
+        name = "Webhooks de pago",
+        description = "Notificaciones de las pasarelas de pago (firmadas con HMAC)."
+)
+public class WebhookPagosControlador {
+
+    private static final Pattern GATEWAY = Pattern.compile("^[a-z0-9_-]{1,40}$");
+
+    private final WebhookPagosServicio webhookPagosServicio;
+
+    public WebhookPagosControlador(WebhookPagosServicio webhookPagosServicio) {
+        this.webhookPagosServicio = webhookPagosServicio;
+    }
+
+    @Operation(
+            summary = "Recibir un evento de la pasarela",
+            description = """
+                    Guarda el evento y responde de inmediato; la transición del pago se aplica en
+                    segundo plano. El cuerpo es JSON con id, type (payment.approved, payment.captured,
+                    payment.failed, payment.refunded) y data.paymentId / data.metadata.idPago.
+                    X-Firma es el HMAC-SHA256 en hexadecimal del cuerpo con el secreto de esa
+                    pasarela (app.webhooks.pagos.{gateway}.secreto). Un evento repetido (mismo
+                    id) se confirma sin volver a procesarse.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Evento recibido (o ya recibido antes)"),
+            @ApiResponse(responseCode = "400", description = "Cuerpo inválido"),
+            @ApiResponse(responseCode = "401", description = "Firma inválida")
+    })
+    @PostMapping(path = "/{gateway}", consumes = "application/json", produces = "application/json")
+    public ResponseEntity<?> recibir(
+            @Parameter(description = "Nombre de la pasarela", example = "stripe")
+            @PathVariable String gateway,
+            @RequestHeader(name = "X-Firma", required = false) String firma,
+            @RequestBody String cuerpo
+    ) {
+        if (!GATEWAY.matcher(gateway).matches()) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Pasarela inválida."));
+        }
+        try {
+            boolean nuevo = webhookPagosServicio.recibir(gateway, cuerpo, firma);
+            return ResponseEntity.ok(Map.of("recibido", true, "duplicado", !nuevo));
+        } catch (SecurityException ex) {
+            return ResponseEntity.status(401).body(Map.of("message", ex.getMessage()));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import java.time.Instant;
+
+public record AutoguardadoResultadoDTO(
+        int respuestasGuardadas,     // respuestas distintas escritas en este guardado
+        int solicitudesAgrupadas,    // autoguardados que se unieron en la misma escritura
+        Integer usedTimeSeconds,
+        Instant guardadoAt
+) {}
@@ -0,0 +1,16 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+public record AvanceLeccionesDTO(
+        String idCurso,
+        int completadas,
+        int total,                  // lecciones publicadas
+        Integer progresoPct,        // null si el curso no tiene lecciones publicadas
+        SiguienteDTO siguiente      // null si completó todas
+) {
+
+    public record SiguienteDTO(
+            String idLeccion,
+            String idModulo,
+            String titulo
+    ) {}
+}
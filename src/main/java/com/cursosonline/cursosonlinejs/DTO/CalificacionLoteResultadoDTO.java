@@ -0,0 +1,18 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import java.util.List;
+
+public record CalificacionLoteResultadoDTO(
+        int total,
+        int creadas,
+        int fallidas,
+        List<Item> items            // en el mismo orden que la petición
+) {
+
+    public record Item(
+            String idIntento,
+            String estado,          // CREADA, ERROR
+            String idCalificacion,
+            String mensaje
+    ) {}
+}
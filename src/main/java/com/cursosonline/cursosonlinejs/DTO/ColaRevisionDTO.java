@@ -0,0 +1,25 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import java.time.Instant;
+import java.util.List;
+
+public record ColaRevisionDTO(
+        String idCurso,
+        String orden,                   // ENVIO | VENCIMIENTO
+        int pagina,
+        int tamano,
+        long total,
+        List<ItemDTO> items
+) {
+
+    public record ItemDTO(
+            String idIntento,
+            String idEvaluacion,
+            String idEstudiante,
+            Integer nroIntento,
+            Instant enviadoEn,
+            Instant venceAt,
+            String revisionAsignadaA,   // null si nadie lo tiene reservado
+            Instant revisionLeaseHasta
+    ) {}
+}
@@ -0,0 +1,15 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import java.time.Instant;
+
+public record ColaRevisionMetricasDTO(
+        String idCurso,
+        long pendientes,                // intentos ENVIADO sin calificar
+        long reservados,                // de esos, con reserva vigente
+        Instant entregaMasAntigua,
+        Long esperaMaximaSegundos,      // antigüedad del pendiente más viejo
+        int ventanaDias,
+        long calificadosEnVentana,      // calificaciones manuales en la ventana
+        Long tiempoMedioCalificacionSegundos,
+        Long tiempoMaximoCalificacionSegundos
+) {}
@@ -0,0 +1,17 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import java.util.List;
+
+public record CompletadosLeccionesDTO(
+        String idCurso,
+        long inscritos,             // inscripciones ACTIVA o COMPLETADA
+        List<ItemDTO> lecciones     // lecciones publicadas en orden de estudio
+) {
+
+    public record ItemDTO(
+            String idLeccion,
+            String idModulo,
+            String titulo,
+            int completados
+    ) {}
+}
@@ -0,0 +1,19 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import java.util.List;
+
+public record EmisionCertificadosLoteDTO(
+        int total,                  // inscripciones elegibles sin certificado vinculado
+        int emitidos,
+        int existentes,             // ya tenían certificado; solo se vinculó
+        int fallidos,
+        List<Item> items
+) {
+
+    public record Item(
+            String idEstudiante,
+            String estado,          // EMITIDO, YA_EMITIDO, ERROR
+            String idCertificado,
+            String mensaje
+    ) {}
+}
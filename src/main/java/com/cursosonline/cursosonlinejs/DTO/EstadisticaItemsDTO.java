@@ -0,0 +1,34 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import java.time.Instant;
+import java.util.List;
+
+public record EstadisticaItemsDTO(
+        String idEvaluacion,
+        long intentos,
+        Double puntajeMedio,            // fracción 0..1 del puntaje máximo
+        Double desviacionPuntaje,
+        Instant reconstruidoHasta,
+        Instant actualizadoAt,
+        List<PreguntaDTO> preguntas
+) {
+
+    public record PreguntaDTO(
+            String idPregunta,
+            String enunciado,
+            long respuestas,
+            long correctas,
+            long omitidas,
+            Double dificultad,          // proporción de aciertos
+            Double discriminacion,      // correlación punto-biserial con el puntaje total
+            List<OpcionDTO> opciones
+    ) {}
+
+    public record OpcionDTO(
+            String idOpcion,
+            String texto,
+            boolean correcta,
+            long veces,
+            Double proporcion
+    ) {}
+}
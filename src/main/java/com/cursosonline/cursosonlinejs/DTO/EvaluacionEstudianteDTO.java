@@ -0,0 +1,44 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
+import com.cursosonline.cursosonlinejs.Entidades.TipoPregunta;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Vista de una evaluación tal como la ve el estudiante: sin respuestas correctas,
+ * guías ni retroalimentación, y con el orden de preguntas/opciones ya resuelto.
+ */
+public record EvaluacionEstudianteDTO(
+        String id,
+        String idLeccion,
+        String titulo,
+        String descripcion,
+        Evaluacion.TipoEvaluacion tipo,
+        Evaluacion.EstadoPublicacion estado,
+        BigDecimal puntajeMaximo,
+        BigDecimal notaAprobatoria,
+        Integer maxIntentos,
+        Integer timeLimitSeconds,
+        Instant disponibleDesde,
+        Instant disponibleHasta,
+        Instant dueAt,
+        Integer totalPreguntas,
+        List<PreguntaEstudianteDTO> preguntas
+) {
+
+    public record PreguntaEstudianteDTO(
+            String id,
+            String enunciado,
+            TipoPregunta tipo,
+            Integer puntaje,
+            List<OpcionEstudianteDTO> opciones
+    ) {}
+
+    public record OpcionEstudianteDTO(
+            String id,
+            String texto
+    ) {}
+}
@@ -0,0 +1,22 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import java.util.List;
+
+public record ImportacionInscripcionesDTO(
+        int total,
+        int creadas,
+        int existentes,
+        int fallidas,
+        int usuariosCreados,
+        List<Fila> filas            // en el mismo orden que el archivo
+) {
+
+    public record Fila(
+            int fila,               // número de línea en el CSV
+            String email,
+            String estado,          // CREADA, YA_INSCRITO, ERROR
+            String idUsuario,
+            String idInscripcion,
+            String mensaje
+    ) {}
+}
@@ -0,0 +1,32 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+public record PanelEstudianteDTO(
+        List<ItemDTO> items,
+        String siguiente            // cursor de la página siguiente; null si no hay más
+) {
+
+    public record ItemDTO(
+            String idInscripcion,
+            String estado,
+            Instant createdAt,
+            Instant lastAccessAt,
+            Integer progresoPct,
+            BigDecimal notaFinal,
+            Boolean aprobadoFinal,
+            String idCurso,
+            String cursoTitulo,
+            String cursoSlug,
+            String imagenPortadaUrl,
+            String instructorNombre,
+            String moduloActualId,
+            String leccionActualId,
+            String leccionActualTitulo,
+            String certificadoId,
+            String certificadoEstado,
+            String certificadoCodigo
+    ) {}
+}
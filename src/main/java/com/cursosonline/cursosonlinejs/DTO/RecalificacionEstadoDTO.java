@@ -0,0 +1,16 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import java.time.Instant;
+
+public record RecalificacionEstadoDTO(
+        String idTrabajo,
+        String idEvaluacion,
+        String estado,                  // EN_CURSO, COMPLETADO, CANCELADO, FALLIDO
+        long total,                     // intentos a revisar (estimado al iniciar)
+        long procesados,
+        long modificados,               // intentos cuyo resultado cambió
+        long estudiantesRecalculados,   // progresos de curso recalculados
+        Instant iniciadoAt,
+        Instant finalizadoAt,
+        String error
+) {}
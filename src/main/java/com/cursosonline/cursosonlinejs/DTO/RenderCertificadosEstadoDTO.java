@@ -0,0 +1,17 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import java.time.Instant;
+
+public record RenderCertificadosEstadoDTO(
+        int hilos,
+        int activos,                    // hilos dibujando ahora
+        int enCola,
+        int colaLibre,                  // huecos antes de dejar trabajo al barrido
+        long pendientes,                // certificados emitidos sin PDF todavía
+        long conError,                  // agotaron los reintentos
+        long generados,                 // desde el arranque de este nodo
+        long fallidos,
+        Double msPorPaginaMedio,        // solo el dibujo, sin guardar el archivo
+        Long bytesPorPaginaMedio,
+        Instant consultadoAt
+) {}
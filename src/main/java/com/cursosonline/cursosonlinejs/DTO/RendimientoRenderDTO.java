@@ -0,0 +1,11 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+public record RendimientoRenderDTO(
+        String plantilla,               // null = la de por defecto
+        int paginas,
+        int hilos,
+        double duracionMs,
+        double paginasPorSegundo,
+        long bytesPorPagina,
+        double msPorPagina              // tiempo de pared por página con todos los hilos
+) {}
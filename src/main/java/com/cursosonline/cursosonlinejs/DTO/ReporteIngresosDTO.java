@@ -0,0 +1,38 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import com.cursosonline.cursosonlinejs.Entidades.GranularidadRollup;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+public record ReporteIngresosDTO(
+        String idCurso,                 // null: toda la plataforma
+        LocalDate desde,
+        LocalDate hasta,
+        GranularidadRollup granularidad,
+        String zona,
+        List<PuntoDTO> serie,           // ordenada por inicio; un punto por moneda
+        List<TotalDTO> totales          // por moneda
+) {
+
+    public record PuntoDTO(
+            Instant inicio,
+            String moneda,
+            long pagos,
+            BigDecimal bruto,
+            long reembolsos,
+            BigDecimal reembolsado,
+            BigDecimal neto
+    ) {}
+
+    public record TotalDTO(
+            String moneda,
+            long pagos,
+            BigDecimal bruto,
+            long reembolsos,
+            BigDecimal reembolsado,
+            BigDecimal neto
+    ) {}
+}
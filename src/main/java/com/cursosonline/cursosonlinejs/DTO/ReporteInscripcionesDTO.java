@@ -0,0 +1,37 @@
+package com.cursosonline.cursosonlinejs.DTO;
+
+import com.cursosonline.cursosonlinejs.Entidades.GranularidadRollup;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+public record ReporteInscripcionesDTO(
+        String idCurso,                 // null: toda la plataforma
+        LocalDate desde,
+        LocalDate hasta,
+        GranularidadRollup granularidad,
+        String zona,
+        List<PuntoDTO> serie,           // cohortes por fecha de inscripción, estado actual
+        EmbudoDTO embudo
+) {
+
+    public record PuntoDTO(
+            Instant inicio,
+            long inscritas,
+            long pendientesPago,
+            long activas,
+            long suspendidas,
+            long completadas,
+            long canceladas,
+            long expiradas
+    ) {}
+
+    public record EmbudoDTO(
+            long inscritas,
+            long convertidas,           // activas + suspendidas + completadas
+            long completadas,
+            Double conversionPct,       // null si no hubo inscripciones
+            Double finalizacionPct      // completadas / convertidas; null si no hubo convertidas
+    ) {}
+}
@@ -0,0 +1,30 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Marca de una inscripción borrada, para que los demás nodos la quiten de su índice de
+ * membresías (MembresiasActivasServicio). Un documento borrado no aparece al releer
+ * por updatedAt; esta marca sí. Se borra sola al día, mucho después de que todos los
+ * nodos la hayan leído.
+ */
+@Document(collection = "membresias_bajas")
+@Getter
+@Setter
+public class BajaMembresia {
+
+    @Id
+    private String id;
+
+    private String idCurso;
+    private String idEstudiante;
+
+    @Indexed(name = "baja_ttl_idx", expireAfter = "1d")
+    private Instant bajaAt;
+}
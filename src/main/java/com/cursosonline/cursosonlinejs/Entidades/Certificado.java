@@ -26,7 +26,8 @@ import lombok.Setter;
 @Setter
 @CompoundIndexes({
     @CompoundIndex(name = "curso_estudiante_uq", def = "{'idCurso': 1, 'idEstudiante': 1}", unique = true, sparse = true),
-    @CompoundIndex(name = "codigo_uq", def = "{'codigoVerificacion': 1}", unique = true, sparse = true)
+    @CompoundIndex(name = "codigo_uq", def = "{'codigoVerificacion': 1}", unique = true, sparse = true),
+    @CompoundIndex(name = "pdf_pendiente_idx", def = "{'pdfEstado': 1, 'pdfLeaseHasta': 1}")
 })
 public class Certificado {
 
@@ -47,8 +48,8 @@ public class Certificado {
     private Instant emitidoEn;
     private Instant revocadoAt;
 
+    // Único y disperso: codigo_uq
     @NotBlank
-    @Indexed(unique = true)
     private String codigoVerificacion;
 
     private String codigoHash;
@@ -76,6 +77,17 @@ public class Certificado {
     private String firmaUrl;
     private String selloUrl;
 
+    // Generación del PDF en segundo plano (RenderCertificadosServicio).
+    // null en certificados anteriores: se tratan como pendientes.
+    private EstadoPdf pdfEstado;
+    public enum EstadoPdf { PENDIENTE, LISTO, ERROR }
+
+    private Integer pdfIntentos;
+    private String pdfError;
+    private String pdfDueno;
+    private Instant pdfLeaseHasta;
+    private Instant pdfGeneradoAt;
+
     @CreatedDate
     private Instant createdAt;
 
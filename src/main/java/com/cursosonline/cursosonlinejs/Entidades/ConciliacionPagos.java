@@ -0,0 +1,60 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Una pasada de conciliación de pagos contra el archivo de liquidación de una pasarela.
+ * Los contadores se actualizan al cerrar cada lote, así que sirven de progreso mientras
+ * está EN_CURSO. El detalle de cada diferencia va en conciliacion_discrepancias.
+ */
+@Document(collection = "conciliaciones_pagos")
+@Getter
+@Setter
+@CompoundIndexes({
+    @CompoundIndex(name = "gateway_estado_idx", def = "{'gateway': 1, 'estado': 1}")
+})
+public class ConciliacionPagos {
+
+    @Id
+    private String id;
+
+    private String gateway;
+    private String archivo;
+    private Formato formato;
+    private boolean aplicarCorrecciones;
+    // Los pagos creados antes de esto que sigan sin liquidar se reportan
+    private Instant pendientesAntesDe;
+    private String iniciadaPor;
+
+    private EstadoConciliacion estado = EstadoConciliacion.EN_CURSO;
+    private long lineas;
+    private long conciliados;
+    private long discrepancias;
+    private long corregidos;
+    private String error;
+
+    private Instant iniciadaAt;
+    private Instant actualizadaAt;
+    private Instant terminadaAt;
+
+    public enum Formato {
+        CSV,
+        // Un arreglo JSON o un objeto por línea (JSON Lines)
+        JSON
+    }
+
+    public enum EstadoConciliacion {
+        EN_CURSO,
+        TERMINADA,
+        ERROR,
+        // El nodo que la ejecutaba dejó de actualizarla
+        INTERRUMPIDA
+    }
+}
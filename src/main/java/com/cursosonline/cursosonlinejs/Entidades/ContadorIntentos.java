@@ -0,0 +1,43 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Contador de intentos por (evaluación, estudiante).
+ *
+ * El _id es "idEvaluacion:idEstudiante", así que iniciar un intento es un único
+ * findAndModify sobre este documento: asigna el siguiente número, marca el intento
+ * en progreso y comprueba maxIntentos y la espera mínima en el mismo paso.
+ */
+@Document(collection = "contadores_intentos")
+@Getter
+@Setter
+public class ContadorIntentos {
+
+    @Id
+    private String id;
+
+    private String idEvaluacion;
+    private String idEstudiante;
+
+    // Último número de intento asignado (0 = ninguno)
+    private Integer ultimoNro;
+
+    // Intento EN_PROGRESO actual; null si no hay ninguno
+    @Indexed(sparse = true)
+    private String intentoEnProgreso;
+
+    private Instant ultimoInicioAt;
+    private Instant ultimaFinalizacionAt;
+    private Instant updatedAt;
+
+    public static String clave(String idEvaluacion, String idEstudiante) {
+        return idEvaluacion + ":" + idEstudiante;
+    }
+}
@@ -0,0 +1,42 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Cupos ocupados de un curso (_id = idCurso).
+ *
+ * Vive fuera del documento del curso para que los save() del curso (versionados,
+ * con el documento completo) no pisen el contador. Ocupan cupo las inscripciones
+ * PENDIENTE_PAGO y ACTIVA; reservar un cupo es un único update condicional
+ * "ocupados < cupoMaximo" con $inc.
+ *
+ * También lleva la numeración de la lista de espera y la señal de promoción: cada
+ * cupo liberado (o cambio del curso) marca promocionPendiente, y el promotor de la
+ * lista de espera solo visita los cursos marcados.
+ */
+@Document(collection = "cupos_cursos")
+@Getter
+@Setter
+public class CupoCurso {
+
+    @Id
+    private String id;
+
+    private Long ocupados;
+
+    // Último turno asignado en la lista de espera
+    private Long ultimoTurno;
+
+    @Indexed(sparse = true)
+    private Boolean promocionPendiente;
+    // Crece con cada señal; permite apagar la marca sin perder una señal concurrente
+    private Long senalPromocion;
+
+    private Instant updatedAt;
+}
@@ -0,0 +1,67 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/** Diferencia entre el archivo de liquidación y la colección pagos, hallada en una conciliación. */
+@Document(collection = "conciliacion_discrepancias")
+@Getter
+@Setter
+@CompoundIndexes({
+    @CompoundIndex(name = "conciliacion_tipo_idx", def = "{'idConciliacion': 1, 'tipo': 1, 'linea': 1}")
+})
+public class DiscrepanciaPago {
+
+    @Id
+    private String id;
+
+    private String idConciliacion;
+    private TipoDiscrepancia tipo;
+    // 0 para los pagos que no aparecen en el archivo
+    private long linea;
+
+    private String referencia;
+    private String gatewayPaymentId;
+    private String idPago;
+
+    private Pago.EstadoPago estadoLocal;
+    private String estadoGateway;
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal montoLocal;
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal montoGateway;
+    private String monedaLocal;
+    private String monedaGateway;
+
+    private Correccion correccion = Correccion.NINGUNA;
+    private String detalle;
+    private Instant createdAt;
+
+    public enum TipoDiscrepancia {
+        // La fila no se pudo leer (faltan campos, monto o estado ilegible)
+        FILA_INVALIDA,
+        // La pasarela liquidó un pago que no existe aquí
+        NO_REGISTRADO,
+        MONTO_DISTINTO,
+        ESTADO_DISTINTO,
+        // Pago PENDIENTE, AUTORIZADO o APROBADO que la pasarela no liquidó
+        SIN_LIQUIDAR
+    }
+
+    public enum Correccion {
+        NINGUNA,
+        // Se puede corregir, pero la conciliación se lanzó sin aplicar correcciones
+        SUGERIDA,
+        APLICADA,
+        FALLIDA
+    }
+}
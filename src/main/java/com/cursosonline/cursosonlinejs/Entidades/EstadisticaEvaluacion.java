@@ -0,0 +1,60 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estadísticas de ítems de una evaluación, acumuladas intento a intento.
+ *
+ * El _id es el id de la evaluación. Solo se guardan conteos y sumas (puntaje total,
+ * su cuadrado y su producto con el acierto de cada pregunta), así que cada intento se
+ * suma con un único $inc atómico y la dificultad y el índice de discriminación
+ * (correlación punto-biserial) salen sin volver a leer los intentos.
+ */
+@Document(collection = "estadisticas_evaluaciones")
+@Getter
+@Setter
+public class EstadisticaEvaluacion {
+
+    @Id
+    private String id;
+
+    // Intentos acumulados y puntaje total (fracción 0..1 del máximo)
+    private long intentos;
+    private double sumaPuntaje;
+    private double sumaCuadPuntaje;
+
+    private Map<String, Item> preguntas = new HashMap<>();
+
+    // Los intentos enviados hasta este instante ya están incluidos por la última reconstrucción
+    private Instant reconstruidoHasta;
+    private Instant actualizadoAt;
+
+    @Version
+    private Long version;
+
+    @Getter
+    @Setter
+    public static class Item {
+        // El acierto es 0/1: correctas es a la vez su suma y la de su cuadrado
+        private long respuestas;
+        private long correctas;
+        private long omitidas;
+
+        // Puntaje total de los intentos que respondieron la pregunta
+        private double sumaTotal;
+        private double sumaCuadTotal;
+        // Suma del puntaje total de los intentos que la acertaron
+        private double sumaTotalCorrectas;
+
+        // idOpcion -> veces que se marcó
+        private Map<String, Long> opciones = new HashMap<>();
+    }
+}
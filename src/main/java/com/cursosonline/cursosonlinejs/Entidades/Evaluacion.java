@@ -30,7 +30,8 @@ import lombok.Setter;
 @CompoundIndexes({
     @CompoundIndex(name = "leccion_titulo_uq", def = "{'idLeccion': 1, 'titulo': 1}", unique = true, sparse = true),
     @CompoundIndex(name = "leccion_estado_fecha_idx", def = "{'idLeccion': 1, 'estado': 1, 'createdAt': -1}"),
-    @CompoundIndex(name = "disponible_hasta_idx", def = "{'disponibleHasta': 1}")
+    @CompoundIndex(name = "disponible_hasta_idx", def = "{'disponibleHasta': 1}"),
+    @CompoundIndex(name = "estado_disponible_desde_idx", def = "{'estado': 1, 'disponibleDesde': 1}")
 })
 public class Evaluacion {
 
@@ -88,6 +89,11 @@ public class Evaluacion {
     // Opcional: si algún día usas bancos globales
     private String bancoPreguntasId;
 
+    // Preguntas que se sortean del banco (las preguntas de la evaluación) para cada intento;
+    // null o >= total => todas
+    @PositiveOrZero
+    private Integer preguntasPorIntento;
+
     @PositiveOrZero
     private Integer totalPreguntas;
 
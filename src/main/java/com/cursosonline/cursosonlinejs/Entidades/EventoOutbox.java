@@ -0,0 +1,61 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Efecto pendiente de un cambio de estado, escrito en la misma transacción que el
+ * cambio (patrón outbox). RelayOutboxServicio lo entrega después, al menos una vez.
+ *
+ * El _id es determinista (idAgregado:tipo): el mismo cambio no puede encolar dos veces
+ * el mismo efecto.
+ */
+@Document(collection = "outbox")
+@Getter
+@Setter
+@CompoundIndexes({
+    @CompoundIndex(name = "estado_proximo_idx", def = "{'estado': 1, 'proximoIntentoAt': 1}")
+})
+public class EventoOutbox {
+
+    @Id
+    private String id;
+
+    private TipoEvento tipo;
+    private String idAgregado;
+    private Map<String, String> datos;
+
+    private EstadoEvento estado = EstadoEvento.PENDIENTE;
+    private int intentos;
+    private Instant proximoIntentoAt;
+    private String ultimoError;
+
+    private String dueno;
+    private Instant leaseHasta;
+
+    private Instant createdAt;
+    // Los entregados se borran solos a los 7 días (índice creado por IndicesMongoConfig)
+    @Indexed(name = "entregado_ttl_idx", expireAfter = "7d")
+    private Instant entregadoAt;
+
+    public enum TipoEvento {
+        INSCRIPCION_ACTIVAR_POR_PAGO,
+        CURSO_RECONTAR_INSCRITOS,
+        CERTIFICADO_EVALUAR
+    }
+
+    public enum EstadoEvento {
+        PENDIENTE,
+        ENTREGADO,
+        // Agotó los reintentos: queda para revisión manual
+        FALLIDO
+    }
+}
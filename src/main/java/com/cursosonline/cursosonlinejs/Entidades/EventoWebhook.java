@@ -0,0 +1,59 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Evento recibido de una pasarela de pago por webhook (_id = gateway:idEventoGateway,
+ * lo que descarta los reenvíos del mismo evento).
+ *
+ * El cuerpo y los datos extraídos al recibirlo no se modifican nunca ni se borran; lo
+ * único que cambia después son los campos de procesamiento (estado, intentos, reserva).
+ */
+@Document(collection = "webhook_eventos")
+@Getter
+@Setter
+@CompoundIndexes({
+    @CompoundIndex(name = "estado_proximo_idx", def = "{'estado': 1, 'proximoIntentoAt': 1}"),
+    @CompoundIndex(name = "pago_recibido_idx", def = "{'clavePago': 1, 'recibidoAt': 1}")
+})
+public class EventoWebhook {
+
+    @Id
+    private String id;
+
+    // --- Recibido (inmutable) ---
+    private String gateway;
+    private String idEventoGateway;
+    private String tipo;
+    private String idPago;
+    private String gatewayPaymentId;
+    private String authorizationCode;
+    private String reciboUrl;
+    // Agrupa los eventos de un mismo pago para procesarlos en orden
+    private String clavePago;
+    private String cuerpo;
+    private Instant recibidoAt;
+
+    // --- Procesamiento ---
+    private EstadoEvento estado = EstadoEvento.PENDIENTE;
+    private int intentos;
+    private Instant proximoIntentoAt;
+    private String dueno;
+    private Instant leaseHasta;
+    private String resultado;
+    private Instant procesadoAt;
+
+    public enum EstadoEvento {
+        PENDIENTE,
+        PROCESADO,
+        // Tipo desconocido, pago inexistente o transición imposible tras los reintentos
+        IGNORADO
+    }
+}
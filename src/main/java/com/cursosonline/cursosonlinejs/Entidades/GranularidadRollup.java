@@ -0,0 +1,6 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+public enum GranularidadRollup {
+    HORA,
+    DIA
+}
@@ -6,6 +6,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
@@ -30,7 +32,14 @@ import lombok.Setter;
 @CompoundIndexes({
     @CompoundIndex(name = "estudiante_curso_fecha_idx", def = "{'idEstudiante': 1, 'idCurso': 1, 'createdAt': -1}"),
     @CompoundIndex(name = "curso_estado_fecha_idx", def = "{'idCurso': 1, 'estado': 1, 'createdAt': -1}"),
-    @CompoundIndex(name = "access_end_idx", def = "{'accessEndAt': 1}")
+    // Barrido de expiración: orden (accessEndAt, _id) sin ordenar en memoria
+    @CompoundIndex(name = "access_end_idx", def = "{'accessEndAt': 1, '_id': 1}"),
+    @CompoundIndex(name = "curso_estudiante_idx", def = "{'idCurso': 1, 'idEstudiante': 1}"),
+    @CompoundIndex(name = "estado_fecha_idx", def = "{'estado': 1, 'createdAt': 1}"),
+    @CompoundIndex(name = "estudiante_fecha_idx", def = "{'idEstudiante': 1, 'createdAt': -1, '_id': -1}"),
+    @CompoundIndex(name = "updated_idx", def = "{'updatedAt': 1}"),
+    @CompoundIndex(name = "created_idx", def = "{'createdAt': 1}"),
+    @CompoundIndex(name = "estado_cambiado_idx", def = "{'estadoCambiadoAt': 1}")
 })
 public class Inscripcion {
 
@@ -55,7 +64,11 @@ public class Inscripcion {
 
     @PositiveOrZero
     private Integer progresoPct;
+    // Formato anterior (ids de lección); MigracionProgresoServicio lo pasa a leccionesBits al arrancar
     private Set<String> leccionesCompletadas;
+    // Lecciones completadas como bits por Leccion.ordinal: palabra (ordinal / 64) -> 64 bits. Ver BitsLecciones
+    @JsonIgnore
+    private Map<String, Long> leccionesBits;
     private String moduloActualId;
     private String leccionActualId;
     private Instant lastAccessAt;
@@ -93,6 +106,11 @@ public class Inscripcion {
     private Instant updatedAt;
     private Instant completadaAt;
     private Instant canceladaAt;
+    // PAGO_VENCIDO si la canceló el barrido de pagos vencidos (un pago tardío la reactiva)
+    private String motivoCancelacion;
+    private Instant expiradaAt;
+    // Alta y cada cambio de estado (no el progreso ni la actividad): lo lee el barrido de rollups
+    private Instant estadoCambiadoAt;
 
     @Indexed(unique = true, sparse = true)
     private String idempotencyKey;
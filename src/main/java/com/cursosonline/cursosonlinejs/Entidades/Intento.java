@@ -29,7 +29,18 @@ import lombok.Setter;
                    def = "{'idEvaluacion': 1, 'idEstudiante': 1, 'nroIntento': 1}",
                    unique = true, sparse = true),
     @CompoundIndex(name = "eval_estado_fecha_idx",
-                   def = "{'idEvaluacion': 1, 'estado': 1, 'createdAt': -1}")
+                   def = "{'idEvaluacion': 1, 'estado': 1, 'createdAt': -1}"),
+    @CompoundIndex(name = "estado_expira_idx",
+                   def = "{'estado': 1, 'expiraAt': 1}"),
+    @CompoundIndex(name = "eval_estudiante_enviado_idx",
+                   def = "{'idEvaluacion': 1, 'idEstudiante': 1, 'enviadoEn': -1}"),
+    // Cola de revisión manual por curso (ver ColaRevisionServicio)
+    @CompoundIndex(name = "curso_estado_enviado_idx",
+                   def = "{'idCurso': 1, 'estado': 1, 'enviadoEn': 1}"),
+    @CompoundIndex(name = "curso_estado_vence_idx",
+                   def = "{'idCurso': 1, 'estado': 1, 'venceAt': 1, 'enviadoEn': 1}"),
+    @CompoundIndex(name = "curso_estado_calificado_idx",
+                   def = "{'idCurso': 1, 'estado': 1, 'calificadoAt': -1}")
 })
 public class Intento {
 
@@ -42,6 +53,9 @@ public class Intento {
     @Indexed
     private String idEstudiante;
 
+    // Copiado de la evaluación al crear el intento, para la cola de revisión del curso
+    private String idCurso;
+
     @Positive
     private Integer nroIntento;
 
@@ -68,9 +82,21 @@ public class Intento {
 
     @PositiveOrZero
     private Integer timeLimitSeconds;
+    // Momento en que vence el tiempo límite (null = sin límite)
+    private Instant expiraAt;
     @PositiveOrZero
     private Integer usedTimeSeconds;
 
+    // Fecha límite para revisarlo: dueAt de la evaluación o, si no tiene, la entrega
+    private Instant venceAt;
+
+    // Reserva de la revisión manual: quién lo tiene y hasta cuándo
+    private String revisionAsignadaA;
+    private Instant revisionLeaseHasta;
+
+    // Semilla del sorteo de preguntas/opciones (ver SorteoPreguntas); null = todas en orden
+    private Long semilla;
+
     @Field(targetType = FieldType.DECIMAL128)
     @PositiveOrZero
     private BigDecimal puntaje;
@@ -24,7 +24,8 @@ import lombok.Setter;
 @Setter
 @CompoundIndexes({
     @CompoundIndex(name = "modulo_titulo_uq", def = "{'idModulo': 1, 'titulo': 1}", unique = true, sparse = true),
-    @CompoundIndex(name = "modulo_orden_uq", def = "{'idModulo': 1, 'orden': 1}", unique = true, sparse = true)
+    @CompoundIndex(name = "modulo_orden_uq", def = "{'idModulo': 1, 'orden': 1}", unique = true, sparse = true),
+    @CompoundIndex(name = "curso_ordinal_idx", def = "{'idCurso': 1, 'ordinal': 1}")
 })
 public class Leccion {
 
@@ -57,6 +58,10 @@ public class Leccion {
     @PositiveOrZero
     private Integer orden;
 
+    // Posición fija de la lección en los bits de progreso del curso (Inscripcion.leccionesBits).
+    // La asigna LeccionServicio al crearla y no cambia al reordenar ni se reutiliza.
+    private Integer ordinal;
+
     private EstadoPublicacion estado = EstadoPublicacion.BORRADOR;
     @Indexed
     private Instant publishedAt;
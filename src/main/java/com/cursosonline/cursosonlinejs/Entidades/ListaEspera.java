@@ -0,0 +1,36 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Estudiante esperando cupo en un curso.
+ *
+ * El _id es "idCurso:idEstudiante", así que nadie puede estar dos veces en la misma
+ * lista. El documento solo existe mientras espera: al promoverse (o al salir) se borra.
+ * El orden lo da el turno, numerado por curso en cupos_cursos.
+ */
+@Document(collection = "listas_espera")
+@CompoundIndex(name = "curso_turno_idx", def = "{'idCurso': 1, 'turno': 1}")
+@Getter
+@Setter
+public class ListaEspera {
+
+    @Id
+    private String id;
+
+    private String idCurso;
+    private String idEstudiante;
+    private Long turno;
+
+    private Instant createdAt;
+
+    public static String clave(String idCurso, String idEstudiante) {
+        return idCurso + ":" + idEstudiante;
+    }
+}
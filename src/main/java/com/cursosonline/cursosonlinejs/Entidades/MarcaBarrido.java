@@ -0,0 +1,35 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Punto de avance de un barrido periódico (_id = nombre del barrido).
+ *
+ * Guarda hasta dónde llegó la última pasada (instante y _id del último documento
+ * visto, para desempatar) y una reserva con vencimiento para que con varios nodos
+ * solo uno barra a la vez.
+ */
+@Document(collection = "marcas_barrido")
+@Getter
+@Setter
+public class MarcaBarrido {
+
+    @Id
+    private String id;
+
+    private Instant hasta;
+    // null: todo lo de "hasta" ya se vio
+    private String hastaId;
+
+    private Instant ultimoRepasoCompleto;
+
+    private String dueno;
+    private Instant leaseHasta;
+
+    private Instant updatedAt;
+}
@@ -27,7 +27,13 @@ import lombok.Setter;
 @Setter
 @CompoundIndexes({
     @CompoundIndex(name = "inscripcion_estado_fecha_idx", def = "{'idInscripcion': 1, 'estado': 1, 'createdAt': -1}"),
-    @CompoundIndex(name = "idempotency_key_unique", def = "{'idempotencyKey': 1}", unique = true, sparse = true)
+    @CompoundIndex(name = "idempotency_key_unique", def = "{'idempotencyKey': 1}", unique = true, sparse = true),
+    @CompoundIndex(name = "gateway_payment_idx", def = "{'gateway': 1, 'gatewayPaymentId': 1}", sparse = true),
+    @CompoundIndex(name = "gateway_estado_fecha_idx", def = "{'gateway': 1, 'estado': 1, 'createdAt': 1}"),
+    @CompoundIndex(name = "updated_idx", def = "{'updatedAt': 1}"),
+    @CompoundIndex(name = "pagado_idx", def = "{'pagadoAt': 1}", sparse = true),
+    @CompoundIndex(name = "reembolsado_idx", def = "{'reembolsadoAt': 1}", sparse = true),
+    @CompoundIndex(name = "estado_cambiado_idx", def = "{'estadoCambiadoAt': 1}")
 })
 public class Pago {
 
@@ -66,8 +72,9 @@ public class Pago {
     @NotNull
     private EstadoPago estado;
 
+    @Indexed(sparse = true)
     private String referencia;
-    @Indexed(unique = true, sparse = true)
+    // Único y disperso: idempotency_key_unique
     private String idempotencyKey;
     private String cupon;
 
@@ -87,6 +94,16 @@ public class Pago {
     private Instant pagadoAt;
     private Instant fallidoAt;
     private Instant reembolsadoAt;
+    // Alta y cada cambio de estado (no la conciliación ni las marcas): lo lee el barrido de rollups
+    private Instant estadoCambiadoAt;
+
+    // Pago aprobado para una inscripción que ya no lo admite (cancelada y sin cupo): hay que devolverlo
+    private Instant reembolsoPendienteAt;
+    private String reembolsoPendienteMotivo;
+
+    // Última conciliación con el archivo de liquidación de la pasarela en que apareció
+    private String idConciliacion;
+    private Instant conciliadoAt;
 
     @Version
     private Long version;
@@ -0,0 +1,52 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Ingresos de un curso en una moneda durante una hora o un día (de app.analitica.zona).
+ * Los cobros cuentan en la hora de pagadoAt y los reembolsos en la de reembolsadoAt.
+ * Lo mantiene RollupsAnaliticaServicio; nadie más escribe aquí.
+ */
+@Document(collection = "rollup_ingresos")
+@Getter
+@Setter
+@CompoundIndexes({
+    @CompoundIndex(name = "granularidad_curso_inicio_idx", def = "{'granularidad': 1, 'idCurso': 1, 'inicio': 1}"),
+    @CompoundIndex(name = "granularidad_inicio_idx", def = "{'granularidad': 1, 'inicio': 1}"),
+    @CompoundIndex(name = "granularidad_dia_idx", def = "{'granularidad': 1, 'dia': 1}")
+})
+public class RollupIngresos {
+
+    // granularidad:inicio:idCurso:moneda
+    @Id
+    private String id;
+
+    private GranularidadRollup granularidad;
+    private Instant inicio;
+    // yyyy-MM-dd en la zona de la analítica
+    private String dia;
+    // null: pagos sin inscripción o de una inscripción borrada
+    private String idCurso;
+    private String moneda;
+
+    private long pagos;
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal bruto = BigDecimal.ZERO;
+    private long reembolsos;
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal reembolsado = BigDecimal.ZERO;
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal neto = BigDecimal.ZERO;
+
+    private Instant actualizadoAt;
+}
@@ -0,0 +1,45 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Embudo de las inscripciones de un curso creadas en una hora o un día (cohorte por
+ * createdAt): cuántas hay y en qué estado están ahora. Cuando una inscripción cambia de
+ * estado se recalcula la cohorte de su fecha de creación.
+ */
+@Document(collection = "rollup_inscripciones")
+@Getter
+@Setter
+@CompoundIndexes({
+    @CompoundIndex(name = "granularidad_curso_inicio_idx", def = "{'granularidad': 1, 'idCurso': 1, 'inicio': 1}"),
+    @CompoundIndex(name = "granularidad_inicio_idx", def = "{'granularidad': 1, 'inicio': 1}"),
+    @CompoundIndex(name = "granularidad_dia_idx", def = "{'granularidad': 1, 'dia': 1}")
+})
+public class RollupInscripciones {
+
+    // granularidad:inicio:idCurso
+    @Id
+    private String id;
+
+    private GranularidadRollup granularidad;
+    private Instant inicio;
+    private String dia;
+    private String idCurso;
+
+    private long inscritas;
+    private long pendientesPago;
+    private long activas;
+    private long suspendidas;
+    private long completadas;
+    private long canceladas;
+    private long expiradas;
+
+    private Instant actualizadoAt;
+}
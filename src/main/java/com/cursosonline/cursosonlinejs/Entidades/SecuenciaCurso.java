@@ -0,0 +1,24 @@
+package com.cursosonline.cursosonlinejs.Entidades;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Secuencias propias de un curso (_id = idCurso).
+ *
+ * ordinalesLecciones es cuántos ordinales de lección se han repartido: la siguiente
+ * lección recibe ese valor. Solo crece, así que un ordinal nunca se reutiliza aunque
+ * la lección se borre.
+ */
+@Document(collection = "secuencias_cursos")
+@Getter
+@Setter
+public class SecuenciaCurso {
+
+    @Id
+    private String id;
+
+    private Integer ordinalesLecciones;
+}
@@ -0,0 +1,18 @@
+package com.cursosonline.cursosonlinejs.Eventos;
+
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion.EstadoInscripcion;
+
+import java.time.Instant;
+
+/**
+ * Una inscripción cambió de estado. Se publica con ApplicationEventPublisher después
+ * de que el cambio quedó escrito.
+ */
+public record InscripcionEstadoEvento(
+        String idInscripcion,
+        String idCurso,
+        String idEstudiante,
+        EstadoInscripcion anterior,
+        EstadoInscripcion nuevo,
+        Instant en
+) {}
@@ -22,6 +22,17 @@ public interface IntentoRepositorio extends MongoRepository<Intento, String> {
             String idEvaluacion,
             String idEstudiante
     );
+    Optional<Intento> findFirstByIdEvaluacionAndIdEstudianteAndEstado(
+            String idEvaluacion,
+            String idEstudiante,
+            Intento.EstadoIntento estado
+    );
+
+    Optional<Intento> findTopByIdEvaluacionAndIdEstudianteAndEnviadoEnNotNullOrderByEnviadoEnDesc(
+            String idEvaluacion,
+            String idEstudiante
+    );
+
     Optional<Intento> findByIdAndIdEstudiante(String id, String idEstudiante);
     List<Intento> findByIdEvaluacionOrderByCreatedAtDesc(String idEvaluacion);
 
@@ -1,13 +1,11 @@
 package com.cursosonline.cursosonlinejs.Seguridad;
 
-import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
 import com.cursosonline.cursosonlinejs.Repositorios.*;
+import com.cursosonline.cursosonlinejs.Servicios.MembresiasActivasServicio;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-
 @Component("evalPermisos")
 public class EvaluacionPermisos {
 
@@ -15,21 +13,18 @@ public class EvaluacionPermisos {
     private final LeccionRepositorio leccionRepo;
     private final ModuloRepositorio moduloRepo;
     private final CursoRepositorio cursoRepo;
-    private final InscripcionRepositorio inscripcionRepo;
-
-    private static final List<Inscripcion.EstadoInscripcion> ESTADOS_CON_ACCESO =
-            List.of(Inscripcion.EstadoInscripcion.ACTIVA);
+    private final MembresiasActivasServicio membresias;
 
     public EvaluacionPermisos(UsuarioRepositorio usuarioRepo,
                               LeccionRepositorio leccionRepo,
                               ModuloRepositorio moduloRepo,
                               CursoRepositorio cursoRepo,
-                              InscripcionRepositorio inscripcionRepo) {
+                              MembresiasActivasServicio membresias) {
         this.usuarioRepo = usuarioRepo;
         this.leccionRepo = leccionRepo;
         this.moduloRepo = moduloRepo;
         this.cursoRepo = cursoRepo;
-        this.inscripcionRepo = inscripcionRepo;
+        this.membresias = membresias;
     }
 
     public boolean esInstructorDeLeccion(String idLeccion) {
@@ -50,6 +45,16 @@ public class EvaluacionPermisos {
         return optCurso.map(c -> user.getId().equals(c.getIdInstructor())).orElse(false);
     }
 
+    /** true si el usuario autenticado es el indicado (p. ej. el instructor ya conocido del curso). */
+    public boolean esUsuarioActual(String idUsuario) {
+        if (idUsuario == null) return false;
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || auth.getName() == null) return false;
+        return usuarioRepo.findByEmail(auth.getName())
+                .map(u -> idUsuario.equals(u.getId()))
+                .orElse(false);
+    }
+
     public boolean estaInscritoEnCursoDeLeccion(String idLeccion) {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         if (auth == null || auth.getName() == null) return false;
@@ -65,8 +70,6 @@ public class EvaluacionPermisos {
         if (optModulo.isEmpty()) return false;
 
         String idCurso = optModulo.get().getIdCurso();
-        return inscripcionRepo.existsByIdCursoAndIdEstudianteAndEstadoIn(
-                idCurso, user.getId(), ESTADOS_CON_ACCESO
-        );
+        return membresias.estaActivo(idCurso, user.getId());
     }
 }
@@ -1,14 +1,13 @@
 package com.cursosonline.cursosonlinejs.Seguridad;
 
-import java.util.List;
 import java.util.Optional;
 
 import com.cursosonline.cursosonlinejs.Entidades.Curso;
 import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
 import com.cursosonline.cursosonlinejs.Entidades.Leccion;
 import com.cursosonline.cursosonlinejs.Entidades.Modulo;
-import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
 import com.cursosonline.cursosonlinejs.Repositorios.*;
+import com.cursosonline.cursosonlinejs.Servicios.MembresiasActivasServicio;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
@@ -21,25 +20,22 @@ public class IntentoPermisos {
     private final LeccionRepositorio leccionRepo;
     private final ModuloRepositorio moduloRepo;
     private final CursoRepositorio cursoRepo;
-    private final InscripcionRepositorio inscripcionRepo;
+    private final MembresiasActivasServicio membresias;
     private final IntentoRepositorio intentoRepo;
 
-    private static final List<Inscripcion.EstadoInscripcion> ESTADOS_CON_ACCESO =
-            List.of(Inscripcion.EstadoInscripcion.ACTIVA);
-
     public IntentoPermisos(UsuarioRepositorio usuarioRepo,
                            EvaluacionRepositorio evaluacionRepo,
                            LeccionRepositorio leccionRepo,
                            ModuloRepositorio moduloRepo,
                            CursoRepositorio cursoRepo,
-                           InscripcionRepositorio inscripcionRepo,
+                           MembresiasActivasServicio membresias,
                            IntentoRepositorio intentoRepo) {
         this.usuarioRepo = usuarioRepo;
         this.evaluacionRepo = evaluacionRepo;
         this.leccionRepo = leccionRepo;
         this.moduloRepo = moduloRepo;
         this.cursoRepo = cursoRepo;
-        this.inscripcionRepo = inscripcionRepo;
+        this.membresias = membresias;
         this.intentoRepo = intentoRepo;
     }
 
@@ -99,7 +95,7 @@ public class IntentoPermisos {
         if (modulo == null) return false;
         String cursoId = modulo.getIdCurso();
 
-        return inscripcionRepo.existsByIdCursoAndIdEstudianteAndEstadoIn(cursoId, uid, ESTADOS_CON_ACCESO);
+        return membresias.estaActivo(cursoId, uid);
     }
 
     public boolean esDuenoDeIntentoConVisibilidad(String idIntento) {
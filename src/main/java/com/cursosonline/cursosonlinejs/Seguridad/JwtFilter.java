@@ -37,6 +37,9 @@ public class JwtFilter extends OncePerRequestFilter {
                 // 🔓 Endpoints de autenticación
                 p.startsWith("/api/auth/") ||
 
+                // 🔓 Webhooks (firmados por la pasarela)
+                p.startsWith("/api/v1/webhooks/") ||
+
                 // 🔓 Swagger / OpenAPI
                 p.startsWith("/v3/api-docs") ||
                 p.startsWith("/swagger-ui") ||
@@ -1,35 +1,29 @@
 package com.cursosonline.cursosonlinejs.Seguridad;
 
-import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
 import com.cursosonline.cursosonlinejs.Repositorios.CursoRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.ModuloRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.UsuarioRepositorio;
-import com.cursosonline.cursosonlinejs.Repositorios.InscripcionRepositorio;
+import com.cursosonline.cursosonlinejs.Servicios.MembresiasActivasServicio;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-
 @Component("leccionPermisos")
 public class LeccionPermisos {
 
     private final UsuarioRepositorio usuarioRepo;
     private final ModuloRepositorio moduloRepo;
     private final CursoRepositorio cursoRepo;
-    private final InscripcionRepositorio inscripcionRepo;
-
-    private static final List<Inscripcion.EstadoInscripcion> ESTADOS_CON_ACCESO =
-            List.of(Inscripcion.EstadoInscripcion.ACTIVA);
+    private final MembresiasActivasServicio membresias;
 
     public LeccionPermisos(UsuarioRepositorio usuarioRepo,
                            ModuloRepositorio moduloRepo,
                            CursoRepositorio cursoRepo,
-                           InscripcionRepositorio inscripcionRepo) {
+                           MembresiasActivasServicio membresias) {
         this.usuarioRepo = usuarioRepo;
         this.moduloRepo = moduloRepo;
         this.cursoRepo = cursoRepo;
-        this.inscripcionRepo = inscripcionRepo;
+        this.membresias = membresias;
     }
 
     public boolean esInstructorDelModulo(String idModulo) {
@@ -61,8 +55,6 @@ public class LeccionPermisos {
         if (optModulo.isEmpty()) return false;
         String idCurso = optModulo.get().getIdCurso();
 
-        return inscripcionRepo.existsByIdCursoAndIdEstudianteAndEstadoIn(
-                idCurso, user.getId(), ESTADOS_CON_ACCESO
-        );
+        return membresias.estaActivo(idCurso, user.getId());
     }
 }
@@ -51,6 +51,8 @@ public class SecurityConfig {
                 .requestMatchers(HttpMethod.GET, "/api/menu").permitAll()
                 .requestMatchers(HttpMethod.GET, "/api/v1/cursos").permitAll()
                 .requestMatchers(HttpMethod.GET, "/api/v1/certificados/verificar/**").permitAll()
+                // Webhooks de pasarelas: se autentican por firma HMAC, no por JWT
+                .requestMatchers(HttpMethod.POST, "/api/v1/webhooks/**").permitAll()
 
                 // 3) Swagger y OPTIONS
                 .requestMatchers("/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
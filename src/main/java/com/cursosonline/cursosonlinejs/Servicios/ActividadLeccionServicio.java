@@ -0,0 +1,260 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.Leccion;
+import com.cursosonline.cursosonlinejs.Repositorios.LeccionRepositorio;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Actividad de los estudiantes en las lecciones (vistas y lecciones completadas).
+ *
+ * Escribir la inscripción en cada vista de lección sería una escritura por clic. En
+ * cambio los eventos se acumulan en memoria por inscripción (curso + estudiante) y se
+ * vuelcan cada app.actividad.vaciado-ms con un único bulk: como mucho una escritura por
+ * inscripción activa y vaciado, sin importar cuántos eventos haya generado. Cada
+ * inscripción recibe un update por pipeline que se queda con el acceso más reciente
+ * ($max, así un nodo con eventos viejos no pisa la lección actual) y, si completó
+ * lecciones, un $bit or sobre las palabras de leccionesBits que cambian (BitsLecciones).
+ * Ambos suben version pero no updatedAt: los demás cambios de la inscripción son $set
+ * de sus propios campos, y lo que aún haga save() del documento falla en vez de pisar
+ * la actividad.
+ * El porcentaje no se guarda: lo calcula MapaLeccionesServicio al leer.
+ *
+ * Solo se escriben inscripciones ACTIVA: el filtro del update hace de control de
+ * acceso sin leer nada en el camino de la petición. Si el buffer pasa de
+ * app.actividad.max-pendientes se vacía en el momento, y al apagar se vacía entero.
+ */
+@Service
+public class ActividadLeccionServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(ActividadLeccionServicio.class);
+
+    private static final int TAMANO_BULK = 1000;
+    private static final int MAX_LECCIONES_CACHE = 20_000;
+
+    @Value("${app.actividad.max-pendientes:100000}")
+    private int maxPendientes;
+
+    private final MongoTemplate mongoTemplate;
+    private final LeccionRepositorio leccionRepositorio;
+
+    // idCurso:idEstudiante -> actividad acumulada desde el último vaciado
+    private final Map<String, Pendiente> pendientes = new ConcurrentHashMap<>();
+    private final Map<String, LeccionRef> lecciones = new ConcurrentHashMap<>();
+    private final ReentrantLock vaciando = new ReentrantLock();
+
+    public ActividadLeccionServicio(MongoTemplate mongoTemplate,
+                                    LeccionRepositorio leccionRepositorio) {
+        this.mongoTemplate = mongoTemplate;
+        this.leccionRepositorio = leccionRepositorio;
+    }
+
+    /**
+     * Registra que el estudiante abrió (o completó) una lección publicada del módulo.
+     *
+     * @throws NoSuchElementException si la lección no existe, no es del módulo o no está publicada
+     */
+    public void registrar(String idEstudiante, String idModulo, String idLeccion, boolean completada) {
+        LeccionRef lec = leccion(idLeccion);
+        if (lec == null || !lec.idModulo().equals(idModulo)) {
+            throw new NoSuchElementException("Lección no encontrada en el módulo.");
+        }
+        Instant ahora = Instant.now();
+        pendientes.compute(lec.idCurso() + ":" + idEstudiante, (k, p) -> {
+            if (p == null) p = new Pendiente(lec.idCurso(), idEstudiante);
+            p.registrar(lec, ahora, completada);
+            return p;
+        });
+        if (pendientes.size() >= maxPendientes && vaciando.tryLock()) {
+            try {
+                vaciarBuffer();
+            } finally {
+                vaciando.unlock();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.actividad.vaciado-ms:5000}")
+    public void vaciar() {
+        if (!vaciando.tryLock()) return;
+        try {
+            vaciarBuffer();
+        } finally {
+            vaciando.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void alApagar() {
+        vaciando.lock();
+        try {
+            vaciarBuffer();
+        } finally {
+            vaciando.unlock();
+        }
+    }
+
+    // =========================================================
+    // VACIADO
+    // =========================================================
+
+    private void vaciarBuffer() {
+        if (pendientes.isEmpty()) return;
+        List<Pendiente> lote = new ArrayList<>(Math.min(pendientes.size(), TAMANO_BULK));
+        int escritas = 0;
+        for (String clave : pendientes.keySet()) {
+            // remove: lo que llegue desde ahora empieza un pendiente nuevo
+            Pendiente p = pendientes.remove(clave);
+            if (p == null) continue;
+            lote.add(p);
+            if (lote.size() == TAMANO_BULK) {
+                escritas += escribir(lote);
+                lote.clear();
+            }
+        }
+        if (!lote.isEmpty()) escritas += escribir(lote);
+        if (escritas > 0) log.debug("Actividad de lecciones: {} inscripciones actualizadas", escritas);
+    }
+
+    private int escribir(List<Pendiente> lote) {
+        try {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Inscripcion.class);
+            for (Pendiente p : lote) {
+                Query filtro = new Query(Criteria.where("idCurso").is(p.idCurso)
+                        .and("idEstudiante").is(p.idEstudiante)
+                        .and("estado").is(Inscripcion.EstadoInscripcion.ACTIVA));
+                bulk.updateOne(filtro, acceso(p));
+                if (!p.bits.isEmpty()) {
+                    // $bit no existe dentro de un pipeline: va como operación aparte del mismo bulk
+                    Update bits = new Update().inc("version", 1);
+                    p.bits.forEach((palabra, mascara) -> bits.bitwise(BitsLecciones.CAMPO + "." + palabra).or(mascara));
+                    bulk.updateOne(filtro, bits);
+                }
+            }
+            return bulk.execute().getModifiedCount();
+        } catch (RuntimeException ex) {
+            // Se devuelven al buffer para el próximo vaciado
+            log.warn("No se pudo guardar la actividad de {} inscripciones; se reintentará", lote.size(), ex);
+            for (Pendiente p : lote) {
+                pendientes.merge(p.idCurso + ":" + p.idEstudiante, p, Pendiente::unir);
+            }
+            return 0;
+        }
+    }
+
+    private static AggregationUpdate acceso(Pendiente p) {
+        Date ultimo = Date.from(p.ultimoAcceso);
+        Document masReciente = new Document("$gte", List.of(ultimo,
+                new Document("$ifNull", List.of("$lastAccessAt", new Date(0)))));
+
+        Document set = new Document()
+                .append("leccionActualId", new Document("$cond", List.of(masReciente, p.leccionActualId, "$leccionActualId")))
+                .append("moduloActualId", new Document("$cond", List.of(masReciente, p.moduloActualId, "$moduloActualId")))
+                .append("lastAccessAt", new Document("$max", List.of("$lastAccessAt", ultimo)))
+                // Sin updatedAt: la actividad tiene su propia marca (lastAccessAt) y no debe
+                // parecer un cambio de la inscripción para los barridos que miran updatedAt.
+                // La versión sí sube, para que un save() con el documento viejo falle en vez de pisarla
+                .append("version", new Document("$add", List.of(new Document("$ifNull", List.of("$version", 0L)), 1L)));
+        List<AggregationOperation> etapas = List.of(ctx -> new Document("$set", set));
+        return AggregationUpdate.from(etapas);
+    }
+
+    /**
+     * Bits completados que aún no se escribieron para el estudiante en el curso
+     * (palabra -> máscara). Sirve para que una lectura de progreso no retroceda
+     * respecto a lo que el estudiante acaba de marcar.
+     */
+    public Map<Integer, Long> bitsPendientes(String idCurso, String idEstudiante) {
+        // computeIfPresent para copiar bajo el mismo bloqueo con que registrar() modifica
+        Map<Integer, Long> copia = new HashMap<>();
+        pendientes.computeIfPresent(idCurso + ":" + idEstudiante, (k, p) -> {
+            copia.putAll(p.bits);
+            return p;
+        });
+        return copia;
+    }
+
+    // =========================================================
+    // CACHÉS
+    // =========================================================
+
+    private LeccionRef leccion(String idLeccion) {
+        LeccionRef ref = lecciones.get(idLeccion);
+        if (ref != null) return ref;
+        Leccion l = leccionRepositorio.findById(idLeccion).orElse(null);
+        // Lo no publicado no se cachea: puede publicarse en cualquier momento
+        if (l == null || l.getEstado() != Leccion.EstadoPublicacion.PUBLICADO) return null;
+        if (lecciones.size() >= MAX_LECCIONES_CACHE) lecciones.clear();
+        // Sin ordinal todavía (antes de la migración): cuenta como vista pero no marca bit
+        ref = new LeccionRef(l.getId(), l.getIdCurso(), l.getIdModulo(), l.getOrdinal());
+        lecciones.put(idLeccion, ref);
+        return ref;
+    }
+
+    /** Descarta los datos cacheados de una lección (se movió, archivó o borró). */
+    public void invalidarLeccion(String idLeccion) {
+        if (idLeccion != null) lecciones.remove(idLeccion);
+    }
+
+    private record LeccionRef(String id, String idCurso, String idModulo, Integer ordinal) {}
+
+    private static final class Pendiente {
+        final String idCurso;
+        final String idEstudiante;
+        // palabra de leccionesBits -> bits a encender
+        final Map<Integer, Long> bits = new HashMap<>();
+        Instant ultimoAcceso;
+        String leccionActualId;
+        String moduloActualId;
+
+        Pendiente(String idCurso, String idEstudiante) {
+            this.idCurso = idCurso;
+            this.idEstudiante = idEstudiante;
+        }
+
+        void registrar(LeccionRef lec, Instant en, boolean completada) {
+            if (ultimoAcceso == null || !en.isBefore(ultimoAcceso)) {
+                ultimoAcceso = en;
+                leccionActualId = lec.id();
+                moduloActualId = lec.idModulo();
+            }
+            if (completada && lec.ordinal() != null) {
+                bits.merge(BitsLecciones.palabra(lec.ordinal()), BitsLecciones.mascara(lec.ordinal()), (a, b) -> a | b);
+            }
+        }
+
+        /** Une un pendiente que no se pudo escribir con lo llegado después. */
+        static Pendiente unir(Pendiente nuevo, Pendiente fallido) {
+            fallido.bits.forEach((w, m) -> nuevo.bits.merge(w, m, (a, b) -> a | b));
+            if (fallido.ultimoAcceso.isAfter(nuevo.ultimoAcceso)) {
+                nuevo.ultimoAcceso = fallido.ultimoAcceso;
+                nuevo.leccionActualId = fallido.leccionActualId;
+                nuevo.moduloActualId = fallido.moduloActualId;
+            }
+            return nuevo;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.DTO.AutoguardadoResultadoDTO;
+import com.cursosonline.cursosonlinejs.Entidades.Intento;
+import com.cursosonline.cursosonlinejs.Repositorios.IntentoRepositorio;
+import com.mongodb.bulk.BulkWriteResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autoguardado de intentos en progreso.
+ *
+ * En lugar de reescribir el documento completo (como el PATCH clásico), solo se
+ * escriben las respuestas que cambiaron: "respuestas.$" si la pregunta ya tenía
+ * respuesta y $push si no. Todas las operaciones llevan la condición estado=EN_PROGRESO,
+ * así que un intento entregado o expirado nunca se modifica.
+ *
+ * Los autoguardados que llegan seguidos para el mismo intento (dentro de la ventana
+ * configurada) se combinan en una sola escritura; cada petición espera el resultado
+ * de esa escritura. Las escrituras corren en app.intentos.autoguardado.hilos hilos. Si
+ * se atrasan (una evaluación que abre para todo un curso a la vez), la petición espera
+ * como mucho espera-max-ms y luego, si la escritura de su intento todavía no empezó,
+ * la hace ella misma con las mismas condiciones.
+ */
+@Service
+public class AutoguardadoIntentoServicio {
+
+    @Value("${app.intentos.autoguardado.ventana-ms:300}")
+    private long ventanaMs;
+
+    @Value("${app.intentos.autoguardado.espera-max-ms:1000}")
+    private long esperaMaxMs;
+
+    @Value("${app.intentos.autoguardado.hilos:8}")
+    private int hilos;
+
+    private final MongoTemplate mongoTemplate;
+    private final IntentoRepositorio intentoRepositorio;
+
+    private final Map<String, Pendiente> pendientes = new ConcurrentHashMap<>();
+    private ScheduledExecutorService programador;
+
+    public AutoguardadoIntentoServicio(MongoTemplate mongoTemplate,
+                                       IntentoRepositorio intentoRepositorio) {
+        this.mongoTemplate = mongoTemplate;
+        this.intentoRepositorio = intentoRepositorio;
+    }
+
+    @PostConstruct
+    void iniciar() {
+        programador = Executors.newScheduledThreadPool(Math.max(1, hilos), r -> {
+            Thread th = new Thread(r, "autoguardado-intentos");
+            th.setDaemon(true);
+            return th;
+        });
+    }
+
+    @PreDestroy
+    void detener() {
+        // Lo que esté esperando la ventana se escribe ya
+        for (String clave : List.copyOf(pendientes.keySet())) {
+            Pendiente p = pendientes.get(clave);
+            if (p != null) escribir(clave, p);
+        }
+        programador.shutdown();
+    }
+
+    /**
+     * Guarda las respuestas indicadas (solo esas) del intento.
+     *
+     * @throws NoSuchElementException si el intento no existe, no es del estudiante o no es de la evaluación
+     * @throws IllegalStateException  si el intento ya no está EN_PROGRESO
+     * @throws IllegalArgumentException si el tiempo usado excede el límite o faltan ids de pregunta
+     */
+    public AutoguardadoResultadoDTO guardar(String idEvaluacion, String idIntento, String idEstudiante,
+                                            List<Intento.Respuesta> cambios, Integer usedTimeSeconds) {
+        if (cambios != null) {
+            for (Intento.Respuesta r : cambios) {
+                if (r == null || r.getIdPregunta() == null || r.getIdPregunta().isBlank()) {
+                    throw new IllegalArgumentException("Cada respuesta debe indicar idPregunta.");
+                }
+            }
+        }
+        if (usedTimeSeconds != null && usedTimeSeconds < 0) {
+            throw new IllegalArgumentException("usedTimeSeconds no puede ser negativo.");
+        }
+
+        String clave = idIntento + "|" + idEstudiante + "|" + idEvaluacion;
+        Pendiente p = pendientes.compute(clave, (k, actual) -> {
+            Pendiente destino = actual;
+            if (destino == null) {
+                destino = new Pendiente(idEvaluacion, idIntento, idEstudiante);
+                Pendiente programado = destino;
+                programador.schedule(() -> escribir(k, programado), ventanaMs, TimeUnit.MILLISECONDS);
+            }
+            destino.agregar(cambios, usedTimeSeconds);
+            return destino;
+        });
+
+        try {
+            try {
+                return p.resultado.get(esperaMaxMs, TimeUnit.MILLISECONDS);
+            } catch (java.util.concurrent.TimeoutException ex) {
+                // Hilos atrasados: si nadie tomó todavía este pendiente, se escribe aquí.
+                // Si ya se está escribiendo, solo queda esperar esa escritura
+                escribir(clave, p);
+                return p.resultado.get();
+            }
+        } catch (java.util.concurrent.ExecutionException | CompletionException ex) {
+            Throwable causa = ex.getCause() == null ? ex : ex.getCause();
+            if (causa instanceof RuntimeException re) throw re;
+            throw new IllegalStateException("No se pudo guardar el intento.", causa);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Autoguardado interrumpido.");
+        }
+    }
+
+    // =========================================================
+    // ESCRITURA
+    // =========================================================
+
+    private void escribir(String clave, Pendiente p) {
+        // Al quitarlo del mapa ninguna petición nueva puede sumarse a este pendiente
+        if (!pendientes.remove(clave, p)) return;
+        try {
+            p.resultado.complete(escribirDelta(p));
+        } catch (RuntimeException ex) {
+            p.resultado.completeExceptionally(ex);
+        }
+    }
+
+    private AutoguardadoResultadoDTO escribirDelta(Pendiente p) {
+        Instant ahora = Instant.now();
+        // ORDERED: el $set posicional de cada pregunta se evalúa antes que su $push
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Intento.class);
+
+        for (Intento.Respuesta r : p.respuestas.values()) {
+            bulk.updateOne(
+                    new Query(guarda(p).and("respuestas.idPregunta").is(r.getIdPregunta())),
+                    new Update().set("respuestas.$", r));
+            bulk.updateOne(
+                    new Query(guarda(p).and("respuestas.idPregunta").ne(r.getIdPregunta())),
+                    new Update().push("respuestas", r));
+        }
+
+        Update cierre = new Update()
+                .set("updatedAt", ahora)
+                // Invalida cualquier save() con una versión leída antes de este guardado
+                .inc("version", 1);
+        if (p.usedTimeSeconds != null) {
+            cierre.max("usedTimeSeconds", p.usedTimeSeconds);
+        }
+        bulk.updateOne(new Query(guarda(p)), cierre);
+
+        BulkWriteResult res = bulk.execute();
+        if (res.getMatchedCount() == 0) {
+            throw diagnosticar(p);
+        }
+        return new AutoguardadoResultadoDTO(p.respuestas.size(), p.solicitudes, p.usedTimeSeconds, ahora);
+    }
+
+    /**
+     * Condición común a todas las escrituras: intento del estudiante, de la evaluación,
+     * EN_PROGRESO y (si se informa tiempo) dentro del límite.
+     */
+    private static Criteria guarda(Pendiente p) {
+        Criteria c = Criteria.where("_id").is(p.idIntento)
+                .and("idEstudiante").is(p.idEstudiante)
+                .and("idEvaluacion").is(p.idEvaluacion)
+                .and("estado").is(Intento.EstadoIntento.EN_PROGRESO);
+        if (p.usedTimeSeconds != null) {
+            c = c.orOperator(
+                    Criteria.where("timeLimitSeconds").is(null),
+                    Criteria.where("timeLimitSeconds").lte(0),
+                    Criteria.where("timeLimitSeconds").gte(p.usedTimeSeconds));
+        }
+        return c;
+    }
+
+    private RuntimeException diagnosticar(Pendiente p) {
+        var opt = intentoRepositorio.findByIdAndIdEstudiante(p.idIntento, p.idEstudiante);
+        if (opt.isEmpty() || !p.idEvaluacion.equals(opt.get().getIdEvaluacion())) {
+            return new NoSuchElementException("Intento no encontrado");
+        }
+        if (opt.get().getEstado() != Intento.EstadoIntento.EN_PROGRESO) {
+            return new IllegalStateException("Solo se puede modificar un intento EN_PROGRESO.");
+        }
+        return new IllegalArgumentException("El tiempo usado excede el límite configurado.");
+    }
+
+    /**
+     * Cambios acumulados de un intento mientras dura la ventana. Solo se modifica
+     * dentro de ConcurrentHashMap.compute, que ya serializa el acceso por clave.
+     */
+    private static final class Pendiente {
+        final String idEvaluacion;
+        final String idIntento;
+        final String idEstudiante;
+        final Map<String, Intento.Respuesta> respuestas = new LinkedHashMap<>();
+        final CompletableFuture<AutoguardadoResultadoDTO> resultado = new CompletableFuture<>();
+        Integer usedTimeSeconds;
+        int solicitudes;
+
+        Pendiente(String idEvaluacion, String idIntento, String idEstudiante) {
+            this.idEvaluacion = idEvaluacion;
+            this.idIntento = idIntento;
+            this.idEstudiante = idEstudiante;
+        }
+
+        void agregar(List<Intento.Respuesta> cambios, Integer used) {
+            solicitudes++;
+            if (cambios != null) {
+                for (Intento.Respuesta r : new ArrayList<>(cambios)) {
+                    // La última versión de cada pregunta es la que se escribe
+                    respuestas.put(r.getIdPregunta(), r);
+                }
+            }
+            if (used != null && (usedTimeSeconds == null || used > usedTimeSeconds)) {
+                usedTimeSeconds = used;
+            }
+        }
+    }
+}
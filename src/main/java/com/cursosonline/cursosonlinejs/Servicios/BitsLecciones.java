@@ -0,0 +1,71 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Lecciones completadas como mapa de bits.
+ *
+ * El bit {@code ordinal} de la lección vive en la palabra {@code ordinal / 64}, que se
+ * guarda en Inscripcion.leccionesBits bajo la clave "palabra" (subdocumento, no array:
+ * $bit sobre un campo que no existe lo crea desde 0, sobre un hueco de array fallaría).
+ * Marcar una lección es un $bit or sobre una sola palabra.
+ */
+public final class BitsLecciones {
+
+    public static final String CAMPO = "leccionesBits";
+
+    private BitsLecciones() {}
+
+    public static int palabra(int ordinal) {
+        return ordinal >>> 6;
+    }
+
+    public static long mascara(int ordinal) {
+        return 1L << (ordinal & 63);
+    }
+
+    /** Ruta del campo a modificar con $bit para este ordinal. */
+    public static String ruta(int ordinal) {
+        return CAMPO + "." + palabra(ordinal);
+    }
+
+    /** Palabras guardadas en la inscripción como arreglo denso (null o vacío = sin bits). */
+    public static long[] leer(Map<String, ?> guardado) {
+        if (guardado == null || guardado.isEmpty()) return new long[0];
+        int max = -1;
+        for (String k : guardado.keySet()) max = Math.max(max, Integer.parseInt(k));
+        long[] bits = new long[max + 1];
+        guardado.forEach((k, v) -> {
+            if (v instanceof Number n) bits[Integer.parseInt(k)] = n.longValue();
+        });
+        return bits;
+    }
+
+    public static boolean contiene(long[] bits, int ordinal) {
+        int w = palabra(ordinal);
+        return w < bits.length && (bits[w] & mascara(ordinal)) != 0;
+    }
+
+    public static long[] con(long[] bits, int ordinal) {
+        int w = palabra(ordinal);
+        long[] out = Arrays.copyOf(bits, Math.max(bits.length, w + 1));
+        out[w] |= mascara(ordinal);
+        return out;
+    }
+
+    /** Cantidad de bits encendidos en ambos arreglos. */
+    public static int contarComunes(long[] a, long[] b) {
+        int n = 0;
+        for (int i = 0, len = Math.min(a.length, b.length); i < len; i++) {
+            n += Long.bitCount(a[i] & b[i]);
+        }
+        return n;
+    }
+
+    public static int contar(long[] bits) {
+        int n = 0;
+        for (long w : bits) n += Long.bitCount(w);
+        return n;
+    }
+}
@@ -1,5 +1,6 @@
 package com.cursosonline.cursosonlinejs.Servicios;
 
+import com.cursosonline.cursosonlinejs.DTO.CalificacionLoteResultadoDTO;
 import com.cursosonline.cursosonlinejs.Entidades.Calificacion;
 import com.cursosonline.cursosonlinejs.Entidades.Curso;
 import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
@@ -8,18 +9,36 @@ import com.cursosonline.cursosonlinejs.Entidades.Intento.EstadoIntento;
 import com.cursosonline.cursosonlinejs.Entidades.Leccion;
 import com.cursosonline.cursosonlinejs.Entidades.Modulo;
 import com.cursosonline.cursosonlinejs.Repositorios.*;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class CalificacionServicio {
 
+    private static final Logger log = LoggerFactory.getLogger(CalificacionServicio.class);
+
     private final CalificacionRepositorio calificacionRepositorio;
     private final IntentoRepositorio intentoRepositorio;
     private final EvaluacionRepositorio evaluacionRepositorio;
@@ -27,6 +46,7 @@ public class CalificacionServicio {
     private final ModuloRepositorio moduloRepositorio;
     private final CursoRepositorio cursoRepositorio;
     private final ProgresoCursoServicio progresoCursoServicio;
+    private final MongoTemplate mongoTemplate;
 
     public CalificacionServicio(CalificacionRepositorio calificacionRepositorio,
                                 IntentoRepositorio intentoRepositorio,
@@ -34,7 +54,8 @@ public class CalificacionServicio {
                                 LeccionRepositorio leccionRepositorio,
                                 ModuloRepositorio moduloRepositorio,
                                 CursoRepositorio cursoRepositorio,
-                                ProgresoCursoServicio progresoCursoServicio) {
+                                ProgresoCursoServicio progresoCursoServicio,
+                                MongoTemplate mongoTemplate) {
         this.calificacionRepositorio = calificacionRepositorio;
         this.intentoRepositorio = intentoRepositorio;
         this.evaluacionRepositorio = evaluacionRepositorio;
@@ -42,6 +63,7 @@ public class CalificacionServicio {
         this.moduloRepositorio = moduloRepositorio;
         this.cursoRepositorio = cursoRepositorio;
         this.progresoCursoServicio = progresoCursoServicio;
+        this.mongoTemplate = mongoTemplate;
     }
 
     public Optional<Calificacion> calificar(String idIntento,
@@ -54,6 +76,12 @@ public class CalificacionServicio {
 
         Intento intento = intentoOpt.get();
         assertNoArchivado(intento.getIdEvaluacion());
+        if (intento.getEstado() != EstadoIntento.ENVIADO) {
+            throw new IllegalStateException("Solo se puede calificar un intento ENVIADO.");
+        }
+        if (ColaRevisionServicio.reservadoPorOtro(intento, calificadoPor, Instant.now())) {
+            throw new IllegalStateException("Otro revisor tiene reservado este intento.");
+        }
 
         BigDecimal maximo = (intento.getPuntajeMaximo() != null) ? intento.getPuntajeMaximo() : BigDecimal.TEN;
 
@@ -84,11 +112,252 @@ public class CalificacionServicio {
         intento.setCalificadoAt(Instant.now());
         // 👉 NUEVO
         intento.setIdCalificacion(creada.getId());
+        intento.setRevisionAsignadaA(null);
+        intento.setRevisionLeaseHasta(null);
         intentoRepositorio.save(intento);
 
         return Optional.of(creada);
     }
 
+    /**
+     * Califica muchos intentos de una evaluación de una vez.
+     *
+     * Los intentos se leen con una sola consulta $in, las calificaciones se insertan con un
+     * bulkWrite y los intentos se actualizan con otro. Cada ítem se valida por separado: un
+     * ítem inválido, ya calificado o que no está ENVIADO se informa como ERROR y no impide
+     * el resto. El índice
+     * único sobre idIntento protege contra dos lotes que califiquen el mismo intento a la vez,
+     * y una calificación cuyo intento no se pudo enlazar se borra y se informa como ERROR.
+     */
+    public CalificacionLoteResultadoDTO calificarLote(String idEvaluacion,
+                                                      List<ItemLote> items,
+                                                      String calificadoPor) {
+        assertNoArchivado(idEvaluacion);
+
+        List<String> ids = items.stream()
+                .map(ItemLote::idIntento)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+
+        Query q = new Query(Criteria.where("_id").in(ids).and("idEvaluacion").is(idEvaluacion));
+        q.fields().include("idEvaluacion", "idEstudiante", "puntajeMaximo", "idCalificacion", "estado",
+                "revisionAsignadaA", "revisionLeaseHasta");
+        Map<String, Intento> intentos = new HashMap<>();
+        for (Intento i : mongoTemplate.find(q, Intento.class)) intentos.put(i.getId(), i);
+
+        CalificacionLoteResultadoDTO.Item[] resultados = new CalificacionLoteResultadoDTO.Item[items.size()];
+        List<Calificacion> nuevas = new ArrayList<>();
+        List<Integer> posiciones = new ArrayList<>();
+        Set<String> vistos = new HashSet<>();
+        Instant ahora = Instant.now();
+
+        for (int n = 0; n < items.size(); n++) {
+            ItemLote item = items.get(n);
+            String idIntento = item.idIntento();
+            try {
+                if (idIntento == null || idIntento.isBlank()) {
+                    throw new IllegalArgumentException("idIntento es obligatorio.");
+                }
+                if (!vistos.add(idIntento)) {
+                    throw new IllegalArgumentException("El intento aparece más de una vez en el lote.");
+                }
+                Intento intento = intentos.get(idIntento);
+                if (intento == null) {
+                    throw new NoSuchElementException("Intento no encontrado en esta evaluación.");
+                }
+                if (intento.getIdCalificacion() != null) {
+                    throw new IllegalStateException("El intento ya está calificado.");
+                }
+                if (intento.getEstado() != EstadoIntento.ENVIADO) {
+                    throw new IllegalStateException("Solo se puede calificar un intento ENVIADO.");
+                }
+                if (ColaRevisionServicio.reservadoPorOtro(intento, calificadoPor, ahora)) {
+                    throw new IllegalStateException("Otro revisor tiene reservado este intento.");
+                }
+                nuevas.add(nuevaCalificacion(intento, item, calificadoPor, ahora));
+                posiciones.add(n);
+            } catch (RuntimeException ex) {
+                resultados[n] = new CalificacionLoteResultadoDTO.Item(idIntento, "ERROR", null, ex.getMessage());
+            }
+        }
+
+        if (!nuevas.isEmpty()) {
+            Map<Integer, String> fallidas = insertarCalificaciones(nuevas);
+
+            BulkOperations bulkIntentos = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Intento.class);
+            List<Integer> enlazar = new ArrayList<>();
+            for (int k = 0; k < nuevas.size(); k++) {
+                Calificacion c = nuevas.get(k);
+                int n = posiciones.get(k);
+                if (fallidas.containsKey(k)) {
+                    resultados[n] = new CalificacionLoteResultadoDTO.Item(
+                            c.getIdIntento(), "ERROR", null, fallidas.get(k));
+                    continue;
+                }
+                bulkIntentos.updateOne(
+                        // Condicional también sobre el estado: un intento que se reabrió o sigue
+                        // en progreso no se califica y su calificación se descarta
+                        new Query(Criteria.where("_id").is(c.getIdIntento())
+                                .and("idCalificacion").is(null)
+                                .and("estado").is(EstadoIntento.ENVIADO)),
+                        new Update()
+                                .set("puntaje", c.getPuntaje())
+                                .set("estado", EstadoIntento.CALIFICADO)
+                                .set("calificadoAt", ahora)
+                                .set("idCalificacion", c.getId())
+                                .unset("revisionAsignadaA")
+                                .unset("revisionLeaseHasta")
+                                .set("updatedAt", ahora)
+                                .inc("version", 1));
+                enlazar.add(k);
+            }
+
+            Set<Integer> sinEnlazar = enlazarIntentos(bulkIntentos, nuevas, enlazar);
+            for (int k : enlazar) {
+                Calificacion c = nuevas.get(k);
+                resultados[posiciones.get(k)] = sinEnlazar.contains(k)
+                        ? new CalificacionLoteResultadoDTO.Item(c.getIdIntento(), "ERROR", null,
+                                "El intento cambió mientras se calificaba; no se guardó la calificación.")
+                        : new CalificacionLoteResultadoDTO.Item(c.getIdIntento(), "CREADA", c.getId(), null);
+            }
+        }
+
+        int creadas = 0;
+        for (CalificacionLoteResultadoDTO.Item r : resultados) {
+            if ("CREADA".equals(r.estado())) creadas++;
+        }
+        return new CalificacionLoteResultadoDTO(items.size(), creadas, items.size() - creadas, List.of(resultados));
+    }
+
+    private static Calificacion nuevaCalificacion(Intento intento, ItemLote item, String calificadoPor, Instant ahora) {
+        BigDecimal maximo = (intento.getPuntajeMaximo() != null) ? intento.getPuntajeMaximo() : BigDecimal.TEN;
+
+        BigDecimal puntaje = item.puntaje();
+        if (puntaje == null && item.rubrica() != null && !item.rubrica().isEmpty()) {
+            // Sin puntaje explícito, la nota es la suma de la rúbrica
+            puntaje = item.rubrica().stream()
+                    .map(Calificacion.ItemRubrica::getPuntaje)
+                    .filter(Objects::nonNull)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+        }
+        if (puntaje == null) puntaje = BigDecimal.ZERO;
+        if (puntaje.compareTo(BigDecimal.ZERO) < 0)
+            throw new IllegalArgumentException("El puntaje no puede ser negativo.");
+        if (puntaje.compareTo(maximo) > 0)
+            throw new IllegalArgumentException("El puntaje no puede ser mayor al puntaje máximo (" + maximo + ").");
+        if (item.rubrica() != null) {
+            for (Calificacion.ItemRubrica r : item.rubrica()) {
+                if (r == null) continue;
+                if (r.getPuntaje() != null && r.getPuntaje().signum() < 0)
+                    throw new IllegalArgumentException("El puntaje de un criterio no puede ser negativo.");
+                if (r.getPuntaje() != null && r.getMaximo() != null && r.getPuntaje().compareTo(r.getMaximo()) > 0)
+                    throw new IllegalArgumentException("El criterio '" + r.getCriterio() + "' supera su máximo.");
+            }
+        }
+
+        Calificacion c = new Calificacion();
+        // El id se genera aquí para poder enlazar el intento en el mismo lote
+        c.setId(new ObjectId().toHexString());
+        c.setIdIntento(intento.getId());
+        c.setIdEvaluacion(intento.getIdEvaluacion());
+        c.setIdEstudiante(intento.getIdEstudiante());
+        c.setPuntaje(puntaje);
+        c.setPuntajeMaximo(maximo);
+        c.setPorcentaje(maximo.signum() == 0
+                ? BigDecimal.ZERO
+                : puntaje.multiply(BigDecimal.valueOf(100)).divide(maximo, 2, RoundingMode.HALF_UP));
+        c.setFeedback(item.feedback());
+        c.setRubrica(item.rubrica());
+        c.setCalificadoPor(calificadoPor);
+        c.setEstado(Calificacion.EstadoCalificacion.PENDIENTE);
+        c.setCalificadoAt(null);
+        c.setCreatedAt(ahora);
+        c.setUpdatedAt(ahora);
+        // Versión inicial explícita: el insert en bloque no la inicializa y un save() posterior
+        // trataría el documento como nuevo
+        c.setVersion(0L);
+        return c;
+    }
+
+    /**
+     * Ejecuta el bulk que enlaza cada intento con su calificación y devuelve las posiciones
+     * que no quedaron enlazadas (el intento se calificó por otra vía entre la lectura y la
+     * escritura, o falló el bulk). Sus calificaciones se borran para no dejar huérfanas.
+     *
+     * El bulk solo informa el total de coincidencias, así que si no cuadra se relee qué
+     * intentos apuntan a la calificación de este lote.
+     */
+    private Set<Integer> enlazarIntentos(BulkOperations bulk, List<Calificacion> nuevas, List<Integer> enlazar) {
+        if (enlazar.isEmpty()) return Set.of();
+        RuntimeException error = null;
+        try {
+            if (bulk.execute().getMatchedCount() == enlazar.size()) return Set.of();
+        } catch (RuntimeException ex) {
+            // Un fallo parcial también puede haber aplicado parte de las actualizaciones
+            error = ex;
+        }
+
+        Set<Integer> sinEnlazar = new HashSet<>();
+        try {
+            Map<String, Integer> porIntento = new HashMap<>();
+            for (int k : enlazar) porIntento.put(nuevas.get(k).getIdIntento(), k);
+            Query q = new Query(Criteria.where("_id").in(porIntento.keySet()));
+            q.fields().include("idCalificacion");
+            Map<String, String> enlazadas = new HashMap<>();
+            for (Intento i : mongoTemplate.find(q, Intento.class)) {
+                if (i.getIdCalificacion() != null) enlazadas.put(i.getId(), i.getIdCalificacion());
+            }
+            for (int k : enlazar) {
+                Calificacion c = nuevas.get(k);
+                if (!c.getId().equals(enlazadas.get(c.getIdIntento()))) sinEnlazar.add(k);
+            }
+        } catch (RuntimeException ex) {
+            // Sin poder comprobarlo, ninguna del lote se da por buena
+            if (error != null) ex.addSuppressed(error);
+            error = ex;
+            sinEnlazar.addAll(enlazar);
+        }
+
+        if (!sinEnlazar.isEmpty()) {
+            List<String> huerfanas = sinEnlazar.stream().map(k -> nuevas.get(k).getId()).toList();
+            try {
+                mongoTemplate.remove(new Query(Criteria.where("_id").in(huerfanas)), Calificacion.class);
+            } catch (RuntimeException ex) {
+                log.error("No se pudieron borrar {} calificaciones sin intento enlazado: {}",
+                        huerfanas.size(), huerfanas, ex);
+            }
+        }
+        if (error != null) {
+            log.warn("Falló el enlace de intentos del lote; {} calificaciones descartadas", sinEnlazar.size(), error);
+        }
+        return sinEnlazar;
+    }
+
+    /** Inserta en bloque y devuelve las posiciones que fallaron con su motivo. */
+    private Map<Integer, String> insertarCalificaciones(List<Calificacion> nuevas) {
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Calificacion.class)
+                    .insert(nuevas)
+                    .execute();
+            return Map.of();
+        } catch (BulkOperationException ex) {
+            Map<Integer, String> fallidas = new HashMap<>();
+            for (BulkWriteError err : ex.getErrors()) {
+                // 11000: clave duplicada en idIntento => otro lote lo calificó antes
+                fallidas.put(err.getIndex(), err.getCode() == 11000
+                        ? "El intento ya está calificado."
+                        : err.getMessage());
+            }
+            return fallidas;
+        }
+    }
+
+    public record ItemLote(String idIntento,
+                           BigDecimal puntaje,
+                           String feedback,
+                           List<Calificacion.ItemRubrica> rubrica) {}
+
     public Optional<Calificacion> buscarPorId(String id) { 
         return calificacionRepositorio.findById(id); 
     }
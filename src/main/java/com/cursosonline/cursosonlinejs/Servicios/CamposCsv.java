@@ -0,0 +1,62 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Lectura de líneas CSV simples (sin saltos de línea dentro de un campo). */
+final class CamposCsv {
+
+    private CamposCsv() {}
+
+    /** Excel con configuración regional en español exporta con ';'. */
+    static char separador(String encabezado) {
+        return encabezado.indexOf(';') >= 0 && encabezado.indexOf(',') < 0 ? ';' : ',';
+    }
+
+    /** Campos de una línea CSV (comillas dobles con "" como escape). */
+    static List<String> campos(String linea, char separador) {
+        List<String> out = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char ch = linea.charAt(i);
+            if (entreComillas) {
+                if (ch == '"') {
+                    if (i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                        sb.append('"');
+                        i++;
+                    } else {
+                        entreComillas = false;
+                    }
+                } else {
+                    sb.append(ch);
+                }
+            } else if (ch == '"') {
+                entreComillas = true;
+            } else if (ch == separador) {
+                out.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(ch);
+            }
+        }
+        out.add(sb.toString());
+        return out;
+    }
+
+    static int columna(List<String> encabezado, String... nombres) {
+        for (int i = 0; i < encabezado.size(); i++) {
+            String h = encabezado.get(i).trim();
+            for (String n : nombres) {
+                if (h.equalsIgnoreCase(n)) return i;
+            }
+        }
+        return -1;
+    }
+
+    static String valor(List<String> campos, int i) {
+        if (i < 0 || i >= campos.size()) return null;
+        String v = campos.get(i).trim();
+        return v.isEmpty() ? null : v;
+    }
+}
@@ -1,5 +1,6 @@
 package com.cursosonline.cursosonlinejs.Servicios;
 
+import com.cursosonline.cursosonlinejs.DTO.EmisionCertificadosLoteDTO;
 import com.cursosonline.cursosonlinejs.Entidades.Certificado;
 import com.cursosonline.cursosonlinejs.Entidades.Curso;
 import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
@@ -8,47 +9,82 @@ import com.cursosonline.cursosonlinejs.Repositorios.CertificadoRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.CursoRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.InscripcionRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.UsuarioRepositorio;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
-import java.security.SecureRandom;
 import java.time.Instant;
-import java.util.HexFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 
 @Service
 public class CertificadoServicio {
 
+    private static final Logger log = LoggerFactory.getLogger(CertificadoServicio.class);
+
+    private static final int LOTE = 500;
+
+    // Una inscripción dada de baja no certifica aunque conserve aprobadoFinal = true
+    private static final List<Inscripcion.EstadoInscripcion> ESTADOS_SIN_CERTIFICADO = List.of(
+            Inscripcion.EstadoInscripcion.CANCELADA,
+            Inscripcion.EstadoInscripcion.EXPIRADA,
+            Inscripcion.EstadoInscripcion.SUSPENDIDA);
+
     private final CertificadoRepositorio repo;
     private final InscripcionRepositorio inscRepo;
     private final CursoRepositorio cursoRepo;
     private final UsuarioRepositorio usuarioRepo;
     private final InscripcionServicio inscripcionServicio;
+    private final RenderCertificadosServicio renderCertificados;
+    private final MongoTemplate mongoTemplate;
+    private final VerificacionCertificadoServicio verificacion;
 
-    private final SecureRandom rnd = new SecureRandom();
-    private final HexFormat hex = HexFormat.of().withUpperCase();
+    @Value("${app.base-url:http://localhost:8080}")
+    private String baseUrl;
 
     public CertificadoServicio(CertificadoRepositorio repo,
                                InscripcionRepositorio inscRepo,
                                CursoRepositorio cursoRepo,
                                UsuarioRepositorio usuarioRepo,
-                               InscripcionServicio inscripcionServicio) {
+                               InscripcionServicio inscripcionServicio,
+                               RenderCertificadosServicio renderCertificados,
+                               MongoTemplate mongoTemplate,
+                               VerificacionCertificadoServicio verificacion) {
         this.repo = repo;
         this.inscRepo = inscRepo;
         this.cursoRepo = cursoRepo;
         this.usuarioRepo = usuarioRepo;
         this.inscripcionServicio = inscripcionServicio;
+        this.renderCertificados = renderCertificados;
+        this.mongoTemplate = mongoTemplate;
+        this.verificacion = verificacion;
     }
 
     /**
      * Regla actual de elegibilidad:
      * - Inscripción COMPLETADA o aprobadoFinal = true.
+     * - Y no CANCELADA, EXPIRADA ni SUSPENDIDA.
      * Más adelante aquí podemos enganchar la lógica de módulos/lecciones.
      */
     public boolean esElegible(String idCurso, String idEstudiante) {
         return inscRepo.findByIdCursoAndIdEstudiante(idCurso, idEstudiante)
-                .map(i -> i.getEstado() == Inscripcion.EstadoInscripcion.COMPLETADA
-                        || Boolean.TRUE.equals(i.getAprobadoFinal()))
+                .map(i -> !ESTADOS_SIN_CERTIFICADO.contains(i.getEstado())
+                        && (i.getEstado() == Inscripcion.EstadoInscripcion.COMPLETADA
+                        || Boolean.TRUE.equals(i.getAprobadoFinal())))
                 .orElse(false);
     }
 
@@ -71,6 +107,8 @@ public class CertificadoServicio {
 
         // Vincular en la inscripción
         inscripcionServicio.vincularCertificado(idCurso, idEstudiante, guardado.getId());
+        // El PDF se genera en segundo plano y rellena pdfUrl
+        renderCertificados.encolar(guardado.getId());
 
         return Optional.of(guardado);
     }
@@ -91,18 +129,170 @@ public class CertificadoServicio {
 
         // También lo vinculamos a la inscripción para mantener coherencia
         inscripcionServicio.vincularCertificado(idCurso, idEstudiante, guardado.getId());
+        renderCertificados.encolar(guardado.getId());
 
         return Optional.of(guardado);
     }
 
+    // ----------------- EMISIÓN EN LOTE -----------------
+
+    /**
+     * Emite los certificados de todos los elegibles del curso que aún no tienen uno.
+     *
+     * En vez de repetir emitir() por alumno (elegibilidad, existencia, curso, instructor,
+     * alumno, insert y update de la inscripción), se recorren las
+     * inscripciones elegibles por lotes: los alumnos se leen con un $in, los
+     * certificados se insertan con un bulk UNORDERED y las inscripciones se vinculan con
+     * otro. Los que ya tenían certificado se descartan antes de insertar con una consulta
+     * por lote; el índice único curso_estudiante_uq (creado en IndicesMongoConfig) frena
+     * al que emitió otra petición a la vez. En los dos casos solo se repara el vínculo.
+     */
+    public EmisionCertificadosLoteDTO emitirCurso(String idCurso) {
+        Curso curso = cursoRepo.findById(idCurso)
+                .orElseThrow(() -> new NoSuchElementException("Curso no encontrado."));
+        String instructor = curso.getIdInstructor() == null ? null
+                : usuarioRepo.findById(curso.getIdInstructor()).map(this::obtenerNombreVisible).orElse(null);
+
+        List<EmisionCertificadosLoteDTO.Item> items = new ArrayList<>();
+        String ultimo = null;
+        while (true) {
+            Criteria c = Criteria.where("idCurso").is(idCurso)
+                    .and("certificadoId").is(null)
+                    .and("estado").nin(ESTADOS_SIN_CERTIFICADO)
+                    .orOperator(Criteria.where("estado").is(Inscripcion.EstadoInscripcion.COMPLETADA),
+                            Criteria.where("aprobadoFinal").is(true));
+            // Paginación por _id: el propio lote cambia certificadoId de lo ya leído
+            if (ultimo != null) c = c.and("_id").gt(ultimo);
+            Query q = new Query(c).with(Sort.by("_id")).limit(LOTE);
+            q.fields().include("_id").include("idEstudiante");
+            List<Inscripcion> lote = mongoTemplate.find(q, Inscripcion.class);
+            if (lote.isEmpty()) break;
+            emitirLote(curso, instructor, lote, items);
+            ultimo = lote.get(lote.size() - 1).getId();
+            if (lote.size() < LOTE) break;
+        }
+
+        int emitidos = 0, existentes = 0, fallidos = 0;
+        for (EmisionCertificadosLoteDTO.Item i : items) {
+            switch (i.estado()) {
+                case "EMITIDO" -> emitidos++;
+                case "YA_EMITIDO" -> existentes++;
+                default -> fallidos++;
+            }
+        }
+        log.info("Emisión en lote del curso {}: {} elegibles, {} emitidos, {} ya tenían, {} con error",
+                idCurso, items.size(), emitidos, existentes, fallidos);
+        return new EmisionCertificadosLoteDTO(items.size(), emitidos, existentes, fallidos, items);
+    }
+
+    private void emitirLote(Curso curso, String instructor, List<Inscripcion> lote,
+                            List<EmisionCertificadosLoteDTO.Item> items) {
+        String idCurso = curso.getId();
+        // Los que ya tienen certificado no se insertan: solo se repara el vínculo
+        Map<String, String> existentes = certificadosDe(idCurso,
+                lote.stream().map(Inscripcion::getIdEstudiante).toList());
+
+        List<Inscripcion> aEmitir = new ArrayList<>(lote.size());
+        for (Inscripcion insc : lote) {
+            if (!existentes.containsKey(insc.getIdEstudiante())) aEmitir.add(insc);
+        }
+        Map<String, Usuario> usuarios = new HashMap<>();
+        if (!aEmitir.isEmpty()) {
+            Query qUsuarios = new Query(Criteria.where("_id").in(aEmitir.stream().map(Inscripcion::getIdEstudiante).toList()));
+            qUsuarios.fields().include("_id").include("nombre").include("email");
+            for (Usuario u : mongoTemplate.find(qUsuarios, Usuario.class)) usuarios.put(u.getId(), u);
+        }
+
+        Instant ahora = Instant.now();
+        List<Certificado> nuevos = new ArrayList<>(aEmitir.size());
+        for (Inscripcion insc : aEmitir) {
+            Usuario est = usuarios.get(insc.getIdEstudiante());
+            Certificado cert = nuevoCertificado(idCurso, insc.getIdEstudiante(), curso.getTitulo(), instructor,
+                    est != null ? obtenerNombreVisible(est) : null, ahora);
+            // El insert en bloque no pasa por la auditoría ni inicializa la versión
+            cert.setCreatedAt(ahora);
+            cert.setUpdatedAt(ahora);
+            cert.setVersion(0L);
+            nuevos.add(cert);
+        }
+
+        Map<Integer, BulkWriteError> fallidos = new HashMap<>();
+        if (!nuevos.isEmpty()) {
+            try {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Certificado.class)
+                        .insert(nuevos)
+                        .execute();
+            } catch (BulkOperationException ex) {
+                for (BulkWriteError err : ex.getErrors()) fallidos.put(err.getIndex(), err);
+            }
+        }
+
+        // idInscripcion → resultado de los que se intentaron insertar
+        Map<String, EmisionCertificadosLoteDTO.Item> resultados = new HashMap<>();
+        // idInscripcion → idCertificado a vincular
+        Map<String, String> vinculos = new HashMap<>();
+        List<String> creados = new ArrayList<>(nuevos.size());
+        // Los que chocaron con curso_estudiante_uq: otra emisión se adelantó entre la consulta y el insert
+        List<String> adelantados = new ArrayList<>();
+        for (int i = 0; i < nuevos.size(); i++) {
+            Inscripcion insc = aEmitir.get(i);
+            Certificado cert = nuevos.get(i);
+            BulkWriteError err = fallidos.get(i);
+            if (err == null) {
+                vinculos.put(insc.getId(), cert.getId());
+                creados.add(cert.getId());
+                resultados.put(insc.getId(), new EmisionCertificadosLoteDTO.Item(insc.getIdEstudiante(), "EMITIDO", cert.getId(), null));
+            } else if (err.getCode() == 11000 && String.valueOf(err.getMessage()).contains("curso_estudiante_uq")) {
+                adelantados.add(insc.getIdEstudiante());
+            } else {
+                resultados.put(insc.getId(), new EmisionCertificadosLoteDTO.Item(insc.getIdEstudiante(), "ERROR", null,
+                        "No se pudo emitir el certificado: " + err.getMessage()));
+            }
+        }
+        if (!adelantados.isEmpty()) existentes.putAll(certificadosDe(idCurso, adelantados));
+
+        for (Inscripcion insc : lote) {
+            EmisionCertificadosLoteDTO.Item item = resultados.get(insc.getId());
+            if (item == null) {
+                String idCertificado = existentes.get(insc.getIdEstudiante());
+                if (idCertificado != null) vinculos.put(insc.getId(), idCertificado);
+                item = new EmisionCertificadosLoteDTO.Item(insc.getIdEstudiante(), "YA_EMITIDO",
+                        idCertificado, "El estudiante ya tenía certificado en este curso.");
+            }
+            items.add(item);
+        }
+
+        if (!vinculos.isEmpty()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Inscripcion.class);
+            vinculos.forEach((idInscripcion, idCertificado) -> bulk.updateOne(
+                    new Query(Criteria.where("_id").is(idInscripcion)),
+                    new Update()
+                            .set("certificadoId", idCertificado)
+                            .set("updatedAt", ahora)
+                            .inc("version", 1)));
+            bulk.execute();
+        }
+        creados.forEach(renderCertificados::encolar);
+    }
+
+    /** idEstudiante → idCertificado de los estudiantes dados que ya tienen certificado en el curso. */
+    private Map<String, String> certificadosDe(String idCurso, List<String> idsEstudiante) {
+        Query q = new Query(Criteria.where("idCurso").is(idCurso).and("idEstudiante").in(idsEstudiante));
+        q.fields().include("_id").include("idEstudiante");
+        Map<String, String> out = new HashMap<>();
+        for (Certificado cert : mongoTemplate.find(q, Certificado.class)) out.put(cert.getIdEstudiante(), cert.getId());
+        return out;
+    }
+
     // ----------------- CONSULTAS / GESTIÓN -----------------
 
     public Optional<Certificado> buscarPorId(String id) {
         return repo.findById(id);
     }
 
+    /** Consulta pública: rechaza sin ir a la base los códigos con firma inválida. */
     public Optional<Certificado> buscarPorCodigo(String codigo) {
-        return repo.findByCodigoVerificacion(codigo);
+        return verificacion.verificar(codigo);
     }
 
     public List<Certificado> listarPorCurso(String idCurso) {
@@ -117,48 +307,52 @@ public class CertificadoServicio {
         return repo.findById(id).map(c -> {
             c.setEstado(Certificado.Estado.REVOCADO);
             c.setRevocadoAt(Instant.now());
-            return repo.save(c);
+            Certificado guardado = repo.save(c);
+            verificacion.invalidar(guardado.getCodigoVerificacion());
+            return guardado;
         });
     }
 
     public void eliminar(String id) {
+        repo.findById(id).ifPresent(c -> verificacion.invalidar(c.getCodigoVerificacion()));
         repo.deleteById(id);
     }
 
     // ----------------- HELPERS PRIVADOS -----------------
 
     private Certificado crearCertificadoBasico(String idCurso, String idEstudiante) {
+        Optional<Curso> curso = cursoRepo.findById(idCurso);
+        String instructor = curso.map(Curso::getIdInstructor)
+                .flatMap(usuarioRepo::findById)
+                .map(this::obtenerNombreVisible)
+                .orElse(null);
+        String estudiante = usuarioRepo.findById(idEstudiante).map(this::obtenerNombreVisible).orElse(null);
+
+        return nuevoCertificado(idCurso, idEstudiante, curso.map(Curso::getTitulo).orElse(null), instructor,
+                estudiante, Instant.now());
+    }
+
+    private Certificado nuevoCertificado(String idCurso, String idEstudiante, String cursoTitulo,
+                                         String instructorNombre, String estudianteNombre,
+                                         Instant emitidoEn) {
         Certificado c = new Certificado();
+        // El id se fija antes de guardar porque va dentro del código firmado
+        c.setId(new ObjectId().toHexString());
+        String codigo = verificacion.generarCodigo(c.getId());
         c.setIdCurso(idCurso);
         c.setIdEstudiante(idEstudiante);
         c.setEstado(Certificado.Estado.EMITIDO);
-        c.setEmitidoEn(Instant.now());
-        c.setCodigoVerificacion(generarCodigoUnico());
-
-        cursoRepo.findById(idCurso).ifPresent(cur -> {
-            c.setCursoTitulo(cur.getTitulo());
-            if (cur.getIdInstructor() != null) {
-                usuarioRepo.findById(cur.getIdInstructor())
-                        .ifPresent(instr -> c.setInstructorNombre(obtenerNombreVisible(instr)));
-            }
-        });
-
-        usuarioRepo.findById(idEstudiante)
-                .ifPresent(est -> c.setEstudianteNombre(obtenerNombreVisible(est)));
-
+        c.setEmitidoEn(emitidoEn);
+        c.setCodigoVerificacion(codigo);
+        c.setPublicUrl(baseUrl + "/api/v1/certificados/verificar/" + codigo);
+        c.setQrData(c.getPublicUrl());
+        c.setPdfEstado(Certificado.EstadoPdf.PENDIENTE);
+        c.setCursoTitulo(cursoTitulo);
+        c.setInstructorNombre(instructorNombre);
+        c.setEstudianteNombre(estudianteNombre);
         return c;
     }
 
-    private String generarCodigoUnico() {
-        for (int i = 0; i < 5; i++) {
-            byte[] buf = new byte[16];
-            rnd.nextBytes(buf);
-            String code = hex.formatHex(buf);
-            if (repo.findByCodigoVerificacion(code).isEmpty()) return code;
-        }
-        return hex.formatHex((Instant.now().toString() + rnd.nextLong()).getBytes());
-    }
-
     private String obtenerNombreVisible(Usuario u) {
         if (u == null) return null;
         if (u.getNombre() != null && !u.getNombre().isBlank()) return u.getNombre().trim();
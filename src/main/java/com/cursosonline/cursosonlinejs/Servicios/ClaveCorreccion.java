@@ -0,0 +1,235 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
+import com.cursosonline.cursosonlinejs.Entidades.Intento;
+import com.cursosonline.cursosonlinejs.Entidades.OpcionPregunta;
+import com.cursosonline.cursosonlinejs.Entidades.Pregunta;
+import com.cursosonline.cursosonlinejs.Entidades.TipoPregunta;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Clave de corrección "compilada" de una evaluación.
+ *
+ * Se construye una sola vez a partir de las preguntas de la evaluación
+ * (ids de opciones correctas ya ordenados, respuesta numérica, puntaje)
+ * y luego se aplica a tantos intentos como haga falta. Es inmutable,
+ * así que puede compartirse entre hilos al recalificar en paralelo.
+ */
+public final class ClaveCorreccion {
+
+    private static final double TOLERANCIA_NUMERICA = 1e-6;
+
+    private final List<PreguntaClave> preguntas;
+
+    private ClaveCorreccion(List<PreguntaClave> preguntas) {
+        this.preguntas = preguntas;
+    }
+
+    public static ClaveCorreccion compilar(Evaluacion eval) {
+        return compilar(eval == null ? null : eval.getPreguntas());
+    }
+
+    public static ClaveCorreccion compilar(List<Pregunta> fuente) {
+        List<PreguntaClave> lista = new ArrayList<>();
+        if (fuente != null) {
+            for (Pregunta p : fuente) {
+                if (p == null) continue;
+                lista.add(PreguntaClave.de(p));
+            }
+        }
+        return new ClaveCorreccion(List.copyOf(lista));
+    }
+
+    public boolean vacia() {
+        return preguntas.isEmpty();
+    }
+
+    /**
+     * Clave reducida a las preguntas indicadas (las que le tocaron a un intento
+     * cuando la evaluación sortea un subconjunto del banco).
+     */
+    public ClaveCorreccion filtrar(Collection<String> idsPreguntas) {
+        return new ClaveCorreccion(preguntas.stream()
+                .filter(p -> p.id() != null && idsPreguntas.contains(p.id()))
+                .toList());
+    }
+
+    /**
+     * Corrige las respuestas dadas. Actualiza el estado y el puntaje de cada
+     * respuesta (igual que la auto-calificación al entregar) y devuelve los
+     * totales; no toca la base de datos.
+     */
+    public Resultado calificar(List<Intento.Respuesta> respuestas) {
+        Map<String, Intento.Respuesta> porPregunta = new HashMap<>();
+        if (respuestas != null) {
+            for (Intento.Respuesta r : respuestas) {
+                if (r != null && r.getIdPregunta() != null) {
+                    porPregunta.putIfAbsent(r.getIdPregunta(), r);
+                }
+            }
+        }
+
+        BigDecimal totalPuntaje = BigDecimal.ZERO;
+        BigDecimal totalMax = BigDecimal.ZERO;
+        boolean hayNoAuto = false;
+
+        for (PreguntaClave p : preguntas) {
+            totalMax = totalMax.add(p.puntaje());
+
+            if (!p.autoCalificable()) {
+                hayNoAuto = true;
+                continue;
+            }
+
+            Intento.Respuesta r = p.id() == null ? null : porPregunta.get(p.id());
+            BigDecimal obtenido = BigDecimal.ZERO;
+
+            if (r != null && p.tipo() != null) {
+                switch (p.tipo()) {
+                    case VERDADERO_FALSO:
+                        obtenido = calificarOpcionUnica(p, r);
+                        break;
+
+                    case OPCION_MULTIPLE:
+                        obtenido = calificarOpcionMultiple(p, r);
+                        break;
+
+                    case NUMERICA:
+                        obtenido = calificarNumerica(p, r);
+                        break;
+
+                    case ABIERTA:
+                    default:
+                        // Pregunta abierta o tipo no auto-corregible
+                        hayNoAuto = true;
+                        break;
+                }
+            }
+
+            if (r != null) {
+                r.setPuntaje(obtenido);
+            }
+            totalPuntaje = totalPuntaje.add(obtenido);
+        }
+
+        return new Resultado(totalPuntaje, totalMax, hayNoAuto);
+    }
+
+    public record Resultado(BigDecimal puntaje, BigDecimal puntajeMaximo, boolean requiereRevisionManual) {}
+
+    // =========================================================
+    // ================ CORRECCIÓN POR TIPO ====================
+    // =========================================================
+
+    private static BigDecimal calificarOpcionUnica(PreguntaClave p, Intento.Respuesta r) {
+        if (r.getOpciones() == null || r.getOpciones().isEmpty()) {
+            r.setEstado(Intento.EstadoRespuesta.SIN_RESPONDER);
+            return BigDecimal.ZERO;
+        }
+        if (!p.tieneOpciones()) {
+            // No hay claves configuradas => no podemos corregir
+            r.setEstado(Intento.EstadoRespuesta.SIN_CORREGIR);
+            return BigDecimal.ZERO;
+        }
+
+        String seleccion = r.getOpciones().get(0);
+        if (seleccion != null && p.correctas().contains(seleccion)) {
+            r.setEstado(Intento.EstadoRespuesta.CORRECTA);
+            return p.puntaje();
+        }
+        r.setEstado(Intento.EstadoRespuesta.INCORRECTA);
+        return BigDecimal.ZERO;
+    }
+
+    private static BigDecimal calificarOpcionMultiple(PreguntaClave p, Intento.Respuesta r) {
+        if (!p.tieneOpciones()) {
+            r.setEstado(Intento.EstadoRespuesta.SIN_CORREGIR);
+            return BigDecimal.ZERO;
+        }
+        if (r.getOpciones() == null || r.getOpciones().isEmpty()) {
+            r.setEstado(Intento.EstadoRespuesta.SIN_RESPONDER);
+            return BigDecimal.ZERO;
+        }
+        if (p.correctas().isEmpty()) {
+            r.setEstado(Intento.EstadoRespuesta.SIN_CORREGIR);
+            return BigDecimal.ZERO;
+        }
+
+        var marcadas = r.getOpciones().stream()
+                .filter(Objects::nonNull)
+                .sorted()
+                .toList();
+
+        if (p.correctas().equals(marcadas)) {
+            r.setEstado(Intento.EstadoRespuesta.CORRECTA);
+            return p.puntaje();
+        }
+        r.setEstado(Intento.EstadoRespuesta.INCORRECTA);
+        return BigDecimal.ZERO;
+    }
+
+    private static BigDecimal calificarNumerica(PreguntaClave p, Intento.Respuesta r) {
+        if (p.numerica() == null) {
+            r.setEstado(Intento.EstadoRespuesta.SIN_CORREGIR);
+            return BigDecimal.ZERO;
+        }
+
+        String txt = r.getTextoLibre();
+        if (txt == null || txt.isBlank()) {
+            r.setEstado(Intento.EstadoRespuesta.SIN_RESPONDER);
+            return BigDecimal.ZERO;
+        }
+
+        try {
+            double obtenido = Double.parseDouble(txt.trim());
+            if (Math.abs(p.numerica() - obtenido) <= TOLERANCIA_NUMERICA) {
+                r.setEstado(Intento.EstadoRespuesta.CORRECTA);
+                return p.puntaje();
+            }
+            r.setEstado(Intento.EstadoRespuesta.INCORRECTA);
+            return BigDecimal.ZERO;
+        } catch (NumberFormatException ex) {
+            r.setEstado(Intento.EstadoRespuesta.INCORRECTA);
+            return BigDecimal.ZERO;
+        }
+    }
+
+    /**
+     * Pregunta ya preparada para corregir: las opciones correctas se guardan
+     * ordenadas para no tener que recalcularlas en cada intento.
+     */
+    private record PreguntaClave(String id,
+                                 TipoPregunta tipo,
+                                 BigDecimal puntaje,
+                                 boolean autoCalificable,
+                                 boolean tieneOpciones,
+                                 List<String> correctas,
+                                 Double numerica) {
+
+        static PreguntaClave de(Pregunta p) {
+            List<OpcionPregunta> ops = p.getOpciones();
+            List<String> correctas = ops == null ? List.of() : ops.stream()
+                    .filter(OpcionPregunta::isCorrecta)
+                    .map(OpcionPregunta::getId)
+                    .filter(Objects::nonNull)
+                    .sorted()
+                    .toList();
+            return new PreguntaClave(
+                    p.getId(),
+                    p.getTipo(),
+                    BigDecimal.valueOf(p.getPuntaje() == null ? 0 : p.getPuntaje()),
+                    p.isAutoCalificable(),
+                    ops != null && !ops.isEmpty(),
+                    correctas,
+                    p.getRespuestaNumericaCorrecta()
+            );
+        }
+    }
+}
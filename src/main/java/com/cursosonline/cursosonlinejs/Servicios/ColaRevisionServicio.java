@@ -0,0 +1,262 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.DTO.ColaRevisionDTO;
+import com.cursosonline.cursosonlinejs.DTO.ColaRevisionMetricasDTO;
+import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
+import com.cursosonline.cursosonlinejs.Entidades.Intento;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Cola de revisión manual de un curso.
+ *
+ * Son los intentos ENVIADO sin calificación (tienen preguntas abiertas que el corrector
+ * automático no puede puntuar). Un revisor reclama el siguiente con un findAndModify
+ * que le asigna una reserva con vencimiento: mientras esté vigente nadie más lo recibe
+ * ni puede calificarlo, y si el revisor lo abandona vuelve solo a la cola al vencer.
+ *
+ * La cola se ordena por entrega (enviadoEn) o por vencimiento (venceAt: dueAt de la
+ * evaluación o, si no tiene, la propia entrega). Ambos órdenes salen de índices
+ * {idCurso, estado, ...}: reclamar lee desde la cabeza de la cola, no recorre el curso.
+ */
+@Service
+public class ColaRevisionServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(ColaRevisionServicio.class);
+
+    public enum Orden { ENVIO, VENCIMIENTO }
+
+    private static final int TAMANO_MAXIMO = 200;
+
+    @Value("${app.revision.lease-minutos:30}")
+    private long leaseMinutos;
+
+    @Value("${app.revision.metricas-ventana-dias:7}")
+    private int ventanaDias;
+
+    private final MongoTemplate mongoTemplate;
+
+    public ColaRevisionServicio(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /** true si otro usuario tiene una reserva vigente sobre el intento. */
+    public static boolean reservadoPorOtro(Intento i, String idUsuario, Instant ahora) {
+        return i.getRevisionLeaseHasta() != null
+                && i.getRevisionLeaseHasta().isAfter(ahora)
+                && i.getRevisionAsignadaA() != null
+                && !i.getRevisionAsignadaA().equals(idUsuario);
+    }
+
+    public ColaRevisionDTO listar(String idCurso, Orden orden, int pagina, int tamano) {
+        int pag = Math.max(pagina, 0);
+        int tam = Math.min(Math.max(tamano, 1), TAMANO_MAXIMO);
+
+        Query q = new Query(pendientes(idCurso))
+                .with(orden(orden))
+                .skip((long) pag * tam)
+                .limit(tam);
+        q.fields().include("idEvaluacion", "idEstudiante", "nroIntento", "enviadoEn", "venceAt",
+                "revisionAsignadaA", "revisionLeaseHasta");
+
+        var items = mongoTemplate.find(q, Intento.class).stream()
+                .map(i -> new ColaRevisionDTO.ItemDTO(
+                        i.getId(),
+                        i.getIdEvaluacion(),
+                        i.getIdEstudiante(),
+                        i.getNroIntento(),
+                        i.getEnviadoEn(),
+                        i.getVenceAt(),
+                        i.getRevisionAsignadaA(),
+                        i.getRevisionLeaseHasta()))
+                .toList();
+        long total = mongoTemplate.count(new Query(pendientes(idCurso)), Intento.class);
+        return new ColaRevisionDTO(idCurso, orden.name(), pag, tam, total, items);
+    }
+
+    /**
+     * Reserva el siguiente intento libre de la cola para el revisor; vacío si no queda
+     * ninguno. Dos revisores que reclaman a la vez reciben intentos distintos.
+     */
+    public Optional<Intento> reclamar(String idCurso, String idRevisor, Orden orden) {
+        Instant ahora = Instant.now();
+        Query q = new Query(pendientes(idCurso).orOperator(
+                Criteria.where("revisionLeaseHasta").is(null),
+                Criteria.where("revisionLeaseHasta").lte(ahora)))
+                .with(orden(orden));
+        Update u = new Update()
+                .set("revisionAsignadaA", idRevisor)
+                .set("revisionLeaseHasta", ahora.plus(lease()));
+        return Optional.ofNullable(mongoTemplate.findAndModify(q, u,
+                FindAndModifyOptions.options().returnNew(true), Intento.class));
+    }
+
+    /** Extiende la reserva del revisor. Falla si ya venció o es de otro. */
+    public Intento renovar(String idCurso, String idIntento, String idRevisor) {
+        Instant ahora = Instant.now();
+        Query q = new Query(pendientes(idCurso)
+                .and("_id").is(idIntento)
+                .and("revisionAsignadaA").is(idRevisor)
+                .and("revisionLeaseHasta").gt(ahora));
+        Intento renovado = mongoTemplate.findAndModify(q,
+                new Update().set("revisionLeaseHasta", ahora.plus(lease())),
+                FindAndModifyOptions.options().returnNew(true), Intento.class);
+        if (renovado == null) {
+            existePendiente(idCurso, idIntento);
+            throw new IllegalStateException("No tienes una reserva vigente sobre este intento.");
+        }
+        return renovado;
+    }
+
+    /** Devuelve el intento a la cola. */
+    public void liberar(String idCurso, String idIntento, String idRevisor) {
+        Query q = new Query(Criteria.where("_id").is(idIntento)
+                .and("idCurso").is(idCurso)
+                .and("revisionAsignadaA").is(idRevisor));
+        Update u = new Update().unset("revisionAsignadaA").unset("revisionLeaseHasta");
+        if (mongoTemplate.updateFirst(q, u, Intento.class).getMatchedCount() == 0) {
+            existePendiente(idCurso, idIntento);
+            throw new IllegalStateException("El intento no está reservado por ti.");
+        }
+    }
+
+    public ColaRevisionMetricasDTO metricas(String idCurso) {
+        Instant ahora = Instant.now();
+        long pendientes = mongoTemplate.count(new Query(pendientes(idCurso)), Intento.class);
+        long reservados = pendientes == 0 ? 0 : mongoTemplate.count(
+                new Query(pendientes(idCurso).and("revisionLeaseHasta").gt(ahora)), Intento.class);
+
+        Query masAntiguo = new Query(pendientes(idCurso))
+                .with(Sort.by(Sort.Direction.ASC, "enviadoEn"))
+                .limit(1);
+        masAntiguo.fields().include("enviadoEn");
+        Instant entregaMasAntigua = Optional.ofNullable(mongoTemplate.findOne(masAntiguo, Intento.class))
+                .map(Intento::getEnviadoEn)
+                .orElse(null);
+
+        // Tiempo hasta calificar: solo calificaciones manuales (las automáticas son instantáneas)
+        Instant desde = ahora.minus(Duration.ofDays(ventanaDias));
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("idCurso").is(idCurso)
+                        .and("estado").is(Intento.EstadoIntento.CALIFICADO)
+                        .and("calificadoAt").gte(desde)
+                        .and("idCalificacion").ne(null)
+                        .and("enviadoEn").ne(null)),
+                Aggregation.project()
+                        .and(ArithmeticOperators.Subtract.valueOf("calificadoAt").subtract("enviadoEn")).as("ms"),
+                Aggregation.group()
+                        .count().as("n")
+                        .avg("ms").as("media")
+                        .max("ms").as("maximo"));
+        Document r = mongoTemplate.aggregate(agg, Intento.class, Document.class).getUniqueMappedResult();
+
+        long calificados = 0;
+        Long media = null;
+        Long maximo = null;
+        if (r != null) {
+            calificados = ((Number) r.get("n")).longValue();
+            if (r.get("media") instanceof Number n) media = n.longValue() / 1000;
+            if (r.get("maximo") instanceof Number n) maximo = n.longValue() / 1000;
+        }
+
+        return new ColaRevisionMetricasDTO(
+                idCurso,
+                pendientes,
+                reservados,
+                entregaMasAntigua,
+                entregaMasAntigua == null ? null : Duration.between(entregaMasAntigua, ahora).getSeconds(),
+                ventanaDias,
+                calificados,
+                media,
+                maximo
+        );
+    }
+
+    // =========================================================
+    // ARRANQUE
+    // =========================================================
+
+    /**
+     * Intentos creados antes de la cola no tienen idCurso ni venceAt: se completan
+     * una vez por evaluación desde la propia evaluación.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void completarIntentosAnteriores() {
+        if (!mongoTemplate.exists(new Query(Criteria.where("idCurso").exists(false)), Intento.class)) return;
+
+        Query qEval = new Query();
+        qEval.fields().include("idCurso", "dueAt");
+        long actualizados = 0;
+        try (Stream<Evaluacion> evals = mongoTemplate.stream(qEval, Evaluacion.class)) {
+            for (Evaluacion e : (Iterable<Evaluacion>) evals::iterator) {
+                if (e.getIdCurso() == null) continue;
+                Criteria base = Criteria.where("idEvaluacion").is(e.getId()).and("idCurso").exists(false);
+                if (e.getDueAt() != null) {
+                    actualizados += mongoTemplate.updateMulti(new Query(base),
+                            new Update().set("idCurso", e.getIdCurso()).set("venceAt", e.getDueAt()),
+                            Intento.class).getModifiedCount();
+                } else {
+                    // Sin dueAt el vencimiento es la entrega (null si aún no se entregó)
+                    for (Intento i : mongoTemplate.find(proyeccionEnvio(base), Intento.class)) {
+                        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(i.getId())),
+                                new Update().set("idCurso", e.getIdCurso()).set("venceAt", i.getEnviadoEn()),
+                                Intento.class);
+                        actualizados++;
+                    }
+                }
+            }
+        }
+        log.info("Cola de revisión: {} intentos anteriores completados con idCurso/venceAt", actualizados);
+    }
+
+    private static Query proyeccionEnvio(Criteria c) {
+        Query q = new Query(c);
+        q.fields().include("enviadoEn");
+        return q;
+    }
+
+    // =========================================================
+    // HELPERS
+    // =========================================================
+
+    private static Criteria pendientes(String idCurso) {
+        return Criteria.where("idCurso").is(idCurso)
+                .and("estado").is(Intento.EstadoIntento.ENVIADO)
+                .and("idCalificacion").is(null);
+    }
+
+    private static Sort orden(Orden orden) {
+        return orden == Orden.VENCIMIENTO
+                ? Sort.by(Sort.Order.asc("venceAt"), Sort.Order.asc("enviadoEn"))
+                : Sort.by(Sort.Direction.ASC, "enviadoEn");
+    }
+
+    private void existePendiente(String idCurso, String idIntento) {
+        if (!mongoTemplate.exists(new Query(pendientes(idCurso).and("_id").is(idIntento)), Intento.class)) {
+            throw new NoSuchElementException("El intento no está en la cola de revisión de este curso.");
+        }
+    }
+
+    private Duration lease() {
+        return Duration.ofMinutes(leaseMinutos);
+    }
+}
@@ -0,0 +1,547 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.ConciliacionPagos;
+import com.cursosonline.cursosonlinejs.Entidades.ConciliacionPagos.EstadoConciliacion;
+import com.cursosonline.cursosonlinejs.Entidades.ConciliacionPagos.Formato;
+import com.cursosonline.cursosonlinejs.Entidades.DiscrepanciaPago;
+import com.cursosonline.cursosonlinejs.Entidades.DiscrepanciaPago.Correccion;
+import com.cursosonline.cursosonlinejs.Entidades.DiscrepanciaPago.TipoDiscrepancia;
+import com.cursosonline.cursosonlinejs.Entidades.Pago;
+import com.cursosonline.cursosonlinejs.Entidades.Pago.EstadoPago;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Concilia la colección pagos con el archivo de liquidación de una pasarela.
+ *
+ * El archivo se lee en streaming (CSV con encabezado, arreglo JSON o JSON Lines) y se
+ * procesa por lotes: cada lote se cruza con los pagos de la pasarela en una sola consulta
+ * $in por gatewayPaymentId y referencia, y las discrepancias se insertan por lotes. En memoria
+ * solo hay un lote a la vez, así que el tamaño del archivo no importa.
+ *
+ * Cada pago encontrado queda marcado con conciliadoAt; al terminar, los pagos de la
+ * pasarela que siguen PENDIENTE, AUTORIZADO o APROBADO, tienen más de
+ * app.conciliacion.gracia-horas y nunca aparecieron en una liquidación se reportan como
+ * SIN_LIQUIDAR. Esos solo se reportan: que no figuren no prueba que hayan fallado.
+ *
+ * Con aplicarCorrecciones, las diferencias de estado con una transición válida se
+ * corrigen a través de PagoServicio (que encola la activación de la inscripción, etc.).
+ * Si el monto o la moneda no coinciden no se corrige nada.
+ */
+@Service
+public class ConciliacionPagosServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(ConciliacionPagosServicio.class);
+
+    private static final int LOTE = 500;
+
+    private static final Map<String, EstadoPago> ESTADOS_GATEWAY = Map.ofEntries(
+            Map.entry("pending", EstadoPago.PENDIENTE),
+            Map.entry("pendiente", EstadoPago.PENDIENTE),
+            Map.entry("authorized", EstadoPago.AUTORIZADO),
+            Map.entry("autorizado", EstadoPago.AUTORIZADO),
+            Map.entry("approved", EstadoPago.APROBADO),
+            Map.entry("aprobado", EstadoPago.APROBADO),
+            Map.entry("captured", EstadoPago.CAPTURADO),
+            Map.entry("settled", EstadoPago.CAPTURADO),
+            Map.entry("paid", EstadoPago.CAPTURADO),
+            Map.entry("succeeded", EstadoPago.CAPTURADO),
+            Map.entry("capturado", EstadoPago.CAPTURADO),
+            Map.entry("liquidado", EstadoPago.CAPTURADO),
+            Map.entry("failed", EstadoPago.FALLIDO),
+            Map.entry("declined", EstadoPago.FALLIDO),
+            Map.entry("rejected", EstadoPago.FALLIDO),
+            Map.entry("fallido", EstadoPago.FALLIDO),
+            Map.entry("rechazado", EstadoPago.FALLIDO),
+            Map.entry("refunded", EstadoPago.REEMBOLSADO),
+            Map.entry("reembolsado", EstadoPago.REEMBOLSADO),
+            Map.entry("canceled", EstadoPago.CANCELADO),
+            Map.entry("cancelled", EstadoPago.CANCELADO),
+            Map.entry("voided", EstadoPago.CANCELADO),
+            Map.entry("cancelado", EstadoPago.CANCELADO)
+    );
+
+    private static final List<EstadoPago> SIN_CERRAR =
+            List.of(EstadoPago.PENDIENTE, EstadoPago.AUTORIZADO, EstadoPago.APROBADO);
+
+    @Value("${app.conciliacion.directorio:conciliaciones}")
+    private String directorio;
+
+    @Value("${app.conciliacion.gracia-horas:48}")
+    private long graciaHoras;
+
+    // Sin avances en este tiempo, una conciliación EN_CURSO se da por abandonada
+    @Value("${app.conciliacion.inactiva-minutos:10}")
+    private long inactivaMinutos;
+
+    private final MongoTemplate mongoTemplate;
+    private final PagoServicio pagoServicio;
+    private final ObjectMapper objectMapper;
+
+    private final ExecutorService ejecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "conciliacion-pagos");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ConciliacionPagosServicio(MongoTemplate mongoTemplate,
+                                     PagoServicio pagoServicio,
+                                     ObjectMapper objectMapper) {
+        this.mongoTemplate = mongoTemplate;
+        this.pagoServicio = pagoServicio;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Registra la conciliación y la ejecuta en segundo plano.
+     *
+     * @param archivo ruta relativa a app.conciliacion.directorio (.csv, .json, .jsonl o .ndjson)
+     */
+    public ConciliacionPagos iniciar(String gateway, String archivo, boolean aplicarCorrecciones,
+                                     String iniciadaPor) {
+        Path ruta = resolver(archivo);
+        Formato formato = formato(archivo);
+        Instant ahora = Instant.now();
+
+        mongoTemplate.updateMulti(
+                new Query(Criteria.where("gateway").is(gateway)
+                        .and("estado").is(EstadoConciliacion.EN_CURSO)
+                        .and("actualizadaAt").lt(ahora.minus(Duration.ofMinutes(inactivaMinutos)))),
+                new Update().set("estado", EstadoConciliacion.INTERRUMPIDA).set("terminadaAt", ahora),
+                ConciliacionPagos.class);
+        if (mongoTemplate.exists(new Query(Criteria.where("gateway").is(gateway)
+                .and("estado").is(EstadoConciliacion.EN_CURSO)), ConciliacionPagos.class)) {
+            throw new IllegalStateException("Ya hay una conciliación en curso para esta pasarela.");
+        }
+
+        ConciliacionPagos c = new ConciliacionPagos();
+        c.setGateway(gateway);
+        c.setArchivo(archivo);
+        c.setFormato(formato);
+        c.setAplicarCorrecciones(aplicarCorrecciones);
+        c.setPendientesAntesDe(ahora.minus(Duration.ofHours(graciaHoras)));
+        c.setIniciadaPor(iniciadaPor);
+        c.setEstado(EstadoConciliacion.EN_CURSO);
+        c.setIniciadaAt(ahora);
+        c.setActualizadaAt(ahora);
+        ConciliacionPagos guardada = mongoTemplate.insert(c);
+
+        ejecutor.execute(() -> ejecutar(guardada, ruta));
+        return guardada;
+    }
+
+    public ConciliacionPagos obtener(String id) {
+        return mongoTemplate.findById(id, ConciliacionPagos.class);
+    }
+
+    public List<DiscrepanciaPago> discrepancias(String idConciliacion, TipoDiscrepancia tipo,
+                                                int pagina, int tamano) {
+        Criteria c = Criteria.where("idConciliacion").is(idConciliacion);
+        if (tipo != null) c = c.and("tipo").is(tipo);
+        Query q = new Query(c)
+                .with(Sort.by("tipo", "linea"))
+                .skip((long) pagina * tamano)
+                .limit(tamano);
+        return mongoTemplate.find(q, DiscrepanciaPago.class);
+    }
+
+    @PreDestroy
+    public void alApagar() {
+        ejecutor.shutdownNow();
+    }
+
+    private Path resolver(String archivo) {
+        if (archivo == null || archivo.isBlank()) {
+            throw new IllegalArgumentException("El archivo es obligatorio.");
+        }
+        Path base = Paths.get(directorio).toAbsolutePath().normalize();
+        Path ruta = base.resolve(archivo).normalize();
+        if (!ruta.startsWith(base)) {
+            throw new IllegalArgumentException("El archivo debe estar dentro del directorio de conciliaciones.");
+        }
+        if (!Files.isRegularFile(ruta)) {
+            throw new NoSuchElementException("Archivo no encontrado.");
+        }
+        return ruta;
+    }
+
+    private static Formato formato(String archivo) {
+        String n = archivo.toLowerCase(Locale.ROOT);
+        if (n.endsWith(".csv")) return Formato.CSV;
+        if (n.endsWith(".json") || n.endsWith(".jsonl") || n.endsWith(".ndjson")) return Formato.JSON;
+        throw new IllegalArgumentException("Formato no soportado: se acepta .csv, .json, .jsonl o .ndjson.");
+    }
+
+    // =========================================================
+    // EJECUCIÓN
+    // =========================================================
+
+    private void ejecutar(ConciliacionPagos c, Path ruta) {
+        Avance a = new Avance(c);
+        try (InputStream in = Files.newInputStream(ruta)) {
+            if (c.getFormato() == Formato.CSV) leerCsv(in, a);
+            else leerJson(in, a);
+            a.cerrarLote();
+            buscarSinLiquidar(a);
+            a.guardarDiscrepancias();
+            terminar(a, EstadoConciliacion.TERMINADA, null);
+            log.info("Conciliación {} ({}): {} líneas, {} conciliados, {} discrepancias, {} corregidos",
+                    c.getId(), c.getGateway(), a.lineas, a.conciliados, a.discrepancias, a.corregidos);
+        } catch (IOException | RuntimeException ex) {
+            log.error("Conciliación {} falló en la línea {}", c.getId(), a.lineas, ex);
+            try {
+                a.guardarDiscrepancias();
+            } catch (RuntimeException ignored) {
+                // Se conserva el error original
+            }
+            terminar(a, EstadoConciliacion.ERROR, String.valueOf(ex.getMessage()));
+        }
+    }
+
+    private void terminar(Avance a, EstadoConciliacion estado, String error) {
+        Instant ahora = Instant.now();
+        Update u = a.contadores(ahora)
+                .set("estado", estado)
+                .set("terminadaAt", ahora);
+        if (error != null) u.set("error", error);
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(a.c.getId())), u, ConciliacionPagos.class);
+    }
+
+    // =========================================================
+    // LECTURA DEL ARCHIVO
+    // =========================================================
+
+    private void leerCsv(InputStream archivo, Avance a) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(archivo, StandardCharsets.UTF_8), 64 * 1024);
+        String linea = in.readLine();
+        if (linea != null && !linea.isEmpty() && linea.charAt(0) == '\uFEFF') linea = linea.substring(1);
+        if (linea == null || linea.isBlank()) return;
+
+        char separador = CamposCsv.separador(linea);
+        List<String> encabezado = CamposCsv.campos(linea, separador);
+        int colReferencia = CamposCsv.columna(encabezado, "referencia", "reference");
+        int colPaymentId = CamposCsv.columna(encabezado, "gatewayPaymentId", "payment_id", "paymentId", "id");
+        int colEstado = CamposCsv.columna(encabezado, "estado", "status");
+        int colMonto = CamposCsv.columna(encabezado, "monto", "amount");
+        int colMoneda = CamposCsv.columna(encabezado, "moneda", "currency");
+        if ((colReferencia < 0 && colPaymentId < 0) || colEstado < 0 || colMonto < 0) {
+            throw new IllegalArgumentException(
+                    "El encabezado debe tener referencia o gatewayPaymentId, además de estado y monto.");
+        }
+
+        long nro = 1;
+        while ((linea = in.readLine()) != null) {
+            nro++;
+            if (linea.isBlank()) continue;
+            List<String> c = CamposCsv.campos(linea, separador);
+            a.agregar(nro,
+                    CamposCsv.valor(c, colReferencia),
+                    CamposCsv.valor(c, colPaymentId),
+                    CamposCsv.valor(c, colEstado),
+                    CamposCsv.valor(c, colMonto),
+                    CamposCsv.valor(c, colMoneda));
+        }
+    }
+
+    /** Un arreglo de objetos o un objeto por línea; nunca se carga el documento completo. */
+    private void leerJson(InputStream archivo, Avance a) throws IOException {
+        try (JsonParser p = objectMapper.getFactory().createParser(archivo)) {
+            JsonToken t = p.nextToken();
+            boolean arreglo = t == JsonToken.START_ARRAY;
+            if (arreglo) t = p.nextToken();
+            while (t != null && t != JsonToken.END_ARRAY) {
+                if (t != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Se esperaba un objeto en la línea "
+                            + p.currentTokenLocation().getLineNr() + ".");
+                }
+                long nro = p.currentTokenLocation().getLineNr();
+                JsonNode n = p.readValueAsTree();
+                a.agregar(nro,
+                        texto(n, "referencia", "reference"),
+                        texto(n, "gatewayPaymentId", "payment_id", "paymentId", "id"),
+                        texto(n, "estado", "status"),
+                        texto(n, "monto", "amount"),
+                        texto(n, "moneda", "currency"));
+                t = p.nextToken();
+            }
+        }
+    }
+
+    private static String texto(JsonNode n, String... nombres) {
+        for (String nombre : nombres) {
+            JsonNode v = n.get(nombre);
+            if (v != null && !v.isNull() && !v.isContainerNode()) {
+                String s = v.asText().trim();
+                if (!s.isEmpty()) return s;
+            }
+        }
+        return null;
+    }
+
+    // =========================================================
+    // CRUCE CON PAGOS
+    // =========================================================
+
+    private record FilaLiquidacion(long linea, String referencia, String gatewayPaymentId,
+                                   String estadoTexto, EstadoPago estado, BigDecimal monto, String moneda) {}
+
+    private void procesarLote(Avance a, List<FilaLiquidacion> lote) {
+        String gateway = a.c.getGateway();
+        Set<String> ids = new HashSet<>();
+        Set<String> referencias = new HashSet<>();
+        for (FilaLiquidacion f : lote) {
+            if (f.gatewayPaymentId() != null) ids.add(f.gatewayPaymentId());
+            if (f.referencia() != null) referencias.add(f.referencia());
+        }
+
+        // Solo pagos de esta pasarela: una referencia igual en otra no es el mismo pago
+        List<Criteria> o = new ArrayList<>(2);
+        if (!ids.isEmpty()) o.add(Criteria.where("gatewayPaymentId").in(ids));
+        if (!referencias.isEmpty()) o.add(Criteria.where("referencia").in(referencias));
+        Query q = new Query(Criteria.where("gateway").is(gateway).orOperator(o));
+        q.fields().include("referencia", "gateway", "gatewayPaymentId", "estado", "monto", "moneda");
+
+        Map<String, Pago> porId = new HashMap<>();
+        Map<String, Pago> porReferencia = new HashMap<>();
+        for (Pago p : mongoTemplate.find(q, Pago.class)) {
+            if (p.getGatewayPaymentId() != null) porId.put(p.getGatewayPaymentId(), p);
+            if (p.getReferencia() != null) porReferencia.putIfAbsent(p.getReferencia(), p);
+        }
+
+        Instant ahora = Instant.now();
+        BulkOperations marcas = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Pago.class);
+        Set<String> marcados = new HashSet<>();
+        for (FilaLiquidacion f : lote) {
+            Pago p = f.gatewayPaymentId() != null ? porId.get(f.gatewayPaymentId()) : null;
+            if (p == null && f.referencia() != null) p = porReferencia.get(f.referencia());
+            if (p == null) {
+                a.discrepancia(nueva(a, f, null, TipoDiscrepancia.NO_REGISTRADO,
+                        "No hay un pago con esa referencia ni con ese id de la pasarela."));
+                continue;
+            }
+            comparar(a, f, p);
+            if (marcados.add(p.getId())) {
+                marcas.updateOne(new Query(Criteria.where("_id").is(p.getId())),
+                        new Update().set("idConciliacion", a.c.getId()).set("conciliadoAt", ahora));
+            }
+        }
+        // Después de las correcciones, que guardan el pago completo
+        if (!marcados.isEmpty()) marcas.execute();
+    }
+
+    private void comparar(Avance a, FilaLiquidacion f, Pago p) {
+        boolean monedaDistinta = f.moneda() != null && p.getMoneda() != null
+                && !f.moneda().equalsIgnoreCase(p.getMoneda());
+        if (p.getMonto() == null || f.monto().compareTo(p.getMonto()) != 0 || monedaDistinta) {
+            a.discrepancia(nueva(a, f, p, TipoDiscrepancia.MONTO_DISTINTO,
+                    "El monto o la moneda no coinciden; no se corrige el estado."));
+            return;
+        }
+        if (f.estado() == p.getEstado()) {
+            a.conciliados++;
+            return;
+        }
+
+        DiscrepanciaPago d = nueva(a, f, p, TipoDiscrepancia.ESTADO_DISTINTO, null);
+        Supplier<Optional<Pago>> correccion = correccion(p, f);
+        String transicion = p.getEstado() + " → " + f.estado();
+        if (correccion == null) {
+            d.setDetalle("Sin transición automática " + transicion + "; requiere revisión manual.");
+        } else if (!a.c.isAplicarCorrecciones()) {
+            d.setCorreccion(Correccion.SUGERIDA);
+            d.setDetalle(transicion);
+        } else {
+            try {
+                if (correccion.get().isPresent()) {
+                    d.setCorreccion(Correccion.APLICADA);
+                    d.setDetalle(transicion);
+                    a.corregidos++;
+                } else {
+                    d.setCorreccion(Correccion.FALLIDA);
+                    d.setDetalle("El pago ya no existe.");
+                }
+            } catch (IllegalStateException ex) {
+                // El pago cambió entre la consulta del lote y la corrección
+                d.setCorreccion(Correccion.FALLIDA);
+                d.setDetalle(ex.getMessage());
+            }
+        }
+        a.discrepancia(d);
+    }
+
+    /** La transición que lleva el pago al estado informado por la pasarela, si es válida. */
+    private Supplier<Optional<Pago>> correccion(Pago p, FilaLiquidacion f) {
+        String id = p.getId();
+        String gpId = f.gatewayPaymentId();
+        boolean abierto = p.getEstado() == EstadoPago.PENDIENTE || p.getEstado() == EstadoPago.AUTORIZADO;
+        boolean confirmado = p.getEstado() == EstadoPago.APROBADO || p.getEstado() == EstadoPago.CAPTURADO;
+        return switch (f.estado()) {
+            case APROBADO -> abierto
+                    ? () -> pagoServicio.marcarAprobado(id, gpId, null, null, true) : null;
+            case CAPTURADO -> abierto
+                    ? () -> pagoServicio.marcarCapturado(id, gpId, null, null, true)
+                    : p.getEstado() == EstadoPago.APROBADO
+                    ? () -> pagoServicio.registrarCaptura(id, gpId) : null;
+            case FALLIDO -> abierto ? () -> pagoServicio.marcarFallido(id, gpId) : null;
+            case CANCELADO -> abierto ? () -> pagoServicio.marcarCancelado(id) : null;
+            case REEMBOLSADO -> confirmado ? () -> pagoServicio.marcarReembolsado(id, gpId) : null;
+            case PENDIENTE, AUTORIZADO -> null;
+        };
+    }
+
+    private void buscarSinLiquidar(Avance a) {
+        Query q = new Query(Criteria.where("gateway").is(a.c.getGateway())
+                .and("estado").in(SIN_CERRAR)
+                .and("createdAt").lt(a.c.getPendientesAntesDe())
+                .and("conciliadoAt").is(null));
+        q.fields().include("referencia", "gatewayPaymentId", "estado", "monto", "moneda");
+        try (Stream<Pago> pagos = mongoTemplate.stream(q, Pago.class)) {
+            pagos.forEach(p -> a.discrepancia(nueva(a, null, p, TipoDiscrepancia.SIN_LIQUIDAR,
+                    "El pago no figura en ninguna liquidación de la pasarela.")));
+        }
+    }
+
+    private static DiscrepanciaPago nueva(Avance a, FilaLiquidacion f, Pago p,
+                                          TipoDiscrepancia tipo, String detalle) {
+        DiscrepanciaPago d = new DiscrepanciaPago();
+        d.setIdConciliacion(a.c.getId());
+        d.setTipo(tipo);
+        d.setDetalle(detalle);
+        d.setCreatedAt(Instant.now());
+        if (f != null) {
+            d.setLinea(f.linea());
+            d.setReferencia(f.referencia());
+            d.setGatewayPaymentId(f.gatewayPaymentId());
+            d.setEstadoGateway(f.estadoTexto());
+            d.setMontoGateway(f.monto());
+            d.setMonedaGateway(f.moneda());
+        }
+        if (p != null) {
+            d.setIdPago(p.getId());
+            if (d.getReferencia() == null) d.setReferencia(p.getReferencia());
+            if (d.getGatewayPaymentId() == null) d.setGatewayPaymentId(p.getGatewayPaymentId());
+            d.setEstadoLocal(p.getEstado());
+            d.setMontoLocal(p.getMonto());
+            d.setMonedaLocal(p.getMoneda());
+        }
+        return d;
+    }
+
+    // =========================================================
+    // ESTADO DE UNA EJECUCIÓN
+    // =========================================================
+
+    /** Lote en curso, discrepancias por guardar y contadores (todo acotado por LOTE). */
+    private final class Avance {
+        final ConciliacionPagos c;
+        final List<FilaLiquidacion> lote = new ArrayList<>(LOTE);
+        final List<DiscrepanciaPago> porGuardar = new ArrayList<>(LOTE);
+        long lineas;
+        long conciliados;
+        long discrepancias;
+        long corregidos;
+
+        Avance(ConciliacionPagos c) {
+            this.c = c;
+        }
+
+        void agregar(long nro, String referencia, String gatewayPaymentId,
+                     String estadoTexto, String montoTexto, String moneda) {
+            lineas++;
+            EstadoPago estado = estadoTexto == null ? null
+                    : ESTADOS_GATEWAY.get(estadoTexto.toLowerCase(Locale.ROOT));
+            BigDecimal monto = monto(montoTexto);
+            String problema = referencia == null && gatewayPaymentId == null ? "Falta la referencia y el id del pago."
+                    : estado == null ? "Estado desconocido: " + estadoTexto
+                    : monto == null ? "Monto ilegible: " + montoTexto
+                    : null;
+            FilaLiquidacion f = new FilaLiquidacion(nro, referencia, gatewayPaymentId, estadoTexto, estado, monto,
+                    moneda == null ? null : moneda.toUpperCase(Locale.ROOT));
+            if (problema != null) {
+                discrepancia(nueva(this, f, null, TipoDiscrepancia.FILA_INVALIDA, problema));
+                return;
+            }
+            lote.add(f);
+            if (lote.size() == LOTE) cerrarLote();
+        }
+
+        void cerrarLote() {
+            if (!lote.isEmpty()) {
+                procesarLote(this, lote);
+                lote.clear();
+            }
+            guardarDiscrepancias();
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(c.getId())),
+                    contadores(Instant.now()), ConciliacionPagos.class);
+        }
+
+        void discrepancia(DiscrepanciaPago d) {
+            discrepancias++;
+            porGuardar.add(d);
+            if (porGuardar.size() == LOTE) guardarDiscrepancias();
+        }
+
+        void guardarDiscrepancias() {
+            if (porGuardar.isEmpty()) return;
+            mongoTemplate.insert(porGuardar, DiscrepanciaPago.class);
+            porGuardar.clear();
+        }
+
+        Update contadores(Instant ahora) {
+            return new Update()
+                    .set("lineas", lineas)
+                    .set("conciliados", conciliados)
+                    .set("discrepancias", discrepancias)
+                    .set("corregidos", corregidos)
+                    .set("actualizadaAt", ahora);
+        }
+    }
+
+    /** Acepta "1234.50" y también "1234,50" (sin separador de miles). */
+    private static BigDecimal monto(String texto) {
+        if (texto == null) return null;
+        try {
+            return new BigDecimal(texto.replace(',', '.'));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import java.util.Arrays;
+
+/**
+ * Conjunto de enteros no negativos comprimido al estilo Roaring.
+ *
+ * El entero se parte en 16 bits altos (clave del contenedor) y 16 bajos. Cada
+ * contenedor guarda los bajos de una clave:
+ *
+ *  - Arreglo ordenado de char mientras tenga hasta MAX_ARREGLO valores (2 bytes por valor).
+ *  - Mapa de bits de 65536 bits (8 KB) cuando pasa de ahí, que ya es lo más barato.
+ *
+ * Las lecturas no bloquean: el estado es inmutable y se publica entero en un campo
+ * volatile. Cada escritura copia solo el contenedor que cambia (como mucho 8 KB) y los
+ * arreglos de primer nivel, que tienen un elemento por cada 65536 ids. Está pensado
+ * para muchas lecturas y pocas escrituras; para cargas grandes usar {@link Constructor}.
+ */
+public final class ConjuntoCompacto {
+
+    static final int MAX_ARREGLO = 4096;
+    private static final int PALABRAS_MAPA = 1024;
+
+    private record Estado(char[] claves, Object[] contenedores, int[] cardinalidades) {}
+
+    private volatile Estado estado;
+
+    public ConjuntoCompacto() {
+        this(new Estado(new char[0], new Object[0], new int[0]));
+    }
+
+    private ConjuntoCompacto(Estado estado) {
+        this.estado = estado;
+    }
+
+    public boolean contiene(int x) {
+        Estado e = estado;
+        int i = Arrays.binarySearch(e.claves(), alta(x));
+        return i >= 0 && contieneEn(e.contenedores()[i], (char) x);
+    }
+
+    /** @return true si no estaba */
+    public synchronized boolean agregar(int x) {
+        Estado e = estado;
+        char bajo = (char) x;
+        int i = Arrays.binarySearch(e.claves(), alta(x));
+        if (i < 0) {
+            int pos = -i - 1;
+            estado = new Estado(
+                    insertar(e.claves(), pos, alta(x)),
+                    insertar(e.contenedores(), pos, new char[]{bajo}),
+                    insertar(e.cardinalidades(), pos, 1));
+            return true;
+        }
+        Object c = e.contenedores()[i];
+        if (contieneEn(c, bajo)) return false;
+
+        int card = e.cardinalidades()[i] + 1;
+        Object nuevo;
+        if (c instanceof long[] mapa) {
+            long[] copia = mapa.clone();
+            copia[bajo >>> 6] |= 1L << bajo;
+            nuevo = copia;
+        } else {
+            char[] arr = (char[]) c;
+            if (arr.length < MAX_ARREGLO) {
+                nuevo = insertar(arr, -Arrays.binarySearch(arr, bajo) - 1, bajo);
+            } else {
+                long[] mapa = aMapa(arr);
+                mapa[bajo >>> 6] |= 1L << bajo;
+                nuevo = mapa;
+            }
+        }
+        estado = reemplazar(e, i, nuevo, card);
+        return true;
+    }
+
+    /** @return true si estaba */
+    public synchronized boolean quitar(int x) {
+        Estado e = estado;
+        char bajo = (char) x;
+        int i = Arrays.binarySearch(e.claves(), alta(x));
+        if (i < 0 || !contieneEn(e.contenedores()[i], bajo)) return false;
+
+        int card = e.cardinalidades()[i] - 1;
+        if (card == 0) {
+            estado = new Estado(quitar(e.claves(), i), quitar(e.contenedores(), i), quitar(e.cardinalidades(), i));
+            return true;
+        }
+        Object c = e.contenedores()[i];
+        Object nuevo;
+        if (c instanceof long[] mapa) {
+            long[] copia = mapa.clone();
+            copia[bajo >>> 6] &= ~(1L << bajo);
+            nuevo = card <= MAX_ARREGLO ? aArreglo(copia, card) : copia;
+        } else {
+            char[] arr = (char[]) c;
+            nuevo = quitar(arr, Arrays.binarySearch(arr, bajo));
+        }
+        estado = reemplazar(e, i, nuevo, card);
+        return true;
+    }
+
+    public int cardinalidad() {
+        int n = 0;
+        for (int c : estado.cardinalidades()) n += c;
+        return n;
+    }
+
+    /** Bytes aproximados en el heap (cabeceras de arreglo de 16 bytes, referencias de 4). */
+    public long bytesAproximados() {
+        Estado e = estado;
+        long n = 16 + 3 * 16L + e.claves().length * 2L + e.contenedores().length * 4L + e.cardinalidades().length * 4L;
+        for (Object c : e.contenedores()) {
+            n += 16 + (c instanceof long[] ? PALABRAS_MAPA * 8L : ((char[]) c).length * 2L);
+        }
+        return n;
+    }
+
+    // =========================================================
+    // CARGA MASIVA
+    // =========================================================
+
+    /** Acumula valores en cualquier orden y arma el conjunto de una vez. */
+    public static final class Constructor {
+        private int[] valores = new int[16];
+        private int n;
+
+        public Constructor agregar(int x) {
+            if (n == valores.length) valores = Arrays.copyOf(valores, n * 2);
+            valores[n++] = x;
+            return this;
+        }
+
+        public ConjuntoCompacto construir() {
+            int[] v = Arrays.copyOf(valores, n);
+            Arrays.sort(v);
+            char[] claves = new char[0];
+            Object[] contenedores = new Object[0];
+            int[] cards = new int[0];
+
+            int i = 0;
+            while (i < v.length) {
+                char clave = alta(v[i]);
+                char[] bajos = new char[Math.min(v.length - i, 1 << 16)];
+                int k = 0;
+                for (; i < v.length && alta(v[i]) == clave; i++) {
+                    char b = (char) v[i];
+                    if (k == 0 || bajos[k - 1] != b) bajos[k++] = b;
+                }
+                bajos = Arrays.copyOf(bajos, k);
+                claves = insertar(claves, claves.length, clave);
+                contenedores = insertar(contenedores, contenedores.length, k <= MAX_ARREGLO ? bajos : aMapa(bajos));
+                cards = insertar(cards, cards.length, k);
+            }
+            return new ConjuntoCompacto(new Estado(claves, contenedores, cards));
+        }
+    }
+
+    // =========================================================
+    // AUXILIARES
+    // =========================================================
+
+    private static char alta(int x) {
+        return (char) (x >>> 16);
+    }
+
+    private static boolean contieneEn(Object c, char bajo) {
+        if (c instanceof long[] mapa) return (mapa[bajo >>> 6] & (1L << bajo)) != 0;
+        return Arrays.binarySearch((char[]) c, bajo) >= 0;
+    }
+
+    private static Estado reemplazar(Estado e, int i, Object contenedor, int card) {
+        Object[] cs = e.contenedores().clone();
+        int[] cards = e.cardinalidades().clone();
+        cs[i] = contenedor;
+        cards[i] = card;
+        return new Estado(e.claves(), cs, cards);
+    }
+
+    private static long[] aMapa(char[] arr) {
+        long[] mapa = new long[PALABRAS_MAPA];
+        for (char b : arr) mapa[b >>> 6] |= 1L << b;
+        return mapa;
+    }
+
+    private static char[] aArreglo(long[] mapa, int card) {
+        char[] arr = new char[card];
+        int k = 0;
+        for (int w = 0; w < mapa.length; w++) {
+            long x = mapa[w];
+            while (x != 0) {
+                arr[k++] = (char) (w * 64 + Long.numberOfTrailingZeros(x));
+                x &= x - 1;
+            }
+        }
+        return arr;
+    }
+
+    private static char[] insertar(char[] a, int pos, char v) {
+        char[] out = new char[a.length + 1];
+        System.arraycopy(a, 0, out, 0, pos);
+        out[pos] = v;
+        System.arraycopy(a, pos, out, pos + 1, a.length - pos);
+        return out;
+    }
+
+    private static int[] insertar(int[] a, int pos, int v) {
+        int[] out = new int[a.length + 1];
+        System.arraycopy(a, 0, out, 0, pos);
+        out[pos] = v;
+        System.arraycopy(a, pos, out, pos + 1, a.length - pos);
+        return out;
+    }
+
+    private static Object[] insertar(Object[] a, int pos, Object v) {
+        Object[] out = new Object[a.length + 1];
+        System.arraycopy(a, 0, out, 0, pos);
+        out[pos] = v;
+        System.arraycopy(a, pos, out, pos + 1, a.length - pos);
+        return out;
+    }
+
+    private static char[] quitar(char[] a, int pos) {
+        char[] out = new char[a.length - 1];
+        System.arraycopy(a, 0, out, 0, pos);
+        System.arraycopy(a, pos + 1, out, pos, a.length - pos - 1);
+        return out;
+    }
+
+    private static int[] quitar(int[] a, int pos) {
+        int[] out = new int[a.length - 1];
+        System.arraycopy(a, 0, out, 0, pos);
+        System.arraycopy(a, pos + 1, out, pos, a.length - pos - 1);
+        return out;
+    }
+
+    private static Object[] quitar(Object[] a, int pos) {
+        Object[] out = new Object[a.length - 1];
+        System.arraycopy(a, 0, out, 0, pos);
+        System.arraycopy(a, pos + 1, out, pos, a.length - pos - 1);
+        return out;
+    }
+}
@@ -0,0 +1,195 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.ContadorIntentos;
+import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
+import com.cursosonline.cursosonlinejs.Entidades.Intento;
+import com.cursosonline.cursosonlinejs.Repositorios.IntentoRepositorio;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Numeración e inicio atómico de intentos.
+ *
+ * Todo el control de "¿puede empezar otro intento?" ocurre en un solo findAndModify
+ * sobre contadores_intentos: no hay otro EN_PROGRESO, no se superó maxIntentos y
+ * pasó la espera mínima desde el último intento. Si se cumple, se asigna el
+ * siguiente número y el intento queda marcado como en progreso.
+ */
+@Service
+public class ContadorIntentosServicio {
+
+    private static final Duration MARGEN_HUERFANO = Duration.ofMinutes(1);
+
+    private final MongoTemplate mongoTemplate;
+    private final IntentoRepositorio intentoRepositorio;
+
+    public ContadorIntentosServicio(MongoTemplate mongoTemplate,
+                                    IntentoRepositorio intentoRepositorio) {
+        this.mongoTemplate = mongoTemplate;
+        this.intentoRepositorio = intentoRepositorio;
+    }
+
+    /**
+     * Reserva el siguiente número de intento para idIntento.
+     *
+     * @return el número asignado
+     * @throws IllegalStateException si hay un intento en progreso, se alcanzó el máximo
+     *                               o aún no pasó la espera mínima
+     */
+    public int reservar(Evaluacion eval, String idEstudiante, String idIntento, Instant ahora) {
+        String clave = ContadorIntentos.clave(eval.getId(), idEstudiante);
+
+        // Segundo intento solo si hubo que crear el contador o liberar un bloqueo huérfano
+        for (int vuelta = 0; vuelta < 2; vuelta++) {
+            ContadorIntentos c = mongoTemplate.findAndModify(
+                    new Query(condicionesInicio(clave, eval, ahora)),
+                    new Update()
+                            .inc("ultimoNro", 1)
+                            .set("intentoEnProgreso", idIntento)
+                            .set("ultimoInicioAt", ahora)
+                            .set("updatedAt", ahora),
+                    FindAndModifyOptions.options().returnNew(true),
+                    ContadorIntentos.class);
+            if (c != null) return c.getUltimoNro();
+
+            ContadorIntentos actual = mongoTemplate.findById(clave, ContadorIntentos.class);
+            if (actual == null) {
+                inicializar(eval.getId(), idEstudiante, clave);
+                continue;
+            }
+            if (actual.getIntentoEnProgreso() != null) {
+                if (liberarSiHuerfano(actual)) continue;
+                throw new IllegalStateException("Ya tienes un intento en progreso para esta evaluación.");
+            }
+            throw motivoRechazo(eval, actual, ahora);
+        }
+        throw new IllegalStateException("No se pudo iniciar el intento; inténtalo de nuevo.");
+    }
+
+    /**
+     * Marca el fin del intento en progreso (entregado, vencido o eliminado). Si devolverNumero
+     * es true (solo al deshacer un insert fallido) y era el último asignado, el número vuelve
+     * a quedar libre.
+     */
+    public void liberar(String idEvaluacion, String idEstudiante, String idIntento,
+                        Integer nroIntento, boolean devolverNumero, Instant ahora) {
+        String clave = ContadorIntentos.clave(idEvaluacion, idEstudiante);
+        if (devolverNumero && nroIntento != null) {
+            var devuelto = mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(clave)
+                            .and("intentoEnProgreso").is(idIntento)
+                            .and("ultimoNro").is(nroIntento)),
+                    new Update().unset("intentoEnProgreso").inc("ultimoNro", -1).set("updatedAt", ahora),
+                    ContadorIntentos.class);
+            if (devuelto.getMatchedCount() > 0) return;
+        }
+        Update u = new Update().unset("intentoEnProgreso").set("updatedAt", ahora);
+        if (!devolverNumero) u.set("ultimaFinalizacionAt", ahora);
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(clave).and("intentoEnProgreso").is(idIntento)),
+                u, ContadorIntentos.class);
+    }
+
+    /** Libera en una sola escritura los contadores de varios intentos finalizados. */
+    public void liberarVarios(Collection<String> idsIntento, Instant ahora) {
+        if (idsIntento == null || idsIntento.isEmpty()) return;
+        mongoTemplate.updateMulti(
+                new Query(Criteria.where("intentoEnProgreso").in(idsIntento)),
+                new Update().unset("intentoEnProgreso")
+                        .set("ultimaFinalizacionAt", ahora)
+                        .set("updatedAt", ahora),
+                ContadorIntentos.class);
+    }
+
+    // =========================================================
+    // HELPERS
+    // =========================================================
+
+    private static Criteria condicionesInicio(String clave, Evaluacion eval, Instant ahora) {
+        Criteria c = Criteria.where("_id").is(clave).and("intentoEnProgreso").is(null);
+        if (eval.getMaxIntentos() != null && eval.getMaxIntentos() > 0) {
+            c = c.and("ultimoNro").lt(eval.getMaxIntentos());
+        }
+        if (eval.getMinSegundosEntreIntentos() != null && eval.getMinSegundosEntreIntentos() > 0) {
+            Instant limite = ahora.minusSeconds(eval.getMinSegundosEntreIntentos());
+            c = c.orOperator(
+                    Criteria.where("ultimaFinalizacionAt").is(null),
+                    Criteria.where("ultimaFinalizacionAt").lte(limite));
+        }
+        return c;
+    }
+
+    private static IllegalStateException motivoRechazo(Evaluacion eval, ContadorIntentos actual, Instant ahora) {
+        Integer max = eval.getMaxIntentos();
+        int usados = actual.getUltimoNro() == null ? 0 : actual.getUltimoNro();
+        if (max != null && max > 0 && usados >= max) {
+            return new IllegalStateException("Alcanzaste el máximo de intentos permitidos (" + max + ").");
+        }
+        Integer espera = eval.getMinSegundosEntreIntentos();
+        if (espera != null && espera > 0 && actual.getUltimaFinalizacionAt() != null) {
+            long faltan = Duration.between(ahora, actual.getUltimaFinalizacionAt().plusSeconds(espera)).getSeconds();
+            if (faltan > 0) {
+                return new IllegalStateException("Debes esperar " + faltan + " segundos antes de iniciar otro intento.");
+            }
+        }
+        return new IllegalStateException("No se pudo iniciar el intento; inténtalo de nuevo.");
+    }
+
+    /**
+     * Crea el contador a partir de los intentos que ya existen (datos anteriores al contador).
+     */
+    private void inicializar(String idEvaluacion, String idEstudiante, String clave) {
+        ContadorIntentos c = new ContadorIntentos();
+        c.setId(clave);
+        c.setIdEvaluacion(idEvaluacion);
+        c.setIdEstudiante(idEstudiante);
+        c.setUltimoNro(intentoRepositorio
+                .findTopByIdEvaluacionAndIdEstudianteOrderByNroIntentoDesc(idEvaluacion, idEstudiante)
+                .map(i -> i.getNroIntento() == null ? 0 : i.getNroIntento())
+                .orElse(0));
+        c.setIntentoEnProgreso(intentoRepositorio
+                .findFirstByIdEvaluacionAndIdEstudianteAndEstado(idEvaluacion, idEstudiante, Intento.EstadoIntento.EN_PROGRESO)
+                .map(Intento::getId)
+                .orElse(null));
+        c.setUltimaFinalizacionAt(intentoRepositorio
+                .findTopByIdEvaluacionAndIdEstudianteAndEnviadoEnNotNullOrderByEnviadoEnDesc(idEvaluacion, idEstudiante)
+                .map(Intento::getEnviadoEn)
+                .orElse(null));
+        c.setUpdatedAt(Instant.now());
+        try {
+            mongoTemplate.insert(c);
+        } catch (DuplicateKeyException ignored) {
+            // Otra petición lo creó primero; sirve igual
+        }
+    }
+
+    /**
+     * Si el intento marcado como en progreso ya no lo está (o no existe), libera el contador.
+     */
+    private boolean liberarSiHuerfano(ContadorIntentos actual) {
+        String id = actual.getIntentoEnProgreso();
+        // Un inicio recién reservado puede no haber insertado aún su intento
+        if (actual.getUltimoInicioAt() != null
+                && actual.getUltimoInicioAt().isAfter(Instant.now().minus(MARGEN_HUERFANO))) {
+            return false;
+        }
+        boolean sigueEnProgreso = intentoRepositorio.findById(id)
+                .map(i -> i.getEstado() == Intento.EstadoIntento.EN_PROGRESO)
+                .orElse(false);
+        if (sigueEnProgreso) return false;
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(actual.getId()).and("intentoEnProgreso").is(id)),
+                new Update().unset("intentoEnProgreso").set("updatedAt", Instant.now()),
+                ContadorIntentos.class);
+        return true;
+    }
+}
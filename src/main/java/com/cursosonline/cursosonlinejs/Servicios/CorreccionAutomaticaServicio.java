@@ -0,0 +1,60 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
+import com.cursosonline.cursosonlinejs.Entidades.Intento;
+import com.cursosonline.cursosonlinejs.Repositorios.EvaluacionRepositorio;
+import com.cursosonline.cursosonlinejs.Repositorios.IntentoRepositorio;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+
+/**
+ * Auto-calificación de un intento recién entregado: carga la evaluación, compila
+ * la clave y guarda el resultado. La usan tanto la entrega normal como la entrega
+ * automática al vencer el tiempo.
+ */
+@Service
+public class CorreccionAutomaticaServicio {
+
+    private final EvaluacionRepositorio evaluacionRepositorio;
+    private final IntentoRepositorio intentoRepositorio;
+    private final EstadisticaItemsServicio estadisticaItems;
+
+    public CorreccionAutomaticaServicio(EvaluacionRepositorio evaluacionRepositorio,
+                                        IntentoRepositorio intentoRepositorio,
+                                        EstadisticaItemsServicio estadisticaItems) {
+        this.evaluacionRepositorio = evaluacionRepositorio;
+        this.intentoRepositorio = intentoRepositorio;
+        this.estadisticaItems = estadisticaItems;
+    }
+
+    public Intento aplicar(Intento intento) {
+        if (intento == null || intento.getIdEvaluacion() == null) {
+            return intento;
+        }
+
+        var optEval = evaluacionRepositorio.findById(intento.getIdEvaluacion());
+        if (optEval.isEmpty()) return intento;
+        Evaluacion eval = optEval.get();
+
+        ClaveCorreccion clave = SorteoPreguntas.claveDelIntento(
+                ClaveCorreccion.compilar(eval), eval, intento.getSemilla());
+        if (clave.vacia()) {
+            return intento;
+        }
+
+        ClaveCorreccion.Resultado res = clave.calificar(intento.getRespuestas());
+        intento.setPuntajeMaximo(res.puntajeMaximo());
+        intento.setPuntaje(res.puntaje());
+
+        // Si NO hay preguntas no auto-calificables, marcamos como CALIFICADO
+        if (!res.requiereRevisionManual()) {
+            intento.setEstado(Intento.EstadoIntento.CALIFICADO);
+            intento.setCalificadoAt(Instant.now());
+        }
+
+        Intento guardado = intentoRepositorio.save(intento);
+        estadisticaItems.registrar(eval, guardado);
+        return guardado;
+    }
+}
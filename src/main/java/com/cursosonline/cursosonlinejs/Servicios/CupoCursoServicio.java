@@ -0,0 +1,188 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.CupoCurso;
+import com.cursosonline.cursosonlinejs.Entidades.Curso;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import com.cursosonline.cursosonlinejs.Repositorios.InscripcionRepositorio;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Reserva atómica de cupos de un curso.
+ *
+ * Antes se contaban las inscripciones y luego se insertaba: con muchos estudiantes
+ * inscribiéndose a la vez todos veían cupo libre y se vendían plazas de más. Ahora
+ * la comprobación y el incremento son un solo updateFirst sobre cupos_cursos con la
+ * condición ocupados < cupoMaximo; si no modifica nada, el curso está lleno.
+ */
+@Service
+public class CupoCursoServicio {
+
+    public static final List<Inscripcion.EstadoInscripcion> ESTADOS_OCUPAN_CUPO =
+            List.of(Inscripcion.EstadoInscripcion.PENDIENTE_PAGO,
+                    Inscripcion.EstadoInscripcion.ACTIVA);
+
+    private final MongoTemplate mongoTemplate;
+    private final InscripcionRepositorio inscripcionRepositorio;
+
+    public CupoCursoServicio(MongoTemplate mongoTemplate,
+                             InscripcionRepositorio inscripcionRepositorio) {
+        this.mongoTemplate = mongoTemplate;
+        this.inscripcionRepositorio = inscripcionRepositorio;
+    }
+
+    public static boolean ocupaCupo(Inscripcion.EstadoInscripcion estado) {
+        return estado != null && ESTADOS_OCUPAN_CUPO.contains(estado);
+    }
+
+    /**
+     * Ocupa un cupo del curso.
+     *
+     * @return false si el curso ya no tiene cupo
+     */
+    public boolean reservar(Curso curso) {
+        Integer cupo = curso.getCupoMaximo();
+        boolean limitado = cupo != null && cupo > 0;
+
+        // Segunda vuelta solo si hubo que crear el contador
+        for (int vuelta = 0; vuelta < 2; vuelta++) {
+            Criteria c = Criteria.where("_id").is(curso.getId());
+            if (limitado) c = c.and("ocupados").lt(cupo);
+            Update u = new Update().inc("ocupados", 1).set("updatedAt", Instant.now());
+            if (mongoTemplate.updateFirst(new Query(c), u, CupoCurso.class).getModifiedCount() > 0) {
+                return true;
+            }
+            if (mongoTemplate.exists(new Query(Criteria.where("_id").is(curso.getId())), CupoCurso.class)) {
+                return false;
+            }
+            inicializar(curso.getId());
+        }
+        return false;
+    }
+
+    /**
+     * Ocupa hasta {@code cantidad} cupos de una vez (importación en bloque). Con cupo
+     * limitado se lee el contador y se escribe condicionado al valor leído; si otro lo
+     * cambió entre medias se reintenta con el valor nuevo.
+     *
+     * @return cupos realmente ocupados (0 si el curso está lleno)
+     */
+    public int reservarVarios(Curso curso, int cantidad) {
+        if (cantidad <= 0) return 0;
+        Integer cupo = curso.getCupoMaximo();
+        Query porId = new Query(Criteria.where("_id").is(curso.getId()));
+        if (!mongoTemplate.exists(porId, CupoCurso.class)) {
+            inicializar(curso.getId());
+        }
+
+        if (cupo == null || cupo <= 0) {
+            mongoTemplate.updateFirst(porId,
+                    new Update().inc("ocupados", cantidad).set("updatedAt", Instant.now()),
+                    CupoCurso.class);
+            return cantidad;
+        }
+
+        for (int vuelta = 0; vuelta < 5; vuelta++) {
+            CupoCurso actual = mongoTemplate.findOne(porId, CupoCurso.class);
+            Long ocupados = actual == null ? null : actual.getOcupados();
+            int n = (int) Math.min(cantidad, cupo - (ocupados == null ? 0 : ocupados));
+            if (n <= 0) return 0;
+            Query q = new Query(Criteria.where("_id").is(curso.getId()).and("ocupados").is(ocupados));
+            Update u = new Update().inc("ocupados", n).set("updatedAt", Instant.now());
+            if (mongoTemplate.updateFirst(q, u, CupoCurso.class).getModifiedCount() > 0) {
+                return n;
+            }
+        }
+        // Mucha concurrencia sobre el curso: se sigue de uno en uno
+        int n = 0;
+        while (n < cantidad && reservar(curso)) n++;
+        return n;
+    }
+
+    /** Devuelve cupos reservados con {@link #reservarVarios} que no llegaron a usarse. */
+    public void devolverReservas(String idCurso, int cantidad) {
+        if (cantidad <= 0) return;
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(idCurso).and("ocupados").gte(cantidad)),
+                new Update().inc("ocupados", -cantidad).set("updatedAt", Instant.now()),
+                CupoCurso.class);
+    }
+
+    /**
+     * Devuelve un cupo (inscripción cancelada, vencida, completada o eliminada) y avisa
+     * a la lista de espera en la misma escritura.
+     */
+    public void liberar(String idCurso) {
+        liberar(idCurso, 1);
+    }
+
+    /** Devuelve varios cupos del mismo curso en una sola escritura. */
+    public void liberar(String idCurso, int cantidad) {
+        if (idCurso == null || cantidad <= 0) return;
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(idCurso).and("ocupados").gte(cantidad)),
+                new Update().inc("ocupados", -cantidad)
+                        .set("promocionPendiente", true)
+                        .inc("senalPromocion", 1)
+                        .set("updatedAt", Instant.now()),
+                CupoCurso.class);
+    }
+
+    /** Devuelve un cupo reservado que no llegó a usarse, sin avisar a la lista de espera. */
+    public void devolverReserva(String idCurso) {
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(idCurso).and("ocupados").gt(0)),
+                new Update().inc("ocupados", -1).set("updatedAt", Instant.now()),
+                CupoCurso.class);
+    }
+
+    /** Pide revisar la lista de espera del curso (p. ej. cambió el cupo máximo). */
+    public void senalarPromocion(String idCurso) {
+        if (idCurso == null) return;
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(idCurso)),
+                new Update().set("promocionPendiente", true).inc("senalPromocion", 1),
+                CupoCurso.class);
+    }
+
+    /** Apaga la marca de promoción, salvo que haya llegado otra señal desde {@code senalLeida}. */
+    public void apagarPromocion(String idCurso, Long senalLeida) {
+        Criteria c = Criteria.where("_id").is(idCurso);
+        c = senalLeida == null ? c.and("senalPromocion").is(null) : c.and("senalPromocion").is(senalLeida);
+        mongoTemplate.updateFirst(new Query(c), new Update().unset("promocionPendiente"), CupoCurso.class);
+    }
+
+    /** Siguiente turno de la lista de espera del curso. */
+    public long siguienteTurno(String idCurso) {
+        if (!mongoTemplate.exists(new Query(Criteria.where("_id").is(idCurso)), CupoCurso.class)) {
+            inicializar(idCurso);
+        }
+        CupoCurso c = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(idCurso)),
+                new Update().inc("ultimoTurno", 1),
+                FindAndModifyOptions.options().returnNew(true),
+                CupoCurso.class);
+        return c.getUltimoTurno();
+    }
+
+    // Cursos anteriores al contador: se arranca desde las inscripciones existentes
+    private void inicializar(String idCurso) {
+        CupoCurso c = new CupoCurso();
+        c.setId(idCurso);
+        c.setOcupados(inscripcionRepositorio.countByIdCursoAndEstadoIn(idCurso, ESTADOS_OCUPAN_CUPO));
+        c.setUpdatedAt(Instant.now());
+        try {
+            mongoTemplate.insert(c);
+        } catch (DuplicateKeyException ignored) {
+            // Otro hilo lo creó primero
+        }
+    }
+}
@@ -3,7 +3,6 @@ package com.cursosonline.cursosonlinejs.Servicios;
 import com.cursosonline.cursosonlinejs.Entidades.Curso;
 import com.cursosonline.cursosonlinejs.Entidades.Curso.EstadoCurso;
 import com.cursosonline.cursosonlinejs.Entidades.Curso.Nivel;
-import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
 import com.cursosonline.cursosonlinejs.Entidades.Leccion;
 import com.cursosonline.cursosonlinejs.Entidades.Modulo;
 import com.cursosonline.cursosonlinejs.Repositorios.CursoRepositorio;
@@ -39,10 +38,7 @@ public class CursoServicio {
     private final UsuarioServicio usuarioServicio;
     private final LeccionRepositorio leccionRepositorio;
     private final InscripcionRepositorio inscripcionRepositorio;
-
-    private static final List<Inscripcion.EstadoInscripcion> ESTADOS_OCUPAN_CUPO =
-            List.of(Inscripcion.EstadoInscripcion.PENDIENTE_PAGO,
-                    Inscripcion.EstadoInscripcion.ACTIVA);
+    private final CupoCursoServicio cupoCursoServicio;
 
     public CursoServicio(CursoRepositorio cursoRepositorio,
                          UsuarioRepositorio usuarioRepositorio,
@@ -51,7 +47,8 @@ public class CursoServicio {
                          ModuloRepositorio moduloRepositorio,
                          LeccionRepositorio leccionRepositorio,
                          InscripcionRepositorio inscripcionRepositorio,
-                         UsuarioServicio usuarioServicio) {
+                         UsuarioServicio usuarioServicio,
+                         CupoCursoServicio cupoCursoServicio) {
         this.cursoRepositorio = cursoRepositorio;
         this.usuarioRepositorio = usuarioRepositorio;
         this.mongoTemplate = mongoTemplate;
@@ -60,25 +57,19 @@ public class CursoServicio {
         this.leccionRepositorio = leccionRepositorio;
         this.inscripcionRepositorio = inscripcionRepositorio;
         this.usuarioServicio = usuarioServicio;
+        this.cupoCursoServicio = cupoCursoServicio;
     }
 
     public boolean puedeInscribirse(String idCurso) {
-        return cursoRepositorio.findById(idCurso).map(c -> {
-            if (c.getEstado() != Curso.EstadoCurso.PUBLICADO) return false;
-            Instant now = Instant.now();
-            if (c.getEnrollmentOpenAt() != null && now.isBefore(c.getEnrollmentOpenAt())) return false;
-            if (c.getEnrollmentCloseAt() != null && now.isAfter(c.getEnrollmentCloseAt())) return false;
-            return true;
-        }).orElse(false);
+        return cursoRepositorio.findById(idCurso).map(this::puedeInscribirse).orElse(false);
     }
 
-    public boolean cupoDisponible(String idCurso) {
-        return cursoRepositorio.findById(idCurso).map(c -> {
-            Integer cupo = c.getCupoMaximo();
-            if (cupo == null || cupo <= 0) return true;
-            long ocupados = inscripcionRepositorio.countByIdCursoAndEstadoIn(idCurso, ESTADOS_OCUPAN_CUPO);
-            return ocupados < cupo;
-        }).orElse(false);
+    public boolean puedeInscribirse(Curso c) {
+        if (c.getEstado() != Curso.EstadoCurso.PUBLICADO) return false;
+        Instant now = Instant.now();
+        if (c.getEnrollmentOpenAt() != null && now.isBefore(c.getEnrollmentOpenAt())) return false;
+        if (c.getEnrollmentCloseAt() != null && now.isAfter(c.getEnrollmentCloseAt())) return false;
+        return true;
     }
 
     public void reconstruirLeccionesCount(String idCurso) {
@@ -127,7 +118,9 @@ public class CursoServicio {
             validarParaPublicar(c);
             c.setEstado(Curso.EstadoCurso.PUBLICADO);
             c.setPublishedAt(Instant.now());
-            return cursoRepositorio.save(c);
+            Curso publicado = cursoRepositorio.save(c);
+            cupoCursoServicio.senalarPromocion(publicado.getId());
+            return publicado;
         });
     }
 
@@ -154,6 +147,8 @@ public class CursoServicio {
         if (curso.getLeccionesCount() == null) curso.setLeccionesCount(0);
 
         Curso saved = cursoRepositorio.save(curso);
+        // Puede haber subido el cupo máximo: que la lista de espera lo revise
+        cupoCursoServicio.senalarPromocion(saved.getId());
 
         if (saved.getIdInstructor() != null) {
             usuarioServicio.syncCursosDelInstructor(saved.getIdInstructor());
@@ -0,0 +1,48 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/** CSV (RFC 4180) en UTF-8 con BOM para que Excel respete las tildes. */
+class EscritorCsv implements EscritorTabla {
+
+    private final BufferedWriter out;
+
+    EscritorCsv(OutputStream destino) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(destino, StandardCharsets.UTF_8), 16 * 1024);
+        out.write('\uFEFF');
+    }
+
+    @Override
+    public void fila(List<?> celdas) throws IOException {
+        for (int i = 0; i < celdas.size(); i++) {
+            if (i > 0) out.write(',');
+            out.write(celda(celdas.get(i)));
+        }
+        out.write("\r\n");
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.flush();
+    }
+
+    private static String celda(Object v) {
+        if (v == null) return "";
+        if (v instanceof BigDecimal bd) return bd.toPlainString();
+        String s = String.valueOf(v);
+        // Evita que Excel interprete el texto como fórmula
+        if (!s.isEmpty() && "=+-@".indexOf(s.charAt(0)) >= 0 && !(v instanceof Number)) {
+            s = "'" + s;
+        }
+        if (s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0) {
+            return '"' + s.replace("\"", "\"\"") + '"';
+        }
+        return s;
+    }
+}
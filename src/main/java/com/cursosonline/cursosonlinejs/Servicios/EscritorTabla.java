@@ -0,0 +1,15 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Escritor de tablas fila a fila: nada se acumula en memoria, cada fila se escribe
+ * en la salida en cuanto llega. Celdas admitidas: String, Number, Boolean o null.
+ * close() termina el documento pero no cierra la salida subyacente.
+ */
+interface EscritorTabla extends Closeable {
+
+    void fila(List<?> celdas) throws IOException;
+}
@@ -0,0 +1,121 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * XLSX mínimo (una hoja, celdas inlineStr) escrito directamente como SpreadsheetML.
+ *
+ * No hay librería de Excel en el proyecto y las que hay cargan la hoja completa en
+ * memoria; aquí las partes fijas del paquete se escriben al abrir y la hoja se va
+ * comprimiendo fila a fila dentro del zip.
+ */
+class EscritorXlsx implements EscritorTabla {
+
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    private final ZipOutputStream zip;
+    private final Writer hoja;
+    private int nroFila = 0;
+
+    EscritorXlsx(OutputStream destino, String nombreHoja) throws IOException {
+        this.zip = new ZipOutputStream(destino, StandardCharsets.UTF_8);
+
+        parte("[Content_Types].xml", XML
+                + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                + "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+                + "</Types>");
+        parte("_rels/.rels", XML
+                + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+        parte("xl/workbook.xml", XML
+                + "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+                + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+                + "<sheets><sheet name=\"" + escapar(nombreHoja) + "\" sheetId=\"1\" r:id=\"rId1\"/></sheets>"
+                + "</workbook>");
+        parte("xl/_rels/workbook.xml.rels", XML
+                + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+                + "</Relationships>");
+
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+        // El writer no se cierra nunca: cerrarlo cerraría el zip y la salida
+        this.hoja = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 16 * 1024);
+        hoja.write(XML);
+        hoja.write("<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+    }
+
+    @Override
+    public void fila(List<?> celdas) throws IOException {
+        nroFila++;
+        hoja.write("<row r=\"" + nroFila + "\">");
+        for (int i = 0; i < celdas.size(); i++) {
+            Object v = celdas.get(i);
+            if (v == null) continue;
+            String ref = columna(i) + nroFila;
+            if (v instanceof Number n) {
+                String num = n instanceof BigDecimal bd ? bd.toPlainString() : n.toString();
+                hoja.write("<c r=\"" + ref + "\"><v>" + num + "</v></c>");
+            } else if (v instanceof Boolean b) {
+                hoja.write("<c r=\"" + ref + "\" t=\"b\"><v>" + (b ? 1 : 0) + "</v></c>");
+            } else {
+                hoja.write("<c r=\"" + ref + "\" t=\"inlineStr\"><is><t xml:space=\"preserve\">"
+                        + escapar(String.valueOf(v)) + "</t></is></c>");
+            }
+        }
+        hoja.write("</row>");
+    }
+
+    @Override
+    public void close() throws IOException {
+        hoja.write("</sheetData></worksheet>");
+        hoja.flush();
+        zip.closeEntry();
+        zip.finish();
+    }
+
+    private void parte(String nombre, String contenido) throws IOException {
+        zip.putNextEntry(new ZipEntry(nombre));
+        zip.write(contenido.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    /** Índice 0-based a letras de columna: 0 → A, 25 → Z, 26 → AA. */
+    private static String columna(int i) {
+        StringBuilder sb = new StringBuilder();
+        for (int n = i + 1; n > 0; n = (n - 1) / 26) {
+            sb.insert(0, (char) ('A' + (n - 1) % 26));
+        }
+        return sb.toString();
+    }
+
+    private static String escapar(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '"' -> sb.append("&quot;");
+                default -> {
+                    // Los caracteres de control no son XML válido
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
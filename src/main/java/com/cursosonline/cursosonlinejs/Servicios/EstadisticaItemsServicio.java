@@ -0,0 +1,372 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.DTO.EstadisticaItemsDTO;
+import com.cursosonline.cursosonlinejs.Entidades.EstadisticaEvaluacion;
+import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
+import com.cursosonline.cursosonlinejs.Entidades.Intento;
+import com.cursosonline.cursosonlinejs.Entidades.OpcionPregunta;
+import com.cursosonline.cursosonlinejs.Entidades.Pregunta;
+import com.cursosonline.cursosonlinejs.Repositorios.EvaluacionRepositorio;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Análisis de ítems por evaluación: dificultad, discriminación y frecuencia de
+ * cada opción (distractores).
+ *
+ * Cada intento auto-calificado se suma a un único documento por evaluación con un
+ * solo $inc atómico (conteos y sumas por pregunta y opción), así que intentos
+ * simultáneos no compiten por el documento y consultar las estadísticas no recorre
+ * los intentos.
+ *
+ * La reconstrucción completa recorre los intentos enviados, los corrige con la
+ * clave actual y reemplaza el documento; se usa para datos históricos y después
+ * de una recalificación.
+ */
+@Service
+public class EstadisticaItemsServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(EstadisticaItemsServicio.class);
+
+    private static final int MAX_REINTENTOS = 10;
+
+    private static final List<Intento.EstadoIntento> ESTADOS_ENVIADOS =
+            List.of(Intento.EstadoIntento.ENVIADO, Intento.EstadoIntento.CALIFICADO);
+
+    private final MongoTemplate mongoTemplate;
+    private final EvaluacionRepositorio evaluacionRepositorio;
+
+    // Evaluaciones con una reconstrucción ya encolada o en curso
+    private final Set<String> reconstrucciones = ConcurrentHashMap.newKeySet();
+    private ExecutorService ejecutor;
+
+    public EstadisticaItemsServicio(MongoTemplate mongoTemplate,
+                                    EvaluacionRepositorio evaluacionRepositorio) {
+        this.mongoTemplate = mongoTemplate;
+        this.evaluacionRepositorio = evaluacionRepositorio;
+    }
+
+    @PostConstruct
+    void iniciarEjecutor() {
+        ejecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread th = new Thread(r, "estadisticas-items");
+            th.setDaemon(true);
+            return th;
+        });
+    }
+
+    @PreDestroy
+    void detenerEjecutor() {
+        ejecutor.shutdownNow();
+    }
+
+    // =========================================================
+    // ACTUALIZACIÓN INCREMENTAL
+    // =========================================================
+
+    /**
+     * Suma un intento recién corregido (sus respuestas ya traen estado) a las
+     * estadísticas de la evaluación. Nunca lanza: un fallo aquí no debe impedir
+     * la calificación, y la reconstrucción lo corrige.
+     */
+    public void registrar(Evaluacion eval, Intento intento) {
+        if (eval == null || intento == null) return;
+        double total = fraccion(intento.getPuntaje(), intento.getPuntajeMaximo());
+        if (Double.isNaN(total)) return;
+
+        Update u = new Update()
+                .inc("intentos", 1)
+                .inc("sumaPuntaje", total)
+                .inc("sumaCuadPuntaje", total * total)
+                .inc("version", 1)
+                .set("actualizadoAt", Instant.now());
+        for (Aporte a : aportes(eval, intento.getRespuestas(), preguntasDelIntento(eval, intento.getSemilla()))) {
+            String base = "preguntas." + a.idPregunta() + ".";
+            u.inc(base + "respuestas", 1)
+                    .inc(base + "sumaTotal", total)
+                    .inc(base + "sumaCuadTotal", total * total);
+            if (a.correcta()) u.inc(base + "correctas", 1).inc(base + "sumaTotalCorrectas", total);
+            if (a.omitida()) u.inc(base + "omitidas", 1);
+            for (String idOpcion : a.opciones()) u.inc(base + "opciones." + idOpcion, 1L);
+        }
+
+        // Si la última reconstrucción ya contó el intento, el filtro no encuentra el
+        // documento y el upsert choca con su _id: no hay nada que sumar
+        Criteria c = Criteria.where("_id").is(eval.getId());
+        if (intento.getEnviadoEn() != null) {
+            c = c.orOperator(
+                    Criteria.where("reconstruidoHasta").is(null),
+                    Criteria.where("reconstruidoHasta").lt(intento.getEnviadoEn()));
+        }
+        try {
+            mongoTemplate.upsert(new Query(c), u, EstadisticaEvaluacion.class);
+        } catch (DuplicateKeyException ex) {
+            // Ya incluido por la reconstrucción
+        } catch (RuntimeException ex) {
+            log.error("Error actualizando estadísticas de la evaluación {}", eval.getId(), ex);
+        }
+    }
+
+    /** Aplica un intento al acumulado en memoria (reconstrucción). */
+    private static void acumular(EstadisticaEvaluacion est, Evaluacion eval,
+                                 List<Intento.Respuesta> respuestas, double total, Set<String> incluidas) {
+        est.setIntentos(est.getIntentos() + 1);
+        est.setSumaPuntaje(est.getSumaPuntaje() + total);
+        est.setSumaCuadPuntaje(est.getSumaCuadPuntaje() + total * total);
+
+        for (Aporte a : aportes(eval, respuestas, incluidas)) {
+            EstadisticaEvaluacion.Item item = est.getPreguntas()
+                    .computeIfAbsent(a.idPregunta(), k -> new EstadisticaEvaluacion.Item());
+            item.setRespuestas(item.getRespuestas() + 1);
+            item.setSumaTotal(item.getSumaTotal() + total);
+            item.setSumaCuadTotal(item.getSumaCuadTotal() + total * total);
+            if (a.correcta()) {
+                item.setCorrectas(item.getCorrectas() + 1);
+                item.setSumaTotalCorrectas(item.getSumaTotalCorrectas() + total);
+            }
+            if (a.omitida()) item.setOmitidas(item.getOmitidas() + 1);
+            for (String idOpcion : a.opciones()) item.getOpciones().merge(idOpcion, 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Lo que aporta un intento a cada pregunta auto-corregida que le tocó: acierto,
+     * omisión y opciones marcadas.
+     */
+    private static List<Aporte> aportes(Evaluacion eval, List<Intento.Respuesta> respuestas, Set<String> incluidas) {
+        List<Aporte> out = new ArrayList<>();
+        if (eval.getPreguntas() == null) return out;
+
+        Map<String, Intento.Respuesta> porPregunta = new HashMap<>();
+        if (respuestas != null) {
+            for (Intento.Respuesta r : respuestas) {
+                if (r != null && r.getIdPregunta() != null) porPregunta.putIfAbsent(r.getIdPregunta(), r);
+            }
+        }
+
+        for (Pregunta p : eval.getPreguntas()) {
+            if (p == null || !claveValida(p.getId()) || !p.isAutoCalificable()) continue;
+            // Preguntas del banco que no le tocaron al intento
+            if (incluidas != null && !incluidas.contains(p.getId())) continue;
+
+            Intento.Respuesta r = porPregunta.get(p.getId());
+            Intento.EstadoRespuesta estado = r == null ? Intento.EstadoRespuesta.SIN_RESPONDER : r.getEstado();
+            // Sin estado o sin clave configurada: la pregunta no se pudo corregir
+            if (estado == null || estado == Intento.EstadoRespuesta.SIN_CORREGIR) continue;
+
+            Set<String> opciones = new LinkedHashSet<>();
+            if (r != null && r.getOpciones() != null) {
+                for (String idOpcion : r.getOpciones()) {
+                    if (claveValida(idOpcion)) opciones.add(idOpcion);
+                }
+            }
+            out.add(new Aporte(p.getId(),
+                    estado == Intento.EstadoRespuesta.CORRECTA,
+                    estado == Intento.EstadoRespuesta.SIN_RESPONDER,
+                    opciones));
+        }
+        return out;
+    }
+
+    // Los ids de pregunta y opción son claves del documento: sin '.' ni '$'
+    private static boolean claveValida(String id) {
+        return id != null && !id.isEmpty() && !id.contains(".") && !id.startsWith("$");
+    }
+
+    private record Aporte(String idPregunta, boolean correcta, boolean omitida, Set<String> opciones) {}
+
+    // =========================================================
+    // RECONSTRUCCIÓN
+    // =========================================================
+
+    /**
+     * Encola la reconstrucción de las estadísticas de la evaluación. Devuelve false
+     * si ya había una pendiente.
+     */
+    public boolean reconstruir(String idEvaluacion) {
+        if (!reconstrucciones.add(idEvaluacion)) return false;
+        ejecutor.submit(() -> {
+            try {
+                ejecutarReconstruccion(idEvaluacion);
+            } catch (RuntimeException ex) {
+                log.error("Falló la reconstrucción de estadísticas de la evaluación {}", idEvaluacion, ex);
+            } finally {
+                reconstrucciones.remove(idEvaluacion);
+            }
+        });
+        return true;
+    }
+
+    private void ejecutarReconstruccion(String idEvaluacion) {
+        Evaluacion eval = evaluacionRepositorio.findById(idEvaluacion).orElse(null);
+        if (eval == null) {
+            mongoTemplate.remove(new Query(Criteria.where("_id").is(idEvaluacion)), EstadisticaEvaluacion.class);
+            return;
+        }
+        ClaveCorreccion clave = ClaveCorreccion.compilar(eval);
+
+        EstadisticaEvaluacion nueva = new EstadisticaEvaluacion();
+        nueva.setId(idEvaluacion);
+
+        Instant desde = null;
+        Instant hasta = Instant.now();
+        for (int n = 0; n < MAX_REINTENTOS; n++) {
+            acumularEnviados(nueva, eval, clave, desde, hasta);
+            nueva.setReconstruidoHasta(hasta);
+            nueva.setActualizadoAt(Instant.now());
+            // Reemplaza el documento actual; si cambió mientras tanto, se suman los
+            // intentos enviados desde el último corte y se vuelve a intentar
+            nueva.setVersion(versionActual(idEvaluacion));
+            try {
+                mongoTemplate.save(nueva);
+                log.info("Estadísticas de la evaluación {} reconstruidas con {} intentos",
+                        idEvaluacion, nueva.getIntentos());
+                return;
+            } catch (OptimisticLockingFailureException | DuplicateKeyException ex) {
+                desde = hasta;
+                hasta = Instant.now();
+            }
+        }
+        log.warn("La reconstrucción de estadísticas de la evaluación {} no pudo escribirse", idEvaluacion);
+    }
+
+    private void acumularEnviados(EstadisticaEvaluacion est, Evaluacion eval, ClaveCorreccion clave,
+                                  Instant desde, Instant hasta) {
+        Criteria c = Criteria.where("idEvaluacion").is(eval.getId())
+                .and("estado").in(ESTADOS_ENVIADOS);
+        c = desde == null ? c.and("enviadoEn").lte(hasta) : c.and("enviadoEn").gt(desde).lte(hasta);
+        Query q = new Query(c);
+        q.fields().include("respuestas", "semilla");
+
+        try (Stream<Intento> stream = mongoTemplate.stream(q, Intento.class)) {
+            stream.forEach(i -> {
+                ClaveCorreccion.Resultado res = SorteoPreguntas.claveDelIntento(clave, eval, i.getSemilla())
+                        .calificar(i.getRespuestas());
+                double total = fraccion(res.puntaje(), res.puntajeMaximo());
+                if (!Double.isNaN(total)) {
+                    acumular(est, eval, i.getRespuestas(), total, preguntasDelIntento(eval, i.getSemilla()));
+                }
+            });
+        }
+    }
+
+    private Long versionActual(String idEvaluacion) {
+        Query q = new Query(Criteria.where("_id").is(idEvaluacion));
+        q.fields().include("version");
+        EstadisticaEvaluacion actual = mongoTemplate.findOne(q, EstadisticaEvaluacion.class);
+        return actual == null ? null : actual.getVersion();
+    }
+
+    // =========================================================
+    // CONSULTA
+    // =========================================================
+
+    public Optional<EstadisticaItemsDTO> obtener(String idEvaluacion) {
+        Evaluacion eval = evaluacionRepositorio.findById(idEvaluacion).orElse(null);
+        if (eval == null) return Optional.empty();
+
+        EstadisticaEvaluacion est = mongoTemplate.findById(idEvaluacion, EstadisticaEvaluacion.class);
+        if (est == null) {
+            est = new EstadisticaEvaluacion();
+            est.setId(idEvaluacion);
+        }
+
+        List<EstadisticaItemsDTO.PreguntaDTO> preguntas = new ArrayList<>();
+        if (eval.getPreguntas() != null) {
+            for (Pregunta p : eval.getPreguntas()) {
+                if (p == null || p.getId() == null) continue;
+                EstadisticaEvaluacion.Item item = est.getPreguntas().get(p.getId());
+                if (item == null) item = new EstadisticaEvaluacion.Item();
+
+                List<EstadisticaItemsDTO.OpcionDTO> opciones = new ArrayList<>();
+                if (p.getOpciones() != null) {
+                    for (OpcionPregunta o : p.getOpciones()) {
+                        long veces = o.getId() == null ? 0 : item.getOpciones().getOrDefault(o.getId(), 0L);
+                        opciones.add(new EstadisticaItemsDTO.OpcionDTO(
+                                o.getId(), o.getTexto(), o.isCorrecta(), veces,
+                                item.getRespuestas() == 0 ? null : redondear((double) veces / item.getRespuestas())));
+                    }
+                }
+
+                preguntas.add(new EstadisticaItemsDTO.PreguntaDTO(
+                        p.getId(),
+                        p.getEnunciado(),
+                        item.getRespuestas(),
+                        item.getCorrectas(),
+                        item.getOmitidas(),
+                        item.getRespuestas() == 0 ? null : redondear((double) item.getCorrectas() / item.getRespuestas()),
+                        discriminacion(item),
+                        opciones));
+            }
+        }
+
+        long n = est.getIntentos();
+        Double desviacion = n > 1
+                ? redondear(Math.sqrt(Math.max(0, est.getSumaCuadPuntaje() - est.getSumaPuntaje() * est.getSumaPuntaje() / n) / (n - 1)))
+                : null;
+        return Optional.of(new EstadisticaItemsDTO(
+                idEvaluacion,
+                est.getIntentos(),
+                n == 0 ? null : redondear(est.getSumaPuntaje() / n),
+                desviacion,
+                est.getReconstruidoHasta(),
+                est.getActualizadoAt(),
+                preguntas));
+    }
+
+    /** Correlación punto-biserial entre acertar la pregunta y el puntaje total. */
+    private static Double discriminacion(EstadisticaEvaluacion.Item item) {
+        long n = item.getRespuestas();
+        if (n < 2) return null;
+        double c = item.getCorrectas();
+        double sxx = c - c * c / n;
+        double syy = item.getSumaCuadTotal() - item.getSumaTotal() * item.getSumaTotal() / n;
+        double sxy = item.getSumaTotalCorrectas() - c * item.getSumaTotal() / n;
+        // Todos acertaron, todos fallaron o todos sacaron el mismo total
+        if (sxx <= 1e-12 || syy <= 1e-12) return null;
+        return redondear(sxy / Math.sqrt(sxx * syy));
+    }
+
+    // =========================================================
+    // HELPERS
+    // =========================================================
+
+    /** null = todas las preguntas de la evaluación. */
+    private static Set<String> preguntasDelIntento(Evaluacion eval, Long semilla) {
+        if (semilla == null || !SorteoPreguntas.muestrea(eval)) return null;
+        return SorteoPreguntas.idsPreguntas(eval, semilla);
+    }
+
+    private static double fraccion(BigDecimal puntaje, BigDecimal maximo) {
+        if (puntaje == null || maximo == null || maximo.signum() <= 0) return Double.NaN;
+        return puntaje.divide(maximo, MathContext.DECIMAL64).doubleValue();
+    }
+
+    private static Double redondear(double v) {
+        return Math.round(v * 10000d) / 10000d;
+    }
+}
@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -20,11 +21,14 @@ public class EvaluacionServicio {
 
     private final EvaluacionRepositorio evaluacionRepositorio;
     private final LeccionRepositorio leccionRepositorio;
+    private final VistaEvaluacionServicio vistaEvaluacion;
 
     public EvaluacionServicio(EvaluacionRepositorio evaluacionRepositorio,
-                              LeccionRepositorio leccionRepositorio) {
+                              LeccionRepositorio leccionRepositorio,
+                              VistaEvaluacionServicio vistaEvaluacion) {
         this.evaluacionRepositorio = evaluacionRepositorio;
         this.leccionRepositorio = leccionRepositorio;
+        this.vistaEvaluacion = vistaEvaluacion;
     }
 
     public Evaluacion guardar(Evaluacion e) {
@@ -49,6 +53,12 @@ public class EvaluacionServicio {
             if (!Objects.equals(actual.getIdLeccion(), e.getIdLeccion())) {
                 throw new IllegalArgumentException("No se permite cambiar la evaluación de lección.");
             }
+            // Con sorteo, las preguntas de cada intento se regeneran desde su semilla y el
+            // banco actual. Corregir enunciados o respuestas de una PUBLICADA sí se puede
+            if (actual.getEstado() == Evaluacion.EstadoPublicacion.PUBLICADA && cambiaElSorteo(actual, e)) {
+                throw new IllegalStateException(
+                        "No se pueden agregar ni quitar preguntas de una evaluación PUBLICADA con sorteo. Archívala primero.");
+            }
             e.setIdModulo(actual.getIdModulo());
             e.setIdCurso(actual.getIdCurso());
         }
@@ -57,6 +67,7 @@ public class EvaluacionServicio {
         recalcularMetadatosPreguntas(e);
 
         Evaluacion saved = evaluacionRepositorio.save(e);
+        vistaEvaluacion.invalidar(saved.getId());
         syncEvaluacionesPublicadasEnLeccion(saved.getIdLeccion());
         return saved;
     }
@@ -88,6 +99,7 @@ public class EvaluacionServicio {
             if (tipo != null) actual.setTipo(tipo);
             if (puntajeMaximo != null && puntajeMaximo.signum() >= 0) actual.setPuntajeMaximo(puntajeMaximo);
             Evaluacion s = evaluacionRepositorio.save(actual);
+            vistaEvaluacion.invalidar(s.getId());
             syncEvaluacionesPublicadasEnLeccion(s.getIdLeccion());
             return s;
         });
@@ -106,21 +118,62 @@ public class EvaluacionServicio {
             if (tipo != null) actual.setTipo(tipo);
             if (puntajeMaximo != null && puntajeMaximo.signum() >= 0) actual.setPuntajeMaximo(puntajeMaximo);
             Evaluacion s = evaluacionRepositorio.save(actual);
+            vistaEvaluacion.invalidar(s.getId());
             syncEvaluacionesPublicadasEnLeccion(s.getIdLeccion());
             return s;
         });
     }
 
+    /**
+     * Configura el sorteo de preguntas de los intentos. Como las preguntas de cada intento
+     * se regeneran desde su semilla, no se permite cambiarlo con la evaluación PUBLICADA.
+     */
+    public Optional<Evaluacion> configurarSorteo(String idEval,
+                                                 String idLeccion,
+                                                 Integer preguntasPorIntento,
+                                                 Boolean barajarPreguntas,
+                                                 Boolean barajarOpciones) {
+        return evaluacionRepositorio.findByIdAndIdLeccion(idEval, idLeccion).map(actual -> {
+            if (actual.getEstado() == Evaluacion.EstadoPublicacion.PUBLICADA) {
+                throw new IllegalStateException("No se puede cambiar el sorteo de una evaluación PUBLICADA. Archívala primero.");
+            }
+            if (preguntasPorIntento != null) {
+                if (preguntasPorIntento < 0) {
+                    throw new IllegalArgumentException("preguntasPorIntento no puede ser negativo.");
+                }
+                actual.setPreguntasPorIntento(preguntasPorIntento == 0 ? null : preguntasPorIntento);
+            }
+            if (barajarPreguntas != null) actual.setBarajarPreguntas(barajarPreguntas);
+            if (barajarOpciones != null) actual.setBarajarOpciones(barajarOpciones);
+            Evaluacion s = evaluacionRepositorio.save(actual);
+            vistaEvaluacion.invalidar(s.getId());
+            return s;
+        });
+    }
+
     public boolean eliminar(String idEval, String idLeccion) {
         return evaluacionRepositorio.findByIdAndIdLeccion(idEval, idLeccion)
                 .map(e -> {
                     evaluacionRepositorio.deleteByIdAndIdLeccion(idEval, idLeccion);
+                    vistaEvaluacion.invalidar(idEval);
                     syncEvaluacionesPublicadasEnLeccion(idLeccion);
                     return true;
                 })
                 .orElse(false);
     }
 
+    /** Si con el cambio otras preguntas entrarían al sorteo de los intentos ya iniciados. */
+    private static boolean cambiaElSorteo(Evaluacion actual, Evaluacion nueva) {
+        if (!SorteoPreguntas.muestrea(actual) && !SorteoPreguntas.muestrea(nueva)) return false;
+        return !Objects.equals(actual.getPreguntasPorIntento(), nueva.getPreguntasPorIntento())
+                || !idsPreguntas(actual).equals(idsPreguntas(nueva));
+    }
+
+    private static Set<String> idsPreguntas(Evaluacion e) {
+        if (e.getPreguntas() == null) return Set.of();
+        return e.getPreguntas().stream().map(Pregunta::getId).collect(Collectors.toSet());
+    }
+
     /**
      * Recalcula:
      *  - totalPreguntas
@@ -169,6 +222,7 @@ public class EvaluacionServicio {
                 e.setEstado(Evaluacion.EstadoPublicacion.PUBLICADA);
                 e.setPublishedAt(Instant.now());
                 e = evaluacionRepositorio.save(e);
+                vistaEvaluacion.invalidar(e.getId());
                 syncEvaluacionesPublicadasEnLeccion(e.getIdLeccion());
             }
             return e;
@@ -180,6 +234,7 @@ public class EvaluacionServicio {
             if (e.getEstado() != Evaluacion.EstadoPublicacion.ARCHIVADA) {
                 e.setEstado(Evaluacion.EstadoPublicacion.ARCHIVADA);
                 e = evaluacionRepositorio.save(e);
+                vistaEvaluacion.invalidar(e.getId());
                 syncEvaluacionesPublicadasEnLeccion(e.getIdLeccion());
             }
             return e;
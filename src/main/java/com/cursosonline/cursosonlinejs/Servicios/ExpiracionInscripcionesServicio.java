@@ -0,0 +1,225 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion.EstadoInscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.MarcaBarrido;
+import com.cursosonline.cursosonlinejs.Eventos.InscripcionEstadoEvento;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Pasa a EXPIRADA las inscripciones cuyo accessEndAt ya pasó.
+ *
+ * El barrido recorre en orden el índice access_end_idx {accessEndAt, _id} (lo crea
+ * IndicesMongoConfig) a partir de la marca guardada en marcas_barrido, así cada pasada
+ * solo lee lo que venció desde la anterior. Cada lote se vence con un bulk de updates
+ * condicionados al estado leído: si alguien cambió la inscripción entre medias, su
+ * update no hace nada. Por cada inscripción vencida se devuelve el cupo, se descuenta
+ * inscritosCount si estaba ACTIVA y se publica un {@link InscripcionEstadoEvento}.
+ *
+ * Un accessEndAt que se mueve hacia atrás por detrás de la marca no lo ve la pasada
+ * incremental; para eso, cada app.inscripciones.expiracion.repaso-completo-horas se
+ * recorre el índice desde el principio.
+ */
+@Service
+public class ExpiracionInscripcionesServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpiracionInscripcionesServicio.class);
+
+    private static final String MARCA = "expiracion_inscripciones";
+    private static final int TAMANO_LOTE = 500;
+
+    // Vitalicias aparte, estos son los estados que todavía dan acceso o lo esperan
+    private static final List<EstadoInscripcion> ESTADOS_EXPIRABLES = List.of(
+            EstadoInscripcion.PENDIENTE_PAGO,
+            EstadoInscripcion.ACTIVA,
+            EstadoInscripcion.SUSPENDIDA);
+
+    @Value("${app.inscripciones.expiracion.repaso-completo-horas:24}")
+    private long repasoCompletoHoras;
+
+    @Value("${app.inscripciones.expiracion.lease-segundos:300}")
+    private long leaseSegundos;
+
+    private final MongoTemplate mongoTemplate;
+    private final CupoCursoServicio cupoCursoServicio;
+    private final CursoServicio cursoServicio;
+    private final ApplicationEventPublisher eventos;
+
+    private final String nodo = UUID.randomUUID().toString();
+
+    public ExpiracionInscripcionesServicio(MongoTemplate mongoTemplate,
+                                           CupoCursoServicio cupoCursoServicio,
+                                           CursoServicio cursoServicio,
+                                           ApplicationEventPublisher eventos) {
+        this.mongoTemplate = mongoTemplate;
+        this.cupoCursoServicio = cupoCursoServicio;
+        this.cursoServicio = cursoServicio;
+        this.eventos = eventos;
+    }
+
+    @Scheduled(fixedDelayString = "${app.inscripciones.expiracion.barrido-ms:60000}",
+               initialDelayString = "${app.inscripciones.expiracion.barrido-ms:60000}")
+    public void barrer() {
+        Instant ahora = Instant.now();
+        MarcaBarrido marca = tomarMarca(ahora);
+        if (marca == null) return;   // otro nodo está barriendo
+
+        boolean completo = marca.getUltimoRepasoCompleto() == null
+                || marca.getUltimoRepasoCompleto().isBefore(ahora.minus(Duration.ofHours(repasoCompletoHoras)));
+        Instant desde = completo ? null : marca.getHasta();
+        String desdeId = completo ? null : marca.getHastaId();
+
+        int vencidas = 0;
+        try {
+            while (true) {
+                List<Inscripcion> lote = leerLote(desde, desdeId, ahora);
+                if (!lote.isEmpty()) {
+                    vencidas += expirar(lote, ahora);
+                    Inscripcion ultima = lote.get(lote.size() - 1);
+                    desde = ultima.getAccessEndAt();
+                    desdeId = ultima.getId();
+                }
+                if (lote.size() < TAMANO_LOTE) {
+                    // Hasta "ahora" no queda nada por vencer
+                    avanzarMarca(ahora, null, completo ? ahora : null);
+                    break;
+                }
+                avanzarMarca(desde, desdeId, null);
+            }
+        } catch (RuntimeException ex) {
+            log.error("Error venciendo inscripciones por fin de acceso", ex);
+        } finally {
+            soltarMarca();
+        }
+        if (vencidas > 0) {
+            log.info("{} inscripciones pasaron a EXPIRADA por fin de acceso", vencidas);
+        }
+    }
+
+    private List<Inscripcion> leerLote(Instant desde, String desdeId, Instant ahora) {
+        List<Criteria> cs = new ArrayList<>();
+        cs.add(Criteria.where("accessEndAt").lte(ahora));
+        if (desde != null) {
+            cs.add(desdeId == null
+                    ? Criteria.where("accessEndAt").gt(desde)
+                    : new Criteria().orOperator(
+                            Criteria.where("accessEndAt").gt(desde),
+                            Criteria.where("accessEndAt").is(desde).and("_id").gt(desdeId)));
+        }
+        Query q = new Query(new Criteria().andOperator(cs)
+                .and("estado").in(ESTADOS_EXPIRABLES)
+                .and("accesoVitalicio").ne(true))
+                .with(Sort.by(Sort.Order.asc("accessEndAt"), Sort.Order.asc("_id")))
+                .limit(TAMANO_LOTE);
+        q.fields().include("idCurso", "idEstudiante", "estado", "accessEndAt");
+        return mongoTemplate.find(q, Inscripcion.class);
+    }
+
+    private int expirar(List<Inscripcion> lote, Instant ahora) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Inscripcion.class);
+        for (Inscripcion i : lote) {
+            bulk.updateOne(
+                    new Query(Criteria.where("_id").is(i.getId())
+                            .and("estado").is(i.getEstado())
+                            .and("accessEndAt").lte(ahora)),
+                    new Update()
+                            .set("estado", EstadoInscripcion.EXPIRADA)
+                            .set("expiradaAt", ahora)
+                            .set("estadoCambiadoAt", ahora)
+                            .set("updatedAt", ahora)
+                            .inc("version", 1));
+        }
+        int modificadas = bulk.execute().getModifiedCount();
+        if (modificadas == 0) return 0;
+
+        // Si no entraron todas, expiradaAt = ahora identifica las que venció esta pasada
+        List<Inscripcion> vencidas = lote;
+        if (modificadas < lote.size()) {
+            Query q = new Query(Criteria.where("_id").in(lote.stream().map(Inscripcion::getId).toList())
+                    .and("estado").is(EstadoInscripcion.EXPIRADA)
+                    .and("expiradaAt").is(ahora));
+            q.fields().include("_id");
+            Set<String> ids = new HashSet<>();
+            for (Inscripcion i : mongoTemplate.find(q, Inscripcion.class)) ids.add(i.getId());
+            vencidas = lote.stream().filter(i -> ids.contains(i.getId())).toList();
+        }
+
+        Map<String, Integer> cuposPorCurso = new HashMap<>();
+        Map<String, Integer> activasPorCurso = new HashMap<>();
+        for (Inscripcion i : vencidas) {
+            if (CupoCursoServicio.ocupaCupo(i.getEstado())) cuposPorCurso.merge(i.getIdCurso(), 1, Integer::sum);
+            if (i.getEstado() == EstadoInscripcion.ACTIVA) activasPorCurso.merge(i.getIdCurso(), 1, Integer::sum);
+        }
+        cuposPorCurso.forEach(cupoCursoServicio::liberar);
+        activasPorCurso.forEach((idCurso, n) -> cursoServicio.incInscritosCount(idCurso, -n));
+
+        for (Inscripcion i : vencidas) {
+            eventos.publishEvent(new InscripcionEstadoEvento(i.getId(), i.getIdCurso(), i.getIdEstudiante(),
+                    i.getEstado(), EstadoInscripcion.EXPIRADA, ahora));
+        }
+        return vencidas.size();
+    }
+
+    // =========================================================
+    // MARCA
+    // =========================================================
+
+    /** Reserva la marca para este nodo; null si la tiene otro con la reserva vigente. */
+    private MarcaBarrido tomarMarca(Instant ahora) {
+        Query q = new Query(Criteria.where("_id").is(MARCA).orOperator(
+                Criteria.where("leaseHasta").is(null),
+                Criteria.where("leaseHasta").lte(ahora),
+                Criteria.where("dueno").is(nodo)));
+        Update u = new Update()
+                .set("dueno", nodo)
+                .set("leaseHasta", ahora.plusSeconds(leaseSegundos));
+        try {
+            return mongoTemplate.findAndModify(q, u,
+                    FindAndModifyOptions.options().returnNew(true).upsert(true), MarcaBarrido.class);
+        } catch (DuplicateKeyException ex) {
+            // La marca existe y la reserva es de otro: el upsert intentó crearla de nuevo
+            return null;
+        }
+    }
+
+    /** Guarda el avance y renueva la reserva. */
+    private void avanzarMarca(Instant hasta, String hastaId, Instant repasoCompleto) {
+        Instant ahora = Instant.now();
+        Update u = new Update()
+                .set("hasta", hasta)
+                .set("hastaId", hastaId)
+                .set("leaseHasta", ahora.plusSeconds(leaseSegundos))
+                .set("updatedAt", ahora);
+        if (repasoCompleto != null) u.set("ultimoRepasoCompleto", repasoCompleto);
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(MARCA).and("dueno").is(nodo)),
+                u, MarcaBarrido.class);
+    }
+
+    private void soltarMarca() {
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(MARCA).and("dueno").is(nodo)),
+                new Update().unset("dueno").unset("leaseHasta"), MarcaBarrido.class);
+    }
+}
@@ -0,0 +1,194 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.Intento;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Vence automáticamente los intentos EN_PROGRESO cuyo tiempo límite ya pasó.
+ *
+ * Cada intento con límite se programa en una rueda de temporizadores en memoria
+ * al crearse; al arrancar, la rueda se reconstruye desde el índice (estado, expiraAt).
+ * El cambio de estado es siempre una actualización condicional sobre EN_PROGRESO,
+ * así que varios nodos pueden vencer el mismo intento sin pisarse. Un barrido
+ * periódico por índice recoge lo que programó un nodo que ya no está.
+ *
+ * Con app.intentos.expiracion.auto-entregar=true el intento se entrega y se
+ * auto-califica en vez de quedar EXPIRADO.
+ */
+@Service
+public class ExpiracionIntentosServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpiracionIntentosServicio.class);
+
+    private static final int TAMANO_BARRIDO = 500;
+
+    @Value("${app.intentos.expiracion.gracia-segundos:30}")
+    private long graciaSegundos;
+
+    @Value("${app.intentos.expiracion.auto-entregar:false}")
+    private boolean autoEntregar;
+
+    private final MongoTemplate mongoTemplate;
+    private final CorreccionAutomaticaServicio correccionAutomatica;
+    private final ContadorIntentosServicio contadorIntentos;
+
+    // Tick de 1 s y 3600 ranuras: una vuelta cubre una hora
+    private final RuedaTemporizadores rueda = new RuedaTemporizadores(1000, 3600, Instant.now());
+
+    public ExpiracionIntentosServicio(MongoTemplate mongoTemplate,
+                                      CorreccionAutomaticaServicio correccionAutomatica,
+                                      ContadorIntentosServicio contadorIntentos) {
+        this.mongoTemplate = mongoTemplate;
+        this.correccionAutomatica = correccionAutomatica;
+        this.contadorIntentos = contadorIntentos;
+    }
+
+    /** Instante de vencimiento de un intento que empieza ahora, o null si no tiene límite. */
+    public Instant calcularExpiracion(Instant inicio, Integer timeLimitSeconds) {
+        if (timeLimitSeconds == null || timeLimitSeconds <= 0) return null;
+        return inicio.plusSeconds(timeLimitSeconds);
+    }
+
+    public Duration gracia() {
+        return Duration.ofSeconds(graciaSegundos);
+    }
+
+    public void programar(Intento intento) {
+        if (intento == null || intento.getId() == null || intento.getExpiraAt() == null) return;
+        rueda.programar(intento.getId(), intento.getExpiraAt().plus(gracia()));
+    }
+
+    public void cancelar(String idIntento) {
+        if (idIntento != null) rueda.cancelar(idIntento);
+    }
+
+    // =========================================================
+    // ARRANQUE
+    // =========================================================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruir() {
+        // Intentos anteriores a expiraAt: se calcula desde createdAt + timeLimitSeconds
+        Query legacy = new Query(Criteria.where("estado").is(Intento.EstadoIntento.EN_PROGRESO)
+                .and("expiraAt").exists(false)
+                .and("timeLimitSeconds").gt(0)
+                .and("createdAt").ne(null));
+        AggregationUpdate calcular = AggregationUpdate.update()
+                .set("expiraAt").toValue(ArithmeticOperators.Add.valueOf("createdAt")
+                        .add(ArithmeticOperators.Multiply.valueOf("timeLimitSeconds").multiplyBy(1000)));
+        mongoTemplate.updateMulti(legacy, calcular, Intento.class);
+
+        Query q = new Query(Criteria.where("estado").is(Intento.EstadoIntento.EN_PROGRESO)
+                .and("expiraAt").ne(null));
+        q.fields().include("expiraAt");
+        try (Stream<Intento> stream = mongoTemplate.stream(q, Intento.class)) {
+            stream.forEach(this::programar);
+        }
+        log.info("Rueda de expiración reconstruida con {} intentos en progreso", rueda.pendientes());
+    }
+
+    // =========================================================
+    // PROCESO
+    // =========================================================
+
+    @Scheduled(fixedDelayString = "${app.intentos.expiracion.tick-ms:1000}")
+    public void avanzarRueda() {
+        List<String> vencidos = rueda.avanzar(Instant.now());
+        if (!vencidos.isEmpty()) {
+            vencer(vencidos);
+        }
+    }
+
+    /**
+     * Red de seguridad: vence por índice lo que quedó fuera de la rueda de este nodo
+     * (p. ej. intentos programados por un nodo que se cayó).
+     */
+    @Scheduled(fixedDelayString = "${app.intentos.expiracion.barrido-ms:300000}",
+               initialDelayString = "${app.intentos.expiracion.barrido-ms:300000}")
+    public void barrer() {
+        Query q = new Query(criterioVencido(Instant.now()))
+                .with(Sort.by(Sort.Direction.ASC, "expiraAt"))
+                .limit(TAMANO_BARRIDO);
+        q.fields().include("_id");
+        List<String> ids = mongoTemplate.find(q, Intento.class).stream().map(Intento::getId).toList();
+        if (!ids.isEmpty()) {
+            vencer(ids);
+        }
+    }
+
+    private void vencer(List<String> ids) {
+        Instant ahora = Instant.now();
+        try {
+            if (!autoEntregar) {
+                // Una sola escritura condicional para todo el lote
+                Query q = new Query(criterioVencido(ahora).and("_id").in(ids));
+                Update u = new Update()
+                        .set("estado", Intento.EstadoIntento.EXPIRADO)
+                        .set("updatedAt", ahora)
+                        .inc("version", 1);
+                if (mongoTemplate.updateMulti(q, u, Intento.class).getModifiedCount() > 0) {
+                    contadorIntentos.liberarVarios(idsExpirados(ids), ahora);
+                }
+                return;
+            }
+            for (String id : ids) {
+                entregarPorVencimiento(id, ahora);
+            }
+        } catch (RuntimeException ex) {
+            log.error("Error venciendo {} intentos", ids.size(), ex);
+        }
+    }
+
+    private void entregarPorVencimiento(String idIntento, Instant ahora) {
+        Query q = new Query(criterioVencido(ahora).and("_id").is(idIntento));
+        Update u = new Update()
+                .set("estado", Intento.EstadoIntento.ENVIADO)
+                .set("enviadoEn", ahora)
+                .set("updatedAt", ahora)
+                .inc("version", 1);
+        Intento entregado = mongoTemplate.findAndModify(q, u,
+                FindAndModifyOptions.options().returnNew(true), Intento.class);
+        // null: otro nodo (o el propio estudiante) se adelantó
+        if (entregado != null) {
+            if (entregado.getVenceAt() == null) {
+                // Sin dueAt la cola de revisión ordena por la entrega
+                mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(idIntento).and("venceAt").is(null)),
+                        new Update().set("venceAt", ahora), Intento.class);
+                entregado.setVenceAt(ahora);
+            }
+            contadorIntentos.liberar(entregado.getIdEvaluacion(), entregado.getIdEstudiante(),
+                    entregado.getId(), entregado.getNroIntento(), false, ahora);
+            correccionAutomatica.aplicar(entregado);
+        }
+    }
+
+    private List<String> idsExpirados(List<String> ids) {
+        Query q = new Query(Criteria.where("_id").in(ids).and("estado").is(Intento.EstadoIntento.EXPIRADO));
+        q.fields().include("_id");
+        return mongoTemplate.find(q, Intento.class).stream().map(Intento::getId).toList();
+    }
+
+    private Criteria criterioVencido(Instant ahora) {
+        return Criteria.where("estado").is(Intento.EstadoIntento.EN_PROGRESO)
+                .and("expiraAt").lte(ahora.minus(gracia()));
+    }
+}
@@ -0,0 +1,431 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.DTO.ImportacionInscripcionesDTO;
+import com.cursosonline.cursosonlinejs.Entidades.Curso;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion.EstadoInscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.TipoUsuario;
+import com.cursosonline.cursosonlinejs.Entidades.Usuario;
+import com.cursosonline.cursosonlinejs.Repositorios.CursoRepositorio;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Importación masiva de inscripciones desde un CSV de emails (una fila por estudiante,
+ * columnas email[,nombre] con encabezado opcional).
+ *
+ * El archivo se lee en streaming y se procesa en lotes: los usuarios se resuelven con
+ * una consulta $in por lote, los cupos se ocupan de una vez y las inscripciones se
+ * insertan con un bulk UNORDERED, así una fila que falla no frena a las demás. Cada
+ * inscripción lleva idempotencyKey = importacion:{idCurso}:{idEstudiante}, de modo que
+ * subir el mismo archivo dos veces (o dos subidas a la vez) no duplica nada. La clave
+ * solo protege mientras la inscripción ocupa cupo: antes de insertar se quita de las
+ * que ya no lo ocupan, así que se puede volver a importar a quien canceló o venció.
+ * inscritosCount se ajusta una sola vez al final.
+ */
+@Service
+public class ImportacionInscripcionesServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(ImportacionInscripcionesServicio.class);
+
+    public static final String ORIGEN = "IMPORTACION";
+
+    private static final int LOTE = 500;
+    private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+
+    private final CursoRepositorio cursoRepositorio;
+    private final CursoServicio cursoServicio;
+    private final CupoCursoServicio cupoCursoServicio;
+    private final TipoUsuarioServicio tipoUsuarioServicio;
+    private final PasswordEncoder passwordEncoder;
+    private final MongoTemplate mongoTemplate;
+
+    public ImportacionInscripcionesServicio(CursoRepositorio cursoRepositorio,
+                                            CursoServicio cursoServicio,
+                                            CupoCursoServicio cupoCursoServicio,
+                                            TipoUsuarioServicio tipoUsuarioServicio,
+                                            PasswordEncoder passwordEncoder,
+                                            MongoTemplate mongoTemplate) {
+        this.cursoRepositorio = cursoRepositorio;
+        this.cursoServicio = cursoServicio;
+        this.cupoCursoServicio = cupoCursoServicio;
+        this.tipoUsuarioServicio = tipoUsuarioServicio;
+        this.passwordEncoder = passwordEncoder;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * @param crearUsuarios crea las cuentas que no existan (si no, la fila queda en ERROR)
+     * @param estado        ACTIVA o PENDIENTE_PAGO
+     */
+    public ImportacionInscripcionesDTO importar(String idCurso, InputStream csv,
+                                                boolean crearUsuarios,
+                                                EstadoInscripcion estado) throws IOException {
+        if (estado != EstadoInscripcion.ACTIVA && estado != EstadoInscripcion.PENDIENTE_PAGO) {
+            throw new IllegalArgumentException("Solo se puede importar en estado activa o pendiente_pago.");
+        }
+        Curso curso = cursoRepositorio.findById(idCurso)
+                .orElseThrow(() -> new NoSuchElementException("Curso no encontrado."));
+        if (curso.getEstado() == Curso.EstadoCurso.ARCHIVADO) {
+            throw new IllegalStateException("El curso está archivado.");
+        }
+
+        Importacion imp = new Importacion(curso, estado, crearUsuarios);
+        try {
+            leer(csv, imp);
+        } finally {
+            // También si el archivo se corta a medias: lo ya insertado debe contar
+            if (imp.activasCreadas > 0) cursoServicio.incInscritosCount(idCurso, imp.activasCreadas);
+        }
+        log.info("Importación en curso {}: {} filas, {} creadas, {} existentes, {} con error",
+                idCurso, imp.filas.size(), imp.creadas, imp.existentes, imp.fallidas);
+        return new ImportacionInscripcionesDTO(imp.filas.size(), imp.creadas, imp.existentes,
+                imp.fallidas, imp.usuariosCreados, imp.filas);
+    }
+
+    // =========================================================
+    // LECTURA DEL CSV
+    // =========================================================
+
+    private void leer(InputStream csv, Importacion imp) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8));
+        List<FilaCsv> lote = new ArrayList<>(LOTE);
+        int colEmail = 0;
+        int colNombre = 1;
+        char separador = ',';
+        boolean primera = true;
+        int nro = 0;
+        String linea;
+        while ((linea = in.readLine()) != null) {
+            nro++;
+            if (nro == 1 && !linea.isEmpty() && linea.charAt(0) == '\uFEFF') linea = linea.substring(1);
+            if (linea.isBlank()) continue;
+
+            if (primera) {
+                primera = false;
+                separador = CamposCsv.separador(linea);
+                List<String> encabezado = CamposCsv.campos(linea, separador);
+                int i = CamposCsv.columna(encabezado, "email", "correo");
+                if (i >= 0) {
+                    colEmail = i;
+                    colNombre = CamposCsv.columna(encabezado, "nombre", "name");
+                    continue;
+                }
+            }
+
+            List<String> c = CamposCsv.campos(linea, separador);
+            lote.add(new FilaCsv(nro, CamposCsv.valor(c, colEmail), CamposCsv.valor(c, colNombre)));
+            if (lote.size() == LOTE) {
+                procesarLote(imp, lote);
+                lote.clear();
+            }
+        }
+        if (!lote.isEmpty()) procesarLote(imp, lote);
+    }
+
+    // =========================================================
+    // LOTE
+    // =========================================================
+
+    private void procesarLote(Importacion imp, List<FilaCsv> lote) {
+        // 1) Validación y duplicados dentro del archivo
+        List<FilaCsv> validas = new ArrayList<>();
+        for (FilaCsv f : lote) {
+            if (f.email == null) {
+                f.error("Falta el email.");
+                continue;
+            }
+            f.email = f.email.toLowerCase(Locale.ROOT);
+            if (!EMAIL.matcher(f.email).matches()) {
+                f.error("Email no válido.");
+                continue;
+            }
+            Integer anterior = imp.vistos.putIfAbsent(f.email, f.numero);
+            if (anterior != null) {
+                f.error("Email repetido en el archivo (fila " + anterior + ").");
+                continue;
+            }
+            validas.add(f);
+        }
+
+        // 2) Usuarios
+        Map<String, String> idPorEmail = buscarUsuarios(validas.stream().map(f -> f.email).toList());
+        List<FilaCsv> sinCuenta = new ArrayList<>();
+        for (FilaCsv f : validas) {
+            f.idUsuario = idPorEmail.get(f.email);
+            if (f.idUsuario == null) sinCuenta.add(f);
+        }
+        if (!sinCuenta.isEmpty()) {
+            if (imp.crearUsuarios) {
+                crearUsuarios(imp, sinCuenta);
+            } else {
+                for (FilaCsv f : sinCuenta) f.error("No existe un usuario con ese email.");
+            }
+        }
+
+        // 3) Inscripciones que ya ocupan cupo en el curso
+        List<FilaCsv> conUsuario = validas.stream().filter(f -> f.estado == null).toList();
+        Map<String, String> existentes = inscripcionesVigentes(imp.curso.getId(),
+                conUsuario.stream().map(f -> f.idUsuario).toList());
+        List<FilaCsv> candidatas = new ArrayList<>();
+        for (FilaCsv f : conUsuario) {
+            String idInsc = existentes.get(f.idUsuario);
+            if (idInsc != null) {
+                f.yaInscrito(idInsc, "Ya tiene una inscripción vigente en el curso.");
+            } else {
+                candidatas.add(f);
+            }
+        }
+
+        // 4) Cupos e inserción
+        if (!candidatas.isEmpty()) {
+            int reservados = cupoCursoServicio.reservarVarios(imp.curso, candidatas.size());
+            for (FilaCsv f : candidatas.subList(reservados, candidatas.size())) {
+                f.error("Cupo completo.");
+            }
+            insertarInscripciones(imp, candidatas.subList(0, reservados));
+        }
+
+        for (FilaCsv f : lote) {
+            switch (f.estado) {
+                case "CREADA" -> imp.creadas++;
+                case "YA_INSCRITO" -> imp.existentes++;
+                default -> imp.fallidas++;
+            }
+            imp.filas.add(new ImportacionInscripcionesDTO.Fila(
+                    f.numero, f.email, f.estado, f.idUsuario, f.idInscripcion, f.mensaje));
+        }
+    }
+
+    private Map<String, String> buscarUsuarios(List<String> emails) {
+        Map<String, String> out = new HashMap<>();
+        if (emails.isEmpty()) return out;
+        Query q = new Query(Criteria.where("email").in(emails));
+        q.fields().include("email");
+        for (Usuario u : mongoTemplate.find(q, Usuario.class)) out.put(u.getEmail(), u.getId());
+        return out;
+    }
+
+    private Map<String, String> inscripcionesVigentes(String idCurso, List<String> idsEstudiante) {
+        Map<String, String> out = new HashMap<>();
+        if (idsEstudiante.isEmpty()) return out;
+        Query q = new Query(Criteria.where("idCurso").is(idCurso)
+                .and("idEstudiante").in(idsEstudiante)
+                .and("estado").in(CupoCursoServicio.ESTADOS_OCUPAN_CUPO));
+        q.fields().include("idEstudiante");
+        for (Inscripcion i : mongoTemplate.find(q, Inscripcion.class)) out.put(i.getIdEstudiante(), i.getId());
+        return out;
+    }
+
+    /**
+     * Crea las cuentas que faltan con el rol por defecto. La contraseña es un hash de un
+     * valor aleatorio que no se guarda: nadie puede entrar hasta que el usuario la
+     * restablezca. Se calcula un solo hash por lote porque BCrypt cuesta ~100 ms por
+     * llamada y con miles de filas la petición no terminaría.
+     */
+    private void crearUsuarios(Importacion imp, List<FilaCsv> filas) {
+        Instant ahora = Instant.now();
+        String password = passwordEncoder.encode(UUID.randomUUID().toString());
+        List<Usuario> nuevos = new ArrayList<>(filas.size());
+        for (FilaCsv f : filas) {
+            Usuario u = new Usuario();
+            u.setId(new ObjectId().toHexString());
+            u.setNombre(f.nombre != null ? f.nombre : f.email.substring(0, f.email.indexOf('@')));
+            u.setEmail(f.email);
+            u.setPassword(password);
+            u.setRol(imp.rolPorDefecto());
+            u.setEstado("ACTIVO");
+            u.setEmailVerified(false);
+            u.setFailedLoginAttempts(0);
+            u.setFechaRegistro(ahora);
+            u.setUpdatedAt(ahora);
+            u.setVersion(0L);
+            nuevos.add(u);
+        }
+
+        Map<Integer, BulkWriteError> fallidos = new HashMap<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Usuario.class)
+                    .insert(nuevos)
+                    .execute();
+        } catch (BulkOperationException ex) {
+            for (BulkWriteError err : ex.getErrors()) fallidos.put(err.getIndex(), err);
+        }
+
+        List<FilaCsv> registradosEntreMedias = new ArrayList<>();
+        for (int i = 0; i < filas.size(); i++) {
+            FilaCsv f = filas.get(i);
+            BulkWriteError err = fallidos.get(i);
+            if (err == null) {
+                f.idUsuario = nuevos.get(i).getId();
+                imp.usuariosCreados++;
+            } else if (err.getCode() == 11000) {
+                // El usuario se registró mientras tanto
+                registradosEntreMedias.add(f);
+            } else {
+                f.error("No se pudo crear el usuario: " + err.getMessage());
+            }
+        }
+        if (!registradosEntreMedias.isEmpty()) {
+            Map<String, String> ids = buscarUsuarios(registradosEntreMedias.stream().map(f -> f.email).toList());
+            for (FilaCsv f : registradosEntreMedias) {
+                f.idUsuario = ids.get(f.email);
+                if (f.idUsuario == null) f.error("No se pudo crear el usuario.");
+            }
+        }
+    }
+
+    private void insertarInscripciones(Importacion imp, List<FilaCsv> filas) {
+        if (filas.isEmpty()) return;
+        String idCurso = imp.curso.getId();
+        Instant ahora = Instant.now();
+
+        // Una importación anterior que ya no ocupa cupo (cancelada, vencida, completada)
+        // suelta su clave: si no, volver a importar al estudiante chocaría con ella
+        List<String> claves = filas.stream().map(f -> claveImportacion(idCurso, f.idUsuario)).toList();
+        mongoTemplate.updateMulti(
+                new Query(Criteria.where("idempotencyKey").in(claves)
+                        .and("estado").nin(CupoCursoServicio.ESTADOS_OCUPAN_CUPO)),
+                new Update().unset("idempotencyKey").set("updatedAt", ahora).inc("version", 1),
+                Inscripcion.class);
+
+        List<Inscripcion> nuevas = new ArrayList<>(filas.size());
+        for (FilaCsv f : filas) {
+            Inscripcion insc = new Inscripcion();
+            insc.setId(new ObjectId().toHexString());
+            insc.setIdCurso(idCurso);
+            insc.setIdEstudiante(f.idUsuario);
+            insc.setEstado(imp.estado);
+            insc.setAccessStartAt(ahora);
+            insc.setEstadoCambiadoAt(ahora);
+            insc.setOrigen(ORIGEN);
+            insc.setIdempotencyKey(claveImportacion(idCurso, f.idUsuario));
+            insc.setCreatedAt(ahora);
+            insc.setUpdatedAt(ahora);
+            // Versión inicial explícita: el insert en bloque no la inicializa
+            insc.setVersion(0L);
+            nuevas.add(insc);
+        }
+
+        Map<Integer, BulkWriteError> fallidas = new HashMap<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Inscripcion.class)
+                    .insert(nuevas)
+                    .execute();
+        } catch (BulkOperationException ex) {
+            for (BulkWriteError err : ex.getErrors()) fallidas.put(err.getIndex(), err);
+        }
+
+        for (int i = 0; i < filas.size(); i++) {
+            FilaCsv f = filas.get(i);
+            BulkWriteError err = fallidas.get(i);
+            if (err == null) {
+                f.creada(nuevas.get(i).getId());
+                if (imp.estado == EstadoInscripcion.ACTIVA) imp.activasCreadas++;
+            } else if (err.getCode() == 11000) {
+                // idempotencyKey repetida: otra subida del mismo archivo la insertó antes
+                f.yaInscrito(null, "Ya fue importado en este curso.");
+            } else {
+                f.error("No se pudo crear la inscripción: " + err.getMessage());
+            }
+        }
+        cupoCursoServicio.devolverReservas(idCurso, fallidas.size());
+    }
+
+    private static String claveImportacion(String idCurso, String idUsuario) {
+        return "importacion:" + idCurso + ":" + idUsuario;
+    }
+
+    // =========================================================
+    // ESTADO DE LA IMPORTACIÓN
+    // =========================================================
+
+    private final class Importacion {
+        final Curso curso;
+        final EstadoInscripcion estado;
+        final boolean crearUsuarios;
+        final Map<String, Integer> vistos = new HashMap<>();
+        final List<ImportacionInscripcionesDTO.Fila> filas = new ArrayList<>();
+        int creadas;
+        int existentes;
+        int fallidas;
+        int usuariosCreados;
+        long activasCreadas;
+        private String rol;
+
+        Importacion(Curso curso, EstadoInscripcion estado, boolean crearUsuarios) {
+            this.curso = curso;
+            this.estado = estado;
+            this.crearUsuarios = crearUsuarios;
+        }
+
+        // Mismo rol que el registro público
+        String rolPorDefecto() {
+            if (rol == null) {
+                rol = tipoUsuarioServicio.getDefault()
+                        .map(TipoUsuario::getNombre)
+                        .orElseGet(() -> tipoUsuarioServicio.findByNombreIgnoreCase("Usuario")
+                                .map(TipoUsuario::getNombre)
+                                .orElse("USUARIO"));
+            }
+            return rol;
+        }
+    }
+
+    private static final class FilaCsv {
+        final int numero;
+        String email;
+        final String nombre;
+        String idUsuario;
+        String idInscripcion;
+        String estado;
+        String mensaje;
+
+        FilaCsv(int numero, String email, String nombre) {
+            this.numero = numero;
+            this.email = email;
+            this.nombre = nombre;
+        }
+
+        void creada(String idInscripcion) {
+            this.estado = "CREADA";
+            this.idInscripcion = idInscripcion;
+        }
+
+        void yaInscrito(String idInscripcion, String mensaje) {
+            this.estado = "YA_INSCRITO";
+            this.idInscripcion = idInscripcion;
+            this.mensaje = mensaje;
+        }
+
+        void error(String mensaje) {
+            this.estado = "ERROR";
+            this.mensaje = mensaje;
+        }
+    }
+}
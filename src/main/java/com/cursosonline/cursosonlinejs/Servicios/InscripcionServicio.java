@@ -3,20 +3,48 @@ package com.cursosonline.cursosonlinejs.Servicios;
 import com.cursosonline.cursosonlinejs.Entidades.Curso;
 import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
 import com.cursosonline.cursosonlinejs.Entidades.Inscripcion.EstadoInscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.Pago;
+import com.cursosonline.cursosonlinejs.Eventos.InscripcionEstadoEvento;
 import com.cursosonline.cursosonlinejs.Repositorios.CursoRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.InscripcionRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.UsuarioRepositorio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 
 @Service
 public class InscripcionServicio {
 
+    private static final Logger log = LoggerFactory.getLogger(InscripcionServicio.class);
+
+    private static final int TAMANO_BARRIDO = 500;
+
+    static final String MOTIVO_PAGO_VENCIDO = "PAGO_VENCIDO";
+
+    @Value("${app.inscripciones.pago-timeout-minutos:60}")
+    private long pagoTimeoutMinutos;
+
     private final InscripcionRepositorio inscripcionRepositorio;
     private final UsuarioRepositorio usuarioRepositorio;
     private final CursoRepositorio cursoRepositorio;
+    private final CupoCursoServicio cupoCursoServicio;
+    private final MongoTemplate mongoTemplate;
+    private final MembresiasActivasServicio membresiasActivasServicio;
+    private final ApplicationEventPublisher eventos;
 
     private static final Set<EstadoInscripcion> ESTADOS_VALIDOS =
             EnumSet.allOf(EstadoInscripcion.class);
@@ -26,28 +54,18 @@ public class InscripcionServicio {
 
     public InscripcionServicio(InscripcionRepositorio inscripcionRepositorio,
                                UsuarioRepositorio usuarioRepositorio,
-                               CursoRepositorio cursoRepositorio) {
+                               CursoRepositorio cursoRepositorio,
+                               CupoCursoServicio cupoCursoServicio,
+                               MongoTemplate mongoTemplate,
+                               MembresiasActivasServicio membresiasActivasServicio,
+                               ApplicationEventPublisher eventos) {
         this.inscripcionRepositorio = inscripcionRepositorio;
         this.usuarioRepositorio = usuarioRepositorio;
         this.cursoRepositorio = cursoRepositorio;
-    }
-
-    public boolean puedeInscribirse(String idCurso) {
-        var c = cursoRepositorio.findById(idCurso).orElse(null);
-        if (c == null) return false;
-
-        if (c.getEstado() != Curso.EstadoCurso.PUBLICADO) return false;
-        var now = java.time.Instant.now();
-        if (c.getEnrollmentOpenAt() != null && now.isBefore(c.getEnrollmentOpenAt())) return false;
-        if (c.getEnrollmentCloseAt() != null && now.isAfter(c.getEnrollmentCloseAt())) return false;
-
-        if (c.getCupoMaximo() != null && c.getCupoMaximo() > 0) {
-            long inscritos = inscripcionRepositorio.countByIdCursoAndEstado(
-                    idCurso, EstadoInscripcion.ACTIVA
-            );
-            if (inscritos >= c.getCupoMaximo()) return false;
-        }
-        return true;
+        this.cupoCursoServicio = cupoCursoServicio;
+        this.mongoTemplate = mongoTemplate;
+        this.membresiasActivasServicio = membresiasActivasServicio;
+        this.eventos = eventos;
     }
 
     public Optional<String> obtenerIdEstudianteActual() {
@@ -66,22 +84,132 @@ public class InscripcionServicio {
         );
     }
 
+    /**
+     * Inscribe al estudiante en estado PENDIENTE_PAGO ocupando un cupo. El cupo se
+     * reserva antes de insertar y se devuelve si la inserción falla.
+     *
+     * @throws IllegalStateException si el curso no tiene cupo
+     */
+    public Inscripcion inscribir(Curso curso, String idEstudiante) {
+        if (!cupoCursoServicio.reservar(curso)) {
+            throw new IllegalStateException("Cupo completo. Puedes unirte a la lista de espera del curso.");
+        }
+        try {
+            return crearConCupoReservado(curso.getId(), idEstudiante, null);
+        } catch (RuntimeException ex) {
+            cupoCursoServicio.devolverReserva(curso.getId());
+            throw ex;
+        }
+    }
+
+    /**
+     * Inserta una inscripción PENDIENTE_PAGO. El cupo ya debe estar reservado por quien
+     * llama (inscribir o el promotor de la lista de espera).
+     */
+    public Inscripcion crearConCupoReservado(String idCurso, String idEstudiante, String origen) {
+        Inscripcion insc = new Inscripcion();
+        insc.setIdCurso(idCurso);
+        insc.setIdEstudiante(idEstudiante);
+        insc.setEstado(EstadoInscripcion.PENDIENTE_PAGO);
+        insc.setAccessStartAt(Instant.now());
+        insc.setEstadoCambiadoAt(insc.getAccessStartAt());
+        insc.setOrigen(origen);
+        return inscripcionRepositorio.insert(insc);
+    }
+
     public Inscripcion guardar(Inscripcion inscripcion) {
         if (inscripcion.getEstado() == null) {
             inscripcion.setEstado(EstadoInscripcion.PENDIENTE_PAGO);
         }
+        if (inscripcion.getId() == null) inscripcion.setEstadoCambiadoAt(Instant.now());
         return inscripcionRepositorio.save(inscripcion);
     }
 
-    public String activarSiPendientePago(String idInscripcion) {
-        return inscripcionRepositorio.findById(idInscripcion).map(insc -> {
-            if (insc.getEstado() == EstadoInscripcion.PENDIENTE_PAGO) {
-                insc.setEstado(EstadoInscripcion.ACTIVA);
-                inscripcionRepositorio.save(insc);
-                return insc.getIdCurso();
+    /**
+     * Anexa el pago a la inscripción y la activa si estaba PENDIENTE_PAGO. Es idempotente
+     * (lo llama el relay del outbox, que puede repetir una entrega): el pago se agrega
+     * con $addToSet y la activación es condicional sobre el estado.
+     *
+     * @return true si esta llamada fue la que activó la inscripción
+     */
+    public boolean activarPorPago(String idInscripcion, String idPago, boolean principal) {
+        Instant ahora = Instant.now();
+        Update anexar = new Update()
+                .addToSet("pagoIds", idPago)
+                .set("updatedAt", ahora)
+                .inc("version", 1);
+        if (principal) anexar.set("idPago", idPago);
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(idInscripcion)), anexar, Inscripcion.class);
+
+        Inscripcion activada = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(idInscripcion).and("estado").is(EstadoInscripcion.PENDIENTE_PAGO)),
+                new Update()
+                        .set("estado", EstadoInscripcion.ACTIVA)
+                        .set("estadoCambiadoAt", ahora)
+                        .set("updatedAt", ahora)
+                        .inc("version", 1),
+                FindAndModifyOptions.options().returnNew(true),
+                Inscripcion.class);
+        if (activada == null) return reactivarPorPagoTardio(idInscripcion, idPago, ahora);
+        eventos.publishEvent(new InscripcionEstadoEvento(activada.getId(), activada.getIdCurso(),
+                activada.getIdEstudiante(), EstadoInscripcion.PENDIENTE_PAGO, EstadoInscripcion.ACTIVA, ahora));
+        return true;
+    }
+
+    /**
+     * El pago llegó con la inscripción fuera de PENDIENTE_PAGO. Si la había cancelado el
+     * barrido de pagos vencidos y el curso aún tiene cupo, se reactiva; si no (sin cupo,
+     * cancelada por otro motivo, expirada...) el pago queda marcado para reembolso.
+     */
+    private boolean reactivarPorPagoTardio(String idInscripcion, String idPago, Instant ahora) {
+        Inscripcion actual = inscripcionRepositorio.findById(idInscripcion).orElse(null);
+        if (actual == null || CupoCursoServicio.ocupaCupo(actual.getEstado())
+                || actual.getEstado() == EstadoInscripcion.COMPLETADA) {
+            // Ya activa (entrega repetida del relay) o terminada: nada que hacer
+            return false;
+        }
+
+        if (actual.getEstado() == EstadoInscripcion.CANCELADA && MOTIVO_PAGO_VENCIDO.equals(actual.getMotivoCancelacion())) {
+            Curso curso = cursoRepositorio.findById(actual.getIdCurso()).orElse(null);
+            if (curso != null && cupoCursoServicio.reservar(curso)) {
+                Inscripcion reactivada = mongoTemplate.findAndModify(
+                        new Query(Criteria.where("_id").is(idInscripcion)
+                                .and("estado").is(EstadoInscripcion.CANCELADA)
+                                .and("motivoCancelacion").is(MOTIVO_PAGO_VENCIDO)),
+                        new Update()
+                                .set("estado", EstadoInscripcion.ACTIVA)
+                                .set("estadoCambiadoAt", ahora)
+                                .unset("canceladaAt")
+                                .unset("motivoCancelacion")
+                                .set("updatedAt", ahora)
+                                .inc("version", 1),
+                        FindAndModifyOptions.options().returnNew(true),
+                        Inscripcion.class);
+                if (reactivada != null) {
+                    log.info("Inscripción {} reactivada por un pago recibido tras cancelarse por vencimiento", idInscripcion);
+                    eventos.publishEvent(new InscripcionEstadoEvento(reactivada.getId(), reactivada.getIdCurso(),
+                            reactivada.getIdEstudiante(), EstadoInscripcion.CANCELADA, EstadoInscripcion.ACTIVA, ahora));
+                    return true;
+                }
+                cupoCursoServicio.devolverReserva(curso.getId());
             }
-            return null;
-        }).orElse(null);
+        }
+
+        if (idPago != null) {
+            mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(idPago)
+                            .and("reembolsoPendienteAt").is(null)
+                            .and("estado").ne(Pago.EstadoPago.REEMBOLSADO)),
+                    new Update()
+                            .set("reembolsoPendienteAt", ahora)
+                            .set("reembolsoPendienteMotivo", "Inscripción " + actual.getEstado() + " al recibir el pago")
+                            .set("updatedAt", ahora)
+                            .inc("version", 1),
+                    Pago.class);
+        }
+        log.warn("Pago {} recibido para la inscripción {} en estado {}: queda pendiente de reembolso",
+                idPago, idInscripcion, actual.getEstado());
+        return false;
     }
 
     public List<Inscripcion> listarPorCurso(String idCurso) {
@@ -97,10 +225,58 @@ public class InscripcionServicio {
         return inscripcionRepositorio.findByIdAndIdCurso(id, idCurso);
     }
 
+    /**
+     * Cambia el estado ajustando el cupo: volver a un estado que ocupa cupo lo reserva
+     * (y falla si el curso está lleno); salir de él lo libera. El cambio es un $set
+     * condicionado al estado leído (no un save del documento, que pisaría la actividad
+     * volcada en paralelo), así que dos cambios simultáneos no liberan el mismo cupo dos veces.
+     */
     public Inscripcion actualizarEstado(String id, String nuevoEstado) {
         var insc = inscripcionRepositorio.findById(id).orElseThrow();
-        insc.setEstado(parseEstado(nuevoEstado));
-        return inscripcionRepositorio.save(insc);
+        EstadoInscripcion antes = insc.getEstado();
+        EstadoInscripcion nuevo = parseEstado(nuevoEstado);
+        boolean ocupaba = CupoCursoServicio.ocupaCupo(antes);
+        boolean ocupa = CupoCursoServicio.ocupaCupo(nuevo);
+
+        if (!ocupaba && ocupa) {
+            Curso curso = cursoRepositorio.findById(insc.getIdCurso())
+                    .orElseThrow(() -> new NoSuchElementException("Curso no encontrado."));
+            if (!cupoCursoServicio.reservar(curso)) {
+                throw new IllegalStateException("Cupo completo. No es posible reactivar la inscripción.");
+            }
+        }
+
+        Instant ahora = Instant.now();
+        Update u = new Update()
+                .set("estado", nuevo)
+                .set("updatedAt", ahora)
+                .inc("version", 1);
+        if (antes != nuevo) u.set("estadoCambiadoAt", ahora);
+        if (nuevo == EstadoInscripcion.CANCELADA && insc.getCanceladaAt() == null) {
+            u.set("canceladaAt", ahora);
+        }
+        // El motivo solo describe la cancelación vigente
+        if (nuevo != EstadoInscripcion.CANCELADA) u.unset("motivoCancelacion");
+
+        Inscripcion guardada;
+        try {
+            guardada = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("_id").is(id).and("estado").is(antes)),
+                    u, FindAndModifyOptions.options().returnNew(true), Inscripcion.class);
+        } catch (RuntimeException ex) {
+            if (!ocupaba && ocupa) cupoCursoServicio.devolverReserva(insc.getIdCurso());
+            throw ex;
+        }
+        if (guardada == null) {
+            if (!ocupaba && ocupa) cupoCursoServicio.devolverReserva(insc.getIdCurso());
+            throw new IllegalStateException("La inscripción cambió de estado mientras se actualizaba. Vuelve a intentarlo.");
+        }
+        if (ocupaba && !ocupa) cupoCursoServicio.liberar(insc.getIdCurso());
+        if (antes != nuevo) {
+            eventos.publishEvent(new InscripcionEstadoEvento(guardada.getId(), guardada.getIdCurso(),
+                    guardada.getIdEstudiante(), antes, nuevo, ahora));
+        }
+        return guardada;
     }
 
     public List<Inscripcion> listaAll() {
@@ -112,7 +288,88 @@ public class InscripcionServicio {
     }
 
     public void eliminar(String id) {
-        inscripcionRepositorio.deleteById(id);
+        // findAndRemove: solo quien borra de verdad devuelve el cupo
+        Inscripcion borrada = mongoTemplate.findAndRemove(
+                new Query(Criteria.where("_id").is(id)), Inscripcion.class);
+        if (borrada == null) return;
+        membresiasActivasServicio.registrarBaja(borrada.getIdCurso(), borrada.getIdEstudiante());
+        if (CupoCursoServicio.ocupaCupo(borrada.getEstado())) {
+            cupoCursoServicio.liberar(borrada.getIdCurso());
+        }
+    }
+
+    /**
+     * Cancela las inscripciones que llevan más de app.inscripciones.pago-timeout-minutos
+     * en PENDIENTE_PAGO y devuelve su cupo. Cada una se cancela con un cambio condicional
+     * sobre el estado, así que con varios nodos ningún cupo se libera dos veces.
+     *
+     * No se tocan las importadas (esperan un pago fuera de la plataforma) ni las que tienen
+     * un pago en curso: autorizado, aprobado o capturado, o pendiente con actividad dentro
+     * del plazo. Si aun así un pago llega después de cancelar, {@link #activarPorPago} la
+     * reactiva o deja el pago marcado para reembolso.
+     */
+    @Scheduled(fixedDelayString = "${app.inscripciones.pago-timeout-barrido-ms:60000}",
+               initialDelayString = "${app.inscripciones.pago-timeout-barrido-ms:60000}")
+    public void cancelarPagosVencidos() {
+        cancelarPagosVencidos(null);
+    }
+
+    /** El barrido limitado a un curso (null = todos); las pruebas no tocan otros cursos. */
+    void cancelarPagosVencidos(String idCurso) {
+        Instant ahora = Instant.now();
+        Instant limite = ahora.minus(Duration.ofMinutes(pagoTimeoutMinutos));
+        Criteria c = Criteria.where("estado").is(EstadoInscripcion.PENDIENTE_PAGO)
+                .and("createdAt").lte(limite)
+                .and("origen").ne(ImportacionInscripcionesServicio.ORIGEN);
+        if (idCurso != null) c = c.and("idCurso").is(idCurso);
+        Query q = new Query(c)
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"))
+                .limit(TAMANO_BARRIDO);
+        q.fields().include("_id");
+
+        int canceladas = 0;
+        try {
+            List<String> ids = mongoTemplate.find(q, Inscripcion.class).stream().map(Inscripcion::getId).toList();
+            Set<String> conPago = conPagoEnCurso(ids, limite);
+            for (String id : ids) {
+                if (conPago.contains(id)) continue;
+                Inscripcion cancelada = mongoTemplate.findAndModify(
+                        new Query(Criteria.where("_id").is(id)
+                                .and("estado").is(EstadoInscripcion.PENDIENTE_PAGO)),
+                        new Update()
+                                .set("estado", EstadoInscripcion.CANCELADA)
+                                .set("canceladaAt", ahora)
+                                .set("motivoCancelacion", MOTIVO_PAGO_VENCIDO)
+                                .set("estadoCambiadoAt", ahora)
+                                .set("updatedAt", ahora)
+                                .inc("version", 1),
+                        FindAndModifyOptions.options().returnNew(true),
+                        Inscripcion.class);
+                if (cancelada != null) {
+                    cupoCursoServicio.liberar(cancelada.getIdCurso());
+                    canceladas++;
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.error("Error cancelando inscripciones con pago vencido", ex);
+        }
+        if (canceladas > 0) {
+            log.info("{} inscripciones canceladas por no completar el pago a tiempo", canceladas);
+        }
+    }
+
+    /** Inscripciones (de las dadas) con un pago que todavía puede completarse o ya se cobró. */
+    private Set<String> conPagoEnCurso(List<String> idsInscripcion, Instant limite) {
+        if (idsInscripcion.isEmpty()) return Set.of();
+        Query q = new Query(Criteria.where("idInscripcion").in(idsInscripcion).orOperator(
+                Criteria.where("estado").in(Pago.EstadoPago.AUTORIZADO, Pago.EstadoPago.APROBADO,
+                        Pago.EstadoPago.CAPTURADO),
+                // Un borrador abandonado no retiene el cupo para siempre
+                Criteria.where("estado").is(Pago.EstadoPago.PENDIENTE).and("updatedAt").gt(limite)));
+        q.fields().include("idInscripcion");
+        Set<String> out = new HashSet<>();
+        for (Pago p : mongoTemplate.find(q, Pago.class)) out.add(p.getIdInscripcion());
+        return out;
     }
 
     private EstadoInscripcion parseEstado(String raw) {
@@ -155,21 +412,16 @@ public class InscripcionServicio {
     }
 
     public void vincularCertificado(String idCurso, String idEstudiante, String certificadoId) {
-        inscripcionRepositorio.findByIdCursoAndIdEstudiante(idCurso, idEstudiante).ifPresent(insc -> {
-            insc.setCertificadoId(certificadoId);
-            inscripcionRepositorio.save(insc);
-        });
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("idCurso").is(idCurso).and("idEstudiante").is(idEstudiante)),
+                new Update().set("certificadoId", certificadoId).set("updatedAt", Instant.now()).inc("version", 1),
+                Inscripcion.class);
     }
 
     public void anexarPagoAInscripcion(String idInscripcion, String idPago, boolean principal) {
-        inscripcionRepositorio.findById(idInscripcion).ifPresent(insc -> {
-            List<String> pagos = insc.getPagoIds();
-            if (pagos == null) pagos = new ArrayList<>();
-            if (!pagos.contains(idPago)) pagos.add(idPago);
-            insc.setPagoIds(pagos);
-            if (principal) insc.setIdPago(idPago);
-            inscripcionRepositorio.save(insc);
-        });
+        Update u = new Update().addToSet("pagoIds", idPago).set("updatedAt", Instant.now()).inc("version", 1);
+        if (principal) u.set("idPago", idPago);
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(idInscripcion)), u, Inscripcion.class);
     }
 
     /**
@@ -177,20 +429,12 @@ public class InscripcionServicio {
      * Si aprobado = true, añade el módulo al set; si false, lo quita.
      */
     public void marcarModuloAprobadoManual(String idInscripcion, String idModulo, boolean aprobado) {
-        inscripcionRepositorio.findById(idInscripcion).ifPresent(insc -> {
-            Set<String> set = insc.getModulosAprobadosManualmente();
-            if (set == null) {
-                set = new java.util.HashSet<>();
-            }
-
-            if (aprobado) {
-                set.add(idModulo);
-            } else {
-                set.remove(idModulo);
-            }
-
-            insc.setModulosAprobadosManualmente(set);
-            inscripcionRepositorio.save(insc);
-        });
+        Update u = new Update().set("updatedAt", Instant.now()).inc("version", 1);
+        if (aprobado) {
+            u.addToSet("modulosAprobadosManualmente", idModulo);
+        } else {
+            u.pull("modulosAprobadosManualmente", idModulo);
+        }
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(idInscripcion)), u, Inscripcion.class);
     }
 }
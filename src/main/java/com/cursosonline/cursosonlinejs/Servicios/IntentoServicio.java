@@ -1,12 +1,11 @@
 package com.cursosonline.cursosonlinejs.Servicios;
 
+import com.cursosonline.cursosonlinejs.DTO.EvaluacionEstudianteDTO;
 import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
 import com.cursosonline.cursosonlinejs.Entidades.Intento;
-import com.cursosonline.cursosonlinejs.Entidades.OpcionPregunta;
-import com.cursosonline.cursosonlinejs.Entidades.Pregunta;
-import com.cursosonline.cursosonlinejs.Repositorios.EvaluacionRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.IntentoRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.UsuarioRepositorio;
+import org.bson.types.ObjectId;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
@@ -14,21 +13,32 @@ import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 public class IntentoServicio {
 
     private final IntentoRepositorio intentoRepositorio;
     private final UsuarioRepositorio usuarioRepositorio;
-    private final EvaluacionRepositorio evaluacionRepositorio;
+    private final CorreccionAutomaticaServicio correccionAutomatica;
+    private final ExpiracionIntentosServicio expiracionServicio;
+    private final ContadorIntentosServicio contadorIntentos;
+    private final VistaEvaluacionServicio vistaEvaluacion;
 
     public IntentoServicio(IntentoRepositorio intentoRepositorio,
                            UsuarioRepositorio usuarioRepositorio,
-                           EvaluacionRepositorio evaluacionRepositorio) {
+                           CorreccionAutomaticaServicio correccionAutomatica,
+                           ExpiracionIntentosServicio expiracionServicio,
+                           ContadorIntentosServicio contadorIntentos,
+                           VistaEvaluacionServicio vistaEvaluacion) {
         this.intentoRepositorio = intentoRepositorio;
         this.usuarioRepositorio = usuarioRepositorio;
-        this.evaluacionRepositorio = evaluacionRepositorio;
+        this.correccionAutomatica = correccionAutomatica;
+        this.expiracionServicio = expiracionServicio;
+        this.contadorIntentos = contadorIntentos;
+        this.vistaEvaluacion = vistaEvaluacion;
     }
 
     public Optional<String> obtenerIdEstudianteActual() {
@@ -37,31 +47,64 @@ public class IntentoServicio {
         return usuarioRepositorio.findByEmail(auth.getName()).map(u -> u.getId());
     }
 
-    public boolean tieneIntentoEnProgreso(String idEvaluacion, String idEstudiante) {
-        return intentoRepositorio.existsByIdEvaluacionAndIdEstudianteAndEstado(
-                idEvaluacion, idEstudiante, Intento.EstadoIntento.EN_PROGRESO
-        );
-    }
-
-    private int siguienteNro(String idEvaluacion, String idEstudiante) {
-        return intentoRepositorio
-                .findTopByIdEvaluacionAndIdEstudianteOrderByNroIntentoDesc(idEvaluacion, idEstudiante)
-                .map(x -> (x.getNroIntento() == null ? 1 : x.getNroIntento() + 1))
-                .orElse(1);
-    }
-
+    /**
+     * Inicia un intento. El número y las reglas de la evaluación (un solo intento en
+     * progreso, maxIntentos, espera mínima) se resuelven en un único paso atómico.
+     * La evaluación se toma de la vista cacheada: al abrir un examen todos los
+     * estudiantes inician a la vez y no hace falta releerla en cada intento.
+     */
     public Intento crearEnProgreso(String idEvaluacion, String idEstudiante,
                                    Integer timeLimitSeconds, BigDecimal puntajeMaximo) {
+        Evaluacion eval = vistaEvaluacion.obtener(idEvaluacion)
+                .map(VistaEvaluacionServicio.Vista::evaluacion)
+                .orElseThrow(() -> new NoSuchElementException("Evaluación no encontrada"));
+
+        Instant ahora = Instant.now();
+        String idIntento = new ObjectId().toHexString();
+        int nro = contadorIntentos.reservar(eval, idEstudiante, idIntento, ahora);
+
         Intento i = new Intento();
+        i.setId(idIntento);
         i.setIdEvaluacion(idEvaluacion);
         i.setIdEstudiante(idEstudiante);
+        i.setIdCurso(eval.getIdCurso());
+        i.setVenceAt(eval.getDueAt());
         i.setEstado(Intento.EstadoIntento.EN_PROGRESO);
-        i.setNroIntento(siguienteNro(idEvaluacion, idEstudiante));
+        i.setNroIntento(nro);
         i.setPuntaje(BigDecimal.ZERO);
         i.setUsedTimeSeconds(0);
-        i.setTimeLimitSeconds(timeLimitSeconds == null ? 0 : timeLimitSeconds);
-        i.setPuntajeMaximo(puntajeMaximo);
-        return intentoRepositorio.save(i);
+        Integer limite = timeLimitSeconds != null ? timeLimitSeconds : eval.getTimeLimitSeconds();
+        i.setTimeLimitSeconds(limite == null ? 0 : limite);
+        i.setExpiraAt(expiracionServicio.calcularExpiracion(ahora, i.getTimeLimitSeconds()));
+        // Solo la semilla: las preguntas del intento se regeneran con SorteoPreguntas
+        i.setSemilla(ThreadLocalRandom.current().nextLong());
+        i.setPuntajeMaximo(puntajeMaximo != null ? puntajeMaximo : puntajeMaximoDelSorteo(eval, i.getSemilla()));
+
+        Intento creado;
+        try {
+            creado = intentoRepositorio.insert(i);
+        } catch (RuntimeException ex) {
+            contadorIntentos.liberar(idEvaluacion, idEstudiante, idIntento, nro, true, ahora);
+            throw ex;
+        }
+        expiracionServicio.programar(creado);
+        return creado;
+    }
+
+    /** Con sorteo del banco el máximo es la suma de las preguntas que tocaron. */
+    private static BigDecimal puntajeMaximoDelSorteo(Evaluacion eval, Long semilla) {
+        if (!SorteoPreguntas.muestrea(eval)) return eval.getPuntajeMaximo();
+        int suma = SorteoPreguntas.generar(eval, semilla).stream()
+                .map(ps -> ps.pregunta().getPuntaje())
+                .filter(Objects::nonNull)
+                .mapToInt(Integer::intValue)
+                .sum();
+        return BigDecimal.valueOf(suma);
+    }
+
+    /** Preguntas del intento en el orden del estudiante, sin respuestas correctas. */
+    public Optional<List<EvaluacionEstudianteDTO.PreguntaEstudianteDTO>> preguntasDelIntento(Intento intento) {
+        return vistaEvaluacion.preguntasDelIntento(intento);
     }
 
     public Optional<Intento> obtener(String idIntento) {
@@ -113,6 +156,10 @@ public class IntentoServicio {
             throw new IllegalStateException("El intento no está en progreso o ya fue entregado.");
         }
 
+        if (i.getExpiraAt() != null && ahora.isAfter(i.getExpiraAt().plus(expiracionServicio.gracia()))) {
+            throw new IllegalStateException("El tiempo del intento ya venció.");
+        }
+
         if (tiempoSegundos != null && tiempoSegundos >= 0) {
             i.setUsedTimeSeconds(tiempoSegundos);
         }
@@ -124,11 +171,14 @@ public class IntentoServicio {
 
         i.setEstado(Intento.EstadoIntento.ENVIADO);
         i.setEnviadoEn(ahora);
+        if (i.getVenceAt() == null) i.setVenceAt(ahora);
 
         i = intentoRepositorio.save(i);
+        expiracionServicio.cancelar(i.getId());
+        contadorIntentos.liberar(i.getIdEvaluacion(), idEstudiante, i.getId(), i.getNroIntento(), false, ahora);
 
         // Intentar auto-calificar (si todas o algunas preguntas lo permiten)
-        i = aplicarAutoCalificacion(i);
+        i = correccionAutomatica.aplicar(i);
 
         return i;
     }
@@ -141,6 +191,10 @@ public class IntentoServicio {
             throw new IllegalStateException("Solo se puede eliminar un intento EN_PROGRESO.");
         }
         intentoRepositorio.deleteById(idIntento);
+        expiracionServicio.cancelar(idIntento);
+        // El intento eliminado sigue contando y arranca la espera: si no, borrar y volver a
+        // empezar saltaría maxIntentos, la espera entre intentos y el sorteo de preguntas
+        contadorIntentos.liberar(i.getIdEvaluacion(), idEstudiante, idIntento, i.getNroIntento(), false, Instant.now());
         return true;
     }
 
@@ -163,196 +217,4 @@ public class IntentoServicio {
             throw new IllegalArgumentException("El tiempo usado excede el límite configurado.");
         }
     }
-
-    // =========================================================
-    // =============== LÓGICA DE AUTO-CALIFICACIÓN =============
-    // =========================================================
-
-    private Intento aplicarAutoCalificacion(Intento intento) {
-        if (intento == null || intento.getIdEvaluacion() == null) {
-            return intento;
-        }
-
-        var optEval = evaluacionRepositorio.findById(intento.getIdEvaluacion());
-        if (optEval.isEmpty()) return intento;
-
-        Evaluacion eval = optEval.get();
-        List<Pregunta> preguntas = eval.getPreguntas();
-        if (preguntas == null || preguntas.isEmpty()) {
-            return intento;
-        }
-
-        List<Intento.Respuesta> respuestas = intento.getRespuestas();
-        if (respuestas == null) {
-            respuestas = List.of();
-        }
-
-        BigDecimal totalPuntaje = BigDecimal.ZERO;
-        BigDecimal totalMax = BigDecimal.ZERO;
-        boolean hayNoAuto = false;
-
-        for (Pregunta p : preguntas) {
-            if (p == null) continue;
-
-            int puntosPregunta = (p.getPuntaje() == null) ? 0 : p.getPuntaje();
-            BigDecimal puntajePregunta = BigDecimal.valueOf(puntosPregunta);
-            totalMax = totalMax.add(puntajePregunta);
-
-            if (!p.isAutoCalificable()) {
-                hayNoAuto = true;
-                continue;
-            }
-
-            Intento.Respuesta r = respuestas.stream()
-                    .filter(resp -> p.getId() != null && p.getId().equals(resp.getIdPregunta()))
-                    .findFirst()
-                    .orElse(null);
-
-            BigDecimal obtenido = BigDecimal.ZERO;
-
-            if (r != null && p.getTipo() != null) {
-                switch (p.getTipo()) {
-                    case VERDADERO_FALSO:
-                        obtenido = calificarOpcionUnica(p, r, puntajePregunta);
-                        break;
-
-                    case OPCION_MULTIPLE:
-                        obtenido = calificarOpcionMultiple(p, r, puntajePregunta);
-                        break;
-
-                    case NUMERICA:
-                        obtenido = calificarNumerica(p, r, puntajePregunta);
-                        break;
-
-                    case ABIERTA:
-                    default:
-                        // Pregunta abierta o tipo no auto-corregible
-                        hayNoAuto = true;
-                        break;
-                }
-            }
-
-
-            if (r != null) {
-                r.setPuntaje(obtenido);
-            }
-            totalPuntaje = totalPuntaje.add(obtenido);
-        }
-
-        intento.setPuntajeMaximo(totalMax);
-        intento.setPuntaje(totalPuntaje);
-
-        // Si NO hay preguntas no auto-calificables, marcamos como CALIFICADO
-        if (!hayNoAuto) {
-            intento.setEstado(Intento.EstadoIntento.CALIFICADO);
-            intento.setCalificadoAt(Instant.now());
-        }
-
-        return intentoRepositorio.save(intento);
-    }
-
-    private BigDecimal calificarOpcionUnica(Pregunta p, Intento.Respuesta r, BigDecimal puntajePregunta) {
-    if (r == null) return BigDecimal.ZERO;
-
-    if (r.getOpciones() == null || r.getOpciones().isEmpty()) {
-        r.setEstado(Intento.EstadoRespuesta.SIN_RESPONDER);
-        return BigDecimal.ZERO;
-    }
-
-    String seleccion = r.getOpciones().get(0);
-
-    if (p.getOpciones() == null || p.getOpciones().isEmpty()) {
-        // No hay claves configuradas => no podemos corregir
-        r.setEstado(Intento.EstadoRespuesta.SIN_CORREGIR);
-        return BigDecimal.ZERO;
-    }
-
-    boolean esCorrecta = p.getOpciones().stream()
-            .filter(OpcionPregunta::isCorrecta)
-            .anyMatch(op -> op.getId() != null && op.getId().equals(seleccion));
-
-    if (esCorrecta) {
-        r.setEstado(Intento.EstadoRespuesta.CORRECTA);
-        return puntajePregunta;
-    } else {
-        r.setEstado(Intento.EstadoRespuesta.INCORRECTA);
-        return BigDecimal.ZERO;
-    }
-}
-
-
-    private BigDecimal calificarOpcionMultiple(Pregunta p, Intento.Respuesta r, BigDecimal puntajePregunta) {
-    if (r == null) return BigDecimal.ZERO;
-
-    if (p.getOpciones() == null || p.getOpciones().isEmpty()) {
-        r.setEstado(Intento.EstadoRespuesta.SIN_CORREGIR);
-        return BigDecimal.ZERO;
-    }
-    if (r.getOpciones() == null || r.getOpciones().isEmpty()) {
-        r.setEstado(Intento.EstadoRespuesta.SIN_RESPONDER);
-        return BigDecimal.ZERO;
-    }
-
-    var correctas = p.getOpciones().stream()
-            .filter(OpcionPregunta::isCorrecta)
-            .map(OpcionPregunta::getId)
-            .filter(id -> id != null)
-            .sorted()
-            .toList();
-
-    var marcadas = r.getOpciones().stream()
-            .filter(id -> id != null)
-            .sorted()
-            .toList();
-
-    if (correctas.isEmpty()) {
-        r.setEstado(Intento.EstadoRespuesta.SIN_CORREGIR);
-        return BigDecimal.ZERO;
-    }
-
-    boolean coincide = correctas.equals(marcadas);
-
-    if (coincide) {
-        r.setEstado(Intento.EstadoRespuesta.CORRECTA);
-        return puntajePregunta;
-    } else {
-        r.setEstado(Intento.EstadoRespuesta.INCORRECTA);
-        return BigDecimal.ZERO;
-    }
-}
-
-
-    private BigDecimal calificarNumerica(Pregunta p, Intento.Respuesta r, BigDecimal puntajePregunta) {
-    if (r == null) return BigDecimal.ZERO;
-
-    if (p.getRespuestaNumericaCorrecta() == null) {
-        r.setEstado(Intento.EstadoRespuesta.SIN_CORREGIR);
-        return BigDecimal.ZERO;
-    }
-
-    String txt = r.getTextoLibre();
-    if (txt == null || txt.isBlank()) {
-        r.setEstado(Intento.EstadoRespuesta.SIN_RESPONDER);
-        return BigDecimal.ZERO;
-    }
-
-    try {
-        double esperado = p.getRespuestaNumericaCorrecta();
-        double obtenido = Double.parseDouble(txt.trim());
-        double diff = Math.abs(esperado - obtenido);
-
-        double tolerancia = 1e-6;
-        if (diff <= tolerancia) {
-            r.setEstado(Intento.EstadoRespuesta.CORRECTA);
-            return puntajePregunta;
-        } else {
-            r.setEstado(Intento.EstadoRespuesta.INCORRECTA);
-            return BigDecimal.ZERO;
-        }
-    } catch (NumberFormatException ex) {
-        r.setEstado(Intento.EstadoRespuesta.INCORRECTA);
-        return BigDecimal.ZERO;
-    }
-}
-
 }
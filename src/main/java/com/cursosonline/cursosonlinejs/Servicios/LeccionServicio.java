@@ -2,8 +2,14 @@ package com.cursosonline.cursosonlinejs.Servicios;
 
 import com.cursosonline.cursosonlinejs.Entidades.Leccion;
 import com.cursosonline.cursosonlinejs.Entidades.Modulo;
+import com.cursosonline.cursosonlinejs.Entidades.SecuenciaCurso;
 import com.cursosonline.cursosonlinejs.Repositorios.LeccionRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.ModuloRepositorio;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
@@ -15,13 +21,22 @@ public class LeccionServicio {
     private final LeccionRepositorio leccionRepositorio;
     private final ModuloRepositorio moduloRepositorio;
     private final CursoServicio cursoServicio;
+    private final ActividadLeccionServicio actividadLeccionServicio;
+    private final MapaLeccionesServicio mapaLeccionesServicio;
+    private final MongoTemplate mongoTemplate;
 
     public LeccionServicio(LeccionRepositorio leccionRepositorio,
                            ModuloRepositorio moduloRepositorio,
-                           CursoServicio cursoServicio) {
+                           CursoServicio cursoServicio,
+                           ActividadLeccionServicio actividadLeccionServicio,
+                           MapaLeccionesServicio mapaLeccionesServicio,
+                           MongoTemplate mongoTemplate) {
         this.leccionRepositorio = leccionRepositorio;
         this.moduloRepositorio = moduloRepositorio;
         this.cursoServicio = cursoServicio;
+        this.actividadLeccionServicio = actividadLeccionServicio;
+        this.mapaLeccionesServicio = mapaLeccionesServicio;
+        this.mongoTemplate = mongoTemplate;
     }
 
     public Leccion guardar(Leccion leccion) {
@@ -37,6 +52,7 @@ public class LeccionServicio {
             Modulo m = moduloRepositorio.findById(idModulo)
                     .orElseThrow(() -> new NoSuchElementException("Módulo no encontrado"));
             leccion.setIdCurso(m.getIdCurso());
+            leccion.setOrdinal(reservarOrdinales(m.getIdCurso(), 1));
         } else {
             Leccion actual = leccionRepositorio.findById(leccion.getId())
                     .orElseThrow(() -> new NoSuchElementException("Lección no encontrada"));
@@ -47,6 +63,7 @@ public class LeccionServicio {
                 throw new IllegalArgumentException("No se permite cambiar la lección de módulo.");
             }
             leccion.setIdCurso(actual.getIdCurso());
+            leccion.setOrdinal(actual.getOrdinal());
         }
 
         Leccion guardada = leccionRepositorio.save(leccion);
@@ -72,6 +89,8 @@ public class LeccionServicio {
             String idCurso = l.getIdCurso();
             quitarLeccionDeModulo(l.getIdModulo(), l.getId());
             leccionRepositorio.deleteById(id);
+            actividadLeccionServicio.invalidarLeccion(id);
+            mapaLeccionesServicio.invalidar(idCurso);
             if (idCurso != null) {
                 cursoServicio.onLeccionChanged(idCurso);
             }
@@ -212,6 +231,8 @@ public class LeccionServicio {
                 l.setEstado(Leccion.EstadoPublicacion.PUBLICADO);
                 l.setPublishedAt(Instant.now());
                 l = leccionRepositorio.save(l);
+                actividadLeccionServicio.invalidarLeccion(l.getId());
+                mapaLeccionesServicio.invalidar(l.getIdCurso());
                 if (l.getIdCurso() != null) cursoServicio.onLeccionChanged(l.getIdCurso());
             }
             return l;
@@ -223,9 +244,50 @@ public class LeccionServicio {
             if (l.getEstado() != Leccion.EstadoPublicacion.ARCHIVADO) {
                 l.setEstado(Leccion.EstadoPublicacion.ARCHIVADO);
                 l = leccionRepositorio.save(l);
+                actividadLeccionServicio.invalidarLeccion(l.getId());
+                mapaLeccionesServicio.invalidar(l.getIdCurso());
                 if (l.getIdCurso() != null) cursoServicio.onLeccionChanged(l.getIdCurso());
             }
             return l;
         });
     }
+
+    /**
+     * Asigna ordinal a las lecciones del curso que no lo tienen (creadas antes de que
+     * existiera), en orden de módulo y de lección. Devuelve cuántas actualizó.
+     */
+    public int asignarOrdinalesFaltantes(String idCurso) {
+        List<Leccion> sinOrdinal = new ArrayList<>();
+        for (Modulo m : moduloRepositorio.findByIdCursoOrderByOrdenAsc(idCurso)) {
+            for (Leccion l : leccionRepositorio.findByIdModuloOrderByOrdenAsc(m.getId())) {
+                if (l.getOrdinal() == null) sinOrdinal.add(l);
+            }
+        }
+        if (sinOrdinal.isEmpty()) return 0;
+
+        int siguiente = reservarOrdinales(idCurso, sinOrdinal.size());
+        int n = 0;
+        for (Leccion l : sinOrdinal) {
+            // Condicional: si otro nodo se adelantó, su ordinal se queda y el nuestro queda sin usar
+            n += (int) mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(l.getId()).and("ordinal").is(null)),
+                    new Update().set("ordinal", siguiente++),
+                    Leccion.class).getModifiedCount();
+        }
+        mapaLeccionesServicio.invalidar(idCurso);
+        return n;
+    }
+
+    /**
+     * Reserva {@code cantidad} ordinales consecutivos del curso y devuelve el primero.
+     * Los ordinales no se reutilizan: una lección borrada deja su bit sin uso.
+     */
+    private int reservarOrdinales(String idCurso, int cantidad) {
+        SecuenciaCurso sec = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(idCurso)),
+                new Update().inc("ordinalesLecciones", cantidad),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                SecuenciaCurso.class);
+        return sec.getOrdinalesLecciones() - cantidad;
+    }
 }
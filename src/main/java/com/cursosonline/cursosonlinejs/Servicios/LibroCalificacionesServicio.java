@@ -0,0 +1,263 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.Curso;
+import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.Intento;
+import com.cursosonline.cursosonlinejs.Entidades.Leccion;
+import com.cursosonline.cursosonlinejs.Entidades.Modulo;
+import com.cursosonline.cursosonlinejs.Entidades.Usuario;
+import com.cursosonline.cursosonlinejs.Repositorios.CursoRepositorio;
+import com.cursosonline.cursosonlinejs.Repositorios.EvaluacionRepositorio;
+import com.cursosonline.cursosonlinejs.Repositorios.LeccionRepositorio;
+import com.cursosonline.cursosonlinejs.Repositorios.ModuloRepositorio;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Libro de calificaciones de un curso: una fila por inscripción con la nota de cada
+ * evaluación, el promedio de cada módulo, la nota final y si aprobó.
+ *
+ * Las notas salen de {@link ReglasNota}, las mismas que usa el progreso del estudiante.
+ * Para no cargar el curso completo en memoria se recorren dos cursores ordenados por
+ * idEstudiante (inscripciones e intentos calificados) y se cruzan como un merge join;
+ * en memoria solo está la estructura del curso, el lote actual de estudiantes y los
+ * intentos del estudiante en curso. La fila se escribe en cuanto se calcula.
+ */
+@Service
+public class LibroCalificacionesServicio {
+
+    public enum Formato { CSV, XLSX }
+
+    private static final int LOTE_USUARIOS = 500;
+
+    private final CursoRepositorio cursoRepositorio;
+    private final ModuloRepositorio moduloRepositorio;
+    private final LeccionRepositorio leccionRepositorio;
+    private final EvaluacionRepositorio evaluacionRepositorio;
+    private final MongoTemplate mongoTemplate;
+
+    public LibroCalificacionesServicio(CursoRepositorio cursoRepositorio,
+                                       ModuloRepositorio moduloRepositorio,
+                                       LeccionRepositorio leccionRepositorio,
+                                       EvaluacionRepositorio evaluacionRepositorio,
+                                       MongoTemplate mongoTemplate) {
+        this.cursoRepositorio = cursoRepositorio;
+        this.moduloRepositorio = moduloRepositorio;
+        this.leccionRepositorio = leccionRepositorio;
+        this.evaluacionRepositorio = evaluacionRepositorio;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Estructura de notas del curso. Se arma antes de empezar a responder para que un
+     * curso inexistente dé 404 y no un archivo a medias.
+     */
+    public Estructura estructura(String idCurso) {
+        Curso curso = cursoRepositorio.findById(idCurso)
+                .orElseThrow(() -> new NoSuchElementException("Curso no encontrado."));
+
+        List<ModuloNotas> modulos = new ArrayList<>();
+        List<Evaluacion> columnas = new ArrayList<>();
+        List<Modulo> mods = moduloRepositorio.findByIdCursoOrderByOrdenAsc(idCurso);
+        for (Modulo mod : mods == null ? List.<Modulo>of() : mods) {
+            List<List<Integer>> lecciones = new ArrayList<>();
+            List<Leccion> lecs = leccionRepositorio.findByIdModuloOrderByOrdenAsc(mod.getId());
+            for (Leccion lec : lecs == null ? List.<Leccion>of() : lecs) {
+                List<Integer> cols = new ArrayList<>();
+                List<Evaluacion> evals = evaluacionRepositorio.findByIdLeccionOrderByTituloAsc(lec.getId());
+                for (Evaluacion eval : evals == null ? List.<Evaluacion>of() : evals) {
+                    if (eval.getEstado() == Evaluacion.EstadoPublicacion.ARCHIVADA) continue;
+                    cols.add(columnas.size());
+                    columnas.add(eval);
+                }
+                lecciones.add(cols);
+            }
+            modulos.add(new ModuloNotas(mod.getId(), mod.getTitulo(), lecciones));
+        }
+        return new Estructura(curso, modulos, columnas);
+    }
+
+    public void exportar(Estructura est, Formato formato, OutputStream out) throws IOException {
+        try (EscritorTabla tabla = formato == Formato.XLSX
+                ? new EscritorXlsx(out, "Calificaciones")
+                : new EscritorCsv(out)) {
+            tabla.fila(encabezados(est));
+            escribirFilas(est, tabla);
+        }
+    }
+
+    private List<Object> encabezados(Estructura est) {
+        List<Object> h = new ArrayList<>();
+        h.add("idEstudiante");
+        h.add("nombre");
+        h.add("email");
+        h.add("estadoInscripcion");
+        for (Evaluacion e : est.columnas()) h.add(e.getTitulo());
+        for (ModuloNotas m : est.modulos()) h.add("Promedio " + m.titulo());
+        h.add("notaFinal");
+        h.add("aprobadoFinal");
+        return h;
+    }
+
+    private void escribirFilas(Estructura est, EscritorTabla tabla) throws IOException {
+        Map<String, Integer> columnaPorEval = new HashMap<>();
+        for (int i = 0; i < est.columnas().size(); i++) {
+            columnaPorEval.put(est.columnas().get(i).getId(), i);
+        }
+
+        Query qInsc = new Query(Criteria.where("idCurso").is(est.curso().getId()))
+                .with(Sort.by(Sort.Direction.ASC, "idEstudiante"));
+        qInsc.fields().include("idEstudiante", "estado", "modulosAprobadosManualmente");
+
+        // Mismo recorrido que el progreso: del intento más reciente al más antiguo
+        // eval_estudiante_enviado_idx (lo crea IndicesMongoConfig): el $in se parte en un
+        // rango por evaluación y el orden sale de mezclarlos, sin ordenar en memoria
+        Query qInt = new Query(Criteria.where("idEvaluacion").in(columnaPorEval.keySet())
+                .and("puntaje").ne(null)
+                .and("puntajeMaximo").ne(null))
+                .with(Sort.by(Sort.Order.asc("idEstudiante"), Sort.Order.desc("enviadoEn")));
+        qInt.fields().include("idEstudiante", "idEvaluacion", "puntaje", "puntajeMaximo");
+
+        try (Stream<Inscripcion> inscripciones = mongoTemplate.stream(qInsc, Inscripcion.class);
+             Stream<Intento> intentos = columnaPorEval.isEmpty()
+                     ? Stream.empty()
+                     : mongoTemplate.stream(qInt, Intento.class)) {
+
+            CursorIntentos cursor = new CursorIntentos(intentos.iterator(), columnaPorEval, est.columnas().size());
+            Iterator<Inscripcion> it = inscripciones.iterator();
+            List<Inscripcion> lote = new ArrayList<>(LOTE_USUARIOS);
+            while (it.hasNext()) {
+                lote.add(it.next());
+                if (lote.size() == LOTE_USUARIOS || !it.hasNext()) {
+                    escribirLote(est, lote, cursor, tabla);
+                    lote.clear();
+                }
+            }
+        }
+    }
+
+    private void escribirLote(Estructura est, List<Inscripcion> lote, CursorIntentos cursor,
+                              EscritorTabla tabla) throws IOException {
+        Query qUsr = new Query(Criteria.where("_id").in(lote.stream().map(Inscripcion::getIdEstudiante).toList()));
+        qUsr.fields().include("nombre", "email");
+        Map<String, Usuario> usuarios = new HashMap<>();
+        for (Usuario u : mongoTemplate.find(qUsr, Usuario.class)) usuarios.put(u.getId(), u);
+
+        for (Inscripcion insc : lote) {
+            BigDecimal[] notas = cursor.notasDe(insc.getIdEstudiante());
+            Usuario u = usuarios.get(insc.getIdEstudiante());
+
+            List<Object> fila = new ArrayList<>();
+            fila.add(insc.getIdEstudiante());
+            fila.add(u != null ? u.getNombre() : null);
+            fila.add(u != null ? u.getEmail() : null);
+            fila.add(insc.getEstado() != null ? insc.getEstado().name() : null);
+            for (BigDecimal n : notas) fila.add(n);
+
+            Set<String> manuales = insc.getModulosAprobadosManualmente() == null
+                    ? Set.of() : insc.getModulosAprobadosManualmente();
+            List<BigDecimal> notasModulos = new ArrayList<>();
+            boolean todosAprobados = true;
+            for (ModuloNotas m : est.modulos()) {
+                List<BigDecimal> notasLeccion = new ArrayList<>();
+                for (List<Integer> cols : m.lecciones()) {
+                    List<BigDecimal> notasEval = new ArrayList<>();
+                    for (int c : cols) {
+                        if (notas[c] != null) notasEval.add(notas[c]);
+                    }
+                    BigDecimal notaLeccion = ReglasNota.promedio(notasEval);
+                    if (notaLeccion != null) notasLeccion.add(notaLeccion);
+                }
+                BigDecimal notaModulo = ReglasNota.promedio(notasLeccion);
+                if (!manuales.contains(m.id()) && !ReglasNota.aprobada(notaModulo)) todosAprobados = false;
+                if (notaModulo != null) notasModulos.add(notaModulo);
+                fila.add(notaModulo);
+            }
+            fila.add(ReglasNota.promedio(notasModulos));
+            fila.add(todosAprobados && !est.modulos().isEmpty());
+
+            tabla.fila(fila);
+        }
+    }
+
+    /**
+     * Lado "intentos" del merge join. Avanza sobre un cursor ordenado por idEstudiante
+     * y devuelve, por evaluación, el porcentaje del mejor intento del estudiante pedido.
+     */
+    private static final class CursorIntentos {
+
+        private final Iterator<Intento> it;
+        private final Map<String, Integer> columnaPorEval;
+        private final int columnas;
+        private Intento pendiente;
+        private String ultimoEstudiante;
+        private BigDecimal[] ultimasNotas;
+
+        CursorIntentos(Iterator<Intento> it, Map<String, Integer> columnaPorEval, int columnas) {
+            this.it = it;
+            this.columnaPorEval = columnaPorEval;
+            this.columnas = columnas;
+            this.pendiente = it.hasNext() ? it.next() : null;
+        }
+
+        BigDecimal[] notasDe(String idEstudiante) {
+            // Inscripción repetida del mismo estudiante: los intentos ya se consumieron
+            if (idEstudiante != null && idEstudiante.equals(ultimoEstudiante)) return ultimasNotas;
+
+            Intento[] mejores = new Intento[columnas];
+            if (idEstudiante != null) {
+                // Intentos de estudiantes sin inscripción en el curso
+                while (pendiente != null && compara(pendiente.getIdEstudiante(), idEstudiante) < 0) {
+                    avanzar();
+                }
+                while (pendiente != null && idEstudiante.equals(pendiente.getIdEstudiante())) {
+                    Integer col = columnaPorEval.get(pendiente.getIdEvaluacion());
+                    if (col != null && ReglasNota.cuenta(pendiente) && ReglasNota.esMejor(pendiente, mejores[col])) {
+                        mejores[col] = pendiente;
+                    }
+                    avanzar();
+                }
+            }
+
+            BigDecimal[] notas = new BigDecimal[columnas];
+            for (int i = 0; i < columnas; i++) {
+                if (mejores[i] != null) notas[i] = ReglasNota.porcentaje(mejores[i]);
+            }
+            ultimoEstudiante = idEstudiante;
+            ultimasNotas = notas;
+            return notas;
+        }
+
+        private void avanzar() {
+            pendiente = it.hasNext() ? it.next() : null;
+        }
+
+        // Mongo ordena null antes que cualquier string
+        private static int compara(String a, String b) {
+            if (a == null) return b == null ? 0 : -1;
+            if (b == null) return 1;
+            return a.compareTo(b);
+        }
+    }
+
+    public record Estructura(Curso curso, List<ModuloNotas> modulos, List<Evaluacion> columnas) {}
+
+    /** Módulo con sus lecciones; cada lección es la lista de columnas (evaluaciones) que promedia. */
+    public record ModuloNotas(String id, String titulo, List<List<Integer>> lecciones) {}
+}
@@ -0,0 +1,179 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.CupoCurso;
+import com.cursosonline.cursosonlinejs.Entidades.Curso;
+import com.cursosonline.cursosonlinejs.Entidades.ListaEspera;
+import com.cursosonline.cursosonlinejs.Repositorios.CursoRepositorio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * Lista de espera por curso con promoción automática.
+ *
+ * Cuando se libera un cupo (cancelación, vencimiento, curso completado) o cambia el
+ * curso, cupos_cursos queda marcado con promocionPendiente. El promotor recorre solo
+ * los cursos marcados y, por cada uno, repite en lote: reservar un cupo con el mismo
+ * update condicional que usa la inscripción normal, sacar la cabeza de la lista con
+ * findAndRemove y crear la inscripción PENDIENTE_PAGO. Cuando no queda cupo o no queda
+ * nadie esperando apaga la marca (salvo que haya llegado otra señal mientras tanto).
+ */
+@Service
+public class ListaEsperaServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(ListaEsperaServicio.class);
+
+    static final String ORIGEN_LISTA_ESPERA = "LISTA_ESPERA";
+
+    private static final int CURSOS_POR_RONDA = 100;
+    private static final int PROMOCIONES_POR_CURSO = 50;
+
+    private final MongoTemplate mongoTemplate;
+    private final CursoRepositorio cursoRepositorio;
+    private final CursoServicio cursoServicio;
+    private final CupoCursoServicio cupoCursoServicio;
+    private final InscripcionServicio inscripcionServicio;
+
+    public ListaEsperaServicio(MongoTemplate mongoTemplate,
+                               CursoRepositorio cursoRepositorio,
+                               CursoServicio cursoServicio,
+                               CupoCursoServicio cupoCursoServicio,
+                               InscripcionServicio inscripcionServicio) {
+        this.mongoTemplate = mongoTemplate;
+        this.cursoRepositorio = cursoRepositorio;
+        this.cursoServicio = cursoServicio;
+        this.cupoCursoServicio = cupoCursoServicio;
+        this.inscripcionServicio = inscripcionServicio;
+    }
+
+    /**
+     * Añade al estudiante al final de la lista y devuelve su posición.
+     *
+     * @throws NoSuchElementException si el curso no existe
+     * @throws IllegalStateException si el curso no acepta inscripciones, el estudiante ya
+     *                               está inscrito o ya está en la lista
+     */
+    public long unirse(String idCurso, String idEstudiante) {
+        Curso curso = cursoServicio.obtenerPorId(idCurso)
+                .orElseThrow(() -> new NoSuchElementException("Curso no encontrado."));
+        if (!cursoServicio.puedeInscribirse(curso)) {
+            throw new IllegalStateException("Este curso no acepta inscripciones (no publicado o fuera de ventana).");
+        }
+        if (inscripcionServicio.existeActiva(idCurso, idEstudiante)) {
+            throw new IllegalStateException("Ya tienes una inscripción activa en este curso.");
+        }
+
+        ListaEspera e = new ListaEspera();
+        e.setId(ListaEspera.clave(idCurso, idEstudiante));
+        e.setIdCurso(idCurso);
+        e.setIdEstudiante(idEstudiante);
+        e.setTurno(cupoCursoServicio.siguienteTurno(idCurso));
+        e.setCreatedAt(Instant.now());
+        try {
+            mongoTemplate.insert(e);
+        } catch (DuplicateKeyException ex) {
+            throw new IllegalStateException("Ya estás en la lista de espera de este curso.");
+        }
+
+        // Puede que se haya liberado un cupo justo antes de unirse
+        cupoCursoServicio.senalarPromocion(idCurso);
+        return posicion(e);
+    }
+
+    /** Posición (1 = siguiente en entrar); vacío si no está en la lista. */
+    public Optional<Long> posicion(String idCurso, String idEstudiante) {
+        ListaEspera e = mongoTemplate.findById(ListaEspera.clave(idCurso, idEstudiante), ListaEspera.class);
+        return Optional.ofNullable(e).map(this::posicion);
+    }
+
+    public boolean salir(String idCurso, String idEstudiante) {
+        return mongoTemplate.remove(
+                new Query(Criteria.where("_id").is(ListaEspera.clave(idCurso, idEstudiante))),
+                ListaEspera.class).getDeletedCount() > 0;
+    }
+
+    public List<ListaEspera> listar(String idCurso) {
+        return mongoTemplate.find(
+                new Query(Criteria.where("idCurso").is(idCurso)).with(Sort.by(Sort.Direction.ASC, "turno")),
+                ListaEspera.class);
+    }
+
+    // =========================================================
+    // PROMOCIÓN
+    // =========================================================
+
+    @Scheduled(fixedDelayString = "${app.lista-espera.promocion-ms:5000}")
+    public void promover() {
+        Query q = new Query(Criteria.where("promocionPendiente").is(true)).limit(CURSOS_POR_RONDA);
+        q.fields().include("senalPromocion");
+        for (CupoCurso c : mongoTemplate.find(q, CupoCurso.class)) {
+            try {
+                promoverCurso(c.getId(), c.getSenalPromocion());
+            } catch (RuntimeException ex) {
+                log.error("Error promoviendo la lista de espera del curso {}", c.getId(), ex);
+            }
+        }
+    }
+
+    private void promoverCurso(String idCurso, Long senalLeida) {
+        Curso curso = cursoRepositorio.findById(idCurso).orElse(null);
+        if (curso == null || !cursoServicio.puedeInscribirse(curso)) {
+            cupoCursoServicio.apagarPromocion(idCurso, senalLeida);
+            return;
+        }
+
+        Query cabeza = new Query(Criteria.where("idCurso").is(idCurso))
+                .with(Sort.by(Sort.Direction.ASC, "turno"));
+        int promovidos = 0;
+        boolean terminado = false;
+
+        while (promovidos < PROMOCIONES_POR_CURSO) {
+            if (!cupoCursoServicio.reservar(curso)) {
+                terminado = true;
+                break;
+            }
+            ListaEspera siguiente = mongoTemplate.findAndRemove(cabeza, ListaEspera.class);
+            if (siguiente == null) {
+                cupoCursoServicio.devolverReserva(idCurso);
+                terminado = true;
+                break;
+            }
+            if (inscripcionServicio.existeActiva(idCurso, siguiente.getIdEstudiante())) {
+                // Se inscribió por su cuenta mientras esperaba: el cupo pasa al siguiente
+                cupoCursoServicio.devolverReserva(idCurso);
+                continue;
+            }
+            try {
+                inscripcionServicio.crearConCupoReservado(idCurso, siguiente.getIdEstudiante(), ORIGEN_LISTA_ESPERA);
+                promovidos++;
+            } catch (RuntimeException ex) {
+                cupoCursoServicio.devolverReserva(idCurso);
+                // Vuelve a la lista con su turno original
+                mongoTemplate.save(siguiente);
+                throw ex;
+            }
+        }
+
+        // Con el lote completo la marca sigue puesta y la próxima ronda continúa
+        if (terminado) cupoCursoServicio.apagarPromocion(idCurso, senalLeida);
+        if (promovidos > 0) {
+            log.info("Lista de espera del curso {}: {} estudiantes promovidos", idCurso, promovidos);
+        }
+    }
+
+    private long posicion(ListaEspera e) {
+        return mongoTemplate.count(new Query(Criteria.where("idCurso").is(e.getIdCurso())
+                .and("turno").lt(e.getTurno())), ListaEspera.class) + 1;
+    }
+}
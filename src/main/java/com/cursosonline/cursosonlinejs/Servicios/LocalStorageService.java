@@ -61,6 +61,24 @@ public class LocalStorageService {
         return baseUrl + "/uploads/" + subfolder.replace("\\", "/") + "/" + finalName;
     }
 
+    /**
+     * Archivo local detrás de una URL devuelta por save/saveBytes, o vacío si la URL no
+     * apunta a la carpeta de subidas de este servidor (nunca sale de ella).
+     */
+    public Optional<Path> resolverLocal(String url) {
+        if (url == null) return Optional.empty();
+        String prefijo = baseUrl + "/uploads/";
+        String relativa;
+        if (url.startsWith(prefijo)) relativa = url.substring(prefijo.length());
+        else if (url.startsWith("/uploads/")) relativa = url.substring("/uploads/".length());
+        else return Optional.empty();
+
+        Path base = Paths.get(uploadsDir).toAbsolutePath().normalize();
+        Path archivo = base.resolve(relativa).normalize();
+        if (!archivo.startsWith(base) || !Files.isRegularFile(archivo)) return Optional.empty();
+        return Optional.of(archivo);
+    }
+
     private static String sanitize(String s) {
         if (s == null || s.isBlank()) return "file";
         return s.replaceAll("[^a-zA-Z0-9_-]", "");
@@ -73,6 +91,7 @@ public class LocalStorageService {
             case "image/jpeg": return ".jpg";
             case "image/webp": return ".webp";
             case "image/gif":  return ".gif";
+            case "application/pdf": return ".pdf";
             default: return null;
         }
     }
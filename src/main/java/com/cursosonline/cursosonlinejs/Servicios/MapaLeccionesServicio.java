@@ -0,0 +1,170 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.DTO.AvanceLeccionesDTO;
+import com.cursosonline.cursosonlinejs.DTO.CompletadosLeccionesDTO;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.Leccion;
+import com.cursosonline.cursosonlinejs.Entidades.Modulo;
+import com.cursosonline.cursosonlinejs.Repositorios.LeccionRepositorio;
+import com.cursosonline.cursosonlinejs.Repositorios.ModuloRepositorio;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Lecciones publicadas de un curso en orden de estudio, con su ordinal y la máscara
+ * de bits de las publicadas. Con esto el progreso de una inscripción se resuelve con
+ * operaciones de bits sobre Inscripcion.leccionesBits:
+ *
+ *  - Porcentaje: bitCount(completadas AND publicadas) / publicadas.
+ *  - Siguiente lección: la primera en orden cuyo bit no está encendido.
+ *  - Completados por lección en todo el curso: un recorrido por las palabras de cada
+ *    inscripción sumando los bits encendidos.
+ *
+ * El mapa se cachea por curso (app.lecciones.mapa.ttl-segundos); LeccionServicio lo
+ * descarta al crear, publicar, archivar, reordenar o borrar lecciones.
+ */
+@Service
+public class MapaLeccionesServicio {
+
+    @Value("${app.lecciones.mapa.ttl-segundos:300}")
+    private long ttlSegundos;
+
+    private final ModuloRepositorio moduloRepositorio;
+    private final LeccionRepositorio leccionRepositorio;
+    private final MongoTemplate mongoTemplate;
+    private final ActividadLeccionServicio actividadLeccionServicio;
+
+    private final Map<String, Mapa> cache = new ConcurrentHashMap<>();
+
+    public MapaLeccionesServicio(ModuloRepositorio moduloRepositorio,
+                                 LeccionRepositorio leccionRepositorio,
+                                 MongoTemplate mongoTemplate,
+                                 ActividadLeccionServicio actividadLeccionServicio) {
+        this.moduloRepositorio = moduloRepositorio;
+        this.leccionRepositorio = leccionRepositorio;
+        this.mongoTemplate = mongoTemplate;
+        this.actividadLeccionServicio = actividadLeccionServicio;
+    }
+
+    public Mapa mapa(String idCurso) {
+        Mapa m = cache.get(idCurso);
+        if (m != null && m.cargadoAt().plusSeconds(ttlSegundos).isAfter(Instant.now())) return m;
+        m = cargar(idCurso);
+        cache.put(idCurso, m);
+        return m;
+    }
+
+    public void invalidar(String idCurso) {
+        if (idCurso != null) cache.remove(idCurso);
+    }
+
+    /** Porcentaje 0–100 de lecciones publicadas completadas; null si el curso no tiene lecciones. */
+    public Integer progresoPct(String idCurso, long[] completadas) {
+        Mapa m = mapa(idCurso);
+        if (m.total() == 0) return null;
+        return BitsLecciones.contarComunes(completadas, m.publicadas()) * 100 / m.total();
+    }
+
+    public int completadas(String idCurso, long[] completadas) {
+        return BitsLecciones.contarComunes(completadas, mapa(idCurso).publicadas());
+    }
+
+    /** Primera lección publicada, en orden de estudio, que el estudiante no completó. */
+    public Optional<LeccionMapa> siguiente(String idCurso, long[] completadas) {
+        for (LeccionMapa l : mapa(idCurso).orden()) {
+            if (!BitsLecciones.contiene(completadas, l.ordinal())) return Optional.of(l);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Avance del estudiante en las lecciones del curso, sumando lo que marcó y todavía
+     * está en el buffer de ActividadLeccionServicio.
+     */
+    public AvanceLeccionesDTO avance(Inscripcion insc) {
+        long[] bits = BitsLecciones.leer(insc.getLeccionesBits());
+        for (Map.Entry<Integer, Long> e : actividadLeccionServicio
+                .bitsPendientes(insc.getIdCurso(), insc.getIdEstudiante()).entrySet()) {
+            if (e.getKey() >= bits.length) bits = Arrays.copyOf(bits, e.getKey() + 1);
+            bits[e.getKey()] |= e.getValue();
+        }
+        Mapa m = mapa(insc.getIdCurso());
+        int hechas = BitsLecciones.contarComunes(bits, m.publicadas());
+        AvanceLeccionesDTO.SiguienteDTO sig = siguiente(insc.getIdCurso(), bits)
+                .map(l -> new AvanceLeccionesDTO.SiguienteDTO(l.id(), l.idModulo(), l.titulo()))
+                .orElse(null);
+        return new AvanceLeccionesDTO(insc.getIdCurso(), hechas, m.total(),
+                m.total() == 0 ? null : hechas * 100 / m.total(), sig);
+    }
+
+    /**
+     * Cuántos estudiantes (inscripciones ACTIVA o COMPLETADA) completaron cada lección
+     * publicada del curso.
+     */
+    public CompletadosLeccionesDTO completadosPorLeccion(String idCurso) {
+        Mapa m = mapa(idCurso);
+        long[] publicadas = m.publicadas();
+        int[] cuenta = new int[publicadas.length * 64];
+
+        Criteria base = Criteria.where("idCurso").is(idCurso).and("estado").in(
+                Inscripcion.EstadoInscripcion.ACTIVA, Inscripcion.EstadoInscripcion.COMPLETADA);
+        long inscritos = mongoTemplate.count(new Query(base), Inscripcion.class);
+
+        if (publicadas.length > 0) {
+            Query q = new Query(Criteria.where("idCurso").is(idCurso)
+                    .and("estado").in(Inscripcion.EstadoInscripcion.ACTIVA, Inscripcion.EstadoInscripcion.COMPLETADA)
+                    .and(BitsLecciones.CAMPO).exists(true));
+            q.fields().include(BitsLecciones.CAMPO);
+            try (Stream<Inscripcion> s = mongoTemplate.stream(q, Inscripcion.class)) {
+                s.forEach(i -> {
+                    long[] bits = BitsLecciones.leer(i.getLeccionesBits());
+                    for (int w = 0, len = Math.min(bits.length, publicadas.length); w < len; w++) {
+                        long x = bits[w] & publicadas[w];
+                        while (x != 0) {
+                            cuenta[w * 64 + Long.numberOfTrailingZeros(x)]++;
+                            x &= x - 1;
+                        }
+                    }
+                });
+            }
+        }
+
+        List<CompletadosLeccionesDTO.ItemDTO> items = new ArrayList<>(m.orden().size());
+        for (LeccionMapa l : m.orden()) {
+            items.add(new CompletadosLeccionesDTO.ItemDTO(l.id(), l.idModulo(), l.titulo(), cuenta[l.ordinal()]));
+        }
+        return new CompletadosLeccionesDTO(idCurso, inscritos, items);
+    }
+
+    private Mapa cargar(String idCurso) {
+        List<LeccionMapa> orden = new ArrayList<>();
+        long[] publicadas = new long[0];
+        for (Modulo mod : moduloRepositorio.findByIdCursoOrderByOrdenAsc(idCurso)) {
+            if (mod.getEstado() == Modulo.EstadoModulo.ARCHIVADO) continue;
+            for (Leccion l : leccionRepositorio.findByIdModuloAndEstadoOrderByOrdenAsc(
+                    mod.getId(), Leccion.EstadoPublicacion.PUBLICADO)) {
+                // Sin ordinal hasta que corra la migración de arranque
+                if (l.getOrdinal() == null) continue;
+                orden.add(new LeccionMapa(l.getId(), l.getIdModulo(), l.getTitulo(), l.getOrdinal()));
+                publicadas = BitsLecciones.con(publicadas, l.getOrdinal());
+            }
+        }
+        return new Mapa(List.copyOf(orden), publicadas, orden.size(), Instant.now());
+    }
+
+    public record LeccionMapa(String id, String idModulo, String titulo, int ordinal) {}
+
+    public record Mapa(List<LeccionMapa> orden, long[] publicadas, int total, Instant cargadoAt) {}
+}
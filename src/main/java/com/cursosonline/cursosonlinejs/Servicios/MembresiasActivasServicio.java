@@ -0,0 +1,216 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.BajaMembresia;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion.EstadoInscripcion;
+import com.cursosonline.cursosonlinejs.Eventos.InscripcionEstadoEvento;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Índice en memoria de quién tiene una inscripción ACTIVA en cada curso, para los
+ * controles de acceso a lecciones, módulos y evaluaciones.
+ *
+ * Los usuarios se traducen a enteros densos (en orden de aparición) y cada curso
+ * guarda un ConjuntoCompacto con los ids de sus estudiantes activos. Preguntar si un
+ * estudiante está activo son dos búsquedas en mapa y una búsqueda binaria, sin ir a Mongo.
+ *
+ * Cómo se mantiene:
+ *  - Al arrancar se reconstruye entero desde las inscripciones ACTIVA.
+ *  - Los guardados por repositorio (AfterSaveEvent) y los InscripcionEstadoEvento del
+ *    nodo se aplican al momento.
+ *  - Cada app.membresias.refresco-ms se releen las inscripciones con updatedAt reciente,
+ *    lo que trae los cambios hechos por otros nodos o por updates sueltos, y las marcas
+ *    de inscripciones borradas (BajaMembresia), que de otro modo no aparecerían.
+ *  - Si el índice dice que no, se confirma en Mongo y, si estaba activa, se agrega: una
+ *    inscripción recién creada en otro nodo nunca se rechaza. Lo que puede tardar hasta
+ *    un refresco en verse es una baja.
+ *
+ * Memoria para 1M de inscripciones activas: con ids de usuario densos cada pertenencia
+ * cuesta 2 bytes en los contenedores de arreglo y como mucho 1 bit por usuario del
+ * tramo en los de mapa, o sea unos 2 MB en conjuntos. El costo grande son los
+ * diccionarios de ids (~130 bytes por usuario o curso distinto: String de 24 caracteres,
+ * nodo del mapa e Integer), unos 13 MB con 100.000 usuarios. estadisticas() lo calcula
+ * sobre los datos reales.
+ */
+@Service
+public class MembresiasActivasServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(MembresiasActivasServicio.class);
+
+    private static final long BYTES_POR_ENTRADA_DICCIONARIO = 130;
+    // Margen para relojes desparejos entre nodos al releer por updatedAt
+    private static final long MARGEN_REFRESCO_MS = 2000;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Map<String, Integer> usuarios = new ConcurrentHashMap<>();
+    private final AtomicInteger siguienteUsuario = new AtomicInteger();
+    private volatile Map<String, ConjuntoCompacto> cursos = new ConcurrentHashMap<>();
+
+    private volatile boolean listo;
+    private volatile Instant marca = Instant.EPOCH;
+
+    public MembresiasActivasServicio(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /** ¿Tiene el estudiante una inscripción ACTIVA en el curso? */
+    public boolean estaActivo(String idCurso, String idEstudiante) {
+        if (idCurso == null || idEstudiante == null) return false;
+        if (listo) {
+            Integer u = usuarios.get(idEstudiante);
+            ConjuntoCompacto c = cursos.get(idCurso);
+            if (u != null && c != null && c.contiene(u)) return true;
+        }
+        boolean activa = mongoTemplate.exists(new Query(Criteria.where("idCurso").is(idCurso)
+                .and("idEstudiante").is(idEstudiante)
+                .and("estado").is(EstadoInscripcion.ACTIVA)), Inscripcion.class);
+        if (activa) agregar(idCurso, idEstudiante);
+        return activa;
+    }
+
+    public void aplicar(String idCurso, String idEstudiante, EstadoInscripcion estado) {
+        if (idCurso == null || idEstudiante == null) return;
+        if (estado == EstadoInscripcion.ACTIVA) agregar(idCurso, idEstudiante);
+        else quitar(idCurso, idEstudiante);
+    }
+
+    /**
+     * Una inscripción se borró: se quita aquí y se deja una marca para que los demás
+     * nodos la quiten en su próximo refresco.
+     */
+    public void registrarBaja(String idCurso, String idEstudiante) {
+        if (idCurso == null || idEstudiante == null) return;
+        quitar(idCurso, idEstudiante);
+        BajaMembresia b = new BajaMembresia();
+        b.setIdCurso(idCurso);
+        b.setIdEstudiante(idEstudiante);
+        b.setBajaAt(Instant.now());
+        try {
+            mongoTemplate.insert(b);
+        } catch (RuntimeException ex) {
+            log.warn("No se pudo registrar la baja de {} en el curso {}; los demás nodos la verán al reconstruir",
+                    idEstudiante, idCurso, ex);
+        }
+    }
+
+    public void quitar(String idCurso, String idEstudiante) {
+        Integer u = usuarios.get(idEstudiante);
+        ConjuntoCompacto c = cursos.get(idCurso);
+        if (u != null && c != null) c.quitar(u);
+    }
+
+    private void agregar(String idCurso, String idEstudiante) {
+        cursos.computeIfAbsent(idCurso, k -> new ConjuntoCompacto()).agregar(idUsuario(idEstudiante));
+    }
+
+    private int idUsuario(String idEstudiante) {
+        return usuarios.computeIfAbsent(idEstudiante, k -> siguienteUsuario.getAndIncrement());
+    }
+
+    // =========================================================
+    // EVENTOS
+    // =========================================================
+
+    @EventListener
+    public void alGuardar(AfterSaveEvent<?> evento) {
+        if (evento.getSource() instanceof Inscripcion i) aplicar(i.getIdCurso(), i.getIdEstudiante(), i.getEstado());
+    }
+
+    @EventListener
+    public void alCambiarEstado(InscripcionEstadoEvento evento) {
+        aplicar(evento.idCurso(), evento.idEstudiante(), evento.nuevo());
+    }
+
+    // =========================================================
+    // CARGA Y REFRESCO
+    // =========================================================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruir() {
+        // La marca se toma antes de leer: lo que cambie durante la carga lo repite el refresco
+        Instant desde = Instant.now().minusMillis(MARGEN_REFRESCO_MS);
+        Map<String, ConjuntoCompacto.Constructor> porCurso = new HashMap<>();
+
+        Query q = new Query(Criteria.where("estado").is(EstadoInscripcion.ACTIVA));
+        q.fields().include("idCurso").include("idEstudiante");
+        try (Stream<Inscripcion> stream = mongoTemplate.stream(q, Inscripcion.class)) {
+            stream.forEach(i -> {
+                if (i.getIdCurso() == null || i.getIdEstudiante() == null) return;
+                porCurso.computeIfAbsent(i.getIdCurso(), k -> new ConjuntoCompacto.Constructor())
+                        .agregar(idUsuario(i.getIdEstudiante()));
+            });
+        }
+        Map<String, ConjuntoCompacto> nuevo = new ConcurrentHashMap<>();
+        porCurso.forEach((idCurso, b) -> nuevo.put(idCurso, b.construir()));
+        cursos = nuevo;
+        marca = desde;
+        listo = true;
+
+        Estadisticas e = estadisticas();
+        log.info("Índice de membresías: {} inscripciones activas en {} cursos, ~{} KB",
+                e.membresias(), e.cursos(), e.bytesTotales() / 1024);
+    }
+
+    @Scheduled(fixedDelayString = "${app.membresias.refresco-ms:5000}")
+    public void refrescar() {
+        if (!listo) return;
+        Instant inicio = Instant.now();
+        // Primero las bajas: si el estudiante se volvió a inscribir, la inscripción nueva
+        // (más reciente que la baja) lo agrega de nuevo en el paso siguiente
+        Query qb = new Query(Criteria.where("bajaAt").gte(marca)).with(Sort.by("bajaAt"));
+        for (BajaMembresia b : mongoTemplate.find(qb, BajaMembresia.class)) {
+            quitar(b.getIdCurso(), b.getIdEstudiante());
+        }
+
+        Query q = new Query(Criteria.where("updatedAt").gte(marca)).with(Sort.by("updatedAt"));
+        q.fields().include("idCurso").include("idEstudiante").include("estado");
+        try (Stream<Inscripcion> stream = mongoTemplate.stream(q, Inscripcion.class)) {
+            stream.forEach(i -> aplicar(i.getIdCurso(), i.getIdEstudiante(), i.getEstado()));
+        }
+        marca = inicio.minusMillis(MARGEN_REFRESCO_MS);
+    }
+
+    // =========================================================
+    // ESTADÍSTICAS
+    // =========================================================
+
+    public Estadisticas estadisticas() {
+        long membresias = 0;
+        long bytesConjuntos = 0;
+        for (ConjuntoCompacto c : cursos.values()) {
+            membresias += c.cardinalidad();
+            bytesConjuntos += c.bytesAproximados();
+        }
+        long bytesDiccionarios = (usuarios.size() + cursos.size()) * BYTES_POR_ENTRADA_DICCIONARIO;
+        return new Estadisticas(listo, cursos.size(), usuarios.size(), membresias,
+                bytesConjuntos, bytesDiccionarios, bytesConjuntos + bytesDiccionarios);
+    }
+
+    public record Estadisticas(
+            boolean listo,
+            int cursos,
+            int usuarios,
+            long membresias,
+            long bytesConjuntos,
+            long bytesDiccionarios,
+            long bytesTotales
+    ) {}
+}
@@ -0,0 +1,121 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.Leccion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Migración de arranque al progreso por bits.
+ *
+ *  1. Asigna ordinal a las lecciones que no lo tienen, curso por curso.
+ *  2. Pasa Inscripcion.leccionesCompletadas (ids) a leccionesBits con $bit or y borra
+ *     el campo viejo en la misma escritura, en bulks de TAMANO_BULK.
+ *
+ * Las dos fases son idempotentes ($bit or y $unset), así que si arrancan varios nodos
+ * a la vez o el proceso se corta a medias, el siguiente arranque termina el trabajo.
+ */
+@Service
+public class MigracionProgresoServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(MigracionProgresoServicio.class);
+
+    private static final int TAMANO_BULK = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final LeccionServicio leccionServicio;
+
+    public MigracionProgresoServicio(MongoTemplate mongoTemplate, LeccionServicio leccionServicio) {
+        this.mongoTemplate = mongoTemplate;
+        this.leccionServicio = leccionServicio;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrar() {
+        try {
+            int ordinales = asignarOrdinales();
+            int inscripciones = convertirCompletadas();
+            if (ordinales > 0 || inscripciones > 0) {
+                log.info("Progreso por bits: {} lecciones con ordinal nuevo, {} inscripciones convertidas",
+                        ordinales, inscripciones);
+            }
+        } catch (RuntimeException ex) {
+            log.error("No se pudo completar la migración de progreso; se reintentará al próximo arranque", ex);
+        }
+    }
+
+    private int asignarOrdinales() {
+        List<String> cursos = mongoTemplate.findDistinct(
+                new Query(Criteria.where("ordinal").is(null).and("idCurso").ne(null)),
+                "idCurso", Leccion.class, String.class);
+        int n = 0;
+        for (String idCurso : cursos) n += leccionServicio.asignarOrdinalesFaltantes(idCurso);
+        return n;
+    }
+
+    private int convertirCompletadas() {
+        Query q = new Query(Criteria.where("leccionesCompletadas").ne(null))
+                .with(Sort.by("idCurso"));
+        q.fields().include("idCurso").include("leccionesCompletadas");
+
+        int total = 0;
+        BulkOperations bulk = null;
+        int enBulk = 0;
+        // Ordenado por curso: basta con el mapa id -> ordinal del curso en curso
+        String cursoActual = null;
+        Map<String, Integer> ordinales = Map.of();
+
+        try (Stream<Inscripcion> stream = mongoTemplate.stream(q, Inscripcion.class)) {
+            Iterator<Inscripcion> it = stream.iterator();
+            while (it.hasNext()) {
+                Inscripcion i = it.next();
+                if (i.getIdCurso() != null && !i.getIdCurso().equals(cursoActual)) {
+                    cursoActual = i.getIdCurso();
+                    ordinales = ordinalesDelCurso(cursoActual);
+                }
+                Update u = new Update().unset("leccionesCompletadas");
+                Map<Integer, Long> palabras = new HashMap<>();
+                for (String idLeccion : i.getLeccionesCompletadas()) {
+                    Integer ord = ordinales.get(idLeccion);
+                    // Lecciones borradas o de otro curso: se descartan
+                    if (ord == null) continue;
+                    palabras.merge(BitsLecciones.palabra(ord), BitsLecciones.mascara(ord), (a, b) -> a | b);
+                }
+                palabras.forEach((w, m) -> u.bitwise(BitsLecciones.CAMPO + "." + w).or(m));
+
+                if (bulk == null) bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Inscripcion.class);
+                bulk.updateOne(new Query(Criteria.where("_id").is(i.getId())), u);
+                if (++enBulk == TAMANO_BULK) {
+                    total += bulk.execute().getModifiedCount();
+                    bulk = null;
+                    enBulk = 0;
+                }
+            }
+        }
+        if (bulk != null) total += bulk.execute().getModifiedCount();
+        return total;
+    }
+
+    private Map<String, Integer> ordinalesDelCurso(String idCurso) {
+        Query q = new Query(Criteria.where("idCurso").is(idCurso).and("ordinal").ne(null));
+        q.fields().include("ordinal");
+        Map<String, Integer> out = new HashMap<>();
+        for (Leccion l : mongoTemplate.find(q, Leccion.class)) out.put(l.getId(), l.getOrdinal());
+        return out;
+    }
+}
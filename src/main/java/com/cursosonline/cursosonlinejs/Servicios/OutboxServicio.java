@@ -0,0 +1,53 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.EventoOutbox;
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.client.ClientSession;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Escritura de eventos outbox junto con el cambio que los origina.
+ *
+ * enTransaccion abre una transacción de Mongo solo para ese bloque (no hay un
+ * TransactionManager global, así el resto del código sigue sin transacciones). El
+ * bloque puede ejecutarse más de una vez: withTransaction lo repite ante errores
+ * transitorios, así que debe leer lo que necesita dentro.
+ */
+@Service
+public class OutboxServicio {
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoDatabaseFactory mongoDatabaseFactory;
+
+    public OutboxServicio(MongoTemplate mongoTemplate, MongoDatabaseFactory mongoDatabaseFactory) {
+        this.mongoTemplate = mongoTemplate;
+        this.mongoDatabaseFactory = mongoDatabaseFactory;
+    }
+
+    public <T> T enTransaccion(Function<MongoOperations, T> bloque) {
+        ClientSessionOptions opciones = ClientSessionOptions.builder().causallyConsistent(true).build();
+        try (ClientSession sesion = mongoDatabaseFactory.getSession(opciones)) {
+            return sesion.withTransaction(() -> bloque.apply(mongoTemplate.withSession(sesion)));
+        }
+    }
+
+    public static EventoOutbox evento(String idAgregado, EventoOutbox.TipoEvento tipo,
+                                      Map<String, String> datos, Instant ahora) {
+        EventoOutbox e = new EventoOutbox();
+        e.setId(idAgregado + ":" + tipo.name());
+        e.setTipo(tipo);
+        e.setIdAgregado(idAgregado);
+        e.setDatos(datos);
+        e.setEstado(EventoOutbox.EstadoEvento.PENDIENTE);
+        e.setProximoIntentoAt(ahora);
+        e.setCreatedAt(ahora);
+        return e;
+    }
+}
@@ -1,32 +1,36 @@
 package com.cursosonline.cursosonlinejs.Servicios;
 
+import com.cursosonline.cursosonlinejs.Entidades.EventoOutbox;
 import com.cursosonline.cursosonlinejs.Entidades.Pago;
 import com.cursosonline.cursosonlinejs.Repositorios.PagoRepositorio;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class PagoServicio {
 
     private final PagoRepositorio pagoRepositorio;
-    private final InscripcionServicio inscripcionServicio;
-    private final CursoServicio cursoServicio;
+    private final OutboxServicio outboxServicio;
+    private final RelayOutboxServicio relayOutboxServicio;
 
     public PagoServicio(PagoRepositorio pagoRepositorio,
-                        InscripcionServicio inscripcionServicio,
-                        CursoServicio cursoServicio) {
+                        OutboxServicio outboxServicio,
+                        RelayOutboxServicio relayOutboxServicio) {
         this.pagoRepositorio = pagoRepositorio;
-        this.inscripcionServicio = inscripcionServicio;
-        this.cursoServicio = cursoServicio;
+        this.outboxServicio = outboxServicio;
+        this.relayOutboxServicio = relayOutboxServicio;
     }
 
     public Pago guardar(Pago pago) {
         if (pago.getMoneda() != null) pago.setMoneda(pago.getMoneda().trim().toUpperCase());
         if (pago.getEstado() == null) pago.setEstado(Pago.EstadoPago.PENDIENTE);
+        if (pago.getId() == null) pago.setEstadoCambiadoAt(Instant.now());
         return pagoRepositorio.save(pago);
     }
 
@@ -61,6 +65,7 @@ public class PagoServicio {
         p.setMoneda(moneda.trim().toUpperCase());
         p.setMetodo(metodo);
         p.setEstado(Pago.EstadoPago.PENDIENTE);
+        p.setEstadoCambiadoAt(Instant.now());
         p.setReferencia(referencia);
         p.setCupon(cupon);
         p.setGateway(gateway);
@@ -99,6 +104,7 @@ public class PagoServicio {
             }
             p.setEstado(Pago.EstadoPago.AUTORIZADO);
             p.setAutorizadoAt(Instant.now());
+            p.setEstadoCambiadoAt(p.getAutorizadoAt());
             return pagoRepositorio.save(p);
         });
     }
@@ -123,6 +129,7 @@ public class PagoServicio {
             if (gatewayPaymentId != null) p.setGatewayPaymentId(gatewayPaymentId);
             p.setEstado(Pago.EstadoPago.FALLIDO);
             p.setFallidoAt(Instant.now());
+            p.setEstadoCambiadoAt(p.getFallidoAt());
             return pagoRepositorio.save(p);
         });
     }
@@ -132,28 +139,9 @@ public class PagoServicio {
                                          String authorizationCode,
                                          String reciboUrl,
                                          boolean principal) {
-        return pagoRepositorio.findById(idPago).map(p -> {
-            exigirEstadoEn(p,
-                    new Pago.EstadoPago[]{Pago.EstadoPago.AUTORIZADO, Pago.EstadoPago.PENDIENTE},
-                    "Solo se puede aprobar desde PENDIENTENTE o AUTORIZADO."
-            );
-            if (gatewayPaymentId != null) p.setGatewayPaymentId(gatewayPaymentId);
-            if (authorizationCode != null) p.setAuthorizationCode(authorizationCode);
-            if (reciboUrl != null) p.setReciboUrl(reciboUrl);
-
-            p.setEstado(Pago.EstadoPago.APROBADO);
-            p.setPagadoAt(Instant.now());
-            Pago guardado = pagoRepositorio.save(p);
-
-            inscripcionServicio.anexarPagoAInscripcion(p.getIdInscripcion(), p.getId(), principal);
-
-            String idCurso = inscripcionServicio.activarSiPendientePago(p.getIdInscripcion());
-            if (idCurso != null) {
-                cursoServicio.reconstruirInscritosCount(idCurso);
-            }
-
-            return guardado;
-        });
+        return confirmar(idPago, Pago.EstadoPago.APROBADO,
+                "Solo se puede aprobar desde PENDIENTE o AUTORIZADO.",
+                gatewayPaymentId, authorizationCode, reciboUrl, principal);
     }
 
     public Optional<Pago> marcarCapturado(String idPago,
@@ -161,27 +149,62 @@ public class PagoServicio {
                                           String authorizationCode,
                                           String reciboUrl,
                                           boolean principal) {
-        return pagoRepositorio.findById(idPago).map(p -> {
+        return confirmar(idPago, Pago.EstadoPago.CAPTURADO,
+                "Solo se puede capturar desde PENDIENTE o AUTORIZADO.",
+                gatewayPaymentId, authorizationCode, reciboUrl, principal);
+    }
+
+    /**
+     * Pasa el pago a APROBADO o CAPTURADO y, en la misma transacción, encola en el outbox
+     * la activación de la inscripción, el recuento de inscritos y la evaluación del
+     * certificado. Los efectos los entrega RelayOutboxServicio en segundo plano: si
+     * alguno falla se reintenta, sin dejar el pago aprobado y la inscripción pendiente.
+     */
+    private Optional<Pago> confirmar(String idPago, Pago.EstadoPago nuevo, String msgEstado,
+                                     String gatewayPaymentId, String authorizationCode,
+                                     String reciboUrl, boolean principal) {
+        Optional<Pago> res = outboxServicio.enTransaccion(ops -> {
+            Pago p = ops.findById(idPago, Pago.class);
+            if (p == null) return Optional.<Pago>empty();
             exigirEstadoEn(p,
                     new Pago.EstadoPago[]{Pago.EstadoPago.AUTORIZADO, Pago.EstadoPago.PENDIENTE},
-                    "Solo se puede capturar desde PENDIENTE o AUTORIZADO."
+                    msgEstado
             );
             if (gatewayPaymentId != null) p.setGatewayPaymentId(gatewayPaymentId);
             if (authorizationCode != null) p.setAuthorizationCode(authorizationCode);
             if (reciboUrl != null) p.setReciboUrl(reciboUrl);
 
-            p.setEstado(Pago.EstadoPago.CAPTURADO);
-            p.setPagadoAt(Instant.now());
-            Pago guardado = pagoRepositorio.save(p);
-
-            inscripcionServicio.anexarPagoAInscripcion(p.getIdInscripcion(), p.getId(), principal);
-
-            String idCurso = inscripcionServicio.activarSiPendientePago(p.getIdInscripcion());
-            if (idCurso != null) {
-                cursoServicio.reconstruirInscritosCount(idCurso);
+            Instant ahora = Instant.now();
+            p.setEstado(nuevo);
+            p.setEstadoCambiadoAt(ahora);
+            p.setPagadoAt(ahora);
+            Pago guardado = ops.save(p);
+
+            if (p.getIdInscripcion() != null) {
+                Map<String, String> datos = new HashMap<>();
+                datos.put("idPago", p.getId());
+                datos.put("idInscripcion", p.getIdInscripcion());
+                datos.put("principal", String.valueOf(principal));
+                ops.insert(List.of(
+                        OutboxServicio.evento(p.getId(), EventoOutbox.TipoEvento.INSCRIPCION_ACTIVAR_POR_PAGO, datos, ahora),
+                        OutboxServicio.evento(p.getId(), EventoOutbox.TipoEvento.CURSO_RECONTAR_INSCRITOS, datos, ahora),
+                        OutboxServicio.evento(p.getId(), EventoOutbox.TipoEvento.CERTIFICADO_EVALUAR, datos, ahora)
+                ), EventoOutbox.class);
             }
+            return Optional.of(guardado);
+        });
+        if (res.isPresent()) relayOutboxServicio.despertar();
+        return res;
+    }
 
-            return guardado;
+    /** APROBADO → CAPTURADO cuando la pasarela informa la captura de un pago ya aprobado. */
+    public Optional<Pago> registrarCaptura(String idPago, String gatewayPaymentId) {
+        return pagoRepositorio.findById(idPago).map(p -> {
+            exigirEstado(p, Pago.EstadoPago.APROBADO, "Solo se puede registrar la captura de un pago APROBADO.");
+            if (gatewayPaymentId != null) p.setGatewayPaymentId(gatewayPaymentId);
+            p.setEstado(Pago.EstadoPago.CAPTURADO);
+            p.setEstadoCambiadoAt(Instant.now());
+            return pagoRepositorio.save(p);
         });
     }
 
@@ -192,6 +215,7 @@ public class PagoServicio {
                     "Solo se puede cancelar un pago PENDIENTE o AUTORIZADO."
             );
             p.setEstado(Pago.EstadoPago.CANCELADO);
+            p.setEstadoCambiadoAt(Instant.now());
             return pagoRepositorio.save(p);
         });
     }
@@ -205,6 +229,7 @@ public class PagoServicio {
             if (gatewayPaymentId != null) p.setGatewayPaymentId(gatewayPaymentId);
             p.setEstado(Pago.EstadoPago.REEMBOLSADO);
             p.setReembolsadoAt(Instant.now());
+            p.setEstadoCambiadoAt(p.getReembolsadoAt());
             return pagoRepositorio.save(p);
         });
     }
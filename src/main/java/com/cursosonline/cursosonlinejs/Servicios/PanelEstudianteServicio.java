@@ -0,0 +1,251 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.DTO.PanelEstudianteDTO;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import com.cursosonline.cursosonlinejs.Eventos.InscripcionEstadoEvento;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Panel del estudiante: sus inscripciones con el resumen del curso, el progreso, la
+ * última lección y el estado del certificado, en una sola agregación. El porcentaje
+ * sale de los bits de lecciones completadas (MapaLeccionesServicio).
+ *
+ * Los ids de curso, lección, usuario y certificado se guardan como string en la
+ * inscripción y como ObjectId en su colección, así que cada $lookup convierte el id
+ * antes de cruzar (y si no es un ObjectId, busca por el string tal cual). Cada $lookup
+ * proyecta solo los campos que usa el panel.
+ *
+ * La paginación es por cursor (createdAt, _id) descendente, servida por el índice
+ * estudiante_fecha_idx: pedir la página 50 cuesta lo mismo que la primera. Cada página
+ * se guarda unos segundos por usuario (app.panel.ttl-segundos) porque el frontend la
+ * pide en cada vuelta a la portada; un cambio de estado de una inscripción la descarta.
+ */
+@Service
+public class PanelEstudianteServicio {
+
+    private static final int TAMANO_MAXIMO = 50;
+
+    @Value("${app.panel.ttl-segundos:30}")
+    private long ttlSegundos;
+
+    private final MongoTemplate mongoTemplate;
+    private final MapaLeccionesServicio mapaLeccionesServicio;
+
+    // idEstudiante -> (estado|cursor|tamaño -> página)
+    private final Map<String, Map<String, Entrada>> cache = new ConcurrentHashMap<>();
+
+    public PanelEstudianteServicio(MongoTemplate mongoTemplate, MapaLeccionesServicio mapaLeccionesServicio) {
+        this.mongoTemplate = mongoTemplate;
+        this.mapaLeccionesServicio = mapaLeccionesServicio;
+    }
+
+    /**
+     * @param estado filtro opcional (ya validado)
+     * @param cursor valor de {@code siguiente} de la página anterior, o null
+     * @throws IllegalArgumentException si el cursor no es válido
+     */
+    public PanelEstudianteDTO obtener(String idEstudiante, Inscripcion.EstadoInscripcion estado,
+                                      String cursor, int tamano) {
+        int tam = Math.min(Math.max(tamano, 1), TAMANO_MAXIMO);
+        String clave = (estado == null ? "" : estado.name()) + "|" + (cursor == null ? "" : cursor) + "|" + tam;
+
+        Map<String, Entrada> paginas = cache.computeIfAbsent(idEstudiante, k -> new ConcurrentHashMap<>());
+        Entrada e = paginas.get(clave);
+        if (e != null && vigente(e)) return e.panel();
+
+        PanelEstudianteDTO panel = cargar(idEstudiante, estado, cursor, tam);
+        paginas.put(clave, new Entrada(panel, Instant.now()));
+        return panel;
+    }
+
+    public void invalidar(String idEstudiante) {
+        if (idEstudiante != null) cache.remove(idEstudiante);
+    }
+
+    @EventListener
+    public void alCambiarEstado(InscripcionEstadoEvento evento) {
+        invalidar(evento.idEstudiante());
+    }
+
+    @Scheduled(fixedDelayString = "${app.panel.purga-ms:60000}")
+    public void purgar() {
+        cache.values().forEach(paginas -> paginas.values().removeIf(e -> !vigente(e)));
+        cache.values().removeIf(Map::isEmpty);
+    }
+
+    private boolean vigente(Entrada e) {
+        return e.cargadaAt().plusSeconds(ttlSegundos).isAfter(Instant.now());
+    }
+
+    // =========================================================
+    // AGREGACIÓN
+    // =========================================================
+
+    private PanelEstudianteDTO cargar(String idEstudiante, Inscripcion.EstadoInscripcion estado,
+                                      String cursor, int tam) {
+        Criteria c = Criteria.where("idEstudiante").is(idEstudiante);
+        if (estado != null) c = c.and("estado").is(estado);
+        if (cursor != null) c = c.andOperator(despuesDe(decodificar(cursor)));
+
+        List<AggregationOperation> ops = new ArrayList<>();
+        ops.add(Aggregation.match(c));
+        ops.add(Aggregation.sort(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("_id"))));
+        // Uno de más para saber si hay página siguiente
+        ops.add(Aggregation.limit(tam + 1L));
+        ops.add(lookup("cursos", "$idCurso", "curso",
+                new Document("titulo", 1).append("slug", 1).append("imagenPortadaUrl", 1).append("idInstructor", 1)));
+        ops.add(lookup("usuarios", new Document("$arrayElemAt", List.of("$curso.idInstructor", 0)), "instructor",
+                new Document("nombre", 1)));
+        ops.add(lookup("lecciones", "$leccionActualId", "leccion",
+                new Document("titulo", 1)));
+        ops.add(lookup("certificados", "$certificadoId", "certificado",
+                new Document("estado", 1).append("codigoVerificacion", 1)));
+        ops.add(ctx -> new Document("$project", new Document()
+                .append("estado", 1)
+                .append("createdAt", 1)
+                .append("lastAccessAt", 1)
+                .append("progresoPct", 1)
+                .append(BitsLecciones.CAMPO, 1)
+                .append("notaFinal", 1)
+                .append("aprobadoFinal", 1)
+                .append("idCurso", 1)
+                .append("moduloActualId", 1)
+                .append("leccionActualId", 1)
+                .append("certificadoId", 1)
+                .append("cursoTitulo", primero("$curso.titulo"))
+                .append("cursoSlug", primero("$curso.slug"))
+                .append("imagenPortadaUrl", primero("$curso.imagenPortadaUrl"))
+                .append("instructorNombre", primero("$instructor.nombre"))
+                .append("leccionActualTitulo", primero("$leccion.titulo"))
+                .append("certificadoEstado", primero("$certificado.estado"))
+                .append("certificadoCodigo", primero("$certificado.codigoVerificacion"))));
+
+        List<Document> filas = mongoTemplate.aggregate(
+                Aggregation.newAggregation(Inscripcion.class, ops), Document.class).getMappedResults();
+
+        boolean hayMas = filas.size() > tam;
+        List<PanelEstudianteDTO.ItemDTO> items = new ArrayList<>(Math.min(filas.size(), tam));
+        for (Document d : hayMas ? filas.subList(0, tam) : filas) items.add(item(d, progreso(d)));
+
+        String siguiente = null;
+        if (hayMas) {
+            Document ultima = filas.get(tam - 1);
+            siguiente = codificar(ultima.getDate("createdAt"), ultima.get("_id").toString());
+        }
+        return new PanelEstudianteDTO(items, siguiente);
+    }
+
+    /** $lookup por _id de un id guardado como string, proyectando solo {@code campos}. */
+    private static AggregationOperation lookup(String coleccion, Object idLocal, String como, Document campos) {
+        Document convertir = new Document("$convert", new Document("input", idLocal)
+                .append("to", "objectId")
+                .append("onError", idLocal)
+                .append("onNull", null));
+        return ctx -> new Document("$lookup", new Document("from", coleccion)
+                .append("let", new Document("id", convertir))
+                .append("pipeline", List.of(
+                        new Document("$match", new Document("$expr", new Document("$eq", List.of("$_id", "$$id")))),
+                        new Document("$limit", 1),
+                        new Document("$project", campos)))
+                .append("as", como));
+    }
+
+    private static Document primero(String ruta) {
+        return new Document("$arrayElemAt", List.of(ruta, 0));
+    }
+
+    /** Porcentaje a partir de los bits de lecciones; el progresoPct guardado si aún no hay bits. */
+    private Integer progreso(Document d) {
+        Object bits = d.get(BitsLecciones.CAMPO);
+        if (bits instanceof Document doc && !doc.isEmpty()) {
+            return mapaLeccionesServicio.progresoPct(d.getString("idCurso"), BitsLecciones.leer(doc));
+        }
+        return d.get("progresoPct") instanceof Number n ? n.intValue() : null;
+    }
+
+    private static PanelEstudianteDTO.ItemDTO item(Document d, Integer progresoPct) {
+        Object nota = d.get("notaFinal");
+        BigDecimal notaFinal = nota instanceof Decimal128 dec ? dec.bigDecimalValue()
+                : nota instanceof Number n ? new BigDecimal(n.toString()) : null;
+        return new PanelEstudianteDTO.ItemDTO(
+                d.get("_id").toString(),
+                d.getString("estado"),
+                instante(d.getDate("createdAt")),
+                instante(d.getDate("lastAccessAt")),
+                progresoPct,
+                notaFinal,
+                d.getBoolean("aprobadoFinal"),
+                d.getString("idCurso"),
+                d.getString("cursoTitulo"),
+                d.getString("cursoSlug"),
+                d.getString("imagenPortadaUrl"),
+                d.getString("instructorNombre"),
+                d.getString("moduloActualId"),
+                d.getString("leccionActualId"),
+                d.getString("leccionActualTitulo"),
+                d.getString("certificadoId"),
+                d.getString("certificadoEstado"),
+                d.getString("certificadoCodigo"));
+    }
+
+    private static Instant instante(Date d) {
+        return d == null ? null : d.toInstant();
+    }
+
+    // =========================================================
+    // CURSOR
+    // =========================================================
+
+    // createdAt null (inscripciones antiguas) va al final en orden descendente
+    private static Criteria despuesDe(Posicion p) {
+        if (p.createdAt() == null) {
+            return Criteria.where("createdAt").is(null).and("_id").lt(p.id());
+        }
+        return new Criteria().orOperator(
+                Criteria.where("createdAt").lt(p.createdAt()),
+                Criteria.where("createdAt").is(p.createdAt()).and("_id").lt(p.id()),
+                Criteria.where("createdAt").is(null));
+    }
+
+    private static String codificar(Date createdAt, String id) {
+        String raw = (createdAt == null ? "-" : Long.toString(createdAt.getTime())) + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Posicion decodificar(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int i = raw.indexOf(':');
+            String ts = raw.substring(0, i);
+            String id = raw.substring(i + 1);
+            if (id.isEmpty()) throw new IllegalArgumentException();
+            return new Posicion("-".equals(ts) ? null : Instant.ofEpochMilli(Long.parseLong(ts)), id);
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Cursor no válido.");
+        }
+    }
+
+    private record Posicion(Instant createdAt, String id) {}
+
+    private record Entrada(PanelEstudianteDTO panel, Instant cargadaAt) {}
+}
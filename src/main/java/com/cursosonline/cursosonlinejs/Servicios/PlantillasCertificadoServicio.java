@@ -0,0 +1,562 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.Certificado;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+import com.lowagie.text.Document;
+import com.lowagie.text.Image;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.BaseFont;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+/**
+ * Plantillas de certificado y su dibujo en PDF.
+ *
+ * Una plantilla es un JSON (classpath certificados/plantillas/{id}.json, o el mismo
+ * nombre en app.certificados.plantillas-dir para sobreescribirla sin redeploy) con el
+ * tamaño de página y una lista de elementos en orden de dibujo:
+ *
+ *  - rect:   x, y, ancho, alto, color, grosor (o relleno=true).
+ *  - texto:  texto con {estudiante} {curso} {instructor} {fecha} {codigo} {horas}
+ *            {nota} {url}; fuente (una de las estándar de PDF: Helvetica, Times-Roman,
+ *            Courier y sus variantes), tamano, color, alineacion (izquierda | centro |
+ *            derecha respecto de x) y anchoMaximo, que reduce el tamaño hasta caber.
+ *            Si algún marcador no tiene valor el elemento no se dibuja.
+ *  - imagen: origen fondo | firma | sello (la URL del certificado) y/o ruta por
+ *            defecto; se ajusta dentro de la caja conservando la proporción.
+ *  - qr:     x, y, lado; codifica qrData (o publicUrl) del certificado.
+ *
+ * El PDF lo escribe OpenPDF y el QR lo codifica ZXing. Cada plantilla se lee y compila
+ * una sola vez: fuentes resueltas, colores y textos fijos ya medidos e imágenes fijas
+ * cargadas; por certificado solo se miden los textos con datos. Las imágenes se
+ * decodifican, reducen y recomprimen una vez y se reutilizan por URL. Solo se leen de
+ * la carpeta de subidas (o del classpath): nunca se descarga una URL que venga en un
+ * certificado.
+ */
+@Service
+public class PlantillasCertificadoServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(PlantillasCertificadoServicio.class);
+
+    private static final Pattern ID_VALIDO = Pattern.compile("^[A-Za-z0-9_-]{1,64}$");
+    private static final Pattern MARCADOR = Pattern.compile("\\{(\\w+)}");
+    private static final float TAMANO_MINIMO = 6f;
+    private static final Set<String> FUENTES = Set.of(
+            BaseFont.HELVETICA, BaseFont.HELVETICA_BOLD, BaseFont.HELVETICA_OBLIQUE, BaseFont.HELVETICA_BOLDOBLIQUE,
+            BaseFont.TIMES_ROMAN, BaseFont.TIMES_BOLD, BaseFont.TIMES_ITALIC, BaseFont.TIMES_BOLDITALIC,
+            BaseFont.COURIER, BaseFont.COURIER_BOLD, BaseFont.COURIER_OBLIQUE, BaseFont.COURIER_BOLDOBLIQUE);
+    // Zona de silencio del QR, en módulos
+    private static final int MARGEN_QR = 4;
+    private static final DateTimeFormatter FECHA =
+            DateTimeFormatter.ofPattern("d 'de' MMMM 'de' yyyy", Locale.forLanguageTag("es"));
+
+    @Value("${app.certificados.plantilla-defecto:clasico}")
+    private String plantillaDefecto;
+
+    @Value("${app.certificados.plantillas-dir:}")
+    private String plantillasDir;
+
+    @Value("${app.certificados.imagen-max-px:1600}")
+    private int imagenMaxPx;
+
+    @Value("${app.certificados.cache-imagenes:64}")
+    private int maxImagenes;
+
+    private final LocalStorageService storage;
+    private final ObjectReader lectorPlantilla;
+    private final ZoneId zona;
+
+    private final Map<String, PlantillaCompilada> plantillas = new ConcurrentHashMap<>();
+    // LRU: fondos, firmas y sellos se repiten entre los certificados de un mismo curso
+    private final Map<String, Optional<Image>> imagenes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Optional<Image>> e) {
+            return size() > maxImagenes;
+        }
+    };
+
+    public PlantillasCertificadoServicio(LocalStorageService storage,
+                                         ObjectMapper objectMapper,
+                                         @Value("${app.certificados.zona:UTC}") ZoneId zona) {
+        this.storage = storage;
+        this.lectorPlantilla = objectMapper.readerFor(PlantillaJson.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.zona = zona;
+    }
+
+    /** PDF de una página del certificado con su plantilla (o la de por defecto). */
+    public byte[] renderizar(Certificado c) {
+        PlantillaCompilada p = plantilla(c.getTemplateId());
+        Contexto ctx = new Contexto(c, valores(c));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        Document doc = new Document(new Rectangle(p.ancho, p.alto), 0, 0, 0, 0);
+        PdfWriter writer = PdfWriter.getInstance(doc, out);
+        writer.setCompressionLevel(Deflater.BEST_SPEED);
+        doc.addTitle("Certificado " + c.getCodigoVerificacion());
+        doc.open();
+        PdfContentByte cb = writer.getDirectContent();
+        for (Pieza pieza : p.piezas) pieza.dibujar(cb, ctx);
+        writer.setPageEmpty(false);
+        doc.close();
+        return out.toByteArray();
+    }
+
+    /** Descarta plantillas e imágenes en caché; la próxima generación las vuelve a leer. */
+    public void invalidar() {
+        plantillas.clear();
+        synchronized (imagenes) {
+            imagenes.clear();
+        }
+    }
+
+    // =========================================================
+    // CARGA Y COMPILACIÓN
+    // =========================================================
+
+    private PlantillaCompilada plantilla(String id) {
+        String clave = id == null || id.isBlank() ? plantillaDefecto : id.trim();
+        if (!ID_VALIDO.matcher(clave).matches()) {
+            throw new IllegalArgumentException("Identificador de plantilla inválido: " + clave);
+        }
+        try {
+            return plantillas.computeIfAbsent(clave, k -> {
+                try {
+                    return compilar(leer(k));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw new IllegalArgumentException("No se pudo leer la plantilla " + clave + ": "
+                    + ex.getCause().getMessage(), ex);
+        }
+    }
+
+    private PlantillaJson leer(String id) throws IOException {
+        if (plantillasDir != null && !plantillasDir.isBlank()) {
+            Path archivo = Paths.get(plantillasDir, id + ".json");
+            if (Files.isRegularFile(archivo)) {
+                try (InputStream in = Files.newInputStream(archivo)) {
+                    return lectorPlantilla.readValue(in);
+                }
+            }
+        }
+        ClassPathResource r = new ClassPathResource("certificados/plantillas/" + id + ".json");
+        if (!r.exists()) throw new IllegalArgumentException("Plantilla de certificado no encontrada: " + id);
+        try (InputStream in = r.getInputStream()) {
+            return lectorPlantilla.readValue(in);
+        }
+    }
+
+    private PlantillaCompilada compilar(PlantillaJson json) {
+        if (json.ancho() == null || json.alto() == null || json.elementos() == null) {
+            throw new IllegalArgumentException("La plantilla debe tener ancho, alto y elementos.");
+        }
+        List<Pieza> piezas = new ArrayList<>();
+        for (ElementoJson e : json.elementos()) {
+            String tipo = e.tipo() == null ? "" : e.tipo().trim().toLowerCase(Locale.ROOT);
+            switch (tipo) {
+                case "rect" -> {
+                    float x = f(e.x()), y = f(e.y()), ancho = f(e.ancho()), alto = f(e.alto());
+                    int color = color(e.color());
+                    if (Boolean.TRUE.equals(e.relleno())) {
+                        piezas.add((cb, ctx) -> {
+                            cb.saveState();
+                            cb.setRGBColorFill(color >> 16, (color >> 8) & 0xFF, color & 0xFF);
+                            cb.rectangle(x, y, ancho, alto);
+                            cb.fill();
+                            cb.restoreState();
+                        });
+                    } else {
+                        float grosor = e.grosor() == null ? 1f : e.grosor();
+                        piezas.add((cb, ctx) -> {
+                            cb.saveState();
+                            cb.setRGBColorStroke(color >> 16, (color >> 8) & 0xFF, color & 0xFF);
+                            cb.setLineWidth(grosor);
+                            cb.rectangle(x, y, ancho, alto);
+                            cb.stroke();
+                            cb.restoreState();
+                        });
+                    }
+                }
+                case "texto" -> {
+                    TextoCompilado t = new TextoCompilado(e);
+                    if (t.esFijo()) {
+                        Linea fija = t.componer(Map.of());
+                        piezas.add((cb, ctx) -> fija.dibujar(cb));
+                    } else {
+                        piezas.add((cb, ctx) -> {
+                            Linea l = t.componer(ctx.valores);
+                            if (l != null) l.dibujar(cb);
+                        });
+                    }
+                }
+                case "imagen" -> {
+                    Caja caja = new Caja(f(e.x()), f(e.y()), f(e.ancho()), f(e.alto()));
+                    if (e.origen() == null || e.origen().isBlank()) {
+                        imagen(e.ruta()).ifPresent(img -> piezas.add((cb, ctx) -> caja.dibujar(cb, img)));
+                    } else {
+                        String origen = e.origen().trim().toLowerCase(Locale.ROOT);
+                        String ruta = e.ruta();
+                        piezas.add((cb, ctx) -> {
+                            String url = switch (origen) {
+                                case "fondo" -> ctx.c.getBackgroundUrl();
+                                case "firma" -> ctx.c.getFirmaUrl();
+                                case "sello" -> ctx.c.getSelloUrl();
+                                default -> null;
+                            };
+                            imagen(url).or(() -> imagen(ruta)).ifPresent(img -> caja.dibujar(cb, img));
+                        });
+                    }
+                }
+                case "qr" -> {
+                    float x = f(e.x()), y = f(e.y());
+                    float lado = e.lado() != null ? e.lado() : f(e.ancho());
+                    piezas.add((cb, ctx) -> {
+                        String datos = ctx.c.getQrData() != null ? ctx.c.getQrData() : ctx.c.getPublicUrl();
+                        if (datos == null || datos.isBlank()) return;
+                        qr(cb, codigoQr(datos), x, y, lado);
+                    });
+                }
+                default -> throw new IllegalArgumentException("Tipo de elemento desconocido en la plantilla: " + e.tipo());
+            }
+        }
+        return new PlantillaCompilada(json.ancho(), json.alto(), List.copyOf(piezas));
+    }
+
+    // =========================================================
+    // QR
+    // =========================================================
+
+    /** Módulos del QR (nivel M, UTF-8), sin zona de silencio. */
+    private static ByteMatrix codigoQr(String datos) {
+        try {
+            return Encoder.encode(datos, ErrorCorrectionLevel.M,
+                    Map.of(EncodeHintType.CHARACTER_SET, "UTF-8")).getMatrix();
+        } catch (WriterException ex) {
+            throw new IllegalArgumentException("No se pudo codificar el QR: " + ex.getMessage(), ex);
+        }
+    }
+
+    /** QR vectorial con su zona de silencio en blanco; lado = ancho total incluida la zona. */
+    private static void qr(PdfContentByte cb, ByteMatrix m, float x, float y, float lado) {
+        int n = m.getWidth();
+        float mod = lado / (n + 2 * MARGEN_QR);
+        cb.saveState();
+        cb.setRGBColorFill(255, 255, 255);
+        cb.rectangle(x, y, lado, lado);
+        cb.fill();
+        cb.setRGBColorFill(0, 0, 0);
+        // Un rectángulo por tramo oscuro de cada fila
+        for (int fila = 0; fila < n; fila++) {
+            float yy = y + lado - (fila + MARGEN_QR + 1) * mod;
+            int col = 0;
+            while (col < n) {
+                if (m.get(col, fila) != 1) {
+                    col++;
+                    continue;
+                }
+                int desde = col;
+                while (col < n && m.get(col, fila) == 1) col++;
+                cb.rectangle(x + (desde + MARGEN_QR) * mod, yy, (col - desde) * mod, mod);
+            }
+        }
+        cb.fill();
+        cb.restoreState();
+    }
+
+    // =========================================================
+    // IMÁGENES
+    // =========================================================
+
+    /** Imagen preparada para el PDF, desde la carpeta de subidas o "classpath:…"; vacío si no se puede leer. */
+    private Optional<Image> imagen(String url) {
+        if (url == null || url.isBlank()) return Optional.empty();
+        synchronized (imagenes) {
+            Optional<Image> enCache = imagenes.get(url);
+            if (enCache != null) return enCache;
+        }
+        // Se decodifica fuera del candado; dos hilos pueden preparar la misma imagen a la vez, da igual
+        Optional<Image> img = Optional.empty();
+        try {
+            BufferedImage leida = null;
+            if (url.startsWith("classpath:")) {
+                ClassPathResource r = new ClassPathResource(url.substring("classpath:".length()));
+                if (r.exists()) {
+                    try (InputStream in = r.getInputStream()) {
+                        leida = ImageIO.read(in);
+                    }
+                }
+            } else {
+                Optional<Path> archivo = storage.resolverLocal(url);
+                if (archivo.isPresent()) leida = ImageIO.read(archivo.get().toFile());
+            }
+            if (leida != null) img = Optional.of(preparar(leida));
+            else log.warn("Imagen de certificado no disponible o en formato no soportado: {}", url);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("No se pudo preparar la imagen de certificado {}: {}", url, ex.getMessage());
+        }
+        synchronized (imagenes) {
+            imagenes.put(url, img);
+        }
+        return img;
+    }
+
+    /**
+     * Reduce la imagen a imagen-max-px de lado y la deja lista para copiarla a cada PDF:
+     * JPEG si es opaca; si tiene transparencia, OpenPDF la guarda en RGB con su máscara.
+     */
+    private Image preparar(BufferedImage original) throws IOException {
+        BufferedImage img = reducir(original, imagenMaxPx);
+        int w = img.getWidth(), h = img.getHeight();
+        int[] px = img.getRGB(0, 0, w, h, null, 0, w);
+        if (img.getColorModel().hasAlpha()) {
+            for (int p : px) {
+                if ((p >>> 24) != 0xFF) {
+                    Image conAlfa = Image.getInstance(img, null);
+                    conAlfa.setCompressionLevel(Deflater.BEST_SPEED);
+                    return conAlfa;
+                }
+            }
+        }
+        BufferedImage rgb = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        rgb.setRGB(0, 0, w, h, px, 0, w);
+        return Image.getInstance(jpeg(rgb));
+    }
+
+    private static BufferedImage reducir(BufferedImage img, int ladoMaximo) {
+        int w = img.getWidth(), h = img.getHeight();
+        int lado = Math.max(w, h);
+        if (lado <= ladoMaximo) return img;
+        double f = (double) ladoMaximo / lado;
+        int nw = Math.max(1, (int) Math.round(w * f));
+        int nh = Math.max(1, (int) Math.round(h * f));
+        BufferedImage out = new BufferedImage(nw, nh, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(img, 0, 0, nw, nh, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private static byte[] jpeg(BufferedImage rgb) throws IOException {
+        ImageWriter w = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            w.setOutput(ios);
+            ImageWriteParam p = w.getDefaultWriteParam();
+            p.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            p.setCompressionQuality(0.85f);
+            w.write(null, new IIOImage(rgb, null, null), p);
+        } finally {
+            w.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private record Caja(float x, float y, float ancho, float alto) {
+        // Ajuste "contain": cabe entera en la caja, centrada
+        void dibujar(PdfContentByte cb, Image img) {
+            float escala = Math.min(ancho / img.getWidth(), alto / img.getHeight());
+            float w = img.getWidth() * escala, h = img.getHeight() * escala;
+            cb.addImage(img, w, 0, 0, h, x + (ancho - w) / 2, y + (alto - h) / 2);
+        }
+    }
+
+    // =========================================================
+    // TEXTO
+    // =========================================================
+
+    private Map<String, String> valores(Certificado c) {
+        Map<String, String> v = new HashMap<>();
+        v.put("estudiante", c.getEstudianteNombre());
+        v.put("curso", c.getCursoTitulo());
+        v.put("instructor", c.getInstructorNombre());
+        v.put("fecha", c.getEmitidoEn() == null ? null : FECHA.format(c.getEmitidoEn().atZone(zona)));
+        v.put("codigo", c.getCodigoVerificacion());
+        v.put("horas", c.getHoras() == null ? null : c.getHoras().toString());
+        v.put("nota", nota(c.getNotaFinal()));
+        v.put("url", c.getPublicUrl());
+        return v;
+    }
+
+    private static String nota(BigDecimal n) {
+        return n == null ? null : n.stripTrailingZeros().toPlainString();
+    }
+
+    private static final class TextoCompilado {
+        private final List<String> partes = new ArrayList<>();   // literales en pares, marcadores en impares
+        private final BaseFont fuente;
+        private final float tamano, x, y;
+        private final Float anchoMaximo;
+        private final int color;
+        private final char alineacion;
+
+        TextoCompilado(ElementoJson e) {
+            String texto = e.texto() == null ? "" : e.texto();
+            Matcher m = MARCADOR.matcher(texto);
+            int desde = 0;
+            while (m.find()) {
+                partes.add(texto.substring(desde, m.start()));
+                partes.add(m.group(1));
+                desde = m.end();
+            }
+            partes.add(texto.substring(desde));
+            this.fuente = fuente(e.fuente());
+            this.tamano = e.tamano() == null ? 12f : e.tamano();
+            this.x = f(e.x());
+            this.y = f(e.y());
+            this.anchoMaximo = e.anchoMaximo();
+            this.color = color(e.color());
+            String a = e.alineacion() == null ? "izquierda" : e.alineacion().trim().toLowerCase(Locale.ROOT);
+            this.alineacion = switch (a) {
+                case "izquierda" -> 'I';
+                case "centro" -> 'C';
+                case "derecha" -> 'D';
+                default -> throw new IllegalArgumentException("Alineación inválida en la plantilla: " + e.alineacion());
+            };
+        }
+
+        boolean esFijo() {
+            return partes.size() == 1;
+        }
+
+        /** Texto con los valores, medido y colocado; null si falta algún valor. */
+        Linea componer(Map<String, String> valores) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < partes.size(); i++) {
+                if (i % 2 == 0) {
+                    sb.append(partes.get(i));
+                } else {
+                    String v = valores.get(partes.get(i));
+                    if (v == null || v.isBlank()) return null;
+                    sb.append(v);
+                }
+            }
+            String texto = sb.toString();
+            float t = tamano;
+            float ancho = fuente.getWidthPoint(texto, t);
+            if (anchoMaximo != null && ancho > anchoMaximo) {
+                t = Math.max(TAMANO_MINIMO, t * anchoMaximo / ancho);
+                ancho = fuente.getWidthPoint(texto, t);
+            }
+            float xx = switch (alineacion) {
+                case 'C' -> x - ancho / 2;
+                case 'D' -> x - ancho;
+                default -> x;
+            };
+            return new Linea(fuente, t, xx, y, color, texto);
+        }
+    }
+
+    private record Linea(BaseFont fuente, float tamano, float x, float y, int color, String texto) {
+        void dibujar(PdfContentByte cb) {
+            cb.beginText();
+            cb.setFontAndSize(fuente, tamano);
+            cb.setRGBColorFill(color >> 16, (color >> 8) & 0xFF, color & 0xFF);
+            cb.setTextMatrix(x, y);
+            cb.showText(texto);
+            cb.endText();
+        }
+    }
+
+    /** Fuente estándar de PDF (sin incrustar, WinAnsi: cubre tildes, ñ, ¿ y ¡). */
+    private static BaseFont fuente(String nombre) {
+        String n = nombre == null ? BaseFont.HELVETICA : nombre.trim();
+        if (!FUENTES.contains(n)) throw new IllegalArgumentException("Fuente no soportada: " + nombre);
+        try {
+            return BaseFont.createFont(n, BaseFont.CP1252, BaseFont.NOT_EMBEDDED);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static float f(Float v) {
+        return v == null ? 0f : v;
+    }
+
+    private static int color(String hex) {
+        if (hex == null || hex.isBlank()) return 0x000000;
+        String h = hex.trim();
+        if (h.startsWith("#")) h = h.substring(1);
+        if (h.length() != 6) throw new IllegalArgumentException("Color inválido en la plantilla: " + hex);
+        try {
+            return Integer.parseInt(h, 16);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Color inválido en la plantilla: " + hex);
+        }
+    }
+
+    // =========================================================
+    // MODELO
+    // =========================================================
+
+    private record PlantillaJson(String id, Float ancho, Float alto, List<ElementoJson> elementos) {}
+
+    private record ElementoJson(String tipo, Float x, Float y, Float ancho, Float alto, Float lado,
+                                String texto, String fuente, Float tamano, String color, String alineacion,
+                                Float anchoMaximo, Float grosor, Boolean relleno, String origen, String ruta) {}
+
+    private record PlantillaCompilada(float ancho, float alto, List<Pieza> piezas) {}
+
+    private interface Pieza {
+        void dibujar(PdfContentByte cb, Contexto ctx);
+    }
+
+    private static final class Contexto {
+        final Certificado c;
+        final Map<String, String> valores;
+
+        Contexto(Certificado c, Map<String, String> valores) {
+            this.c = c;
+            this.valores = valores;
+        }
+    }
+}
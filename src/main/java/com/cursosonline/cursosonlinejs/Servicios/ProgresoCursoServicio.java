@@ -10,6 +10,7 @@ import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
 import com.cursosonline.cursosonlinejs.Entidades.Intento;
 import com.cursosonline.cursosonlinejs.Entidades.Leccion;
 import com.cursosonline.cursosonlinejs.Entidades.Modulo;
+import com.cursosonline.cursosonlinejs.Eventos.InscripcionEstadoEvento;
 import com.cursosonline.cursosonlinejs.Repositorios.CursoRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.EvaluacionRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.InscripcionRepositorio;
@@ -17,39 +18,48 @@ import com.cursosonline.cursosonlinejs.Repositorios.IntentoRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.LeccionRepositorio;
 import com.cursosonline.cursosonlinejs.Repositorios.ModuloRepositorio;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.Instant;
 import java.util.*;
 
 @Service
 public class ProgresoCursoServicio {
 
-    private static final BigDecimal CIEN = BigDecimal.valueOf(100);
-    // Umbral global por ahora (no hay panel para cambiarlo todavía)
-    private static final BigDecimal NOTA_APROBATORIA_DEFAULT = BigDecimal.valueOf(70);
-
     private final CursoRepositorio cursoRepositorio;
     private final ModuloRepositorio moduloRepositorio;
     private final LeccionRepositorio leccionRepositorio;
     private final EvaluacionRepositorio evaluacionRepositorio;
     private final IntentoRepositorio intentoRepositorio;
     private final InscripcionRepositorio inscripcionRepositorio;
+    private final CupoCursoServicio cupoCursoServicio;
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher eventos;
 
     public ProgresoCursoServicio(CursoRepositorio cursoRepositorio,
                                  ModuloRepositorio moduloRepositorio,
                                  LeccionRepositorio leccionRepositorio,
                                  EvaluacionRepositorio evaluacionRepositorio,
                                  IntentoRepositorio intentoRepositorio,
-                                 InscripcionRepositorio inscripcionRepositorio) {
+                                 InscripcionRepositorio inscripcionRepositorio,
+                                 CupoCursoServicio cupoCursoServicio,
+                                 MongoTemplate mongoTemplate,
+                                 ApplicationEventPublisher eventos) {
         this.cursoRepositorio = cursoRepositorio;
         this.moduloRepositorio = moduloRepositorio;
         this.leccionRepositorio = leccionRepositorio;
         this.evaluacionRepositorio = evaluacionRepositorio;
         this.intentoRepositorio = intentoRepositorio;
         this.inscripcionRepositorio = inscripcionRepositorio;
+        this.cupoCursoServicio = cupoCursoServicio;
+        this.mongoTemplate = mongoTemplate;
+        this.eventos = eventos;
     }
 
     /**
@@ -111,30 +121,22 @@ public class ProgresoCursoServicio {
                     }
 
                     // Usar el intento con mayor puntaje que tenga puntaje y puntajeMaximo
-                    Optional<Intento> mejorIntento = intentos.stream()
-                            .filter(i -> i.getPuntaje() != null && i.getPuntajeMaximo() != null)
-                            .max(Comparator.comparing(i -> safeBigDecimal(i.getPuntaje())));
-
-                    if (mejorIntento.isEmpty()) {
+                    Intento mejor = null;
+                    for (Intento i : intentos) {
+                        if (ReglasNota.cuenta(i) && ReglasNota.esMejor(i, mejor)) mejor = i;
+                    }
+                    if (mejor == null) {
                         continue;
                     }
 
-                    Intento i = mejorIntento.get();
-                    BigDecimal puntaje = safeBigDecimal(i.getPuntaje());
-                    BigDecimal max = safeBigDecimal(i.getPuntajeMaximo());
-
-                    if (max.signum() <= 0) continue;
-
-                    BigDecimal porcentaje = puntaje
-                            .multiply(CIEN)
-                            .divide(max, 2, RoundingMode.HALF_UP);
+                    BigDecimal porcentaje = ReglasNota.porcentaje(mejor);
+                    if (porcentaje == null) continue;
 
                     notasEval.add(porcentaje);
                 }
 
-                BigDecimal notaLeccion = promedio(notasEval);
-                boolean leccionAprobada = notaLeccion != null &&
-                        notaLeccion.compareTo(NOTA_APROBATORIA_DEFAULT) >= 0;
+                BigDecimal notaLeccion = ReglasNota.promedio(notasEval);
+                boolean leccionAprobada = ReglasNota.aprobada(notaLeccion);
 
                 if (notaLeccion != null) {
                     notasLeccion.add(notaLeccion);
@@ -148,19 +150,12 @@ public class ProgresoCursoServicio {
                 ));
             }
 
-            BigDecimal notaModulo = promedio(notasLeccion);
-
-            // Umbral fijo por módulo, por ahora
-            BigDecimal umbralModulo = NOTA_APROBATORIA_DEFAULT;
-
-            boolean aprobadoModulo = false;
+            BigDecimal notaModulo = ReglasNota.promedio(notasLeccion);
 
             // Si el módulo está marcado manualmente, se considera aprobado
-            if (modulosAprobadosManualmente.contains(mod.getId())) {
-                aprobadoModulo = true;
-            } else if (notaModulo != null) {
-                aprobadoModulo = notaModulo.compareTo(umbralModulo) >= 0;
-            }
+            // (umbral fijo por módulo, por ahora)
+            boolean aprobadoModulo = modulosAprobadosManualmente.contains(mod.getId())
+                    || ReglasNota.aprobada(notaModulo);
 
             if (!aprobadoModulo) {
                 todosModulosAprobados = false;
@@ -179,21 +174,11 @@ public class ProgresoCursoServicio {
             ));
         }
 
-        BigDecimal notaFinalCurso = promedio(notasModulos);
+        BigDecimal notaFinalCurso = ReglasNota.promedio(notasModulos);
         boolean aprobadoFinal = todosModulosAprobados && !modulosDTO.isEmpty();
 
         if (actualizarInscripcion) {
-            insc.setNotaFinal(notaFinalCurso);
-            insc.setAprobadoFinal(aprobadoFinal);
-
-            // Si aprobó todo, marcamos COMPLETADA
-            if (aprobadoFinal &&
-                insc.getEstado() != Inscripcion.EstadoInscripcion.COMPLETADA) {
-                insc.setEstado(Inscripcion.EstadoInscripcion.COMPLETADA);
-                insc.setCompletadaAt(Instant.now());
-            }
-
-            inscripcionRepositorio.save(insc);
+            guardarResultado(insc, notaFinalCurso, aprobadoFinal);
         }
 
         return new CursoProgresoDTO(
@@ -205,6 +190,52 @@ public class ProgresoCursoServicio {
         );
     }
 
+    /**
+     * Escribe la nota y, si aprobó todo, pasa la inscripción a COMPLETADA. Son $set
+     * sobre esos campos (no un save del documento leído) para no pisar la actividad que
+     * ActividadLeccionServicio vuelca en paralelo; el paso a COMPLETADA va condicionado
+     * al estado leído, así que solo una llamada libera el cupo.
+     */
+    private void guardarResultado(Inscripcion insc, BigDecimal notaFinal, boolean aprobadoFinal) {
+        Instant ahora = Instant.now();
+        Update u = new Update()
+                .set("notaFinal", notaFinal)
+                .set("aprobadoFinal", aprobadoFinal)
+                .set("updatedAt", ahora)
+                .inc("version", 1);
+        Inscripcion.EstadoInscripcion antes = insc.getEstado();
+
+        // Si aprobó todo, marcamos COMPLETADA
+        if (aprobadoFinal && antes != Inscripcion.EstadoInscripcion.COMPLETADA) {
+            Update completar = new Update()
+                    .set("notaFinal", notaFinal)
+                    .set("aprobadoFinal", true)
+                    .set("estado", Inscripcion.EstadoInscripcion.COMPLETADA)
+                    .set("completadaAt", ahora)
+                    .set("estadoCambiadoAt", ahora)
+                    .set("updatedAt", ahora)
+                    .inc("version", 1);
+            boolean completada = mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(insc.getId()).and("estado").is(antes)),
+                    completar, Inscripcion.class).getModifiedCount() > 0;
+            if (completada) {
+                insc.setEstado(Inscripcion.EstadoInscripcion.COMPLETADA);
+                insc.setCompletadaAt(ahora);
+                // Una inscripción completada ya no ocupa cupo
+                if (CupoCursoServicio.ocupaCupo(antes)) cupoCursoServicio.liberar(insc.getIdCurso());
+                eventos.publishEvent(new InscripcionEstadoEvento(insc.getId(), insc.getIdCurso(),
+                        insc.getIdEstudiante(), antes, Inscripcion.EstadoInscripcion.COMPLETADA, ahora));
+                insc.setNotaFinal(notaFinal);
+                insc.setAprobadoFinal(true);
+                return;
+            }
+        }
+
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(insc.getId())), u, Inscripcion.class);
+        insc.setNotaFinal(notaFinal);
+        insc.setAprobadoFinal(aprobadoFinal);
+    }
+
     /**
      * Helper para ser llamado desde CalificacionServicio.publicar(...)
      * cuando quieras recalcular progreso a partir de una calificación.
@@ -222,24 +253,4 @@ public class ProgresoCursoServicio {
             }
         });
     }
-
-    // ================= helpers numéricos =================
-
-    private BigDecimal promedio(List<BigDecimal> valores) {
-        if (valores == null || valores.isEmpty()) return null;
-        BigDecimal suma = BigDecimal.ZERO;
-        long count = 0;
-        for (BigDecimal v : valores) {
-            if (v != null) {
-                suma = suma.add(v);
-                count++;
-            }
-        }
-        if (count == 0) return null;
-        return suma.divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP);
-    }
-
-    private BigDecimal safeBigDecimal(BigDecimal bd) {
-        return bd == null ? BigDecimal.ZERO : bd;
-    }
 }
@@ -0,0 +1,363 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.DTO.RecalificacionEstadoDTO;
+import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
+import com.cursosonline.cursosonlinejs.Entidades.Intento;
+import com.cursosonline.cursosonlinejs.Repositorios.EvaluacionRepositorio;
+import com.cursosonline.cursosonlinejs.Repositorios.LeccionRepositorio;
+import com.mongodb.bulk.BulkWriteResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Recalificación masiva de los intentos de una evaluación cuando cambia su clave
+ * de respuestas (por ejemplo, el instructor corrige una opción marcada mal).
+ *
+ * Corre en segundo plano: recorre los intentos ENVIADO/CALIFICADO con un cursor,
+ * los corrige en paralelo contra la clave compilada y escribe solo los que cambian
+ * con bulkWrite no ordenado. Al final recalcula el progreso de curso únicamente
+ * de los estudiantes cuyo puntaje cambió.
+ *
+ * Los intentos con calificación manual (idCalificacion) no se tocan: su nota
+ * la decidió el instructor.
+ */
+@Service
+public class RecalificacionServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(RecalificacionServicio.class);
+
+    private static final List<Intento.EstadoIntento> ESTADOS_RECALIFICABLES =
+            List.of(Intento.EstadoIntento.ENVIADO, Intento.EstadoIntento.CALIFICADO);
+
+    // Cuánto tiempo se conserva el estado de un trabajo ya terminado
+    private static final Duration RETENCION_TRABAJOS = Duration.ofHours(1);
+
+    @Value("${app.recalificacion.tamano-lote:500}")
+    private int tamanoLote;
+
+    @Value("${app.recalificacion.hilos:0}")
+    private int hilos;
+
+    private final MongoTemplate mongoTemplate;
+    private final EvaluacionRepositorio evaluacionRepositorio;
+    private final LeccionRepositorio leccionRepositorio;
+    private final ProgresoCursoServicio progresoCursoServicio;
+    private final EstadisticaItemsServicio estadisticaItems;
+
+    private final Map<String, Trabajo> trabajos = new ConcurrentHashMap<>();
+    private final Map<String, String> trabajoActivoPorEvaluacion = new ConcurrentHashMap<>();
+
+    private ExecutorService coordinador;
+    private ExecutorService correctores;
+
+    public RecalificacionServicio(MongoTemplate mongoTemplate,
+                                  EvaluacionRepositorio evaluacionRepositorio,
+                                  LeccionRepositorio leccionRepositorio,
+                                  ProgresoCursoServicio progresoCursoServicio,
+                                  EstadisticaItemsServicio estadisticaItems) {
+        this.mongoTemplate = mongoTemplate;
+        this.evaluacionRepositorio = evaluacionRepositorio;
+        this.leccionRepositorio = leccionRepositorio;
+        this.progresoCursoServicio = progresoCursoServicio;
+        this.estadisticaItems = estadisticaItems;
+    }
+
+    @PostConstruct
+    void iniciarEjecutores() {
+        int n = hilos > 0 ? hilos : Math.max(2, Runtime.getRuntime().availableProcessors());
+        // Un solo coordinador: los trabajos se ejecutan de uno en uno, la corrección en paralelo
+        coordinador = Executors.newSingleThreadExecutor(r -> hilo(r, "recalificacion-coordinador"));
+        correctores = Executors.newFixedThreadPool(n, r -> hilo(r, "recalificacion-corrector"));
+    }
+
+    @PreDestroy
+    void detenerEjecutores() {
+        trabajos.values().forEach(t -> t.cancelado = true);
+        coordinador.shutdownNow();
+        correctores.shutdownNow();
+    }
+
+    // =========================================================
+    // API
+    // =========================================================
+
+    /**
+     * Lanza la recalificación de una evaluación con la clave que tiene guardada ahora.
+     * Lanza IllegalStateException si ya hay un trabajo en curso para esa evaluación.
+     */
+    public RecalificacionEstadoDTO iniciar(String idEvaluacion) {
+        Evaluacion eval = evaluacionRepositorio.findById(idEvaluacion)
+                .orElseThrow(() -> new NoSuchElementException("Evaluación no encontrada"));
+
+        purgarTerminados();
+
+        // Todo lo que puede fallar va antes de ocupar el puesto de la evaluación
+        ClaveCorreccion clave = ClaveCorreccion.compilar(eval);
+        String idCurso = resolverIdCurso(eval);
+        long total = mongoTemplate.count(queryRecalificables(idEvaluacion), Intento.class);
+
+        Trabajo t = new Trabajo(UUID.randomUUID().toString(), idEvaluacion);
+        String previo = trabajoActivoPorEvaluacion.putIfAbsent(idEvaluacion, t.id);
+        if (previo != null) {
+            throw new IllegalStateException("Ya hay una recalificación en curso para esta evaluación.");
+        }
+        try {
+            t.total = total;
+            trabajos.put(t.id, t);
+            coordinador.submit(() -> ejecutar(t, eval, clave, idCurso));
+        } catch (RuntimeException ex) {
+            trabajos.remove(t.id);
+            trabajoActivoPorEvaluacion.remove(idEvaluacion, t.id);
+            throw ex;
+        }
+        return t.snapshot();
+    }
+
+    public Optional<RecalificacionEstadoDTO> estado(String idEvaluacion, String idTrabajo) {
+        Trabajo t = trabajos.get(idTrabajo);
+        if (t == null || !t.idEvaluacion.equals(idEvaluacion)) return Optional.empty();
+        return Optional.of(t.snapshot());
+    }
+
+    /**
+     * Pide cancelar el trabajo. Los lotes ya escritos se quedan escritos; el trabajo
+     * se detiene antes del siguiente lote.
+     */
+    public Optional<RecalificacionEstadoDTO> cancelar(String idEvaluacion, String idTrabajo) {
+        Trabajo t = trabajos.get(idTrabajo);
+        if (t == null || !t.idEvaluacion.equals(idEvaluacion)) return Optional.empty();
+        t.cancelado = true;
+        return Optional.of(t.snapshot());
+    }
+
+    // =========================================================
+    // EJECUCIÓN
+    // =========================================================
+
+    private void ejecutar(Trabajo t, Evaluacion eval, ClaveCorreccion clave, String idCurso) {
+        Set<String> estudiantesCambiados = ConcurrentHashMap.newKeySet();
+        try {
+            Query q = queryRecalificables(t.idEvaluacion);
+            q.fields().include("idEstudiante", "estado", "respuestas", "puntaje", "puntajeMaximo", "calificadoAt", "semilla");
+            q.cursorBatchSize(tamanoLote);
+
+            try (Stream<Intento> stream = mongoTemplate.stream(q, Intento.class)) {
+                Iterator<Intento> it = stream.iterator();
+                List<Intento> lote = new ArrayList<>(tamanoLote);
+                while (it.hasNext() && !t.cancelado) {
+                    lote.add(it.next());
+                    if (lote.size() >= tamanoLote) {
+                        procesarLote(t, lote, eval, clave, estudiantesCambiados);
+                        lote = new ArrayList<>(tamanoLote);
+                    }
+                }
+                if (!lote.isEmpty() && !t.cancelado) {
+                    procesarLote(t, lote, eval, clave, estudiantesCambiados);
+                }
+            }
+
+            if (idCurso != null) {
+                for (String idEstudiante : estudiantesCambiados) {
+                    if (t.cancelado) break;
+                    try {
+                        progresoCursoServicio.calcularProgresoCurso(idCurso, idEstudiante, true);
+                        t.estudiantesRecalculados.incrementAndGet();
+                    } catch (NoSuchElementException ignored) {
+                        // El estudiante ya no tiene inscripción en el curso
+                    }
+                }
+            }
+
+            t.finalizar(t.cancelado ? EstadoTrabajo.CANCELADO : EstadoTrabajo.COMPLETADO, null);
+            // Las estadísticas de ítems se acumularon con la clave anterior
+            estadisticaItems.reconstruir(t.idEvaluacion);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            t.finalizar(EstadoTrabajo.CANCELADO, null);
+        } catch (Exception ex) {
+            log.error("Falló la recalificación {} de la evaluación {}", t.id, t.idEvaluacion, ex);
+            t.finalizar(EstadoTrabajo.FALLIDO, ex.getMessage());
+        } finally {
+            trabajoActivoPorEvaluacion.remove(t.idEvaluacion, t.id);
+        }
+    }
+
+    private void procesarLote(Trabajo t, List<Intento> lote, Evaluacion eval, ClaveCorreccion clave,
+                              Set<String> estudiantesCambiados)
+            throws InterruptedException, ExecutionException {
+
+        List<Callable<Cambio>> tareas = new ArrayList<>(lote.size());
+        for (Intento i : lote) {
+            // Con sorteo del banco cada intento se corrige solo con las preguntas que le tocaron
+            tareas.add(() -> recalificar(i, SorteoPreguntas.claveDelIntento(clave, eval, i.getSemilla())));
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Intento.class);
+        int escrituras = 0;
+        for (Future<Cambio> f : correctores.invokeAll(tareas)) {
+            Cambio c = f.get();
+            if (c == null) continue;
+            bulk.updateOne(c.filtro(), c.update());
+            escrituras++;
+            if (c.cambioPuntaje() && c.idEstudiante() != null) {
+                estudiantesCambiados.add(c.idEstudiante());
+            }
+        }
+
+        if (escrituras > 0) {
+            BulkWriteResult res = bulk.execute();
+            t.modificados.addAndGet(res.getModifiedCount());
+        }
+        t.procesados.addAndGet(lote.size());
+    }
+
+    /**
+     * Corrige un intento contra la clave. Devuelve null si el resultado no cambia.
+     */
+    private static Cambio recalificar(Intento i, ClaveCorreccion clave) {
+        BigDecimal puntajeAntes = i.getPuntaje();
+        BigDecimal maximoAntes = i.getPuntajeMaximo();
+        Intento.EstadoIntento estadoAntes = i.getEstado();
+        List<String> huellaAntes = huella(i.getRespuestas());
+
+        ClaveCorreccion.Resultado res = clave.calificar(i.getRespuestas());
+        Intento.EstadoIntento estadoNuevo = res.requiereRevisionManual()
+                ? Intento.EstadoIntento.ENVIADO
+                : Intento.EstadoIntento.CALIFICADO;
+
+        boolean cambioPuntaje = !mismoValor(puntajeAntes, res.puntaje());
+        boolean cambio = cambioPuntaje
+                || !mismoValor(maximoAntes, res.puntajeMaximo())
+                || estadoAntes != estadoNuevo
+                || !huellaAntes.equals(huella(i.getRespuestas()));
+        if (!cambio) return null;
+
+        Instant ahora = Instant.now();
+        Update u = new Update()
+                .set("respuestas", i.getRespuestas())
+                .set("puntaje", res.puntaje())
+                .set("puntajeMaximo", res.puntajeMaximo())
+                .set("estado", estadoNuevo)
+                .set("updatedAt", ahora)
+                .inc("version", 1);
+        if (estadoNuevo == Intento.EstadoIntento.CALIFICADO) {
+            if (i.getCalificadoAt() == null) u.set("calificadoAt", ahora);
+        } else {
+            u.unset("calificadoAt");
+        }
+
+        // Se repiten las condiciones del recorrido por si el intento se calificó a mano mientras tanto
+        Query filtro = new Query(Criteria.where("_id").is(i.getId())
+                .and("estado").in(ESTADOS_RECALIFICABLES)
+                .and("idCalificacion").is(null));
+
+        return new Cambio(filtro, u, i.getIdEstudiante(), cambioPuntaje);
+    }
+
+    private record Cambio(Query filtro, Update update, String idEstudiante, boolean cambioPuntaje) {}
+
+    // =========================================================
+    // HELPERS
+    // =========================================================
+
+    private static Query queryRecalificables(String idEvaluacion) {
+        return new Query(Criteria.where("idEvaluacion").is(idEvaluacion)
+                .and("estado").in(ESTADOS_RECALIFICABLES)
+                .and("idCalificacion").is(null));
+    }
+
+    private String resolverIdCurso(Evaluacion eval) {
+        if (eval.getIdCurso() != null) return eval.getIdCurso();
+        if (eval.getIdLeccion() == null) return null;
+        return leccionRepositorio.findById(eval.getIdLeccion()).map(l -> l.getIdCurso()).orElse(null);
+    }
+
+    private static List<String> huella(List<Intento.Respuesta> respuestas) {
+        if (respuestas == null) return List.of();
+        List<String> out = new ArrayList<>(respuestas.size());
+        for (Intento.Respuesta r : respuestas) {
+            if (r == null) continue;
+            out.add(r.getEstado() + "|" + (r.getPuntaje() == null ? "" : r.getPuntaje().stripTrailingZeros().toPlainString()));
+        }
+        return out;
+    }
+
+    private static boolean mismoValor(BigDecimal a, BigDecimal b) {
+        if (a == null || b == null) return Objects.equals(a, b);
+        return a.compareTo(b) == 0;
+    }
+
+    private void purgarTerminados() {
+        Instant limite = Instant.now().minus(RETENCION_TRABAJOS);
+        trabajos.values().removeIf(t -> t.finalizadoAt != null && t.finalizadoAt.isBefore(limite));
+    }
+
+    private static Thread hilo(Runnable r, String nombre) {
+        Thread th = new Thread(r, nombre);
+        th.setDaemon(true);
+        return th;
+    }
+
+    private enum EstadoTrabajo { EN_CURSO, COMPLETADO, CANCELADO, FALLIDO }
+
+    private static final class Trabajo {
+        final String id;
+        final String idEvaluacion;
+        final Instant iniciadoAt = Instant.now();
+        final AtomicLong procesados = new AtomicLong();
+        final AtomicLong modificados = new AtomicLong();
+        final AtomicLong estudiantesRecalculados = new AtomicLong();
+        volatile long total;
+        volatile boolean cancelado;
+        volatile EstadoTrabajo estado = EstadoTrabajo.EN_CURSO;
+        volatile Instant finalizadoAt;
+        volatile String error;
+
+        Trabajo(String id, String idEvaluacion) {
+            this.id = id;
+            this.idEvaluacion = idEvaluacion;
+        }
+
+        void finalizar(EstadoTrabajo estadoFinal, String mensaje) {
+            this.error = mensaje;
+            this.finalizadoAt = Instant.now();
+            this.estado = estadoFinal;
+        }
+
+        RecalificacionEstadoDTO snapshot() {
+            return new RecalificacionEstadoDTO(id, idEvaluacion, estado.name(), total,
+                    procesados.get(), modificados.get(), estudiantesRecalculados.get(),
+                    iniciadoAt, finalizadoAt, error);
+        }
+    }
+}
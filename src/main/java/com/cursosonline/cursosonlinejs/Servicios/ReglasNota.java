@@ -0,0 +1,64 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.Intento;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * Reglas de cálculo de notas del curso, compartidas por el progreso del estudiante
+ * y el libro de calificaciones para que ambos den siempre el mismo resultado.
+ *
+ *  - Nota de una evaluación: porcentaje (0–100) del intento con mayor puntaje.
+ *  - Nota de lección / módulo / curso: promedio de las notas existentes del nivel inferior.
+ *  - Aprobado: nota >= 70.
+ */
+public final class ReglasNota {
+
+    private static final BigDecimal CIEN = BigDecimal.valueOf(100);
+    // Umbral global por ahora (no hay panel para cambiarlo todavía)
+    public static final BigDecimal NOTA_APROBATORIA_DEFAULT = BigDecimal.valueOf(70);
+
+    private ReglasNota() {}
+
+    /** Un intento cuenta para la nota si tiene puntaje y puntaje máximo. */
+    public static boolean cuenta(Intento i) {
+        return i.getPuntaje() != null && i.getPuntajeMaximo() != null;
+    }
+
+    /**
+     * true si {@code candidato} reemplaza a {@code mejor} como intento de la evaluación.
+     * Con igual puntaje se queda el que ya estaba (los intentos se recorren del más reciente
+     * al más antiguo).
+     */
+    public static boolean esMejor(Intento candidato, Intento mejor) {
+        return mejor == null || candidato.getPuntaje().compareTo(mejor.getPuntaje()) > 0;
+    }
+
+    /** Porcentaje 0–100 del intento, o null si su puntaje máximo no es positivo. */
+    public static BigDecimal porcentaje(Intento i) {
+        BigDecimal max = i.getPuntajeMaximo();
+        if (max == null || max.signum() <= 0) return null;
+        BigDecimal puntaje = i.getPuntaje() == null ? BigDecimal.ZERO : i.getPuntaje();
+        return puntaje.multiply(CIEN).divide(max, 2, RoundingMode.HALF_UP);
+    }
+
+    public static BigDecimal promedio(List<BigDecimal> valores) {
+        if (valores == null || valores.isEmpty()) return null;
+        BigDecimal suma = BigDecimal.ZERO;
+        long count = 0;
+        for (BigDecimal v : valores) {
+            if (v != null) {
+                suma = suma.add(v);
+                count++;
+            }
+        }
+        if (count == 0) return null;
+        return suma.divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP);
+    }
+
+    public static boolean aprobada(BigDecimal nota) {
+        return nota != null && nota.compareTo(NOTA_APROBATORIA_DEFAULT) >= 0;
+    }
+}
@@ -0,0 +1,197 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.EventoOutbox;
+import com.cursosonline.cursosonlinejs.Entidades.EventoOutbox.EstadoEvento;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Entrega los eventos de la colección outbox, al menos una vez.
+ *
+ * Cada evento se reclama con un findAndModify que deja una reserva con vencimiento
+ * (dueno + leaseHasta): con varios nodos cada evento lo procesa uno, y si ese nodo
+ * muere a mitad, otro lo retoma al vencer la reserva. Por eso un evento puede
+ * entregarse dos veces y todos los consumidores son idempotentes:
+ *
+ *  - INSCRIPCION_ACTIVAR_POR_PAGO: $addToSet del pago y cambio condicional
+ *    PENDIENTE_PAGO → ACTIVA.
+ *  - CURSO_RECONTAR_INSCRITOS: recuenta las ACTIVA del curso (no suma).
+ *  - CERTIFICADO_EVALUAR: emite solo si es elegible y no tiene certificado.
+ *
+ * Un fallo reprograma el evento con espera exponencial; tras app.outbox.max-intentos
+ * queda FALLIDO para revisión. Además del barrido periódico, quien escribe eventos
+ * puede llamar a despertar() para entregarlos sin esperar al siguiente ciclo.
+ */
+@Service
+public class RelayOutboxServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(RelayOutboxServicio.class);
+
+    private static final Duration ESPERA_MAXIMA = Duration.ofMinutes(10);
+
+    @Value("${app.outbox.lote:100}")
+    private int lote;
+
+    @Value("${app.outbox.lease-segundos:60}")
+    private long leaseSegundos;
+
+    @Value("${app.outbox.max-intentos:10}")
+    private int maxIntentos;
+
+    private final MongoTemplate mongoTemplate;
+    private final InscripcionServicio inscripcionServicio;
+    private final CursoServicio cursoServicio;
+    private final CertificadoServicio certificadoServicio;
+
+    private final String nodo = UUID.randomUUID().toString();
+    private final ReentrantLock entregando = new ReentrantLock();
+    private final AtomicBoolean despertado = new AtomicBoolean();
+    private final ExecutorService despertador = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "relay-outbox");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public RelayOutboxServicio(MongoTemplate mongoTemplate,
+                               InscripcionServicio inscripcionServicio,
+                               CursoServicio cursoServicio,
+                               CertificadoServicio certificadoServicio) {
+        this.mongoTemplate = mongoTemplate;
+        this.inscripcionServicio = inscripcionServicio;
+        this.cursoServicio = cursoServicio;
+        this.certificadoServicio = certificadoServicio;
+    }
+
+    /** Pide una entrega inmediata en segundo plano (se agrupan las llamadas seguidas). */
+    public void despertar() {
+        if (despertado.compareAndSet(false, true)) {
+            despertador.execute(() -> {
+                despertado.set(false);
+                entregar();
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.relay-ms:1000}")
+    public void entregar() {
+        if (!entregando.tryLock()) return;
+        try {
+            for (int i = 0; i < lote; i++) {
+                EventoOutbox e = reclamar(Instant.now());
+                if (e == null) break;
+                procesar(e);
+            }
+        } catch (RuntimeException ex) {
+            log.error("Error leyendo la cola outbox", ex);
+        } finally {
+            entregando.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void alApagar() {
+        despertador.shutdownNow();
+    }
+
+    // =========================================================
+    // RECLAMO Y CIERRE
+    // =========================================================
+
+    private EventoOutbox reclamar(Instant ahora) {
+        Query q = new Query(Criteria.where("estado").is(EstadoEvento.PENDIENTE)
+                .and("proximoIntentoAt").lte(ahora)
+                .orOperator(Criteria.where("leaseHasta").is(null), Criteria.where("leaseHasta").lte(ahora)))
+                .with(Sort.by("proximoIntentoAt"));
+        Update u = new Update()
+                .set("dueno", nodo)
+                .set("leaseHasta", ahora.plusSeconds(leaseSegundos));
+        return mongoTemplate.findAndModify(q, u, FindAndModifyOptions.options().returnNew(true), EventoOutbox.class);
+    }
+
+    private void procesar(EventoOutbox e) {
+        Query mio = new Query(Criteria.where("_id").is(e.getId()).and("dueno").is(nodo));
+        Instant ahora;
+        try {
+            despachar(e);
+            ahora = Instant.now();
+            mongoTemplate.updateFirst(mio, new Update()
+                    .set("estado", EstadoEvento.ENTREGADO)
+                    .set("entregadoAt", ahora)
+                    .inc("intentos", 1)
+                    .unset("dueno")
+                    .unset("leaseHasta")
+                    .unset("ultimoError"), EventoOutbox.class);
+        } catch (RuntimeException ex) {
+            ahora = Instant.now();
+            int intentos = e.getIntentos() + 1;
+            Update u = new Update()
+                    .set("intentos", intentos)
+                    .set("ultimoError", String.valueOf(ex.getMessage()))
+                    .unset("dueno")
+                    .unset("leaseHasta");
+            if (intentos >= maxIntentos) {
+                u.set("estado", EstadoEvento.FALLIDO);
+                log.error("Evento outbox {} agotó {} intentos y quedó FALLIDO", e.getId(), intentos, ex);
+            } else {
+                u.set("proximoIntentoAt", ahora.plus(espera(intentos)));
+                log.warn("Evento outbox {} falló (intento {}): {}", e.getId(), intentos, ex.getMessage());
+            }
+            mongoTemplate.updateFirst(mio, u, EventoOutbox.class);
+        }
+    }
+
+    private static Duration espera(int intentos) {
+        Duration d = Duration.ofSeconds(1L << Math.min(intentos, 20));
+        return d.compareTo(ESPERA_MAXIMA) > 0 ? ESPERA_MAXIMA : d;
+    }
+
+    // =========================================================
+    // CONSUMIDORES
+    // =========================================================
+
+    private void despachar(EventoOutbox e) {
+        Map<String, String> d = e.getDatos();
+        String idInscripcion = d.get("idInscripcion");
+        switch (e.getTipo()) {
+            case INSCRIPCION_ACTIVAR_POR_PAGO ->
+                    inscripcionServicio.activarPorPago(idInscripcion, d.get("idPago"),
+                            Boolean.parseBoolean(d.get("principal")));
+            case CURSO_RECONTAR_INSCRITOS -> {
+                Inscripcion i = inscripcionServicio.listaInscripcion(idInscripcion);
+                if (i == null) return;
+                if (i.getEstado() == Inscripcion.EstadoInscripcion.PENDIENTE_PAGO) {
+                    // La activación va en otro evento; se reintenta cuando haya entrado
+                    throw new IllegalStateException("La inscripción todavía no se activó.");
+                }
+                cursoServicio.reconstruirInscritosCount(i.getIdCurso());
+            }
+            case CERTIFICADO_EVALUAR -> {
+                Inscripcion i = inscripcionServicio.listaInscripcion(idInscripcion);
+                if (i == null) return;
+                if (certificadoServicio.esElegible(i.getIdCurso(), i.getIdEstudiante())) {
+                    certificadoServicio.emitir(i.getIdCurso(), i.getIdEstudiante());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.DTO.RenderCertificadosEstadoDTO;
+import com.cursosonline.cursosonlinejs.DTO.RendimientoRenderDTO;
+import com.cursosonline.cursosonlinejs.Entidades.Certificado;
+import com.cursosonline.cursosonlinejs.Entidades.Certificado.EstadoPdf;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Genera los PDF de los certificados fuera de la petición que los emite.
+ *
+ * La emisión deja el certificado con pdfEstado=PENDIENTE y llama a encolar(); un pool
+ * acotado (app.certificados.hilos, cola de app.certificados.cola) lo dibuja con
+ * PlantillasCertificadoServicio, lo guarda con LocalStorageService y rellena pdfUrl.
+ * Si la cola está llena no se espera: el certificado sigue PENDIENTE y lo recoge el
+ * barrido periódico, que también rescata los que quedaron a medias en un nodo caído.
+ * Así una cohorte entera que termina a la vez no frena ninguna petición; solo tarda
+ * lo que tarde el pool en vaciarse.
+ *
+ * Cada certificado se reclama con un findAndModify que deja una reserva con
+ * vencimiento (pdfDueno + pdfLeaseHasta), como la cola outbox. Un fallo se reintenta
+ * tras una espera creciente hasta app.certificados.max-intentos y luego queda ERROR.
+ */
+@Service
+public class RenderCertificadosServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(RenderCertificadosServicio.class);
+
+    private static final List<EstadoPdf> POR_GENERAR = Arrays.asList(EstadoPdf.PENDIENTE, null);
+    private static final int MAX_PAGINAS_MEDICION = 5000;
+
+    @Value("${app.certificados.hilos:2}")
+    private int hilos;
+
+    @Value("${app.certificados.cola:2000}")
+    private int capacidadCola;
+
+    @Value("${app.certificados.lease-segundos:120}")
+    private long leaseSegundos;
+
+    @Value("${app.certificados.max-intentos:5}")
+    private int maxIntentos;
+
+    private final MongoTemplate mongoTemplate;
+    private final PlantillasCertificadoServicio plantillas;
+    private final LocalStorageService storage;
+    private final VerificacionCertificadoServicio verificacion;
+
+    private final String nodo = UUID.randomUUID().toString();
+    private final Set<String> enCola = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock barriendo = new ReentrantLock();
+    private final ReentrantLock midiendo = new ReentrantLock();
+
+    private final AtomicLong generados = new AtomicLong();
+    private final AtomicLong fallidos = new AtomicLong();
+    private final AtomicLong nanosDibujo = new AtomicLong();
+    private final AtomicLong bytesGenerados = new AtomicLong();
+
+    private ThreadPoolExecutor pool;
+
+    public RenderCertificadosServicio(MongoTemplate mongoTemplate,
+                                      PlantillasCertificadoServicio plantillas,
+                                      LocalStorageService storage,
+                                      VerificacionCertificadoServicio verificacion) {
+        this.mongoTemplate = mongoTemplate;
+        this.plantillas = plantillas;
+        this.storage = storage;
+        this.verificacion = verificacion;
+    }
+
+    @PostConstruct
+    void iniciarPool() {
+        int n = Math.max(1, hilos);
+        pool = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, capacidadCola)),
+                r -> hilo(r, "render-certificados"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void detenerPool() {
+        pool.shutdownNow();
+    }
+
+    // =========================================================
+    // API
+    // =========================================================
+
+    /** Pide el PDF en segundo plano; si el pool está saturado lo dejará el barrido. */
+    public void encolar(String idCertificado) {
+        if (idCertificado == null || !enCola.add(idCertificado)) return;
+        try {
+            pool.execute(() -> {
+                try {
+                    generar(idCertificado);
+                } finally {
+                    enCola.remove(idCertificado);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            enCola.remove(idCertificado);
+            log.debug("Cola de PDF llena; el certificado {} espera al barrido", idCertificado);
+        }
+    }
+
+    /** Vuelve a generar el PDF (p. ej. tras cambiar la plantilla, la firma o el fondo). */
+    public void regenerar(String idCertificado) {
+        Query q = new Query(Criteria.where("_id").is(idCertificado)
+                .and("estado").is(Certificado.Estado.EMITIDO));
+        Update u = new Update()
+                .set("pdfEstado", EstadoPdf.PENDIENTE)
+                .set("pdfIntentos", 0)
+                .unset("pdfError")
+                .unset("pdfDueno")
+                .unset("pdfLeaseHasta")
+                .inc("version", 1);
+        if (mongoTemplate.updateFirst(q, u, Certificado.class).getMatchedCount() == 0) {
+            throw new NoSuchElementException("Certificado emitido no encontrado.");
+        }
+        encolar(idCertificado);
+    }
+
+    @Scheduled(fixedDelayString = "${app.certificados.barrido-ms:10000}")
+    public void barrer() {
+        if (!barriendo.tryLock()) return;
+        try {
+            int libres = pool.getQueue().remainingCapacity();
+            if (libres <= 0) return;
+            Query q = new Query(porGenerar(Instant.now())).limit(libres);
+            q.fields().include("_id");
+            for (Certificado c : mongoTemplate.find(q, Certificado.class)) encolar(c.getId());
+        } catch (RuntimeException ex) {
+            log.error("Error buscando certificados sin PDF", ex);
+        } finally {
+            barriendo.unlock();
+        }
+    }
+
+    public RenderCertificadosEstadoDTO estado() {
+        Instant ahora = Instant.now();
+        long pendientes = mongoTemplate.count(new Query(Criteria.where("estado").is(Certificado.Estado.EMITIDO)
+                .and("pdfEstado").in(POR_GENERAR)), Certificado.class);
+        long conError = mongoTemplate.count(new Query(Criteria.where("pdfEstado").is(EstadoPdf.ERROR)), Certificado.class);
+        long hechos = generados.get();
+        long nanos = nanosDibujo.get();
+        return new RenderCertificadosEstadoDTO(
+                pool.getMaximumPoolSize(), pool.getActiveCount(),
+                pool.getQueue().size(), pool.getQueue().remainingCapacity(),
+                pendientes, conError, hechos, fallidos.get(),
+                hechos == 0 ? null : redondear(nanos / 1e6 / hechos),
+                hechos == 0 ? null : bytesGenerados.get() / hechos,
+                ahora);
+    }
+
+    /**
+     * Dibuja en memoria paginas certificados ficticios con la plantilla indicada, usando
+     * tantos hilos como el pool real, sin guardar nada. Sirve para dimensionar
+     * app.certificados.hilos: con N páginas por segundo una cohorte de M alumnos tiene
+     * todos sus PDF en M / N segundos.
+     */
+    public RendimientoRenderDTO medirRendimiento(String idPlantilla, int paginas) {
+        if (paginas < 1 || paginas > MAX_PAGINAS_MEDICION) {
+            throw new IllegalArgumentException("paginas debe estar entre 1 y " + MAX_PAGINAS_MEDICION + ".");
+        }
+        if (!midiendo.tryLock()) throw new IllegalStateException("Ya hay una medición en curso.");
+        int n = pool.getMaximumPoolSize();
+        ExecutorService medidores = Executors.newFixedThreadPool(n, r -> hilo(r, "render-certificados-medicion"));
+        try {
+            // Primera página fuera de la medición: compila la plantilla y prepara las imágenes
+            plantillas.renderizar(ficticio(idPlantilla, 0));
+
+            long inicio = System.nanoTime();
+            List<Future<Long>> partes = new ArrayList<>(n);
+            for (int h = 0; h < n; h++) {
+                int desde = h;
+                partes.add(medidores.submit(() -> {
+                    long bytes = 0;
+                    for (int i = desde; i < paginas; i += n) bytes += plantillas.renderizar(ficticio(idPlantilla, i)).length;
+                    return bytes;
+                }));
+            }
+            long bytes = 0;
+            for (Future<Long> f : partes) bytes += f.get();
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+
+            double porSegundo = paginas / segundos;
+            return new RendimientoRenderDTO(idPlantilla, paginas, n,
+                    redondear(segundos * 1000), redondear(porSegundo),
+                    bytes / paginas, redondear(1000 / porSegundo));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Medición interrumpida.");
+        } catch (ExecutionException ex) {
+            Throwable causa = ex.getCause();
+            if (causa instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(String.valueOf(causa.getMessage()), causa);
+        } finally {
+            medidores.shutdownNow();
+            midiendo.unlock();
+        }
+    }
+
+    // =========================================================
+    // GENERACIÓN
+    // =========================================================
+
+    private void generar(String idCertificado) {
+        Certificado c = reclamar(idCertificado, Instant.now());
+        if (c == null) return;
+        Query mio = new Query(Criteria.where("_id").is(c.getId()).and("pdfDueno").is(nodo));
+        try {
+            long inicio = System.nanoTime();
+            byte[] pdf = plantillas.renderizar(c);
+            nanosDibujo.addAndGet(System.nanoTime() - inicio);
+
+            String url = storage.saveBytes(pdf, "application/pdf", "certificados",
+                    "certificado-" + c.getCodigoVerificacion());
+            // version++: un save() posterior con la copia vieja del certificado no debe borrar pdfUrl
+            long n = mongoTemplate.updateFirst(mio, new Update()
+                    .set("pdfEstado", EstadoPdf.LISTO)
+                    .set("pdfUrl", url)
+                    .set("pdfGeneradoAt", Instant.now())
+                    .inc("pdfIntentos", 1)
+                    .unset("pdfError")
+                    .unset("pdfDueno")
+                    .unset("pdfLeaseHasta")
+                    .inc("version", 1), Certificado.class).getMatchedCount();
+            if (n == 0) log.warn("Se perdió la reserva del certificado {} mientras se generaba su PDF", c.getId());
+            // La verificación pública devuelve pdfUrl
+            verificacion.invalidar(c.getCodigoVerificacion());
+            generados.incrementAndGet();
+            bytesGenerados.addAndGet(pdf.length);
+        } catch (IOException | RuntimeException ex) {
+            fallidos.incrementAndGet();
+            int intentos = (c.getPdfIntentos() == null ? 0 : c.getPdfIntentos()) + 1;
+            Update u = new Update()
+                    .set("pdfIntentos", intentos)
+                    .set("pdfError", String.valueOf(ex.getMessage()))
+                    .unset("pdfDueno");
+            if (intentos >= maxIntentos) {
+                u.set("pdfEstado", EstadoPdf.ERROR).unset("pdfLeaseHasta");
+                log.error("PDF del certificado {} falló {} veces y quedó en ERROR", c.getId(), intentos, ex);
+            } else {
+                // La reserva hace de espera: el barrido no lo vuelve a tomar hasta que venza
+                u.set("pdfLeaseHasta", Instant.now().plusSeconds(30L << Math.min(intentos, 6)));
+                log.warn("PDF del certificado {} falló (intento {}): {}", c.getId(), intentos, ex.getMessage());
+            }
+            mongoTemplate.updateFirst(mio, u, Certificado.class);
+        }
+    }
+
+    private Certificado reclamar(String idCertificado, Instant ahora) {
+        Query q = new Query(Criteria.where("_id").is(idCertificado).andOperator(porGenerar(ahora)));
+        Update u = new Update()
+                .set("pdfEstado", EstadoPdf.PENDIENTE)
+                .set("pdfDueno", nodo)
+                .set("pdfLeaseHasta", ahora.plusSeconds(leaseSegundos));
+        return mongoTemplate.findAndModify(q, u, FindAndModifyOptions.options().returnNew(true), Certificado.class);
+    }
+
+    private static Criteria porGenerar(Instant ahora) {
+        return Criteria.where("estado").is(Certificado.Estado.EMITIDO)
+                .and("pdfEstado").in(POR_GENERAR)
+                .orOperator(Criteria.where("pdfLeaseHasta").is(null), Criteria.where("pdfLeaseHasta").lte(ahora));
+    }
+
+    private static Certificado ficticio(String idPlantilla, int i) {
+        Certificado c = new Certificado();
+        c.setTemplateId(idPlantilla);
+        c.setCodigoVerificacion(String.format("%032X", i));
+        c.setEstudianteNombre("María José Fernández Ñúñez " + i);
+        c.setCursoTitulo("Introducción a la programación con Java y Spring Boot");
+        c.setInstructorNombre("Instructora de ejemplo");
+        c.setHoras(40);
+        c.setNotaFinal(new BigDecimal("18.5"));
+        c.setEmitidoEn(Instant.now());
+        c.setPublicUrl("https://cursos.example.com/api/v1/certificados/verificar/" + c.getCodigoVerificacion());
+        c.setQrData(c.getPublicUrl());
+        return c;
+    }
+
+    private static double redondear(double v) {
+        return Math.round(v * 10) / 10.0;
+    }
+
+    private static Thread hilo(Runnable r, String nombre) {
+        Thread th = new Thread(r, nombre);
+        th.setDaemon(true);
+        return th;
+    }
+}
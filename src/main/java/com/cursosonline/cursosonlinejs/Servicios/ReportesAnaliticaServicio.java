@@ -0,0 +1,158 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.DTO.ReporteIngresosDTO;
+import com.cursosonline.cursosonlinejs.DTO.ReporteInscripcionesDTO;
+import com.cursosonline.cursosonlinejs.Entidades.GranularidadRollup;
+import com.cursosonline.cursosonlinejs.Entidades.RollupIngresos;
+import com.cursosonline.cursosonlinejs.Entidades.RollupInscripciones;
+import com.mongodb.ReadPreference;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reportes de ingresos y de inscripciones para los paneles. Solo leen las colecciones
+ * de rollups (nunca pagos ni inscripciones) y lo hacen con su propio MongoTemplate
+ * configurado con app.analitica.read-preference (por defecto secondaryPreferred), para
+ * no cargar al primario; unos segundos de retraso de réplica no importan aquí.
+ */
+@Service
+public class ReportesAnaliticaServicio {
+
+    private static final long MAX_DIAS_POR_HORA = 31;
+    private static final long MAX_DIAS_POR_DIA = 366;
+
+    private final MongoTemplate lectura;
+    private final ZoneId zona;
+
+    public ReportesAnaliticaServicio(MongoDatabaseFactory mongoDatabaseFactory,
+                                     MongoTemplate mongoTemplate,
+                                     @Value("${app.analitica.read-preference:secondaryPreferred}") String preferencia,
+                                     @Value("${app.analitica.zona:UTC}") ZoneId zona) {
+        this.lectura = new MongoTemplate(mongoDatabaseFactory, mongoTemplate.getConverter());
+        this.lectura.setReadPreference(ReadPreference.valueOf(preferencia));
+        this.zona = zona;
+    }
+
+    /** @param idCurso null para sumar todos los cursos */
+    public ReporteIngresosDTO ingresos(String idCurso, LocalDate desde, LocalDate hasta, GranularidadRollup g) {
+        validarRango(desde, hasta, g);
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.match(filtro(idCurso, desde, hasta, g)),
+                Aggregation.group("inicio", "moneda")
+                        .sum("pagos").as("pagos")
+                        .sum("bruto").as("bruto")
+                        .sum("reembolsos").as("reembolsos")
+                        .sum("reembolsado").as("reembolsado")
+                        .sum("neto").as("neto"),
+                Aggregation.sort(Sort.by("inicio", "moneda"))
+        );
+
+        List<ReporteIngresosDTO.PuntoDTO> serie = new ArrayList<>();
+        Map<String, ReporteIngresosDTO.TotalDTO> totales = new TreeMap<>();
+        for (Document d : lectura.aggregate(agg, RollupIngresos.class, Document.class)) {
+            Document id = d.get("_id", Document.class);
+            String moneda = id.getString("moneda");
+            ReporteIngresosDTO.PuntoDTO p = new ReporteIngresosDTO.PuntoDTO(
+                    id.getDate("inicio").toInstant(), moneda,
+                    numero(d, "pagos"), decimal(d, "bruto"),
+                    numero(d, "reembolsos"), decimal(d, "reembolsado"), decimal(d, "neto"));
+            serie.add(p);
+            totales.merge(moneda == null ? "-" : moneda,
+                    new ReporteIngresosDTO.TotalDTO(moneda, p.pagos(), p.bruto(), p.reembolsos(), p.reembolsado(), p.neto()),
+                    (a, b) -> new ReporteIngresosDTO.TotalDTO(a.moneda(),
+                            a.pagos() + b.pagos(), a.bruto().add(b.bruto()),
+                            a.reembolsos() + b.reembolsos(), a.reembolsado().add(b.reembolsado()),
+                            a.neto().add(b.neto())));
+        }
+        return new ReporteIngresosDTO(idCurso, desde, hasta, g, zona.getId(), serie, new ArrayList<>(totales.values()));
+    }
+
+    /** @param idCurso null para sumar todos los cursos */
+    public ReporteInscripcionesDTO inscripciones(String idCurso, LocalDate desde, LocalDate hasta, GranularidadRollup g) {
+        validarRango(desde, hasta, g);
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.match(filtro(idCurso, desde, hasta, g)),
+                Aggregation.group("inicio")
+                        .sum("inscritas").as("inscritas")
+                        .sum("pendientesPago").as("pendientesPago")
+                        .sum("activas").as("activas")
+                        .sum("suspendidas").as("suspendidas")
+                        .sum("completadas").as("completadas")
+                        .sum("canceladas").as("canceladas")
+                        .sum("expiradas").as("expiradas"),
+                Aggregation.sort(Sort.by("inicio"))
+        );
+
+        List<ReporteInscripcionesDTO.PuntoDTO> serie = new ArrayList<>();
+        long inscritas = 0, convertidas = 0, completadas = 0;
+        for (Document d : lectura.aggregate(agg, RollupInscripciones.class, Document.class)) {
+            ReporteInscripcionesDTO.PuntoDTO p = new ReporteInscripcionesDTO.PuntoDTO(
+                    d.getDate("_id").toInstant(),
+                    numero(d, "inscritas"), numero(d, "pendientesPago"), numero(d, "activas"),
+                    numero(d, "suspendidas"), numero(d, "completadas"), numero(d, "canceladas"),
+                    numero(d, "expiradas"));
+            serie.add(p);
+            inscritas += p.inscritas();
+            convertidas += p.activas() + p.suspendidas() + p.completadas();
+            completadas += p.completadas();
+        }
+        ReporteInscripcionesDTO.EmbudoDTO embudo = new ReporteInscripcionesDTO.EmbudoDTO(
+                inscritas, convertidas, completadas,
+                porcentaje(convertidas, inscritas), porcentaje(completadas, convertidas));
+        return new ReporteInscripcionesDTO(idCurso, desde, hasta, g, zona.getId(), serie, embudo);
+    }
+
+    private Criteria filtro(String idCurso, LocalDate desde, LocalDate hasta, GranularidadRollup g) {
+        Criteria c = Criteria.where("granularidad").is(g);
+        if (idCurso != null) c = c.and("idCurso").is(idCurso);
+        return c.and("inicio")
+                .gte(desde.atStartOfDay(zona).toInstant())
+                .lt(hasta.plusDays(1).atStartOfDay(zona).toInstant());
+    }
+
+    private static void validarRango(LocalDate desde, LocalDate hasta, GranularidadRollup g) {
+        if (desde == null || hasta == null || hasta.isBefore(desde)) {
+            throw new IllegalArgumentException("Rango de fechas inválido.");
+        }
+        long dias = ChronoUnit.DAYS.between(desde, hasta) + 1;
+        long max = g == GranularidadRollup.HORA ? MAX_DIAS_POR_HORA : MAX_DIAS_POR_DIA;
+        if (dias > max) {
+            throw new IllegalArgumentException("Con granularidad " + g.name().toLowerCase()
+                    + " el rango admite hasta " + max + " días.");
+        }
+    }
+
+    private static long numero(Document d, String campo) {
+        Object v = d.get(campo);
+        return v instanceof Number n ? n.longValue() : 0L;
+    }
+
+    private static BigDecimal decimal(Document d, String campo) {
+        Object v = d.get(campo);
+        if (v instanceof Decimal128 x) return x.bigDecimalValue();
+        if (v instanceof Number n) return new BigDecimal(n.toString());
+        return BigDecimal.ZERO;
+    }
+
+    private static Double porcentaje(long parte, long total) {
+        if (total == 0) return null;
+        return BigDecimal.valueOf(parte * 100.0 / total).setScale(1, RoundingMode.HALF_UP).doubleValue();
+    }
+}
@@ -0,0 +1,418 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.GranularidadRollup;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.MarcaBarrido;
+import com.cursosonline.cursosonlinejs.Entidades.Pago;
+import com.cursosonline.cursosonlinejs.Entidades.Pago.EstadoPago;
+import com.cursosonline.cursosonlinejs.Entidades.RollupIngresos;
+import com.cursosonline.cursosonlinejs.Entidades.RollupInscripciones;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Mantiene rollup_ingresos y rollup_inscripciones, por hora y por día.
+ *
+ * Cada cubeta horaria se recalcula entera a partir de sus pagos o inscripciones (nunca
+ * se suma sobre lo anterior), y la diaria se suma desde sus horas; así recalcular de
+ * más no descuadra nada. El barrido lee lo que cambió desde la pasada anterior (por
+ * estadoCambiadoAt, con un margen) y recalcula solo las horas afectadas: las de pagadoAt
+ * y reembolsadoAt de cada pago y la de createdAt de cada inscripción. estadoCambiadoAt
+ * solo se mueve al crear el documento y al cambiar su estado, que es lo único que altera
+ * las cubetas; updatedAt se mueve también con el progreso, la conciliación, etc., y
+ * haría releer casi toda la colección en cada pasada. La marca y su
+ * reserva viven en marcas_barrido, así que con varios nodos barre uno.
+ *
+ * Los borrados no dejan rastro en estadoCambiadoAt; reconstruir(desde, hasta) recorre el rango
+ * con una agregación que agrupa por hora, recalcula cada hora con datos y borra las
+ * cubetas que ya no los tienen. La primera pasada, sin marca, reconstruye todo.
+ */
+@Service
+public class RollupsAnaliticaServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(RollupsAnaliticaServicio.class);
+
+    private static final String MARCA = "analitica_rollups";
+
+    // Cubre escrituras en vuelo y relojes algo desfasados entre nodos
+    private static final Duration MARGEN = Duration.ofSeconds(30);
+
+    private static final List<EstadoPago> COBRADOS =
+            List.of(EstadoPago.APROBADO, EstadoPago.CAPTURADO, EstadoPago.REEMBOLSADO);
+
+    @Value("${app.analitica.zona:UTC}")
+    private ZoneId zona;
+
+    @Value("${app.analitica.lease-segundos:300}")
+    private long leaseSegundos;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final String nodo = UUID.randomUUID().toString();
+    private final AtomicBoolean reconstruyendo = new AtomicBoolean();
+    private final ExecutorService reconstructor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "rollups-analitica");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public RollupsAnaliticaServicio(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Scheduled(fixedDelayString = "${app.analitica.barrido-ms:30000}",
+               initialDelayString = "${app.analitica.barrido-ms:30000}")
+    public void barrer() {
+        Instant inicio = Instant.now();
+        MarcaBarrido marca = tomarMarca(inicio);
+        if (marca == null) return;   // otro nodo está barriendo
+
+        try {
+            if (marca.getHasta() == null) {
+                log.info("Rollups de analítica sin marca: se reconstruyen desde el principio");
+                reconstruirRango(Instant.EPOCH, inicio);
+            } else {
+                Instant desde = marca.getHasta().minus(MARGEN);
+                Set<Instant> horasIngresos = new TreeSet<>();
+                Set<Instant> horasInscripciones = new TreeSet<>();
+
+                Query qp = new Query(Criteria.where("estadoCambiadoAt").gte(desde));
+                qp.fields().include("pagadoAt", "reembolsadoAt");
+                try (Stream<Pago> pagos = mongoTemplate.stream(qp, Pago.class)) {
+                    pagos.forEach(p -> {
+                        if (p.getPagadoAt() != null) horasIngresos.add(hora(p.getPagadoAt()));
+                        if (p.getReembolsadoAt() != null) horasIngresos.add(hora(p.getReembolsadoAt()));
+                    });
+                }
+                Query qi = new Query(Criteria.where("estadoCambiadoAt").gte(desde));
+                qi.fields().include("createdAt");
+                try (Stream<Inscripcion> inscripciones = mongoTemplate.stream(qi, Inscripcion.class)) {
+                    inscripciones.forEach(i -> {
+                        if (i.getCreatedAt() != null) horasInscripciones.add(hora(i.getCreatedAt()));
+                    });
+                }
+                recalcular(horasIngresos, horasInscripciones);
+            }
+            avanzarMarca(inicio);
+        } catch (RuntimeException ex) {
+            log.error("Error actualizando los rollups de analítica", ex);
+        } finally {
+            soltarMarca();
+        }
+    }
+
+    /**
+     * Reconstruye en segundo plano los rollups de los días [desde, hasta] (en la zona de la
+     * analítica). Puede correr a la vez que el barrido: los dos recalculan, no suman.
+     */
+    public void reconstruir(LocalDate desde, LocalDate hasta) {
+        if (desde == null || hasta == null || hasta.isBefore(desde)) {
+            throw new IllegalArgumentException("Rango de fechas inválido.");
+        }
+        if (!reconstruyendo.compareAndSet(false, true)) {
+            throw new IllegalStateException("Ya hay una reconstrucción en curso.");
+        }
+        Instant inicio = desde.atStartOfDay(zona).toInstant();
+        Instant fin = hasta.plusDays(1).atStartOfDay(zona).toInstant();
+        reconstructor.execute(() -> {
+            try {
+                reconstruirRango(inicio, fin);
+            } catch (RuntimeException ex) {
+                log.error("Error reconstruyendo los rollups de {} a {}", desde, hasta, ex);
+            } finally {
+                reconstruyendo.set(false);
+            }
+        });
+    }
+
+    public ZoneId zona() {
+        return zona;
+    }
+
+    @PreDestroy
+    public void alApagar() {
+        reconstructor.shutdownNow();
+    }
+
+    private void reconstruirRango(Instant desde, Instant hasta) {
+        Instant comienzo = Instant.now();
+        Set<Instant> horasIngresos = new TreeSet<>();
+        horasIngresos.addAll(horasConDatos(Pago.class, "pagadoAt", desde, hasta,
+                Criteria.where("estado").in(COBRADOS)));
+        horasIngresos.addAll(horasConDatos(Pago.class, "reembolsadoAt", desde, hasta,
+                Criteria.where("estado").is(EstadoPago.REEMBOLSADO)));
+        Set<Instant> horasInscripciones = horasConDatos(Inscripcion.class, "createdAt", desde, hasta, null);
+
+        recalcular(horasIngresos, horasInscripciones);
+
+        // Lo que no se tocó en esta pasada es de horas que ya no tienen datos
+        Query viejas = new Query(Criteria.where("inicio").gte(desde).lt(hasta)
+                .and("actualizadoAt").lt(comienzo));
+        long borradas = mongoTemplate.remove(viejas, RollupIngresos.class).getDeletedCount()
+                + mongoTemplate.remove(viejas, RollupInscripciones.class).getDeletedCount();
+        log.info("Rollups reconstruidos: {} horas de ingresos, {} de inscripciones, {} cubetas vacías borradas",
+                horasIngresos.size(), horasInscripciones.size(), borradas);
+    }
+
+    /** Horas (en la zona de la analítica) en que hay documentos con el campo en el rango. */
+    private Set<Instant> horasConDatos(Class<?> entidad, String campo, Instant desde, Instant hasta,
+                                       Criteria extra) {
+        Criteria c = Criteria.where(campo).gte(desde).lt(hasta);
+        if (extra != null) c = new Criteria().andOperator(c, extra);
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.match(c),
+                ctx -> new Document("$group", new Document("_id", new Document("$dateTrunc",
+                        new Document("date", "$" + campo)
+                                .append("unit", "hour")
+                                .append("timezone", zona.getId()))))
+        );
+        Set<Instant> horas = new TreeSet<>();
+        for (Document d : mongoTemplate.aggregate(agg, entidad, Document.class)) {
+            horas.add(d.getDate("_id").toInstant());
+        }
+        return horas;
+    }
+
+    private void recalcular(Set<Instant> horasIngresos, Set<Instant> horasInscripciones) {
+        Set<LocalDate> dias = new TreeSet<>();
+        for (Instant h : horasIngresos) {
+            recalcularHoraIngresos(h);
+            dias.add(dia(h));
+        }
+        for (LocalDate d : dias) recalcularDiaIngresos(d);
+
+        dias.clear();
+        for (Instant h : horasInscripciones) {
+            recalcularHoraInscripciones(h);
+            dias.add(dia(h));
+        }
+        for (LocalDate d : dias) recalcularDiaInscripciones(d);
+    }
+
+    // =========================================================
+    // INGRESOS
+    // =========================================================
+
+    private void recalcularHoraIngresos(Instant h) {
+        Instant fin = h.plus(1, ChronoUnit.HOURS);
+        Query qc = new Query(Criteria.where("pagadoAt").gte(h).lt(fin).and("estado").in(COBRADOS));
+        qc.fields().include("idInscripcion", "monto", "moneda");
+        List<Pago> cobros = mongoTemplate.find(qc, Pago.class);
+        Query qr = new Query(Criteria.where("reembolsadoAt").gte(h).lt(fin).and("estado").is(EstadoPago.REEMBOLSADO));
+        qr.fields().include("idInscripcion", "monto", "moneda");
+        List<Pago> reembolsos = mongoTemplate.find(qr, Pago.class);
+
+        Set<String> ids = new HashSet<>();
+        for (Pago p : cobros) if (p.getIdInscripcion() != null) ids.add(p.getIdInscripcion());
+        for (Pago p : reembolsos) if (p.getIdInscripcion() != null) ids.add(p.getIdInscripcion());
+        Map<String, String> cursos = cursosDe(ids);
+
+        Instant ahora = Instant.now();
+        Map<String, RollupIngresos> acc = new LinkedHashMap<>();
+        for (Pago p : cobros) {
+            RollupIngresos r = ingresos(acc, GranularidadRollup.HORA, h, cursos.get(p.getIdInscripcion()), p.getMoneda(), ahora);
+            r.setPagos(r.getPagos() + 1);
+            r.setBruto(r.getBruto().add(monto(p)));
+        }
+        for (Pago p : reembolsos) {
+            RollupIngresos r = ingresos(acc, GranularidadRollup.HORA, h, cursos.get(p.getIdInscripcion()), p.getMoneda(), ahora);
+            r.setReembolsos(r.getReembolsos() + 1);
+            r.setReembolsado(r.getReembolsado().add(monto(p)));
+        }
+        reemplazar(GranularidadRollup.HORA, h, acc.values(), RollupIngresos::getId, RollupIngresos.class);
+    }
+
+    private void recalcularDiaIngresos(LocalDate d) {
+        Instant inicio = d.atStartOfDay(zona).toInstant();
+        Query q = new Query(Criteria.where("granularidad").is(GranularidadRollup.HORA).and("dia").is(d.toString()));
+        Instant ahora = Instant.now();
+        Map<String, RollupIngresos> acc = new LinkedHashMap<>();
+        for (RollupIngresos h : mongoTemplate.find(q, RollupIngresos.class)) {
+            RollupIngresos r = ingresos(acc, GranularidadRollup.DIA, inicio, h.getIdCurso(), h.getMoneda(), ahora);
+            r.setPagos(r.getPagos() + h.getPagos());
+            r.setBruto(r.getBruto().add(h.getBruto()));
+            r.setReembolsos(r.getReembolsos() + h.getReembolsos());
+            r.setReembolsado(r.getReembolsado().add(h.getReembolsado()));
+        }
+        reemplazar(GranularidadRollup.DIA, inicio, acc.values(), RollupIngresos::getId, RollupIngresos.class);
+    }
+
+    private RollupIngresos ingresos(Map<String, RollupIngresos> acc, GranularidadRollup g, Instant inicio,
+                                    String idCurso, String moneda, Instant ahora) {
+        String id = String.join(":", g.name(), inicio.toString(),
+                idCurso == null ? "-" : idCurso, moneda == null ? "-" : moneda);
+        return acc.computeIfAbsent(id, k -> {
+            RollupIngresos r = new RollupIngresos();
+            r.setId(k);
+            r.setGranularidad(g);
+            r.setInicio(inicio);
+            r.setDia(dia(inicio).toString());
+            r.setIdCurso(idCurso);
+            r.setMoneda(moneda);
+            r.setActualizadoAt(ahora);
+            return r;
+        });
+    }
+
+    private static BigDecimal monto(Pago p) {
+        return p.getMonto() == null ? BigDecimal.ZERO : p.getMonto();
+    }
+
+    private Map<String, String> cursosDe(Set<String> idsInscripcion) {
+        Map<String, String> out = new HashMap<>();
+        if (idsInscripcion.isEmpty()) return out;
+        Query q = new Query(Criteria.where("_id").in(idsInscripcion));
+        q.fields().include("idCurso");
+        for (Inscripcion i : mongoTemplate.find(q, Inscripcion.class)) out.put(i.getId(), i.getIdCurso());
+        return out;
+    }
+
+    // =========================================================
+    // INSCRIPCIONES
+    // =========================================================
+
+    private void recalcularHoraInscripciones(Instant h) {
+        Query q = new Query(Criteria.where("createdAt").gte(h).lt(h.plus(1, ChronoUnit.HOURS)));
+        q.fields().include("idCurso", "estado");
+        Instant ahora = Instant.now();
+        Map<String, RollupInscripciones> acc = new LinkedHashMap<>();
+        for (Inscripcion i : mongoTemplate.find(q, Inscripcion.class)) {
+            RollupInscripciones r = inscripciones(acc, GranularidadRollup.HORA, h, i.getIdCurso(), ahora);
+            r.setInscritas(r.getInscritas() + 1);
+            if (i.getEstado() == null) continue;
+            switch (i.getEstado()) {
+                case PENDIENTE_PAGO -> r.setPendientesPago(r.getPendientesPago() + 1);
+                case ACTIVA -> r.setActivas(r.getActivas() + 1);
+                case SUSPENDIDA -> r.setSuspendidas(r.getSuspendidas() + 1);
+                case COMPLETADA -> r.setCompletadas(r.getCompletadas() + 1);
+                case CANCELADA -> r.setCanceladas(r.getCanceladas() + 1);
+                case EXPIRADA -> r.setExpiradas(r.getExpiradas() + 1);
+            }
+        }
+        reemplazar(GranularidadRollup.HORA, h, acc.values(), RollupInscripciones::getId, RollupInscripciones.class);
+    }
+
+    private void recalcularDiaInscripciones(LocalDate d) {
+        Instant inicio = d.atStartOfDay(zona).toInstant();
+        Query q = new Query(Criteria.where("granularidad").is(GranularidadRollup.HORA).and("dia").is(d.toString()));
+        Instant ahora = Instant.now();
+        Map<String, RollupInscripciones> acc = new LinkedHashMap<>();
+        for (RollupInscripciones h : mongoTemplate.find(q, RollupInscripciones.class)) {
+            RollupInscripciones r = inscripciones(acc, GranularidadRollup.DIA, inicio, h.getIdCurso(), ahora);
+            r.setInscritas(r.getInscritas() + h.getInscritas());
+            r.setPendientesPago(r.getPendientesPago() + h.getPendientesPago());
+            r.setActivas(r.getActivas() + h.getActivas());
+            r.setSuspendidas(r.getSuspendidas() + h.getSuspendidas());
+            r.setCompletadas(r.getCompletadas() + h.getCompletadas());
+            r.setCanceladas(r.getCanceladas() + h.getCanceladas());
+            r.setExpiradas(r.getExpiradas() + h.getExpiradas());
+        }
+        reemplazar(GranularidadRollup.DIA, inicio, acc.values(), RollupInscripciones::getId, RollupInscripciones.class);
+    }
+
+    private RollupInscripciones inscripciones(Map<String, RollupInscripciones> acc, GranularidadRollup g,
+                                              Instant inicio, String idCurso, Instant ahora) {
+        String id = String.join(":", g.name(), inicio.toString(), idCurso == null ? "-" : idCurso);
+        return acc.computeIfAbsent(id, k -> {
+            RollupInscripciones r = new RollupInscripciones();
+            r.setId(k);
+            r.setGranularidad(g);
+            r.setInicio(inicio);
+            r.setDia(dia(inicio).toString());
+            r.setIdCurso(idCurso);
+            r.setActualizadoAt(ahora);
+            return r;
+        });
+    }
+
+    // =========================================================
+    // ESCRITURA DE CUBETAS
+    // =========================================================
+
+    /** Deja en la cubeta exactamente estos documentos: guarda los calculados y borra el resto. */
+    private <T> void reemplazar(GranularidadRollup g, Instant inicio, Collection<T> docs,
+                                Function<T, String> id, Class<T> tipo) {
+        List<String> ids = docs.stream().map(id).toList();
+        for (T doc : docs) {
+            if (doc instanceof RollupIngresos r) r.setNeto(r.getBruto().subtract(r.getReembolsado()));
+            mongoTemplate.save(doc);
+        }
+        mongoTemplate.remove(new Query(Criteria.where("granularidad").is(g)
+                .and("inicio").is(inicio)
+                .and("_id").nin(ids)), tipo);
+    }
+
+    private Instant hora(Instant t) {
+        return ZonedDateTime.ofInstant(t, zona).truncatedTo(ChronoUnit.HOURS).toInstant();
+    }
+
+    private LocalDate dia(Instant t) {
+        return LocalDate.ofInstant(t, zona);
+    }
+
+    // =========================================================
+    // MARCA
+    // =========================================================
+
+    /** Reserva la marca para este nodo; null si la tiene otro con la reserva vigente. */
+    private MarcaBarrido tomarMarca(Instant ahora) {
+        Query q = new Query(Criteria.where("_id").is(MARCA).orOperator(
+                Criteria.where("leaseHasta").is(null),
+                Criteria.where("leaseHasta").lte(ahora),
+                Criteria.where("dueno").is(nodo)));
+        Update u = new Update()
+                .set("dueno", nodo)
+                .set("leaseHasta", ahora.plusSeconds(leaseSegundos));
+        try {
+            return mongoTemplate.findAndModify(q, u,
+                    FindAndModifyOptions.options().returnNew(true).upsert(true), MarcaBarrido.class);
+        } catch (DuplicateKeyException ex) {
+            // La marca existe y la reserva es de otro: el upsert intentó crearla de nuevo
+            return null;
+        }
+    }
+
+    private void avanzarMarca(Instant hasta) {
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(MARCA).and("dueno").is(nodo)),
+                new Update().set("hasta", hasta).set("updatedAt", Instant.now()), MarcaBarrido.class);
+    }
+
+    private void soltarMarca() {
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(MARCA).and("dueno").is(nodo)),
+                new Update().unset("dueno").unset("leaseHasta"), MarcaBarrido.class);
+    }
+}
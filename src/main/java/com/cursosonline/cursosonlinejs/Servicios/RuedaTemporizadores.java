@@ -0,0 +1,95 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rueda de temporizadores (hashed timer wheel) para vencimientos por id.
+ *
+ * Cada ranura agrupa los vencimientos cuyo tick cae en ella (tick % ranuras);
+ * programar y cancelar son O(1) y avanzar solo visita las ranuras de los ticks
+ * transcurridos, sin recorrer todos los pendientes. Las entradas con vencimiento
+ * a más de una vuelta se quedan en su ranura hasta que llegue su tick.
+ */
+final class RuedaTemporizadores {
+
+    private final long tickMs;
+    private final List<List<Entrada>> ranuras;
+    private final Map<String, Entrada> porId = new HashMap<>();
+    private long tickActual;
+
+    RuedaTemporizadores(long tickMs, int numeroRanuras, Instant inicio) {
+        if (tickMs <= 0 || numeroRanuras <= 0) {
+            throw new IllegalArgumentException("tickMs y numeroRanuras deben ser positivos");
+        }
+        this.tickMs = tickMs;
+        this.ranuras = new ArrayList<>(numeroRanuras);
+        for (int i = 0; i < numeroRanuras; i++) ranuras.add(new ArrayList<>());
+        this.tickActual = inicio.toEpochMilli() / tickMs;
+    }
+
+    /** Programa (o reprograma) el vencimiento de un id. */
+    synchronized void programar(String id, Instant vence) {
+        cancelar(id);
+        // Lo ya vencido se dispara en el próximo avance
+        long tick = Math.max(vence.toEpochMilli() / tickMs, tickActual);
+        Entrada e = new Entrada(id, tick);
+        ranuras.get(indice(tick)).add(e);
+        porId.put(id, e);
+    }
+
+    synchronized void cancelar(String id) {
+        Entrada e = porId.remove(id);
+        if (e != null) e.cancelada = true;
+    }
+
+    /**
+     * Avanza la rueda hasta el instante indicado y devuelve los ids vencidos.
+     */
+    synchronized List<String> avanzar(Instant ahora) {
+        long tickObjetivo = ahora.toEpochMilli() / tickMs;
+        List<String> vencidos = new ArrayList<>();
+        if (tickObjetivo < tickActual) return vencidos;
+
+        // Si pasó más de una vuelta basta con visitar cada ranura una vez
+        long pasos = Math.min(tickObjetivo - tickActual + 1, ranuras.size());
+        for (long t = tickActual; t < tickActual + pasos; t++) {
+            Iterator<Entrada> it = ranuras.get(indice(t)).iterator();
+            while (it.hasNext()) {
+                Entrada e = it.next();
+                if (e.cancelada) {
+                    it.remove();
+                } else if (e.tick <= tickObjetivo) {
+                    it.remove();
+                    porId.remove(e.id);
+                    vencidos.add(e.id);
+                }
+            }
+        }
+        tickActual = tickObjetivo + 1;
+        return vencidos;
+    }
+
+    synchronized int pendientes() {
+        return porId.size();
+    }
+
+    private int indice(long tick) {
+        return (int) Math.floorMod(tick, (long) ranuras.size());
+    }
+
+    private static final class Entrada {
+        final String id;
+        final long tick;
+        boolean cancelada;
+
+        Entrada(String id, long tick) {
+            this.id = id;
+            this.tick = tick;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
+import com.cursosonline.cursosonlinejs.Entidades.OpcionPregunta;
+import com.cursosonline.cursosonlinejs.Entidades.Pregunta;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Selección y orden de preguntas de un intento a partir de su semilla.
+ *
+ * Las preguntas de la evaluación funcionan como banco: si preguntasPorIntento es
+ * menor que el banco se sortean esas preguntas, y se barajan preguntas y opciones
+ * según barajarPreguntas / barajarOpciones. Nada de eso se guarda en el intento:
+ * con la misma semilla y el mismo banco se obtiene siempre el mismo resultado, así
+ * que la vista del estudiante y el corrector lo regeneran cuando lo necesitan.
+ *
+ * Cada pregunta recibe un rango que depende solo de la semilla y de su id (y cada
+ * opción, de la semilla, la pregunta y su id): se eligen las de menor rango y, al
+ * barajar, se ordenan por él. Así, agregar o quitar una pregunta del banco no cambia
+ * el sorteo de las demás; como mucho la nueva desplaza a la última elegida. El hash
+ * es propio (FNV-1a + mezcla de SplitMix64) para que el resultado no dependa de la JVM.
+ *
+ * Intentos sin semilla (anteriores a esto) ven todas las preguntas en su orden.
+ */
+public final class SorteoPreguntas {
+
+    private SorteoPreguntas() {}
+
+    /** true si los intentos de la evaluación no ven necesariamente todo el banco. */
+    public static boolean muestrea(Evaluacion eval) {
+        Integer k = eval.getPreguntasPorIntento();
+        return k != null && k > 0 && eval.getPreguntas() != null && k < eval.getPreguntas().size();
+    }
+
+    /** Preguntas del intento, en el orden en que las ve el estudiante. */
+    public static List<PreguntaSorteada> generar(Evaluacion eval, Long semilla) {
+        List<Pregunta> banco = new ArrayList<>();
+        if (eval.getPreguntas() != null) {
+            for (Pregunta p : eval.getPreguntas()) {
+                if (p != null) banco.add(p);
+            }
+        }
+        if (semilla == null) {
+            return banco.stream().map(p -> new PreguntaSorteada(p, opciones(p))).toList();
+        }
+
+        int k = muestrea(eval) ? eval.getPreguntasPorIntento() : banco.size();
+
+        // Índices del banco por rango; a igual rango, por posición
+        List<Integer> indices = new ArrayList<>(banco.size());
+        long[] rangos = new long[banco.size()];
+        for (int i = 0; i < banco.size(); i++) {
+            indices.add(i);
+            rangos[i] = rango(semilla, banco.get(i).getId());
+        }
+        indices.sort(Comparator.<Integer>comparingLong(i -> rangos[i]).thenComparingInt(i -> i));
+        List<Integer> elegidos = new ArrayList<>(indices.subList(0, k));
+        if (!Boolean.TRUE.equals(eval.getBarajarPreguntas())) {
+            // Sin barajar se respeta el orden del banco
+            elegidos.sort(Comparator.naturalOrder());
+        }
+
+        boolean barajarOpciones = Boolean.TRUE.equals(eval.getBarajarOpciones());
+        List<PreguntaSorteada> out = new ArrayList<>(k);
+        for (int idx : elegidos) {
+            Pregunta p = banco.get(idx);
+            List<OpcionPregunta> ops = opciones(p);
+            if (barajarOpciones && ops.size() > 1) {
+                // Semilla propia por pregunta: el orden de opciones no depende del sorteo anterior
+                ops = barajar(ops, rango(semilla, p.getId()));
+            }
+            out.add(new PreguntaSorteada(p, ops));
+        }
+        return out;
+    }
+
+    /** Ids de las preguntas del intento, para reducir la clave de corrección. */
+    public static Set<String> idsPreguntas(Evaluacion eval, Long semilla) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (PreguntaSorteada ps : generar(eval, semilla)) {
+            if (ps.pregunta().getId() != null) ids.add(ps.pregunta().getId());
+        }
+        return ids;
+    }
+
+    /** Clave de corrección del intento: completa salvo que la evaluación muestree el banco. */
+    public static ClaveCorreccion claveDelIntento(ClaveCorreccion completa, Evaluacion eval, Long semilla) {
+        if (semilla == null || !muestrea(eval)) return completa;
+        return completa.filtrar(idsPreguntas(eval, semilla));
+    }
+
+    private static List<OpcionPregunta> opciones(Pregunta p) {
+        return p.getOpciones() == null ? List.of() : List.copyOf(p.getOpciones());
+    }
+
+    private static List<OpcionPregunta> barajar(List<OpcionPregunta> origen, long semillaPregunta) {
+        List<OpcionPregunta> l = new ArrayList<>(origen);
+        List<Long> rangos = new ArrayList<>(l.size());
+        for (OpcionPregunta o : l) rangos.add(rango(semillaPregunta, o.getId()));
+        List<Integer> orden = new ArrayList<>(l.size());
+        for (int i = 0; i < l.size(); i++) orden.add(i);
+        orden.sort(Comparator.<Integer>comparingLong(rangos::get).thenComparingInt(i -> i));
+        List<OpcionPregunta> out = new ArrayList<>(l.size());
+        for (int i : orden) out.add(l.get(i));
+        return List.copyOf(out);
+    }
+
+    /** Rango pseudoaleatorio de un id bajo una semilla; estable entre JVMs y versiones. */
+    static long rango(long semilla, String id) {
+        // FNV-1a de 64 bits sobre los caracteres del id
+        long h = 0xcbf29ce484222325L;
+        String s = String.valueOf(id);
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // Finalizador de SplitMix64
+        long z = h + semilla * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    public record PreguntaSorteada(Pregunta pregunta, List<OpcionPregunta> opciones) {}
+}
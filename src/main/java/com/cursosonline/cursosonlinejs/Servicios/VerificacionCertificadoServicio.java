@@ -0,0 +1,190 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.Certificado;
+import com.cursosonline.cursosonlinejs.Repositorios.CertificadoRepositorio;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Códigos de verificación firmados y su consulta pública.
+ *
+ * Un código nuevo es el id del certificado seguido de un HMAC-SHA256 truncado a 80
+ * bits: 665FA1C2E4B0C72A8F123456-9A1B2C3D4E5F60718293. El secreto
+ * (app.certificados.codigo-secreto, variable CERTIFICADOS_CODIGO_SECRETO) es propio de
+ * los certificados, no tiene valor por defecto y sin él la aplicación no arranca.
+ * No hace falta consultar la base para generarlo (el id es único) ni para rechazar uno
+ * falso o mal escrito: la firma se comprueba en memoria y solo un código válido llega
+ * a buscarse por _id. Los códigos anteriores (32+ caracteres hexadecimales) se siguen
+ * buscando por codigoVerificacion mientras app.certificados.codigos-legados esté
+ * activo; cualquier otra forma se rechaza sin tocar la base.
+ *
+ * Los certificados encontrados se guardan en una caché LRU acotada por código
+ * (app.certificados.cache-verificacion) con TTL (app.certificados.cache-ttl-segundos).
+ * Revocar, eliminar o regenerar el PDF la invalida al momento en este nodo. Los demás
+ * nodos se enteran en refrescar() (app.certificados.cache-refresco-ms, 10 s por defecto):
+ * releen por _id la versión de lo que tienen en caché y descartan lo borrado o lo que
+ * cambió de versión (save() y la generación del PDF la incrementan). Un certificado
+ * revocado en otro nodo puede seguir viéndose válido hasta un refresco, nunca más que
+ * el TTL. Lo que no existe no se cachea, para que códigos al azar no desplacen a los
+ * válidos.
+ */
+@Service
+public class VerificacionCertificadoServicio {
+
+    private static final String ALGORITMO = "HmacSHA256";
+    private static final int BYTES_FIRMA = 10;
+    private static final Pattern FIRMADO = Pattern.compile("^[0-9A-F]{24}-[0-9A-F]{" + (BYTES_FIRMA * 2) + "}$");
+    private static final Pattern LEGADO = Pattern.compile("^[0-9A-F]{32,128}$");
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+    private static final int LOTE_REFRESCO = 1000;
+
+    @Value("${app.certificados.codigos-legados:true}")
+    private boolean aceptarLegados;
+
+    @Value("${app.certificados.cache-ttl-segundos:300}")
+    private long ttlSegundos;
+
+    @Value("${app.certificados.cache-verificacion:10000}")
+    private int maxEntradas;
+
+    private final CertificadoRepositorio repo;
+    private final MongoTemplate mongoTemplate;
+    private final byte[] secreto;
+    private final byte[] secretoAnterior;
+
+    private final Map<String, Entrada> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entrada> e) {
+            return size() > maxEntradas;
+        }
+    };
+
+    public VerificacionCertificadoServicio(CertificadoRepositorio repo,
+                                           MongoTemplate mongoTemplate,
+                                           @Value("${app.certificados.codigo-secreto:}") String secreto,
+                                           @Value("${app.certificados.codigo-secreto-anterior:}") String secretoAnterior) {
+        if (secreto == null || secreto.isBlank()) {
+            throw new IllegalStateException("Falta app.certificados.codigo-secreto (CERTIFICADOS_CODIGO_SECRETO).");
+        }
+        if (secreto.length() < 32) {
+            throw new IllegalStateException("app.certificados.codigo-secreto debe tener al menos 32 caracteres.");
+        }
+        this.repo = repo;
+        this.mongoTemplate = mongoTemplate;
+        this.secreto = secreto.getBytes(StandardCharsets.UTF_8);
+        // Tras rotar el secreto, los códigos ya impresos siguen validando con el anterior
+        this.secretoAnterior = secretoAnterior == null || secretoAnterior.isBlank()
+                ? null : secretoAnterior.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Código firmado para el id (hexadecimal de ObjectId) de un certificado que aún no se guardó. */
+    public String generarCodigo(String idCertificado) {
+        String id = idCertificado.toUpperCase(Locale.ROOT);
+        return id + "-" + HEX.formatHex(firma(secreto, id));
+    }
+
+    /** Certificado del código; vacío si el código es inválido o no existe. */
+    public Optional<Certificado> verificar(String codigo) {
+        if (codigo == null) return Optional.empty();
+        String c = codigo.trim().toUpperCase(Locale.ROOT);
+
+        boolean firmado = FIRMADO.matcher(c).matches();
+        if (firmado) {
+            if (!firmaValida(c)) return Optional.empty();
+        } else if (!aceptarLegados || !LEGADO.matcher(c).matches()) {
+            return Optional.empty();
+        }
+
+        Instant ahora = Instant.now();
+        synchronized (cache) {
+            Entrada e = cache.get(c);
+            if (e != null && e.cargadaAt().plusSeconds(ttlSegundos).isAfter(ahora)) return Optional.of(e.certificado());
+        }
+
+        Optional<Certificado> encontrado = firmado
+                ? repo.findById(c.substring(0, 24).toLowerCase(Locale.ROOT))
+                        .filter(cert -> c.equals(cert.getCodigoVerificacion()))
+                : repo.findByCodigoVerificacion(c);
+        encontrado.ifPresent(cert -> {
+            synchronized (cache) {
+                cache.put(c, new Entrada(cert, ahora));
+            }
+        });
+        return encontrado;
+    }
+
+    public void invalidar(String codigo) {
+        if (codigo == null) return;
+        synchronized (cache) {
+            cache.remove(codigo.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /** Descarta lo que otro nodo revocó, borró o regeneró desde que se cacheó. */
+    @Scheduled(fixedDelayString = "${app.certificados.cache-refresco-ms:10000}")
+    public void refrescar() {
+        Map<String, Entrada> copia;
+        synchronized (cache) {
+            if (cache.isEmpty()) return;
+            copia = new HashMap<>(cache);
+        }
+        Map<String, Long> versiones = new HashMap<>();
+        List<String> ids = copia.values().stream().map(e -> e.certificado().getId()).distinct().toList();
+        for (int i = 0; i < ids.size(); i += LOTE_REFRESCO) {
+            Query q = new Query(Criteria.where("_id").in(ids.subList(i, Math.min(i + LOTE_REFRESCO, ids.size()))));
+            q.fields().include("_id").include("version");
+            for (Certificado c : mongoTemplate.find(q, Certificado.class)) versiones.put(c.getId(), c.getVersion());
+        }
+        synchronized (cache) {
+            copia.forEach((codigo, e) -> {
+                String id = e.certificado().getId();
+                // remove(clave, valor): no tocar lo que se recargó mientras se consultaba
+                if (!versiones.containsKey(id) || !Objects.equals(versiones.get(id), e.certificado().getVersion())) {
+                    cache.remove(codigo, e);
+                }
+            });
+        }
+    }
+
+    private boolean firmaValida(String codigo) {
+        String id = codigo.substring(0, 24);
+        byte[] recibida = HEX.parseHex(codigo.substring(25));
+        if (MessageDigest.isEqual(recibida, firma(secreto, id))) return true;
+        return secretoAnterior != null && MessageDigest.isEqual(recibida, firma(secretoAnterior, id));
+    }
+
+    private static byte[] firma(byte[] clave, String id) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITMO);
+            mac.init(new SecretKeySpec(clave, ALGORITMO));
+            byte[] h = mac.doFinal(("certificado:" + id).getBytes(StandardCharsets.US_ASCII));
+            byte[] corta = new byte[BYTES_FIRMA];
+            System.arraycopy(h, 0, corta, 0, BYTES_FIRMA);
+            return corta;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("No se pudo firmar el código del certificado.", ex);
+        }
+    }
+
+    private record Entrada(Certificado certificado, Instant cargadaAt) {}
+}
@@ -0,0 +1,257 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.DTO.EvaluacionEstudianteDTO;
+import com.cursosonline.cursosonlinejs.DTO.EvaluacionEstudianteDTO.OpcionEstudianteDTO;
+import com.cursosonline.cursosonlinejs.DTO.EvaluacionEstudianteDTO.PreguntaEstudianteDTO;
+import com.cursosonline.cursosonlinejs.Entidades.Curso;
+import com.cursosonline.cursosonlinejs.Entidades.Evaluacion;
+import com.cursosonline.cursosonlinejs.Entidades.Intento;
+import com.cursosonline.cursosonlinejs.Entidades.Leccion;
+import com.cursosonline.cursosonlinejs.Entidades.Modulo;
+import com.cursosonline.cursosonlinejs.Entidades.OpcionPregunta;
+import com.cursosonline.cursosonlinejs.Entidades.Pregunta;
+import com.cursosonline.cursosonlinejs.Repositorios.CursoRepositorio;
+import com.cursosonline.cursosonlinejs.Repositorios.EvaluacionRepositorio;
+import com.cursosonline.cursosonlinejs.Repositorios.LeccionRepositorio;
+import com.cursosonline.cursosonlinejs.Repositorios.ModuloRepositorio;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Vista pre-renderada de las evaluaciones para estudiantes.
+ *
+ * Cuando abre un examen programado cientos de estudiantes piden la misma evaluación
+ * a la vez. En vez de leerla de Mongo y quitarle las respuestas en cada petición,
+ * se arma una sola vez una vista inmutable (sin claves de corrección, con preguntas
+ * y opciones ya barajadas), se serializa a JSON y se sirve desde memoria.
+ *
+ * La carga es de un solo vuelo: si la vista no está en caché, solo una petición va a
+ * la base de datos y el resto espera ese mismo resultado. Las evaluaciones publicadas
+ * que se abren en los próximos minutos se precargan antes de disponibleDesde.
+ *
+ * Los cambios hechos en este nodo invalidan la vista al instante; los de otros nodos
+ * se ven al vencer el TTL (app.evaluaciones.vista.ttl-segundos).
+ */
+@Service
+public class VistaEvaluacionServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(VistaEvaluacionServicio.class);
+
+    @Value("${app.evaluaciones.vista.ttl-segundos:60}")
+    private long ttlSegundos;
+
+    @Value("${app.evaluaciones.vista.anticipacion-segundos:300}")
+    private long anticipacionSegundos;
+
+    private final EvaluacionRepositorio evaluacionRepositorio;
+    private final LeccionRepositorio leccionRepositorio;
+    private final ModuloRepositorio moduloRepositorio;
+    private final CursoRepositorio cursoRepositorio;
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, CompletableFuture<Vista>> cache = new ConcurrentHashMap<>();
+
+    public VistaEvaluacionServicio(EvaluacionRepositorio evaluacionRepositorio,
+                                   LeccionRepositorio leccionRepositorio,
+                                   ModuloRepositorio moduloRepositorio,
+                                   CursoRepositorio cursoRepositorio,
+                                   MongoTemplate mongoTemplate,
+                                   ObjectMapper objectMapper) {
+        this.evaluacionRepositorio = evaluacionRepositorio;
+        this.leccionRepositorio = leccionRepositorio;
+        this.moduloRepositorio = moduloRepositorio;
+        this.cursoRepositorio = cursoRepositorio;
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Vista cacheada de la evaluación; vacío si la evaluación (o su lección, módulo
+     * o curso) no existe.
+     */
+    public Optional<Vista> obtener(String idEvaluacion) {
+        if (idEvaluacion == null || idEvaluacion.isBlank()) return Optional.empty();
+
+        CompletableFuture<Vista> propia = new CompletableFuture<>();
+        CompletableFuture<Vista> actual = cache.compute(idEvaluacion, (k, f) -> vigente(f) ? f : propia);
+
+        if (actual == propia) {
+            // Esta petición es la que carga; las demás esperan el mismo futuro
+            try {
+                Vista v = cargar(idEvaluacion);
+                propia.complete(v);
+                // Lo que no existe no se cachea: puede crearse en cualquier momento
+                if (v == null) cache.remove(idEvaluacion, propia);
+            } catch (RuntimeException ex) {
+                propia.completeExceptionally(ex);
+                cache.remove(idEvaluacion, propia);
+                throw ex;
+            }
+        }
+
+        try {
+            return Optional.ofNullable(actual.join());
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) throw re;
+            throw ex;
+        }
+    }
+
+    /**
+     * Preguntas de un intento tal como las ve el estudiante, regeneradas desde su semilla
+     * sobre la evaluación cacheada; vacío si la evaluación ya no existe.
+     */
+    public Optional<List<PreguntaEstudianteDTO>> preguntasDelIntento(Intento intento) {
+        return obtener(intento.getIdEvaluacion()).map(v -> SorteoPreguntas
+                .generar(v.evaluacion(), intento.getSemilla()).stream()
+                .map(ps -> preguntaEstudiante(ps.pregunta(), ps.opciones()))
+                .toList());
+    }
+
+    /** Descarta la vista de la evaluación; la próxima lectura la vuelve a armar. */
+    public void invalidar(String idEvaluacion) {
+        if (idEvaluacion != null) cache.remove(idEvaluacion);
+    }
+
+    /** Arma la vista ahora, salvo que ya haya una vigente. */
+    public void calentar(String idEvaluacion) {
+        try {
+            obtener(idEvaluacion);
+        } catch (RuntimeException ex) {
+            log.warn("No se pudo precargar la evaluación {}", idEvaluacion, ex);
+        }
+    }
+
+    /**
+     * Precarga las evaluaciones publicadas que se abren pronto (o acaban de abrirse),
+     * para que el primer pico de peticiones ya encuentre la vista en memoria.
+     */
+    @Scheduled(fixedDelayString = "${app.evaluaciones.vista.calentar-ms:30000}")
+    public void calentarProximas() {
+        Instant ahora = Instant.now();
+        Duration anticipacion = Duration.ofSeconds(anticipacionSegundos);
+        Query q = new Query(Criteria.where("estado").is(Evaluacion.EstadoPublicacion.PUBLICADA)
+                .and("disponibleDesde").gte(ahora.minus(anticipacion)).lte(ahora.plus(anticipacion)));
+        q.fields().include("_id");
+        for (Evaluacion e : mongoTemplate.find(q, Evaluacion.class)) {
+            calentar(e.getId());
+        }
+    }
+
+    private boolean vigente(CompletableFuture<Vista> f) {
+        if (f == null) return false;
+        // Una carga en curso siempre se comparte
+        if (!f.isDone()) return true;
+        if (f.isCompletedExceptionally()) return false;
+        Vista v = f.getNow(null);
+        return v != null && v.cargadaAt().plusSeconds(ttlSegundos).isAfter(Instant.now());
+    }
+
+    // =========================================================
+    // CONSTRUCCIÓN DE LA VISTA
+    // =========================================================
+
+    private Vista cargar(String idEvaluacion) {
+        Evaluacion e = evaluacionRepositorio.findById(idEvaluacion).orElse(null);
+        if (e == null) return null;
+
+        Leccion leccion = leccionRepositorio.findById(e.getIdLeccion()).orElse(null);
+        if (leccion == null) return null;
+        Modulo modulo = moduloRepositorio.findById(leccion.getIdModulo()).orElse(null);
+        if (modulo == null) return null;
+        Curso curso = cursoRepositorio.findById(leccion.getIdCurso()).orElse(null);
+        if (curso == null) return null;
+
+        boolean archivado = curso.getEstado() == Curso.EstadoCurso.ARCHIVADO
+                || modulo.getEstado() == Modulo.EstadoModulo.ARCHIVADO
+                || leccion.getEstado() == Leccion.EstadoPublicacion.ARCHIVADO;
+
+        EvaluacionEstudianteDTO dto = vistaEstudiante(e);
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(dto);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("No se pudo serializar la evaluación " + idEvaluacion, ex);
+        }
+        String etag = "\"" + e.getId() + "-" + Objects.requireNonNullElse(e.getVersion(), 0L) + "\"";
+
+        return new Vista(e, dto, json, etag, archivado, curso.getIdInstructor(), Instant.now());
+    }
+
+    private static EvaluacionEstudianteDTO vistaEstudiante(Evaluacion e) {
+        // La semilla depende de la versión: el orden es estable mientras la evaluación no cambie
+        long semilla = ((long) e.getId().hashCode() << 32) ^ Objects.requireNonNullElse(e.getVersion(), 0L);
+
+        List<PreguntaEstudianteDTO> preguntas = new ArrayList<>();
+        boolean muestrea = SorteoPreguntas.muestrea(e);
+        // Con sorteo no se publica el banco: cada intento pide sus propias preguntas
+        if (!muestrea) {
+            for (SorteoPreguntas.PreguntaSorteada ps : SorteoPreguntas.generar(e, semilla)) {
+                preguntas.add(preguntaEstudiante(ps.pregunta(), ps.opciones()));
+            }
+        }
+        Integer total = muestrea ? e.getPreguntasPorIntento()
+                : e.getTotalPreguntas() != null ? e.getTotalPreguntas() : preguntas.size();
+
+        return new EvaluacionEstudianteDTO(
+                e.getId(),
+                e.getIdLeccion(),
+                e.getTitulo(),
+                e.getDescripcion(),
+                e.getTipo(),
+                e.getEstado(),
+                e.getPuntajeMaximo(),
+                e.getNotaAprobatoria(),
+                e.getMaxIntentos(),
+                e.getTimeLimitSeconds(),
+                e.getDisponibleDesde(),
+                e.getDisponibleHasta(),
+                e.getDueAt(),
+                total,
+                List.copyOf(preguntas)
+        );
+    }
+
+    private static PreguntaEstudianteDTO preguntaEstudiante(Pregunta p, List<OpcionPregunta> opciones) {
+        List<OpcionEstudianteDTO> out = new ArrayList<>(opciones.size());
+        for (OpcionPregunta o : opciones) {
+            out.add(new OpcionEstudianteDTO(o.getId(), o.getTexto()));
+        }
+        return new PreguntaEstudianteDTO(p.getId(), p.getEnunciado(), p.getTipo(), p.getPuntaje(), List.copyOf(out));
+    }
+
+    /**
+     * Vista inmutable de una evaluación. {@code evaluacion} es el documento completo
+     * (con respuestas) para uso interno y no debe modificarse ni devolverse al estudiante;
+     * {@code json} es {@code estudiante} ya serializado.
+     */
+    public record Vista(
+            Evaluacion evaluacion,
+            EvaluacionEstudianteDTO estudiante,
+            byte[] json,
+            String etag,
+            boolean contenidoArchivado,
+            String idInstructor,
+            Instant cargadaAt
+    ) {}
+}
@@ -0,0 +1,353 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.EventoWebhook;
+import com.cursosonline.cursosonlinejs.Entidades.EventoWebhook.EstadoEvento;
+import com.cursosonline.cursosonlinejs.Entidades.Pago;
+import com.cursosonline.cursosonlinejs.Entidades.Pago.EstadoPago;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Recepción y procesamiento de webhooks de pasarelas de pago.
+ *
+ * Recibir es verificar la firma (HMAC-SHA256 del cuerpo con el secreto de esa pasarela,
+ * app.webhooks.pagos.{gateway}.secreto) y hacer un insert en webhook_eventos con _id
+ * gateway:idEvento. Cada pasarela firma con su propio secreto, así que una no puede
+ * publicar eventos en nombre de otra ni ocupar sus ids. El pago del evento se busca
+ * solo entre los de esa pasarela, así que tampoco puede tocar los ajenos. Un reenvío
+ * choca con la clave y se confirma igual sin volver a procesarse. La respuesta sale en
+ * cuanto el insert termina; el resto ocurre en segundo plano.
+ *
+ * Procesar es aplicar la transición del pago con PagoServicio. Los eventos de un mismo
+ * pago van siempre al mismo carril (un hilo por carril, elegido por hash de clavePago),
+ * así que en un nodo se aplican en orden de llegada. Entre nodos, o si la pasarela
+ * manda los eventos desordenados, las reglas de transición lo absorben:
+ *
+ *  - Si el pago ya está en el estado del evento o en uno posterior, es un no-op.
+ *  - Si el evento todavía no aplica (reembolso de un pago que sigue PENDIENTE, pago
+ *    que aún no existe) se reintenta con espera; tras app.webhooks.max-intentos queda
+ *    IGNORADO.
+ *  - Si ya no puede aplicar (aprobación de un pago FALLIDO) queda IGNORADO.
+ *
+ * Un barrido periódico recoge lo pendiente: reintentos y eventos de un nodo que se
+ * cayó antes de procesarlos.
+ */
+@Service
+public class WebhookPagosServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookPagosServicio.class);
+
+    private static final int TAMANO_BARRIDO = 500;
+    private static final Duration ESPERA_MAXIMA = Duration.ofMinutes(5);
+
+    private static final Map<String, EstadoPago> TIPOS = Map.of(
+            "payment.approved", EstadoPago.APROBADO,
+            "payment.captured", EstadoPago.CAPTURADO,
+            "payment.failed", EstadoPago.FALLIDO,
+            "payment.refunded", EstadoPago.REEMBOLSADO,
+            "pago.aprobado", EstadoPago.APROBADO,
+            "pago.capturado", EstadoPago.CAPTURADO,
+            "pago.fallido", EstadoPago.FALLIDO,
+            "pago.reembolsado", EstadoPago.REEMBOLSADO);
+
+    private static final Pattern GATEWAY = Pattern.compile("^[a-z0-9_-]{1,40}$");
+
+    private static final Set<EstadoPago> SIN_CONFIRMAR = EnumSet.of(EstadoPago.PENDIENTE, EstadoPago.AUTORIZADO);
+
+    @Value("${app.webhooks.lease-segundos:60}")
+    private long leaseSegundos;
+
+    @Value("${app.webhooks.max-intentos:8}")
+    private int maxIntentos;
+
+    private final MongoTemplate mongoTemplate;
+    private final PagoServicio pagoServicio;
+    private final ObjectMapper objectMapper;
+    private final Environment env;
+
+    private final String nodo = UUID.randomUUID().toString();
+    private final ExecutorService[] carriles;
+
+    public WebhookPagosServicio(MongoTemplate mongoTemplate,
+                                PagoServicio pagoServicio,
+                                ObjectMapper objectMapper,
+                                Environment env,
+                                @Value("${app.webhooks.carriles:4}") int numCarriles) {
+        this.mongoTemplate = mongoTemplate;
+        this.pagoServicio = pagoServicio;
+        this.objectMapper = objectMapper;
+        this.env = env;
+        this.carriles = new ExecutorService[Math.max(1, numCarriles)];
+        for (int i = 0; i < carriles.length; i++) {
+            String nombre = "webhook-pagos-" + i;
+            carriles[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, nombre);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void alApagar() {
+        for (ExecutorService c : carriles) c.shutdown();
+    }
+
+    // =========================================================
+    // RECEPCIÓN
+    // =========================================================
+
+    /**
+     * Guarda el evento y lo encola.
+     *
+     * @return false si ya se había recibido (reenvío)
+     * @throws SecurityException si la firma no es válida o la pasarela no tiene secreto configurado
+     * @throws IllegalArgumentException si el cuerpo no es JSON o le falta el id del evento
+     */
+    public boolean recibir(String gateway, String cuerpo, String firma) {
+        verificarFirma(gateway, cuerpo, firma);
+
+        JsonNode raiz;
+        try {
+            raiz = objectMapper.readTree(cuerpo);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("El cuerpo no es JSON válido.");
+        }
+        String idEvento = texto(raiz, "id");
+        if (idEvento == null) throw new IllegalArgumentException("Falta el id del evento.");
+        JsonNode datos = raiz.path("data");
+
+        EventoWebhook e = new EventoWebhook();
+        e.setId(gateway + ":" + idEvento);
+        e.setGateway(gateway);
+        e.setIdEventoGateway(idEvento);
+        e.setTipo(texto(raiz, "type"));
+        e.setIdPago(texto(datos.path("metadata"), "idPago"));
+        e.setGatewayPaymentId(texto(datos, "paymentId"));
+        e.setAuthorizationCode(texto(datos, "authorizationCode"));
+        e.setReciboUrl(texto(datos, "receiptUrl"));
+        e.setClavePago(gateway + ":" + (e.getIdPago() != null ? e.getIdPago() : e.getGatewayPaymentId()));
+        e.setCuerpo(cuerpo);
+        Instant ahora = Instant.now();
+        e.setRecibidoAt(ahora);
+        e.setEstado(EstadoEvento.PENDIENTE);
+        e.setProximoIntentoAt(ahora);
+        try {
+            mongoTemplate.insert(e);
+        } catch (DuplicateKeyException ex) {
+            return false;
+        }
+        encolar(e.getId(), e.getClavePago());
+        return true;
+    }
+
+    private void verificarFirma(String gateway, String cuerpo, String firma) {
+        if (gateway == null || !GATEWAY.matcher(gateway).matches()) {
+            throw new IllegalArgumentException("Pasarela inválida.");
+        }
+        String secreto = env.getProperty("app.webhooks.pagos." + gateway + ".secreto");
+        if (secreto == null || secreto.isBlank()) {
+            throw new SecurityException("Webhooks de pago no configurados para " + gateway + ".");
+        }
+        if (firma == null || firma.isBlank()) throw new SecurityException("Falta la firma.");
+        byte[] esperada;
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secreto.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            esperada = mac.doFinal(cuerpo.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("No se pudo calcular la firma.", ex);
+        }
+        byte[] recibida;
+        try {
+            recibida = HexFormat.of().parseHex(firma.trim().toLowerCase());
+        } catch (IllegalArgumentException ex) {
+            throw new SecurityException("Firma inválida.");
+        }
+        if (!MessageDigest.isEqual(esperada, recibida)) throw new SecurityException("Firma inválida.");
+    }
+
+    private static String texto(JsonNode n, String campo) {
+        JsonNode v = n.path(campo);
+        return v.isTextual() && !v.asText().isBlank() ? v.asText() : null;
+    }
+
+    // =========================================================
+    // PROCESAMIENTO
+    // =========================================================
+
+    private void encolar(String idEvento, String clavePago) {
+        int carril = Math.floorMod(clavePago.hashCode(), carriles.length);
+        carriles[carril].execute(() -> {
+            try {
+                procesar(idEvento);
+            } catch (RuntimeException ex) {
+                log.error("Error procesando el webhook {}", idEvento, ex);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.webhooks.barrido-ms:5000}")
+    public void barrer() {
+        Instant ahora = Instant.now();
+        Query q = new Query(Criteria.where("estado").is(EstadoEvento.PENDIENTE)
+                .and("proximoIntentoAt").lte(ahora)
+                .orOperator(Criteria.where("leaseHasta").is(null), Criteria.where("leaseHasta").lte(ahora)))
+                .with(Sort.by("recibidoAt"))
+                .limit(TAMANO_BARRIDO);
+        q.fields().include("clavePago");
+        List<EventoWebhook> pendientes = mongoTemplate.find(q, EventoWebhook.class);
+        for (EventoWebhook e : pendientes) encolar(e.getId(), e.getClavePago());
+    }
+
+    private void procesar(String idEvento) {
+        Instant ahora = Instant.now();
+        EventoWebhook e = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(idEvento)
+                        .and("estado").is(EstadoEvento.PENDIENTE)
+                        .and("proximoIntentoAt").lte(ahora)
+                        .orOperator(Criteria.where("leaseHasta").is(null), Criteria.where("leaseHasta").lte(ahora))),
+                new Update().set("dueno", nodo).set("leaseHasta", ahora.plusSeconds(leaseSegundos)),
+                FindAndModifyOptions.options().returnNew(true),
+                EventoWebhook.class);
+        // Ya procesado, reservado por otro nodo o con reintento más adelante
+        if (e == null) return;
+
+        Resultado r;
+        try {
+            r = aplicar(e);
+        } catch (IllegalStateException ex) {
+            // El estado cambió entre la lectura y la transición: se reevalúa
+            r = Resultado.reintentar(ex.getMessage());
+        }
+        cerrar(e, r);
+    }
+
+    private Resultado aplicar(EventoWebhook e) {
+        EstadoPago destino = e.getTipo() == null ? null : TIPOS.get(e.getTipo().toLowerCase());
+        if (destino == null) return Resultado.ignorar("Tipo de evento no soportado: " + e.getTipo());
+
+        Pago p = buscarPago(e);
+        if (p == null) return Resultado.reintentar("Pago no encontrado.");
+        EstadoPago actual = p.getEstado();
+
+        switch (destino) {
+            case APROBADO, CAPTURADO -> {
+                if (SIN_CONFIRMAR.contains(actual)) {
+                    if (destino == EstadoPago.APROBADO) {
+                        pagoServicio.marcarAprobado(p.getId(), e.getGatewayPaymentId(), e.getAuthorizationCode(), e.getReciboUrl(), true);
+                    } else {
+                        pagoServicio.marcarCapturado(p.getId(), e.getGatewayPaymentId(), e.getAuthorizationCode(), e.getReciboUrl(), true);
+                    }
+                    return Resultado.procesado(actual + " -> " + destino);
+                }
+                if (destino == EstadoPago.CAPTURADO && actual == EstadoPago.APROBADO) {
+                    pagoServicio.registrarCaptura(p.getId(), e.getGatewayPaymentId());
+                    return Resultado.procesado("APROBADO -> CAPTURADO");
+                }
+                // Confirmación repetida o que llega después de una posterior (captura antes que aprobación)
+                if (actual == EstadoPago.APROBADO || actual == EstadoPago.CAPTURADO || actual == EstadoPago.REEMBOLSADO) {
+                    return Resultado.procesado("Sin cambios: el pago ya está " + actual);
+                }
+                return Resultado.ignorar("El pago está " + actual + "; no se puede confirmar.");
+            }
+            case FALLIDO -> {
+                if (SIN_CONFIRMAR.contains(actual)) {
+                    pagoServicio.marcarFallido(p.getId(), e.getGatewayPaymentId());
+                    return Resultado.procesado(actual + " -> FALLIDO");
+                }
+                if (actual == EstadoPago.FALLIDO) return Resultado.procesado("Sin cambios: el pago ya está FALLIDO");
+                return Resultado.ignorar("El pago está " + actual + "; el fallo llegó tarde.");
+            }
+            case REEMBOLSADO -> {
+                if (actual == EstadoPago.APROBADO || actual == EstadoPago.CAPTURADO) {
+                    pagoServicio.marcarReembolsado(p.getId(), e.getGatewayPaymentId());
+                    return Resultado.procesado(actual + " -> REEMBOLSADO");
+                }
+                if (actual == EstadoPago.REEMBOLSADO) return Resultado.procesado("Sin cambios: el pago ya está REEMBOLSADO");
+                // Puede que la confirmación todavía no haya llegado
+                if (SIN_CONFIRMAR.contains(actual)) return Resultado.reintentar("El pago aún no está confirmado.");
+                return Resultado.ignorar("El pago está " + actual + "; no se puede reembolsar.");
+            }
+            default -> {
+                return Resultado.ignorar("Tipo de evento no soportado: " + e.getTipo());
+            }
+        }
+    }
+
+    private Pago buscarPago(EventoWebhook e) {
+        if (e.getIdPago() != null) {
+            Pago p = mongoTemplate.findById(e.getIdPago(), Pago.class);
+            // metadata.idPago lo pone quien firma: un id de otra pasarela no sirve
+            if (p != null && Objects.equals(p.getGateway(), e.getGateway())) return p;
+        }
+        if (e.getGatewayPaymentId() == null) return null;
+        return mongoTemplate.findOne(new Query(Criteria.where("gateway").is(e.getGateway())
+                .and("gatewayPaymentId").is(e.getGatewayPaymentId())), Pago.class);
+    }
+
+    private void cerrar(EventoWebhook e, Resultado r) {
+        Instant ahora = Instant.now();
+        int intentos = e.getIntentos() + 1;
+        Update u = new Update()
+                .set("intentos", intentos)
+                .set("resultado", r.mensaje())
+                .unset("dueno")
+                .unset("leaseHasta");
+        if (r.reintentar() && intentos < maxIntentos) {
+            u.set("proximoIntentoAt", ahora.plus(espera(intentos)));
+        } else {
+            u.set("estado", r.reintentar() || r.ignorar() ? EstadoEvento.IGNORADO : EstadoEvento.PROCESADO);
+            u.set("procesadoAt", ahora);
+            if (r.reintentar() || r.ignorar()) {
+                log.warn("Webhook {} ignorado: {}", e.getId(), r.mensaje());
+            }
+        }
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(e.getId()).and("dueno").is(nodo)),
+                u, EventoWebhook.class);
+    }
+
+    private static Duration espera(int intentos) {
+        Duration d = Duration.ofSeconds(1L << Math.min(intentos, 20));
+        return d.compareTo(ESPERA_MAXIMA) > 0 ? ESPERA_MAXIMA : d;
+    }
+
+    private record Resultado(String mensaje, boolean reintentar, boolean ignorar) {
+        static Resultado procesado(String m) { return new Resultado(m, false, false); }
+        static Resultado reintentar(String m) { return new Resultado(m, true, false); }
+        static Resultado ignorar(String m) { return new Resultado(m, false, true); }
+    }
+}
@@ -2,8 +2,10 @@ package com.cursosonline.cursosonlinejs;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
 
 @SpringBootTest
+@Import(MongoPruebasConfig.class)
 class CursosonlinejsApplicationTests {
 
 	@Test
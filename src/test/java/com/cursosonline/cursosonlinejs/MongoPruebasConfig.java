@@ -0,0 +1,24 @@
+package com.cursosonline.cursosonlinejs;
+
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * Mongo en un contenedor para las pruebas que levantan el contexto (@Import en cada una).
+ *
+ * @ServiceConnection reemplaza la conexión de spring.data.mongodb.uri, así que ninguna
+ * prueba escribe en la base del application.properties principal. El contenedor es un
+ * replica set de un nodo y se comparte entre las clases que usan el mismo contexto.
+ */
+@TestConfiguration(proxyBeanMethods = false)
+public class MongoPruebasConfig {
+
+    @Bean
+    @ServiceConnection
+    MongoDBContainer mongoDBContainer() {
+        return new MongoDBContainer(DockerImageName.parse("mongo:7.0"));
+    }
+}
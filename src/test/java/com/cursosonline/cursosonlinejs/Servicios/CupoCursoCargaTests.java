@@ -0,0 +1,97 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.CupoCurso;
+import com.cursosonline.cursosonlinejs.Entidades.Curso;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import com.cursosonline.cursosonlinejs.MongoPruebasConfig;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Carga sobre la reserva de cupo: muchas inscripciones a la vez contra un curso chico. */
+@SpringBootTest
+@Import(MongoPruebasConfig.class)
+class CupoCursoCargaTests {
+
+    private static final int CUPO = 50;
+    private static final int SOLICITUDES = 1000;
+
+    @Autowired
+    private InscripcionServicio inscripcionServicio;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private Curso curso;
+
+    @BeforeEach
+    void crearCurso() {
+        Curso c = new Curso();
+        c.setTitulo("Curso de carga " + new ObjectId().toHexString());
+        c.setCategoria("pruebas");
+        c.setIdioma("es");
+        c.setIdInstructor("instructor-pruebas");
+        c.setEstado(Curso.EstadoCurso.PUBLICADO);
+        c.setCupoMaximo(CUPO);
+        curso = mongoTemplate.insert(c);
+    }
+
+    @AfterEach
+    void limpiar() {
+        mongoTemplate.remove(new Query(Criteria.where("idCurso").is(curso.getId())), Inscripcion.class);
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(curso.getId())), CupoCurso.class);
+        mongoTemplate.remove(curso);
+    }
+
+    @Test
+    void milSolicitudesSimultaneasNoSobrevendenElCupo() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(SOLICITUDES);
+        CountDownLatch salida = new CountDownLatch(1);
+        AtomicInteger aceptadas = new AtomicInteger();
+        AtomicInteger rechazadas = new AtomicInteger();
+        List<Future<?>> tareas = new ArrayList<>();
+        try {
+            for (int i = 0; i < SOLICITUDES; i++) {
+                String idEstudiante = "estudiante-" + i;
+                tareas.add(pool.submit(() -> {
+                    salida.await();
+                    try {
+                        inscripcionServicio.inscribir(curso, idEstudiante);
+                        aceptadas.incrementAndGet();
+                    } catch (IllegalStateException ex) {
+                        rechazadas.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            salida.countDown();
+            for (Future<?> f : tareas) f.get(2, TimeUnit.MINUTES);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(CUPO, aceptadas.get());
+        assertEquals(SOLICITUDES - CUPO, rechazadas.get());
+        assertEquals(CUPO, mongoTemplate.count(
+                new Query(Criteria.where("idCurso").is(curso.getId())), Inscripcion.class));
+        assertEquals(CUPO, mongoTemplate.findById(curso.getId(), CupoCurso.class).getOcupados().intValue());
+    }
+}
@@ -0,0 +1,135 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.CupoCurso;
+import com.cursosonline.cursosonlinejs.Entidades.Curso;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.Inscripcion.EstadoInscripcion;
+import com.cursosonline.cursosonlinejs.Entidades.Pago;
+import com.cursosonline.cursosonlinejs.MongoPruebasConfig;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Import(MongoPruebasConfig.class)
+class InscripcionServicioTests {
+
+    private static final int CUPO = 50;
+
+    @Autowired
+    private InscripcionServicio inscripcionServicio;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private Curso curso;
+
+    @BeforeEach
+    void crearCurso() {
+        Curso c = new Curso();
+        c.setTitulo("Curso de prueba " + new ObjectId().toHexString());
+        c.setCategoria("pruebas");
+        c.setIdioma("es");
+        c.setIdInstructor("instructor-pruebas");
+        c.setEstado(Curso.EstadoCurso.PUBLICADO);
+        c.setCupoMaximo(CUPO);
+        curso = mongoTemplate.insert(c);
+    }
+
+    @AfterEach
+    void limpiar() {
+        List<String> ids = mongoTemplate.find(new Query(Criteria.where("idCurso").is(curso.getId())), Inscripcion.class)
+                .stream().map(Inscripcion::getId).toList();
+        mongoTemplate.remove(new Query(Criteria.where("idInscripcion").in(ids)), Pago.class);
+        mongoTemplate.remove(new Query(Criteria.where("idCurso").is(curso.getId())), Inscripcion.class);
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(curso.getId())), CupoCurso.class);
+        mongoTemplate.remove(curso);
+    }
+
+    @Test
+    void elBarridoRespetaPagosEnCursoEImportadas() {
+        Inscripcion sinPago = inscribirVencida("sin-pago", null);
+        Inscripcion conPago = inscribirVencida("con-pago", null);
+        Inscripcion importada = inscribirVencida("importada", ImportacionInscripcionesServicio.ORIGEN);
+        crearPago(conPago.getId(), Pago.EstadoPago.APROBADO);
+
+        inscripcionServicio.cancelarPagosVencidos(curso.getId());
+
+        assertEquals(EstadoInscripcion.CANCELADA, estado(sinPago.getId()));
+        assertEquals(EstadoInscripcion.PENDIENTE_PAGO, estado(conPago.getId()));
+        assertEquals(EstadoInscripcion.PENDIENTE_PAGO, estado(importada.getId()));
+        assertEquals(2, mongoTemplate.findById(curso.getId(), CupoCurso.class).getOcupados().intValue());
+    }
+
+    @Test
+    void unPagoTardioReactivaLaInscripcionSiQuedaCupo() {
+        Inscripcion insc = inscribirVencida("tardio", null);
+        inscripcionServicio.cancelarPagosVencidos(curso.getId());
+        assertEquals(EstadoInscripcion.CANCELADA, estado(insc.getId()));
+
+        Pago pago = crearPago(insc.getId(), Pago.EstadoPago.APROBADO);
+        assertTrue(inscripcionServicio.activarPorPago(insc.getId(), pago.getId(), true));
+
+        assertEquals(EstadoInscripcion.ACTIVA, estado(insc.getId()));
+        assertEquals(1, mongoTemplate.findById(curso.getId(), CupoCurso.class).getOcupados().intValue());
+        assertNull(mongoTemplate.findById(pago.getId(), Pago.class).getReembolsoPendienteAt());
+    }
+
+    @Test
+    void unPagoTardioSinCupoQuedaPendienteDeReembolso() {
+        Inscripcion insc = inscribirVencida("tardio", null);
+        inscripcionServicio.cancelarPagosVencidos(curso.getId());
+        for (int i = 0; i < CUPO; i++) inscripcionServicio.inscribir(curso, "otro-" + i);
+
+        Pago pago = crearPago(insc.getId(), Pago.EstadoPago.APROBADO);
+        assertFalse(inscripcionServicio.activarPorPago(insc.getId(), pago.getId(), true));
+
+        assertEquals(EstadoInscripcion.CANCELADA, estado(insc.getId()));
+        assertEquals(CUPO, mongoTemplate.findById(curso.getId(), CupoCurso.class).getOcupados().intValue());
+        assertNotNull(mongoTemplate.findById(pago.getId(), Pago.class).getReembolsoPendienteAt());
+    }
+
+    // =========================================================
+    // HELPERS
+    // =========================================================
+
+    /** Inscripción PENDIENTE_PAGO creada hace más del plazo de pago. */
+    private Inscripcion inscribirVencida(String idEstudiante, String origen) {
+        Inscripcion insc = inscripcionServicio.inscribir(curso, idEstudiante);
+        Update u = new Update().set("createdAt", Instant.now().minus(Duration.ofDays(2)));
+        if (origen != null) u.set("origen", origen);
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(insc.getId())), u, Inscripcion.class);
+        return insc;
+    }
+
+    private Pago crearPago(String idInscripcion, Pago.EstadoPago estado) {
+        Pago p = new Pago();
+        p.setIdInscripcion(idInscripcion);
+        p.setUserId("usuario-pruebas");
+        p.setMonto(BigDecimal.TEN);
+        p.setMoneda("USD");
+        p.setMetodo(Pago.MetodoPago.TARJETA);
+        p.setEstado(estado);
+        p.setUpdatedAt(Instant.now());
+        return mongoTemplate.insert(p);
+    }
+
+    private EstadoInscripcion estado(String idInscripcion) {
+        return mongoTemplate.findById(idInscripcion, Inscripcion.class).getEstado();
+    }
+}
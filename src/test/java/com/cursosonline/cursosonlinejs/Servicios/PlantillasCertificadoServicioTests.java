@@ -0,0 +1,148 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.Certificado;
+import com.cursosonline.cursosonlinejs.MongoPruebasConfig;
+import com.google.zxing.qrcode.decoder.Decoder;
+import com.lowagie.text.pdf.BaseFont;
+import com.lowagie.text.pdf.PRTokeniser;
+import com.lowagie.text.pdf.PdfContentParser;
+import com.lowagie.text.pdf.PdfDictionary;
+import com.lowagie.text.pdf.PdfLiteral;
+import com.lowagie.text.pdf.PdfName;
+import com.lowagie.text.pdf.PdfNumber;
+import com.lowagie.text.pdf.PdfObject;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfString;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Import(MongoPruebasConfig.class)
+class PlantillasCertificadoServicioTests {
+
+    private static final String CODIGO = "665FA1C2E4B0C72A8F123456-9A1B2C3D4E5F60718293";
+    private static final String URL = "https://cursos.example.com/verificar/" + CODIGO;
+    // Caja del QR en la plantilla clásica
+    private static final float QR_X = 690, QR_Y = 56, QR_LADO = 100;
+
+    @Autowired
+    private PlantillasCertificadoServicio plantillasServicio;
+
+    @Test
+    void elCertificadoClasicoSeLeeCompletoConSuQr() throws Exception {
+        Certificado c = certificado("María José Fernández (Pepa) de la Santísima Trinidad Núñez-Ibáñez");
+
+        Pagina pdf = leer(plantillasServicio.renderizar(c));
+
+        List<String> textos = pdf.textos.stream().map(Texto::texto).toList();
+        assertTrue(textos.contains("CERTIFICADO DE FINALIZACIÓN"), "título: " + textos);
+        assertTrue(textos.contains(c.getEstudianteNombre()), "estudiante: " + textos);
+        assertTrue(textos.contains("Programación funcional — nivel (II)"), "curso: " + textos);
+        assertTrue(textos.contains("Duración: 40 horas"), "horas: " + textos);
+        assertTrue(textos.contains("Nota final: 9.5"), "nota: " + textos);
+        assertTrue(textos.contains("Código: " + CODIGO), "código: " + textos);
+
+        // El nombre largo se achica para no pasar de anchoMaximo (700 puntos en la plantilla)
+        Texto nombre = pdf.textos.stream()
+                .filter(t -> t.texto().equals(c.getEstudianteNombre())).findFirst().orElseThrow();
+        assertTrue(nombre.tamano() < 36f);
+        BaseFont fuente = BaseFont.createFont(nombre.fuente(), BaseFont.CP1252, BaseFont.NOT_EMBEDDED);
+        assertTrue(fuente.getWidthPoint(nombre.texto(), nombre.tamano()) <= 700.01f);
+
+        // Sin fondo, firma ni sello el PDF sale igual, sin XObjects
+        assertFalse(pdf.conXObjects);
+        assertEquals(URL, new Decoder().decode(pdf.qr()).getText());
+    }
+
+    @Test
+    void unaPlantillaConIdInvalidoSeRechaza() {
+        Certificado c = certificado("Ana");
+        c.setTemplateId("../secretos");
+        assertThrows(IllegalArgumentException.class, () -> plantillasServicio.renderizar(c));
+    }
+
+    // ===== HELPERS =====
+
+    private static Certificado certificado(String estudiante) {
+        Certificado c = new Certificado();
+        c.setEstudianteNombre(estudiante);
+        c.setCursoTitulo("Programación funcional — nivel (II)");
+        c.setInstructorNombre("Laura Gómez");
+        c.setEmitidoEn(Instant.parse("2026-03-14T15:00:00Z"));
+        c.setCodigoVerificacion(CODIGO);
+        c.setHoras(40);
+        c.setNotaFinal(new BigDecimal("9.50"));
+        c.setPublicUrl(URL);
+        c.setQrData(URL);
+        return c;
+    }
+
+    private record Texto(String fuente, float tamano, String texto) {}
+
+    private record Tramo(float x, float y, float ancho, float alto) {}
+
+    /** Textos de la página y tramos negros del QR, leídos del content stream con OpenPDF. */
+    private static final class Pagina {
+        final List<Texto> textos = new ArrayList<>();
+        final List<Tramo> tramosQr = new ArrayList<>();
+        boolean conXObjects;
+
+        /** Módulos [fila][columna] sin la zona de silencio (4 módulos). */
+        boolean[][] qr() {
+            float mod = (float) tramosQr.stream().mapToDouble(Tramo::alto).min().orElseThrow();
+            int n = Math.round(QR_LADO / mod) - 8;
+            boolean[][] m = new boolean[n][n];
+            for (Tramo t : tramosQr) {
+                int fila = Math.round((QR_Y + QR_LADO - t.y()) / mod) - 5;
+                int desde = Math.round((t.x() - QR_X) / mod) - 4;
+                for (int i = 0; i < Math.round(t.ancho() / mod); i++) m[fila][desde + i] = true;
+            }
+            return m;
+        }
+    }
+
+    private static Pagina leer(byte[] pdf) throws Exception {
+        PdfReader reader = new PdfReader(pdf);
+        PdfDictionary recursos = reader.getPageN(1).getAsDict(PdfName.RESOURCES);
+        PdfDictionary fuentes = recursos.getAsDict(PdfName.FONT);
+        Pagina p = new Pagina();
+        p.conXObjects = recursos.getAsDict(PdfName.XOBJECT) != null;
+
+        PdfContentParser parser = new PdfContentParser(new PRTokeniser(reader.getPageContent(1)));
+        List<PdfObject> operandos = new ArrayList<>();
+        String fuente = null;
+        float tamano = 0;
+        boolean negro = false;
+        while (!parser.parse(operandos).isEmpty()) {
+            String op = ((PdfLiteral) operandos.get(operandos.size() - 1)).toString();
+            switch (op) {
+                case "Tf" -> {
+                    fuente = fuentes.getAsDict((PdfName) operandos.get(0)).getAsName(PdfName.BASEFONT).toString().substring(1);
+                    tamano = ((PdfNumber) operandos.get(1)).floatValue();
+                }
+                case "Tj" -> p.textos.add(new Texto(fuente, tamano,
+                        new String(((PdfString) operandos.get(0)).getBytes(), Charset.forName("windows-1252"))));
+                case "rg" -> negro = operandos.subList(0, 3).stream().allMatch(o -> ((PdfNumber) o).floatValue() == 0f);
+                case "re" -> {
+                    float[] v = new float[4];
+                    for (int i = 0; i < 4; i++) v[i] = ((PdfNumber) operandos.get(i)).floatValue();
+                    if (negro && v[0] >= QR_X && v[0] + v[2] <= QR_X + QR_LADO + 0.01f) {
+                        p.tramosQr.add(new Tramo(v[0], v[1], v[2], v[3]));
+                    }
+                }
+                default -> { }
+            }
+        }
+        return p;
+    }
+}
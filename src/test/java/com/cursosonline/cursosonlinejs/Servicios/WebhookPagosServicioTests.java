@@ -0,0 +1,248 @@
+package com.cursosonline.cursosonlinejs.Servicios;
+
+import com.cursosonline.cursosonlinejs.Entidades.EventoWebhook;
+import com.cursosonline.cursosonlinejs.Entidades.EventoWebhook.EstadoEvento;
+import com.cursosonline.cursosonlinejs.Entidades.Pago;
+import com.cursosonline.cursosonlinejs.Entidades.Pago.EstadoPago;
+import com.cursosonline.cursosonlinejs.MongoPruebasConfig;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "app.webhooks.pagos.pruebas.secreto=" + WebhookPagosServicioTests.SECRETO,
+        "app.webhooks.pagos.otra.secreto=" + WebhookPagosServicioTests.SECRETO_OTRA
+})
+@Import(MongoPruebasConfig.class)
+class WebhookPagosServicioTests {
+
+    static final String SECRETO = "secreto-pasarela-de-pruebas";
+    static final String SECRETO_OTRA = "secreto-de-otra-pasarela";
+    private static final String GATEWAY = "pruebas";
+    private static final String GATEWAY_OTRA = "otra";
+    private static final int RAFAGA = 20;
+    private static final Duration ESPERA = Duration.ofSeconds(30);
+
+    @Autowired
+    private WebhookPagosServicio webhookPagosServicio;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private PasarelaSimulada pasarela;
+    private Pago pago;
+
+    @BeforeEach
+    void crearPago() {
+        pasarela = new PasarelaSimulada(SECRETO);
+        Pago p = new Pago();
+        p.setUserId("usuario-pruebas");
+        p.setMonto(BigDecimal.TEN);
+        p.setMoneda("USD");
+        p.setMetodo(Pago.MetodoPago.TARJETA);
+        p.setEstado(EstadoPago.PENDIENTE);
+        p.setGateway(GATEWAY);
+        p.setGatewayPaymentId("pi_" + new ObjectId().toHexString());
+        pago = mongoTemplate.insert(p);
+    }
+
+    @AfterEach
+    void limpiar() {
+        mongoTemplate.remove(new Query(Criteria.where("gatewayPaymentId").is(pago.getGatewayPaymentId())), EventoWebhook.class);
+        mongoTemplate.remove(pago);
+    }
+
+    @Test
+    void unReenvioSeConfirmaSinVolverAProcesarse() {
+        PasarelaSimulada.Envio aprobado = pasarela.evento("payment.approved", pago);
+
+        assertTrue(webhookPagosServicio.recibir(GATEWAY, aprobado.cuerpo(), aprobado.firma()));
+        esperar(aprobado.id(), e -> e.getEstado() == EstadoEvento.PROCESADO);
+
+        assertFalse(webhookPagosServicio.recibir(GATEWAY, aprobado.cuerpo(), aprobado.firma()));
+        assertEquals(1, mongoTemplate.count(
+                new Query(Criteria.where("gatewayPaymentId").is(pago.getGatewayPaymentId())), EventoWebhook.class));
+        assertEquals(1, evento(aprobado.id()).getIntentos());
+        assertEquals(EstadoPago.APROBADO, estadoPago());
+    }
+
+    @Test
+    void unaRafagaDeReenviosSimultaneosSeProcesaUnaSolaVez() throws Exception {
+        PasarelaSimulada.Envio aprobado = pasarela.evento("payment.approved", pago);
+        ExecutorService pool = Executors.newFixedThreadPool(RAFAGA);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<Boolean>> envios = new ArrayList<>();
+        try {
+            for (int i = 0; i < RAFAGA; i++) {
+                envios.add(pool.submit(() -> {
+                    salida.await();
+                    return webhookPagosServicio.recibir(GATEWAY, aprobado.cuerpo(), aprobado.firma());
+                }));
+            }
+            salida.countDown();
+            int nuevos = 0;
+            for (Future<Boolean> f : envios) if (f.get(30, TimeUnit.SECONDS)) nuevos++;
+            assertEquals(1, nuevos);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        esperar(aprobado.id(), e -> e.getEstado() == EstadoEvento.PROCESADO);
+        assertEquals(1, mongoTemplate.count(
+                new Query(Criteria.where("gatewayPaymentId").is(pago.getGatewayPaymentId())), EventoWebhook.class));
+        assertEquals(1, evento(aprobado.id()).getIntentos());
+        assertEquals(EstadoPago.APROBADO, estadoPago());
+    }
+
+    @Test
+    void laCapturaDeUnPagoAprobadoLoPasaACapturado() {
+        enviarYEsperar(pasarela.evento("payment.approved", pago));
+        assertEquals(EstadoPago.APROBADO, estadoPago());
+
+        enviarYEsperar(pasarela.evento("payment.captured", pago));
+        assertEquals(EstadoPago.CAPTURADO, estadoPago());
+    }
+
+    @Test
+    void unaAprobacionQueLlegaDespuesDeLaCapturaNoCambiaNada() {
+        enviarYEsperar(pasarela.evento("payment.captured", pago));
+        PasarelaSimulada.Envio aprobado = pasarela.evento("payment.approved", pago);
+        enviarYEsperar(aprobado);
+
+        assertEquals(EstadoPago.CAPTURADO, estadoPago());
+        assertTrue(evento(aprobado.id()).getResultado().startsWith("Sin cambios"));
+    }
+
+    @Test
+    void unReembolsoAntesDeLaAprobacionSeReintentaHastaQueAplica() {
+        PasarelaSimulada.Envio reembolso = pasarela.evento("payment.refunded", pago);
+        assertTrue(webhookPagosServicio.recibir(GATEWAY, reembolso.cuerpo(), reembolso.firma()));
+        esperar(reembolso.id(), e -> e.getIntentos() == 1);
+        assertEquals(EstadoEvento.PENDIENTE, evento(reembolso.id()).getEstado());
+        assertEquals(EstadoPago.PENDIENTE, estadoPago());
+
+        enviarYEsperar(pasarela.evento("payment.approved", pago));
+        assertEquals(EstadoPago.APROBADO, estadoPago());
+
+        // Adelanta el reintento en lugar de esperar el backoff
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(reembolso.id())),
+                new Update().set("proximoIntentoAt", Instant.now()), EventoWebhook.class);
+        webhookPagosServicio.barrer();
+        esperar(reembolso.id(), e -> e.getEstado() == EstadoEvento.PROCESADO);
+        assertEquals(EstadoPago.REEMBOLSADO, estadoPago());
+    }
+
+    @Test
+    void unaPasarelaNoPuedeFirmarEventosDeOtra() {
+        PasarelaSimulada.Envio falso = new PasarelaSimulada(SECRETO_OTRA).evento("payment.approved", pago);
+
+        assertThrows(SecurityException.class,
+                () -> webhookPagosServicio.recibir(GATEWAY, falso.cuerpo(), falso.firma()));
+        assertThrows(SecurityException.class,
+                () -> webhookPagosServicio.recibir("sin-secreto", falso.cuerpo(), falso.firma()));
+        assertEquals(EstadoPago.PENDIENTE, estadoPago());
+    }
+
+    @Test
+    void unaPasarelaNoPuedeAprobarElPagoDeOtraConSuId() {
+        // Firma válida de "otra", pero metadata.idPago apunta al pago de "pruebas"
+        PasarelaSimulada.Envio ajeno = new PasarelaSimulada(SECRETO_OTRA).evento("payment.approved", pago);
+
+        assertTrue(webhookPagosServicio.recibir(GATEWAY_OTRA, ajeno.cuerpo(), ajeno.firma()));
+        esperar(GATEWAY_OTRA, ajeno.id(), e -> e.getIntentos() >= 1);
+        assertEquals(EstadoPago.PENDIENTE, estadoPago());
+    }
+
+    // =========================================================
+    // HELPERS
+    // =========================================================
+
+    private void enviarYEsperar(PasarelaSimulada.Envio envio) {
+        assertTrue(webhookPagosServicio.recibir(GATEWAY, envio.cuerpo(), envio.firma()));
+        esperar(envio.id(), e -> e.getEstado() != EstadoEvento.PENDIENTE);
+        assertEquals(EstadoEvento.PROCESADO, evento(envio.id()).getEstado());
+    }
+
+    /** El procesamiento es asíncrono: espera a que el evento cumpla la condición. */
+    private void esperar(String idEvento, Predicate<EventoWebhook> condicion) {
+        esperar(GATEWAY, idEvento, condicion);
+    }
+
+    private void esperar(String gateway, String idEvento, Predicate<EventoWebhook> condicion) {
+        Instant limite = Instant.now().plus(ESPERA);
+        while (Instant.now().isBefore(limite)) {
+            EventoWebhook e = evento(gateway, idEvento);
+            if (e != null && condicion.test(e)) return;
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        EventoWebhook e = evento(gateway, idEvento);
+        fail("El webhook " + idEvento + " no llegó al estado esperado: " + (e == null ? "no se guardó" : e.getResultado()));
+    }
+
+    private EventoWebhook evento(String idEvento) {
+        return evento(GATEWAY, idEvento);
+    }
+
+    private EventoWebhook evento(String gateway, String idEvento) {
+        return mongoTemplate.findById(gateway + ":" + idEvento, EventoWebhook.class);
+    }
+
+    private EstadoPago estadoPago() {
+        return mongoTemplate.findById(pago.getId(), Pago.class).getEstado();
+    }
+
+    /** Pasarela de pruebas: arma y firma los eventos como lo haría la real. */
+    private record PasarelaSimulada(String secreto) {
+
+        record Envio(String id, String cuerpo, String firma) {}
+
+        Envio evento(String tipo, Pago p) {
+            String id = "evt_" + new ObjectId().toHexString();
+            String cuerpo = """
+                    {"id":"%s","type":"%s","data":{"paymentId":"%s","metadata":{"idPago":"%s"}}}"""
+                    .formatted(id, tipo, p.getGatewayPaymentId(), p.getId());
+            return new Envio(id, cuerpo, firmar(cuerpo));
+        }
+
+        private String firmar(String cuerpo) {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(secreto.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+                return HexFormat.of().formatHex(mac.doFinal(cuerpo.getBytes(StandardCharsets.UTF_8)));
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}